@@ -0,0 +1,336 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.auth;
+
+
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.*;
+import samplecode.annotation.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Caches the authorization identity of each connection, so that
+ * request-path authorization checks do not cost a round-trip to the
+ * server. The identity is obtained from the bind the application
+ * already performs: {@link #bind} adds an
+ * {@code AuthorizationIdentityRequestControl} (RFC 3829) to the bind
+ * request and records the identity returned in the response control.
+ * No "Who Am I?" extended request and no root DSE search is ever sent.
+ * <p/>
+ * An entry is keyed by connection and records the bind identity (the
+ * bind type and, for a simple bind, the bind DN) it belongs to. A bind
+ * through {@link #bind} replaces the entry of its connection, a failed
+ * bind removes it, and an entry of a connection which is no longer
+ * connected is ignored. A connection which is rebound without using
+ * {@link #bind} must be passed to {@link #invalidate}. Entries do not
+ * prevent connections from being garbage-collected.
+ * <p/>
+ * Usage Example: <blockquote>
+ * <p/>
+ * <pre>
+ * AuthorizationIdentityResolver resolver = new AuthorizationIdentityResolver();
+ * resolver.bind(ldapConnection,new SimpleBindRequest(bindDn,bindPassword));
+ * ...
+ * String authzId = resolver.getAuthorizationId(ldapConnection);
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * This class is safe for use by multiple threads.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class AuthorizationIdentityResolver
+{
+
+  // the cached identities, keyed by connection.
+  private final Map<LDAPConnection,CachedIdentity> cache =
+    new WeakHashMap<LDAPConnection,CachedIdentity>();
+
+
+  // the number of lookups answered from the cache.
+  private long hits;
+
+
+  // the number of lookups which found no usable entry.
+  private long misses;
+
+
+
+
+  /**
+   * Sends {@code bindRequest} on {@code ldapConnection} with an
+   * authorization identity request control added, and caches the
+   * authorization identity returned by the server. The control is not
+   * critical, so a server which does not support it processes the bind
+   * normally; the authorization identity of the connection is then
+   * unknown.
+   *
+   * @param ldapConnection
+   *   the connection to bind. {@code ldapConnection} is not permitted
+   *   to be {@code null}.
+   * @param bindRequest
+   *   the bind request of the application, which is not modified.
+   *   {@code bindRequest} is not permitted to be {@code null}.
+   *
+   * @return the result of the bind
+   *
+   * @throws LDAPException
+   *   if the bind fails or the authorization identity response control
+   *   cannot be decoded, in which case the cache entry of the
+   *   connection is removed.
+   */
+  public BindResult bind(final LDAPConnection ldapConnection, final BindRequest bindRequest)
+    throws LDAPException
+  {
+    ensureNotNull(ldapConnection,bindRequest);
+    final BindRequest request = withAuthorizationIdentityControl(bindRequest);
+    final BindResult bindResult;
+    final AuthorizationIdentityResponseControl responseControl;
+    try
+    {
+      bindResult = ldapConnection.bind(request);
+      responseControl = AuthorizationIdentityResponseControl.get(bindResult);
+    }
+    catch(LDAPException ldapException)
+    {
+      // the connection may now be bound as someone else
+      invalidate(ldapConnection);
+      throw ldapException;
+    }
+
+    final String authorizationId =
+      responseControl == null ? null : responseControl.getAuthorizationID();
+    synchronized(cache)
+    {
+      cache.put(ldapConnection,new CachedIdentity(getBindIdentity(bindRequest),authorizationId));
+    }
+    return bindResult;
+  }
+
+
+
+
+  /**
+   * Retrieves the cached authorization identity of a connection.
+   *
+   * @param ldapConnection
+   *   the connection. {@code ldapConnection} is not permitted to be
+   *   {@code null}.
+   *
+   * @return the authorization identity returned when the connection was
+   *         last bound through {@link #bind}, or {@code null} if it is
+   *         unknown (the connection has not been bound through this
+   *         resolver, has been invalidated or closed, or the server did
+   *         not return the identity)
+   */
+  public String getAuthorizationId(final LDAPConnection ldapConnection)
+  {
+    return getAuthorizationId(ldapConnection,null);
+  }
+
+
+
+
+  /**
+   * Retrieves the cached authorization identity of a connection, if the
+   * connection was last bound as {@code bindDn} by a simple bind.
+   *
+   * @param ldapConnection
+   *   the connection. {@code ldapConnection} is not permitted to be
+   *   {@code null}.
+   * @param bindDn
+   *   the expected bind DN, or {@code null} to accept any bind
+   *   identity.
+   *
+   * @return the authorization identity, or {@code null} if it is unknown
+   *         or the connection is bound as another identity
+   */
+  public String getAuthorizationId(final LDAPConnection ldapConnection, final String bindDn)
+  {
+    ensureNotNull(ldapConnection);
+    final CachedIdentity cachedIdentity;
+    synchronized(cache)
+    {
+      CachedIdentity c = cache.get(ldapConnection);
+      if((c != null) && !ldapConnection.isConnected())
+      {
+        cache.remove(ldapConnection);
+        c = null;
+      }
+      if((c != null) && (bindDn != null) &&
+        !c.bindIdentity.equals(getSimpleBindIdentity(bindDn)))
+      {
+        c = null;
+      }
+      if((c == null) || (c.authorizationId == null))
+      {
+        ++misses;
+      }
+      else
+      {
+        ++hits;
+      }
+      cachedIdentity = c;
+    }
+    return cachedIdentity == null ? null : cachedIdentity.authorizationId;
+  }
+
+
+
+
+  /**
+   * Removes the cache entry of a connection, which must be done when the
+   * connection is rebound without using {@link #bind}.
+   *
+   * @param ldapConnection
+   *   the connection. {@code ldapConnection} is not permitted to be
+   *   {@code null}.
+   */
+  public void invalidate(final LDAPConnection ldapConnection)
+  {
+    ensureNotNull(ldapConnection);
+    synchronized(cache)
+    {
+      cache.remove(ldapConnection);
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of lookups answered from the cache
+   */
+  public long getHitCount()
+  {
+    synchronized(cache)
+    {
+      return hits;
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of lookups which found no usable entry
+   */
+  public long getMissCount()
+  {
+    synchronized(cache)
+    {
+      return misses;
+    }
+  }
+
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    synchronized(cache)
+    {
+      return "samplecode.auth.AuthorizationIdentityResolver{size=" + cache.size() +
+        ", hits=" + hits + ", misses=" + misses + '}';
+    }
+  }
+
+
+
+
+  private static BindRequest withAuthorizationIdentityControl(final BindRequest bindRequest)
+  {
+    final Control[] controls = bindRequest.getControls();
+    for(final Control control : controls)
+    {
+      if(AuthorizationIdentityRequestControl.AUTHORIZATION_IDENTITY_REQUEST_OID.equals(
+        control.getOID()))
+      {
+        return bindRequest;
+      }
+    }
+    final Control[] withControl = Arrays.copyOf(controls,controls.length + 1);
+    withControl[controls.length] = new AuthorizationIdentityRequestControl();
+    return bindRequest.duplicate(withControl);
+  }
+
+
+
+
+  private static String getBindIdentity(final BindRequest bindRequest)
+  {
+    if(bindRequest instanceof SimpleBindRequest)
+    {
+      return getSimpleBindIdentity(((SimpleBindRequest)bindRequest).getBindDN());
+    }
+    return bindRequest.getBindType();
+  }
+
+
+
+
+  private static String getSimpleBindIdentity(final String bindDn)
+  {
+    String normalized;
+    try
+    {
+      normalized = DN.normalize(bindDn);
+    }
+    catch(LDAPException ldapException)
+    {
+      normalized = bindDn.toLowerCase();
+    }
+    return "SIMPLE:" + normalized;
+  }
+
+
+
+
+  /**
+   * The bind identity of a connection and the authorization identity
+   * the server returned for it.
+   */
+  private static final class CachedIdentity
+  {
+
+    private final String authorizationId;
+
+
+    private final String bindIdentity;
+
+
+
+
+    private CachedIdentity(final String bindIdentity, final String authorizationId)
+    {
+      this.bindIdentity = bindIdentity;
+      this.authorizationId = authorizationId;
+    }
+  }
+
+}
@@ -20,12 +20,11 @@ package samplecode.auth;
 import com.unboundid.ldap.sdk.*;
 import com.unboundid.ldap.sdk.controls.*;
 import com.unboundid.ldap.sdk.extensions.*;
-import java.util.List;
 import samplecode.annotation.*;
 import samplecode.ldap.SupportedFeature;
 import samplecode.listener.*;
-import samplecode.util.SampleCodeCollectionUtils;
 
+import static com.unboundid.util.Validator.ensureNotNull;
 import static com.unboundid.util.Validator.ensureTrue;
 
 
@@ -33,6 +32,13 @@ import static com.unboundid.util.Validator.ensureTrue;
  * Provides clients with a method to get the authorization identity from
  * the result of a bind on a connection to directory server.
  * <p/>
+ * The authorization identity returned by a bind is cached by an
+ * {@link AuthorizationIdentityResolver}, which may be shared by several
+ * instances, and is returned by
+ * {@link #getAuthorizationIdentityWhoAmIExtendedOperation} without a
+ * "Who Am I?" request. Whether the server supports the "Who Am I?"
+ * extended operation is checked once per instance.
+ * <p/>
  * This class can be observed by {@code LdapExceptionListener} objects
  * by adding a listener using {@code addLdapExceptionListener}.
  * <p/>
@@ -56,11 +62,20 @@ public final class AuthorizedIdentity implements ObservedByLdapExceptionListener
   private final LDAPConnection ldapConnection;
 
 
+  // caches the authorization identity returned by a bind.
+  private final AuthorizationIdentityResolver authorizationIdentityResolver;
+
+
+  // whether the server supports the "Who Am I?" extended operation, or
+  // null if this has not been checked.
+  private Boolean whoAmISupported;
+
+
   /**
    * interested parties to {@code LdapExceptionEvents}
    */
-  private volatile List<LdapExceptionListener> ldapExceptionListeners =
-    SampleCodeCollectionUtils.newArrayList();
+  private final ListenerRegistry<LdapExceptionListener> ldapExceptionListeners =
+    ListenerRegistry.newInstance(LdapExceptionListener.class);
 
 
 
@@ -75,41 +90,57 @@ public final class AuthorizedIdentity implements ObservedByLdapExceptionListener
    */
   public AuthorizedIdentity(LDAPConnection ldapConnection)
   {
+    this(ldapConnection,new AuthorizationIdentityResolver());
+  }
+
+
+
+
+  /**
+   * Creates a new instance of {@code AuthorizedIdentity} that will use
+   * the specified connection to a directory server and cache
+   * authorization identities in the specified resolver.
+   *
+   * @param ldapConnection
+   *   a connection to a directory server. {@code ldapConnection}
+   *   is not permitted to be {@code null}.
+   * @param authorizationIdentityResolver
+   *   the cache of authorization identities.
+   *   {@code authorizationIdentityResolver} is not permitted to be
+   *   {@code null}.
+   */
+  public AuthorizedIdentity(LDAPConnection ldapConnection,
+    AuthorizationIdentityResolver authorizationIdentityResolver)
+  {
+    ensureNotNull(authorizationIdentityResolver);
     this.ldapConnection = ldapConnection;
+    this.authorizationIdentityResolver = authorizationIdentityResolver;
   }
 
 
 
 
   @Override
-  public synchronized void addLdapExceptionListener(
+  public void addLdapExceptionListener(
     LdapExceptionListener ldapExceptionListener)
   {
-    if(ldapExceptionListener != null)
-    {
-      ldapExceptionListeners.add(ldapExceptionListener);
-    }
+    ldapExceptionListeners.add(ldapExceptionListener);
   }
 
 
 
 
-  @SuppressWarnings("unchecked")
   @Override
   public void fireLdapExceptionListener(final LDAPConnection ldapConnection,
     LDAPException ldapException)
   {
-    List<LdapExceptionListener> copy;
-    synchronized(this)
-    {
-      copy = SampleCodeCollectionUtils.newArrayList(ldapExceptionListeners);
-    }
-    if(copy.size() == 0)
+    final LdapExceptionListener[] listeners = ldapExceptionListeners.getListeners();
+    if(listeners.length == 0)
     {
       return;
     }
     LdapExceptionEvent ev = new LdapExceptionEvent(this,ldapConnection,ldapException);
-    for(final LdapExceptionListener l : copy)
+    for(final LdapExceptionListener l : listeners)
     {
       l.ldapRequestFailed(ev);
     }
@@ -119,13 +150,10 @@ public final class AuthorizedIdentity implements ObservedByLdapExceptionListener
 
 
   @Override
-  public synchronized void removeLdapExceptionListener(
+  public void removeLdapExceptionListener(
     final LdapExceptionListener ldapExceptionListener)
   {
-    if(ldapExceptionListener != null)
-    {
-      ldapExceptionListeners.remove(ldapExceptionListener);
-    }
+    ldapExceptionListeners.remove(ldapExceptionListener);
   }
 
 
@@ -179,34 +207,20 @@ public final class AuthorizedIdentity implements ObservedByLdapExceptionListener
     bindRequest.setResponseTimeoutMillis(responseTimeoutMillis);
 
     /*
-     * Transmit the bind request to the server
+     * Transmit the bind request to the server; the resolver extracts the
+     * response control from the bind response and caches the
+     * authorization identity.
      */
-    BindResult bindResult;
     try
     {
-      bindResult = ldapConnection.bind(bindRequest);
+      authorizationIdentityResolver.bind(ldapConnection,bindRequest);
     }
     catch(LDAPException ldapException)
     {
       fireLdapExceptionListener(ldapConnection,ldapException);
       return null;
     }
-
-    /*
-     * Extract the response control from the bind response.
-     */
-    AuthorizationIdentityResponseControl authorizationIdentityResponseControl;
-    try
-    {
-      authorizationIdentityResponseControl =
-        AuthorizationIdentityResponseControl.get(bindResult);
-    }
-    catch(LDAPException ldapException)
-    {
-      fireLdapExceptionListener(ldapConnection,ldapException);
-      return null;
-    }
-    return authorizationIdentityResponseControl.getAuthorizationID();
+    return authorizationIdentityResolver.getAuthorizationId(ldapConnection);
   }
 
 
@@ -216,6 +230,8 @@ public final class AuthorizedIdentity implements ObservedByLdapExceptionListener
    * Retrieves the authorization identity from an existing ldap connection. Demonstrate
    * the user of the Who Am I? extended operation. This procedure requires creating a
    * WhoAmIExtendedRequest object and using processExtendedOperation to transmit it.
+   * The request is not sent if the authorization identity of the connection was
+   * cached when it was bound.
    *
    * @return the authorization identity from the response control
    *         associated with the
@@ -224,7 +240,17 @@ public final class AuthorizedIdentity implements ObservedByLdapExceptionListener
   public String
   getAuthorizationIdentityWhoAmIExtendedOperation() throws LDAPException
   {
-    if(!checkSupportedFeature(ldapConnection,WhoAmIExtendedRequest.WHO_AM_I_REQUEST_OID))
+    final String cached = authorizationIdentityResolver.getAuthorizationId(ldapConnection);
+    if(cached != null)
+    {
+      return cached;
+    }
+    if(whoAmISupported == null)
+    {
+      whoAmISupported =
+        checkSupportedFeature(ldapConnection,WhoAmIExtendedRequest.WHO_AM_I_REQUEST_OID);
+    }
+    if(!whoAmISupported)
     {
       return "";
     }
@@ -39,6 +39,12 @@ import static com.unboundid.util.Validator.ensureNotNull;
 
 /**
  * Provides a demonstration of authenticating to a directory server.
+ * <p/>
+ * When {@code --proxyAs} is specified, the pool is not rebound as the
+ * {@code --bindDN} user: it stays bound as the service account given by
+ * {@code --bindDN}, and the search is performed on behalf of the
+ * {@code --proxyAs} user with a proxied authorization control (see
+ * {@link ProxiedAuthorization}).
  *
  * @author Terry Gardner
  */
@@ -274,6 +280,13 @@ public final class BindDemo extends AbstractTool
    private DN dn;
 
 
+   // Searches on behalf of the --proxyAs user, if specified
+   private ProxiedAuthorization proxiedAuthorization;
+
+
+   private StringArgument proxyAsArgument;
+
+
    /**
     * Initializes this object using the provided outStream and errStream.
     *
@@ -325,13 +338,10 @@ public final class BindDemo extends AbstractTool
 
 
    @Override
-   public synchronized void addLdapSearchExceptionListener
+   public void addLdapSearchExceptionListener
       (LdapSearchExceptionListener ldapSearchExceptionListener)
    {
-      if(ldapSearchExceptionListener != null)
-      {
-         ldapSearchExceptionListeners.add(ldapSearchExceptionListener);
-      }
+      ldapSearchExceptionListeners.add(ldapSearchExceptionListener);
    }
 
 
@@ -341,18 +351,15 @@ public final class BindDemo extends AbstractTool
    {
       ensureNotNull(ldapConnection,ldapSearchException);
 
-      List<LdapSearchExceptionListener> copy;
-      synchronized(this)
-      {
-         copy = SampleCodeCollectionUtils.newArrayList(ldapSearchExceptionListeners);
-      }
-      if(copy.size() == 0)
+      final LdapSearchExceptionListener[] listeners =
+         ldapSearchExceptionListeners.getListeners();
+      if(listeners.length == 0)
       {
          return;
       }
       final LdapSearchExceptionEvent ev =
          new LdapSearchExceptionEvent(this,ldapConnection,ldapSearchException);
-      for(final LdapSearchExceptionListener l : copy)
+      for(final LdapSearchExceptionListener l : listeners)
       {
          l.searchRequestFailed(ev);
       }
@@ -360,14 +367,10 @@ public final class BindDemo extends AbstractTool
 
 
    @Override
-   public synchronized void removeLdapSearchExceptionListener(
+   public void removeLdapSearchExceptionListener(
       final LdapSearchExceptionListener ldapSearchExceptionListener)
    {
-      if(ldapSearchExceptionListener != null)
-      {
-         ldapSearchExceptionListeners.remove
-            (ldapSearchExceptionListener);
-      }
+      ldapSearchExceptionListeners.remove(ldapSearchExceptionListener);
    }
 
 
@@ -413,7 +416,16 @@ public final class BindDemo extends AbstractTool
       try
       {
          getLDAPConnections();
-         authenticate();
+         if(proxyAsArgument.isPresent())
+         {
+            proxiedAuthorization =
+               new ProxiedAuthorization(ldapConnectionPool,
+                                        commandLineOptions.getBaseObject(),"uid");
+         }
+         else
+         {
+            authenticate();
+         }
          search();
       }
       catch(LDAPException e)
@@ -450,6 +462,13 @@ public final class BindDemo extends AbstractTool
          requiredArguments.add(arg);
       }
       argumentParser.addRequiredArgumentSet(requiredArguments);
+
+      proxyAsArgument =
+         new StringArgument(null,"proxyAs",false,1,"{dn or uid}",
+                            "The DN or uid of a user on whose behalf the search is " +
+                            "performed with a proxied authorization control, while the " +
+                            "connections stay bound as the --bindDN service account.");
+      argumentParser.addArgument(proxyAsArgument);
    }
 
 
@@ -473,8 +492,11 @@ public final class BindDemo extends AbstractTool
       searchRequest.setSizeLimit(commandLineOptions.getSizeLimit());
       searchRequest.setTimeLimitSeconds(commandLineOptions.getTimeLimit());
 
-      // Perform the search
-      SearchResult searchResult = ldapConnectionPool.search(searchRequest);
+      // Perform the search, on behalf of the --proxyAs user if specified
+      SearchResult searchResult = proxiedAuthorization == null ?
+         ldapConnectionPool.search(searchRequest) :
+         proxiedAuthorization.search(ldapConnectionPool,proxyAsArgument.getValue(),
+                                     searchRequest);
 
     /*
      * Handle response controls that may be attached to the search
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.bind;
+
+
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.ProxiedAuthorizationV2RequestControl;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import samplecode.annotation.*;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Performs operations on behalf of end users over connections which
+ * stay bound as a service account, by attaching a proxied authorization
+ * (v2) request control (RFC 4370) to each request instead of binding
+ * the connection as the user. Pooled connections keep their identity,
+ * and an operation costs one round-trip instead of a bind, the
+ * operation, and a bind back to the service account.
+ * <p/>
+ * A user is named either by DN or by the value of an identifying
+ * attribute, such as {@code uid}, of an entry below a base DN. The
+ * authorization ID of each user is resolved, with a search when the
+ * user is not named by DN, the first time the user is seen, and the
+ * resulting control is cached. The service account must be allowed by
+ * the server to use proxied authorization.
+ * <p/>
+ * This class is safe for use by multiple threads.
+ *
+ * @author Terry Gardner
+ */
+@Since("18-Oct-2012")
+@CodeVersion("1.0")
+public final class ProxiedAuthorization
+{
+
+   /**
+    * Prepares a {@code ProxiedAuthorization} which resolves user names
+    * over {@code serviceConnection}.
+    *
+    * @param serviceConnection
+    *    a connection or pool bound as the service account.
+    * @param userBaseDn
+    *    the base DN below which users not named by DN are searched for.
+    * @param userIdAttribute
+    *    the attribute which identifies users not named by DN, for
+    *    example {@code uid}.
+    */
+   public ProxiedAuthorization(final LDAPInterface serviceConnection,
+                               final String userBaseDn,
+                               final String userIdAttribute)
+   {
+      ensureNotNull(serviceConnection,userBaseDn,userIdAttribute);
+      this.serviceConnection = serviceConnection;
+      this.userBaseDn = userBaseDn;
+      this.userIdAttribute = userIdAttribute;
+   }
+
+
+   /**
+    * Retrieves the proxied authorization control for {@code user},
+    * resolving and caching it the first time {@code user} is seen.
+    *
+    * @param user
+    *    the DN of the user, or the value of the identifying attribute.
+    *
+    * @return the control to attach to the requests of {@code user}
+    *
+    * @throws LDAPException
+    *    if {@code user} is not a DN and the search for the user fails or
+    *    does not find exactly one entry.
+    */
+   public Control getControl(final String user) throws LDAPException
+   {
+      ensureNotNull(user);
+      Control control = controls.get(user);
+      if(control == null)
+      {
+         control = new ProxiedAuthorizationV2RequestControl("dn:" + resolveDn(user));
+         controls.put(user,control);
+         resolutions.incrementAndGet();
+      }
+      return control;
+   }
+
+
+   /**
+    * Searches on behalf of {@code user}. {@code searchRequest} is not
+    * modified.
+    *
+    * @param connection
+    *    a connection or pool bound as the service account.
+    * @param user
+    *    the DN of the user, or the value of the identifying attribute.
+    * @param searchRequest
+    *    the search to perform.
+    *
+    * @return the result of the search
+    *
+    * @throws LDAPException
+    *    if the user cannot be resolved or the search fails.
+    */
+   public SearchResult search(final LDAPInterface connection,
+                              final String user,
+                              final SearchRequest searchRequest)
+      throws LDAPException
+   {
+      ensureNotNull(connection,searchRequest);
+      return connection.search(searchRequest.duplicate(withControl(user,searchRequest)));
+   }
+
+
+   /**
+    * Modifies an entry on behalf of {@code user}. {@code modifyRequest}
+    * is not modified.
+    *
+    * @param connection
+    *    a connection or pool bound as the service account.
+    * @param user
+    *    the DN of the user, or the value of the identifying attribute.
+    * @param modifyRequest
+    *    the modification to perform.
+    *
+    * @return the result of the modification
+    *
+    * @throws LDAPException
+    *    if the user cannot be resolved or the modification fails.
+    */
+   public LDAPResult modify(final LDAPInterface connection,
+                            final String user,
+                            final ModifyRequest modifyRequest)
+      throws LDAPException
+   {
+      ensureNotNull(connection,modifyRequest);
+      return connection.modify(modifyRequest.duplicate(withControl(user,modifyRequest)));
+   }
+
+
+   /**
+    * Removes the cached control of {@code user}, for example after the
+    * entry of the user has been renamed.
+    *
+    * @param user
+    *    the DN of the user, or the value of the identifying attribute.
+    */
+   public void invalidate(final String user)
+   {
+      ensureNotNull(user);
+      controls.remove(user);
+   }
+
+
+   /**
+    * @return the number of times a user has been resolved
+    */
+   public long getResolutionCount()
+   {
+      return resolutions.get();
+   }
+
+
+   private Control[] withControl(final String user,final LDAPRequest request)
+      throws LDAPException
+   {
+      final Control[] existing = request.getControls();
+      final Control[] controls = Arrays.copyOf(existing,existing.length + 1);
+      controls[existing.length] = getControl(user);
+      return controls;
+   }
+
+
+   private String resolveDn(final String user) throws LDAPException
+   {
+      if(DN.isValidDN(user) && (user.indexOf('=') > 0))
+      {
+         return user;
+      }
+      final SearchRequest searchRequest =
+         new SearchRequest(userBaseDn,SearchScope.SUB,
+                           Filter.createEqualityFilter(userIdAttribute,user),
+                           SearchRequest.NO_ATTRIBUTES);
+      searchRequest.setSizeLimit(2);
+      final SearchResult searchResult;
+      try
+      {
+         searchResult = serviceConnection.search(searchRequest);
+      }
+      catch(LDAPSearchException exception)
+      {
+         if(ResultCode.SIZE_LIMIT_EXCEEDED.equals(exception.getResultCode()))
+         {
+            throw new LDAPException(ResultCode.AUTHORIZATION_DENIED,
+                                    "more than one entry has " + userIdAttribute + "=" + user);
+         }
+         throw exception;
+      }
+      if(searchResult.getEntryCount() != 1)
+      {
+         throw new LDAPException(ResultCode.AUTHORIZATION_DENIED,
+                                 "no entry has " + userIdAttribute + "=" + user);
+      }
+      return searchResult.getSearchEntries().get(0).getDN();
+   }
+
+
+   // The cached controls, keyed by user.
+   private final Map<String,Control> controls = new ConcurrentHashMap<String,Control>();
+
+
+   // The number of times a user has been resolved.
+   private final AtomicLong resolutions = new AtomicLong();
+
+
+   private final LDAPInterface serviceConnection;
+
+
+   private final String userBaseDn;
+
+
+   private final String userIdAttribute;
+
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.bind;
+
+
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.util.args.*;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import samplecode.annotation.*;
+import samplecode.tools.AbstractTool;
+import samplecode.util.SampleCodeCollectionUtils;
+
+
+/**
+ * Compares two ways of searching on behalf of end users over a pool of
+ * connections, on the same workload: binding a pooled connection as the
+ * user for each search and then back as the service account
+ * (bind-per-request), and keeping the pool bound as the service account
+ * and attaching a proxied authorization control to each search
+ * ({@link ProxiedAuthorization}). The service account is specified by
+ * {@code --bindDN} and {@code --bindPassword}; the workload is
+ * {@code --iterations} searches of {@code --baseObject} with
+ * {@code --scope}, {@code --filter} and {@code --attribute}, cycling
+ * through the users specified by {@code --userDN}, spread over
+ * {@code --numThreads} threads. Both workloads first run
+ * {@code --warmUpIterations} searches which are not measured, so that
+ * neither is measured on a cold JVM or cold server caches; the measured
+ * workloads are then run {@code --rounds} times, alternating which of
+ * them runs first, and the totals of all rounds are compared.
+ * <blockquote>
+ * <p/>
+ * <pre>
+ * Usage:  ProxiedAuthorizationBenchmark {options}
+ *
+ * Available options include (in addition to the connection options):
+ * --userDN {distinguishedName}
+ *     The DN of a user on whose behalf searches are performed. This
+ *     argument is required and may be specified more than once.
+ * --userPassword {password}
+ *     The password of the users, used by the bind-per-request workload.
+ *     This argument is required.
+ * --iterations {positive-integer}
+ *     The number of searches performed by each workload in each round.
+ * --warmUpIterations {non-negative-integer}
+ *     The number of searches performed by each workload before the
+ *     measured rounds.
+ * --rounds {positive-integer}
+ *     The number of measured rounds.
+ * </pre>
+ * <p/>
+ * </blockquote>
+ *
+ * @author Terry Gardner
+ */
+@Since("18-Oct-2012")
+@CodeVersion("1.0")
+@Launchable
+public final class ProxiedAuthorizationBenchmark extends AbstractTool
+{
+
+   /**
+    * Runs the benchmark.
+    *
+    * @param args
+    *    command-line arguments excluding JVM-specific arguments.
+    */
+   public static void main(final String... args)
+   {
+      final ProxiedAuthorizationBenchmark tool =
+         new ProxiedAuthorizationBenchmark(System.out,System.err);
+      final ResultCode resultCode = tool.runTool(args);
+      if(!resultCode.equals(ResultCode.SUCCESS))
+      {
+         System.exit(resultCode.intValue());
+      }
+   }
+
+
+   /**
+    * The long identifier of the argument which specifies the number of
+    * searches performed by each workload.
+    */
+   public static final String ARG_NAME_ITERATIONS = "iterations";
+
+
+   /**
+    * The long identifier of the argument which specifies the number of
+    * measured rounds.
+    */
+   public static final String ARG_NAME_ROUNDS = "rounds";
+
+
+   /**
+    * The long identifier of the argument which specifies the DN of a
+    * user.
+    */
+   public static final String ARG_NAME_USER_DN = "userDN";
+
+
+   /**
+    * The long identifier of the argument which specifies the password of
+    * the users.
+    */
+   public static final String ARG_NAME_USER_PASSWORD = "userPassword";
+
+
+   /**
+    * The long identifier of the argument which specifies the number of
+    * searches performed by each workload before the measured rounds.
+    */
+   public static final String ARG_NAME_WARM_UP_ITERATIONS = "warmUpIterations";
+
+
+   /**
+    * The number of searches performed by each workload in each round
+    * when {@code --iterations} is not specified.
+    */
+   public static final int DEFAULT_ITERATIONS = 1000;
+
+
+   /**
+    * The number of measured rounds when {@code --rounds} is not
+    * specified.
+    */
+   public static final int DEFAULT_ROUNDS = 4;
+
+
+   /**
+    * The number of searches performed by each workload before the
+    * measured rounds when {@code --warmUpIterations} is not specified.
+    */
+   public static final int DEFAULT_WARM_UP_ITERATIONS = 1000;
+
+
+   /**
+    * Initializes this object using the provided outStream and errStream.
+    *
+    * @param outStream
+    *    regular output
+    * @param errStream
+    *    error output
+    */
+   public ProxiedAuthorizationBenchmark(final OutputStream outStream,
+                                        final OutputStream errStream)
+   {
+      super(outStream,errStream);
+   }
+
+
+   @Override
+   protected void addArguments(final ArgumentParser argumentParser)
+      throws ArgumentException
+   {
+      userDnArgument =
+         new DNArgument(null,ARG_NAME_USER_DN,true,0,"{distinguishedName}",
+                        "The DN of a user on whose behalf searches are performed. " +
+                        "This argument is required and may be specified more than once.");
+      argumentParser.addArgument(userDnArgument);
+
+      userPasswordArgument =
+         new StringArgument(null,ARG_NAME_USER_PASSWORD,true,1,"{password}",
+                            "The password of the users, used by the bind-per-request " +
+                            "workload. This argument is required.");
+      argumentParser.addArgument(userPasswordArgument);
+
+      iterationsArgument =
+         new IntegerArgument(null,ARG_NAME_ITERATIONS,false,1,"{positive-integer}",
+                             "The number of searches performed by each workload in each " +
+                             "round.",1,Integer.MAX_VALUE,DEFAULT_ITERATIONS);
+      argumentParser.addArgument(iterationsArgument);
+
+      warmUpIterationsArgument =
+         new IntegerArgument(null,ARG_NAME_WARM_UP_ITERATIONS,false,1,
+                             "{non-negative-integer}","The number of searches performed by " +
+                             "each workload before the measured rounds.",0,Integer.MAX_VALUE,
+                             DEFAULT_WARM_UP_ITERATIONS);
+      argumentParser.addArgument(warmUpIterationsArgument);
+
+      roundsArgument =
+         new IntegerArgument(null,ARG_NAME_ROUNDS,false,1,"{positive-integer}",
+                             "The number of measured rounds. The workload which runs first " +
+                             "alternates from round to round.",1,Integer.MAX_VALUE,
+                             DEFAULT_ROUNDS);
+      argumentParser.addArgument(roundsArgument);
+   }
+
+
+   @Override
+   protected ResultCode executeToolTasks()
+   {
+      final List<String> users = SampleCodeCollectionUtils.newArrayList();
+      for(final DN dn : userDnArgument.getValues())
+      {
+         users.add(dn.toString());
+      }
+      final int iterations = iterationsArgument.getValue();
+      final int warmUpIterations = warmUpIterationsArgument.getValue();
+      final int rounds = roundsArgument.getValue();
+      final int numThreads = Math.max(1,commandLineOptions.getNumThreads());
+
+      final Filter filter = commandLineOptions.getFilter() == null ?
+         Filter.createPresenceFilter("objectClass") : commandLineOptions.getFilter();
+      final List<String> requestedAttributes = commandLineOptions.getRequestedAttributes();
+      final SearchRequest searchRequest =
+         new SearchRequest(commandLineOptions.getBaseObject(),
+                           commandLineOptions.getSearchScope(),filter,
+                           requestedAttributes.toArray(new String[requestedAttributes.size()]));
+
+      LDAPConnectionPool pool = null;
+      try
+      {
+         pool = getLdapConnectionPool(connectToServer(),numThreads,numThreads);
+         final BindRequest serviceBindRequest =
+            new SimpleBindRequest(commandLineOptions.getBindDn(),
+                                  commandLineOptions.getBindPassword());
+         final ProxiedAuthorization proxiedAuthorization =
+            new ProxiedAuthorization(pool,commandLineOptions.getBaseObject(),"uid");
+
+         final Workload bindPerRequest =
+            new BindPerRequest(pool,serviceBindRequest,users,userPasswordArgument.getValue(),
+                               searchRequest);
+         final Workload proxied = new Proxied(pool,proxiedAuthorization,users,searchRequest);
+
+         /*
+          * The warm-up is not measured. It also fills the pool and the
+          * user cache of the proxied authorization, which the measured
+          * rounds would otherwise fill in the first round.
+          */
+         if(warmUpIterations > 0)
+         {
+            runWorkload(bindPerRequest,warmUpIterations,numThreads);
+            runWorkload(proxied,warmUpIterations,numThreads);
+         }
+
+         long bindPerRequestNanos = 0L;
+         long proxiedNanos = 0L;
+         for(int round = 0; round < rounds; ++round)
+         {
+            if(round % 2 == 0)
+            {
+               bindPerRequestNanos += runWorkload(bindPerRequest,iterations,numThreads);
+               proxiedNanos += runWorkload(proxied,iterations,numThreads);
+            }
+            else
+            {
+               proxiedNanos += runWorkload(proxied,iterations,numThreads);
+               bindPerRequestNanos += runWorkload(bindPerRequest,iterations,numThreads);
+            }
+         }
+
+         final long searches = (long)iterations * rounds;
+         out(String.format("%d warm-up searches per workload, %d rounds of %d searches",
+                           warmUpIterations,rounds,iterations));
+         out(report("bind-per-request",searches,bindPerRequestNanos));
+         out(report("proxied-authorization",searches,proxiedNanos));
+         out(String.format("proxied authorization resolved %d users",
+                           proxiedAuthorization.getResolutionCount()));
+      }
+      catch(LDAPException exception)
+      {
+         getLogger().fatal(exception.getExceptionMessage());
+         return exception.getResultCode();
+      }
+      catch(InterruptedException exception)
+      {
+         Thread.currentThread().interrupt();
+         return ResultCode.USER_CANCELED;
+      }
+      finally
+      {
+         if(pool != null)
+         {
+            pool.close();
+         }
+      }
+      return ResultCode.SUCCESS;
+   }
+
+
+   @Override
+   protected String classSpecificPropertiesResourceName()
+   {
+      return "ProxiedAuthorizationBenchmark.properties";
+   }
+
+
+   /**
+    * Performs search number {@code i} of a workload.
+    */
+   private interface Workload
+   {
+
+      void search(int i) throws LDAPException;
+   }
+
+
+   /**
+    * Runs {@code iterations} searches of {@code workload} on
+    * {@code numThreads} threads.
+    *
+    * @return the elapsed time in nanoseconds
+    */
+   private static long runWorkload(final Workload workload,final int iterations,
+                                   final int numThreads)
+      throws LDAPException,InterruptedException
+   {
+      final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+      try
+      {
+         final List<Future<Void>> futures = SampleCodeCollectionUtils.newArrayList();
+         final long start = System.nanoTime();
+         for(int t = 0; t < numThreads; ++t)
+         {
+            final int first = t;
+            futures.add(executorService.submit(new Callable<Void>()
+            {
+
+               @Override
+               public Void call() throws LDAPException
+               {
+                  for(int i = first; i < iterations; i += numThreads)
+                  {
+                     workload.search(i);
+                  }
+                  return null;
+               }
+            }));
+         }
+         for(final Future<Void> future : futures)
+         {
+            try
+            {
+               future.get();
+            }
+            catch(ExecutionException exception)
+            {
+               if(exception.getCause() instanceof LDAPException)
+               {
+                  throw (LDAPException)exception.getCause();
+               }
+               throw new LDAPException(ResultCode.LOCAL_ERROR,exception.getCause());
+            }
+         }
+         return System.nanoTime() - start;
+      }
+      finally
+      {
+         executorService.shutdownNow();
+      }
+   }
+
+
+   private static String report(final String name,final long searches,final long nanos)
+   {
+      final double seconds = nanos / 1e9;
+      return String.format("%-22s searches=%d elapsedMillis=%d searchesPerSecond=%.1f " +
+                           "meanMicros=%d",name,searches,nanos / 1000000L,
+                           seconds > 0 ? searches / seconds : 0.0,
+                           nanos / searches / 1000L);
+   }
+
+
+   /**
+    * Binds a pooled connection as the user, searches, and binds the
+    * connection back as the service account.
+    */
+   private static final class BindPerRequest implements Workload
+   {
+
+      private BindPerRequest(final LDAPConnectionPool pool,
+                             final BindRequest serviceBindRequest,
+                             final List<String> users,
+                             final String userPassword,
+                             final SearchRequest searchRequest)
+      {
+         this.pool = pool;
+         this.serviceBindRequest = serviceBindRequest;
+         this.users = users;
+         this.userPassword = userPassword;
+         this.searchRequest = searchRequest;
+      }
+
+
+      @Override
+      public void search(final int i) throws LDAPException
+      {
+         final LDAPConnection connection = pool.getConnection();
+         boolean usable = false;
+         try
+         {
+            connection.bind(users.get(i % users.size()),userPassword);
+            connection.search(searchRequest.duplicate());
+            connection.bind(serviceBindRequest.duplicate());
+            usable = true;
+         }
+         finally
+         {
+            if(usable)
+            {
+               pool.releaseConnection(connection);
+            }
+            else
+            {
+               pool.releaseDefunctConnection(connection);
+            }
+         }
+      }
+
+
+      private final LDAPConnectionPool pool;
+
+
+      private final SearchRequest searchRequest;
+
+
+      private final BindRequest serviceBindRequest;
+
+
+      private final String userPassword;
+
+
+      private final List<String> users;
+
+   }
+
+
+   /**
+    * Searches over the pool with a proxied authorization control.
+    */
+   private static final class Proxied implements Workload
+   {
+
+      private Proxied(final LDAPConnectionPool pool,
+                      final ProxiedAuthorization proxiedAuthorization,
+                      final List<String> users,
+                      final SearchRequest searchRequest)
+      {
+         this.pool = pool;
+         this.proxiedAuthorization = proxiedAuthorization;
+         this.users = users;
+         this.searchRequest = searchRequest;
+      }
+
+
+      @Override
+      public void search(final int i) throws LDAPException
+      {
+         proxiedAuthorization.search(pool,users.get(i % users.size()),searchRequest);
+      }
+
+
+      private final LDAPConnectionPool pool;
+
+
+      private final ProxiedAuthorization proxiedAuthorization;
+
+
+      private final SearchRequest searchRequest;
+
+
+      private final List<String> users;
+
+   }
+
+
+   private IntegerArgument iterationsArgument;
+
+
+   private IntegerArgument roundsArgument;
+
+
+   private DNArgument userDnArgument;
+
+
+   private StringArgument userPasswordArgument;
+
+
+   private IntegerArgument warmUpIterationsArgument;
+
+}
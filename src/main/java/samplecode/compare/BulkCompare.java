@@ -0,0 +1,361 @@
+package samplecode.compare;
+
+
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.util.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import samplecode.annotation.*;
+
+
+/**
+ * Sends compare requests for a stream of (DN, attribute, value) tuples,
+ * pipelining them asynchronously across a set of connections. Each
+ * input line holds one tuple, its three fields separated by tab
+ * characters; empty lines and lines starting with {@code #} are
+ * skipped. At most {@code maxInFlight} requests are outstanding at a
+ * time, and each result is written as soon as it and the results of all
+ * earlier lines are available, so that the output is in input order.
+ * Each output line is the result ({@code COMPARE_TRUE},
+ * {@code COMPARE_FALSE}, or {@code ERROR} followed by the result code
+ * and diagnostic message) followed by a tab and the input line.
+ * <p/>
+ * Because results are written in input order, a slow request holds back
+ * the window behind it; {@code maxInFlight} bounds both the requests
+ * outstanding at the server and the results waiting to be written.
+ * <p/>
+ * A {@code BulkCompare} is used by a single thread.
+ *
+ * @author Terry J. Gardner
+ */
+@Since("18-Oct-2012")
+@CodeVersion("1.0")
+public final class BulkCompare
+{
+
+   /**
+    * Prepares a bulk compare which distributes requests round-robin
+    * across {@code connections}.
+    *
+    * @param connections
+    *    established connections, which must not be empty.
+    * @param maxInFlight
+    *    the maximum number of outstanding requests, which must be
+    *    positive.
+    */
+   public BulkCompare(final List<LDAPConnection> connections,final int maxInFlight)
+   {
+      Validator.ensureNotNull(connections);
+      Validator.ensureFalse(connections.isEmpty(),"at least one connection is required.");
+      Validator.ensureTrue(maxInFlight > 0,"maxInFlight must be positive.");
+      this.connections = new ArrayList<LDAPConnection>(connections);
+      this.maxInFlight = maxInFlight;
+      histogram = new long[BUCKET_UPPER_BOUNDS_MICROS.length + 1];
+   }
+
+
+   /**
+    * Compares every tuple read from {@code input} and writes the results
+    * to {@code output} in input order. Statistics accumulate across
+    * calls.
+    *
+    * @param input
+    *    the source of tuples.
+    * @param output
+    *    the destination of results.
+    *
+    * @throws IOException
+    *    if {@code input} cannot be read.
+    * @throws InterruptedException
+    *    if the calling thread is interrupted while waiting for a result.
+    */
+   public void run(final BufferedReader input,final PrintStream output)
+      throws IOException,InterruptedException
+   {
+      Validator.ensureNotNull(input,output);
+      final Queue<PendingCompare> pending = new ArrayDeque<PendingCompare>(maxInFlight);
+      final long start = System.nanoTime();
+      String line;
+      while((line = input.readLine()) != null)
+      {
+         if((line.length() == 0) || line.startsWith("#"))
+         {
+            continue;
+         }
+         while(pending.size() >= maxInFlight)
+         {
+            writeResult(pending.remove(),output);
+         }
+         pending.add(send(line));
+         while(!pending.isEmpty() && pending.peek().isDone())
+         {
+            writeResult(pending.remove(),output);
+         }
+      }
+      while(!pending.isEmpty())
+      {
+         writeResult(pending.remove(),output);
+      }
+      output.flush();
+      elapsedNanos += System.nanoTime() - start;
+   }
+
+
+   /**
+    * @return the number of tuples compared, including those which
+    *    resulted in an error
+    */
+   public long getCount()
+   {
+      return trueCount + falseCount + errorCount;
+   }
+
+
+   /**
+    * @return the number of {@code COMPARE_TRUE} results
+    */
+   public long getTrueCount()
+   {
+      return trueCount;
+   }
+
+
+   /**
+    * @return the number of {@code COMPARE_FALSE} results
+    */
+   public long getFalseCount()
+   {
+      return falseCount;
+   }
+
+
+   /**
+    * @return the number of results other than {@code COMPARE_TRUE} and
+    *    {@code COMPARE_FALSE}
+    */
+   public long getErrorCount()
+   {
+      return errorCount;
+   }
+
+
+   /**
+    * @return a multi-line report of the throughput and of the latency
+    *    histogram
+    */
+   public String getReport()
+   {
+      final String eol = System.getProperty("line.separator");
+      final long count = getCount();
+      final StringBuilder builder = new StringBuilder();
+      builder.append(String.format("compares=%d true=%d false=%d errors=%d",
+                                   count,trueCount,falseCount,errorCount)).append(eol);
+      if(count > 0)
+      {
+         final double seconds = elapsedNanos / 1e9;
+         builder.append(String.format("elapsedMillis=%d comparesPerSecond=%.1f " +
+                                      "meanMicros=%d maxMicros=%d",
+                                      elapsedNanos / 1000000L,
+                                      seconds > 0 ? count / seconds : 0.0,
+                                      totalLatencyNanos / count / 1000L,
+                                      maxLatencyNanos / 1000L)).append(eol);
+         for(int i = 0; i < histogram.length; ++i)
+         {
+            if(histogram[i] > 0)
+            {
+               builder.append(String.format("  %-10s %d",bucketLabel(i),histogram[i]))
+                  .append(eol);
+            }
+         }
+      }
+      return builder.toString();
+   }
+
+
+   private PendingCompare send(final String line)
+   {
+      final PendingCompare pendingCompare = new PendingCompare(line);
+      final String[] fields = line.split("\t",3);
+      if(fields.length != 3)
+      {
+         pendingCompare.complete(ResultCode.PARAM_ERROR,
+                                 "expected DN, attribute and value separated by tabs");
+         return pendingCompare;
+      }
+      final LDAPConnection connection = connections.get(nextConnection);
+      nextConnection = (nextConnection + 1) % connections.size();
+      try
+      {
+         connection.asyncCompare(new CompareRequest(fields[0],fields[1],fields[2]),
+                                 pendingCompare);
+      }
+      catch(LDAPException exception)
+      {
+         pendingCompare.complete(exception.getResultCode(),exception.getDiagnosticMessage());
+      }
+      return pendingCompare;
+   }
+
+
+   private void writeResult(final PendingCompare pendingCompare,final PrintStream output)
+      throws InterruptedException
+   {
+      pendingCompare.await();
+      final ResultCode resultCode = pendingCompare.resultCode;
+      final String result;
+      if(ResultCode.COMPARE_TRUE.equals(resultCode))
+      {
+         result = "COMPARE_TRUE";
+         ++trueCount;
+      }
+      else if(ResultCode.COMPARE_FALSE.equals(resultCode))
+      {
+         result = "COMPARE_FALSE";
+         ++falseCount;
+      }
+      else
+      {
+         result = "ERROR " + resultCode +
+            (pendingCompare.diagnosticMessage == null ? "" :
+               " " + pendingCompare.diagnosticMessage);
+         ++errorCount;
+      }
+      output.println(result + "\t" + pendingCompare.line);
+
+      final long latencyNanos = pendingCompare.latencyNanos;
+      totalLatencyNanos += latencyNanos;
+      maxLatencyNanos = Math.max(maxLatencyNanos,latencyNanos);
+      ++histogram[bucket(latencyNanos / 1000L)];
+   }
+
+
+   private static int bucket(final long micros)
+   {
+      for(int i = 0; i < BUCKET_UPPER_BOUNDS_MICROS.length; ++i)
+      {
+         if(micros <= BUCKET_UPPER_BOUNDS_MICROS[i])
+         {
+            return i;
+         }
+      }
+      return BUCKET_UPPER_BOUNDS_MICROS.length;
+   }
+
+
+   private static String bucketLabel(final int bucket)
+   {
+      if(bucket < BUCKET_UPPER_BOUNDS_MICROS.length)
+      {
+         return "<=" + BUCKET_UPPER_BOUNDS_MICROS[bucket] + "us";
+      }
+      return ">" + BUCKET_UPPER_BOUNDS_MICROS[BUCKET_UPPER_BOUNDS_MICROS.length - 1] + "us";
+   }
+
+
+   /**
+    * A compare request which has been sent, or which failed before it
+    * could be sent. The result is set by a connection reader thread.
+    */
+   private static final class PendingCompare implements AsyncCompareResultListener
+   {
+
+      private PendingCompare(final String line)
+      {
+         this.line = line;
+      }
+
+
+      @Override
+      public void compareResultReceived(final AsyncRequestID requestID,
+                                        final CompareResult compareResult)
+      {
+         complete(compareResult.getResultCode(),compareResult.getDiagnosticMessage());
+      }
+
+
+      private void complete(final ResultCode resultCode,final String diagnosticMessage)
+      {
+         latencyNanos = System.nanoTime() - startNanos;
+         this.resultCode = resultCode;
+         this.diagnosticMessage = diagnosticMessage;
+         done.countDown();
+      }
+
+
+      private boolean isDone()
+      {
+         return done.getCount() == 0;
+      }
+
+
+      private void await() throws InterruptedException
+      {
+         done.await();
+      }
+
+
+      private volatile String diagnosticMessage;
+
+
+      private final CountDownLatch done = new CountDownLatch(1);
+
+
+      private volatile long latencyNanos;
+
+
+      private final String line;
+
+
+      private volatile ResultCode resultCode;
+
+
+      private final long startNanos = System.nanoTime();
+
+   }
+
+
+   /**
+    * The inclusive upper bounds, in microseconds, of the latency
+    * histogram buckets; the last bucket holds everything slower.
+    */
+   private static final long[] BUCKET_UPPER_BOUNDS_MICROS = {
+      100L,250L,500L,1000L,2500L,5000L,10000L,25000L,50000L,100000L,250000L,500000L,1000000L
+   };
+
+
+   private final List<LDAPConnection> connections;
+
+
+   private long elapsedNanos;
+
+
+   private long errorCount;
+
+
+   private long falseCount;
+
+
+   private final long[] histogram;
+
+
+   private long maxLatencyNanos;
+
+
+   private final int maxInFlight;
+
+
+   private int nextConnection;
+
+
+   private long totalLatencyNanos;
+
+
+   private long trueCount;
+
+}
@@ -3,7 +3,13 @@ package samplecode.compare;
 
 import com.unboundid.ldap.sdk.*;
 import com.unboundid.util.args.*;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import samplecode.annotation.*;
 import samplecode.tools.AbstractTool;
 
@@ -11,6 +17,15 @@ import samplecode.tools.AbstractTool;
 /**
  * Provides a demonstration of the COMPARE request using the
  * UnboundID LDAP SDK.
+ * <p/>
+ * When {@code --bulkCompareFile} is specified, the tool instead reads
+ * (DN, attribute, value) tuples, one per line separated by tabs, from
+ * the named file or from standard input ({@code -}), and compares them
+ * with a {@link BulkCompare}: requests are pipelined across
+ * {@code --maxConnections} connections with at most
+ * {@code --maxInFlight} outstanding, results are written to standard
+ * output in input order, and throughput and latency statistics are
+ * written to standard error.
  *
  * @author Terry J. Gardner
  */
@@ -58,9 +73,35 @@ public final class CompareDemo extends AbstractTool
    }
 
 
+   /**
+    * The long identifier of the argument which names the file of tuples
+    * to compare.
+    */
+   public static final String ARG_NAME_BULK_COMPARE_FILE = "bulkCompareFile";
+
+
+   /**
+    * The long identifier of the argument which specifies the maximum
+    * number of outstanding compare requests in bulk mode.
+    */
+   public static final String ARG_NAME_MAX_IN_FLIGHT = "maxInFlight";
+
+
+   /**
+    * The maximum number of outstanding compare requests when
+    * {@code --maxInFlight} is not specified.
+    */
+   public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+
    @Override
    protected ResultCode executeToolTasks()
    {
+      if(bulkCompareFileArgument.isPresent())
+      {
+         return executeBulkCompare();
+      }
+
       // Create and transmit the CompareRequest to the server and display
       // the results of the comparison with the assertion value.
       CompareRequest req;
@@ -104,9 +145,85 @@ public final class CompareDemo extends AbstractTool
    public void addArguments(final ArgumentParser argumentParser)
       throws ArgumentException
    {
-      final String description = "The assertion to use in the compare request.";
-      argumentParser.addArgument(new StringArgument('n',"assertion",true,1,
+      String description = "The assertion to use in the compare request. This argument " +
+         "is required unless --" + ARG_NAME_BULK_COMPARE_FILE + " is specified.";
+      argumentParser.addArgument(new StringArgument('n',"assertion",false,1,
                                                     "{assertion}",description));
+
+      description = "A file of tuples to compare, one per line, each a DN, an attribute " +
+         "name and an assertion value separated by tabs, or - to read the tuples from " +
+         "standard input.";
+      bulkCompareFileArgument = new StringArgument(null,ARG_NAME_BULK_COMPARE_FILE,false,1,
+                                                   "{filename}",description);
+      argumentParser.addArgument(bulkCompareFileArgument);
+
+      description = "The maximum number of compare requests outstanding at a time when " +
+         "--" + ARG_NAME_BULK_COMPARE_FILE + " is specified.";
+      maxInFlightArgument = new IntegerArgument(null,ARG_NAME_MAX_IN_FLIGHT,false,1,
+                                                "{positive-integer}",description,1,
+                                                Integer.MAX_VALUE,DEFAULT_MAX_IN_FLIGHT);
+      argumentParser.addArgument(maxInFlightArgument);
+   }
+
+
+   /**
+    * Compares the tuples named by {@code --bulkCompareFile} using
+    * connections checked out of a connection pool.
+    */
+   private ResultCode executeBulkCompare()
+   {
+      final String fileName = bulkCompareFileArgument.getValue();
+      final List<LDAPConnection> connections = new ArrayList<LDAPConnection>();
+      LDAPConnectionPool pool = null;
+      try
+      {
+         pool = getLdapConnectionPool();
+         for(int i = 0; i < commandLineOptions.getMaxConnections(); ++i)
+         {
+            connections.add(pool.getConnection());
+         }
+         final BufferedReader input = "-".equals(fileName) ?
+            new BufferedReader(new InputStreamReader(System.in)) :
+            new BufferedReader(new FileReader(fileName));
+         final BulkCompare bulkCompare =
+            new BulkCompare(connections,maxInFlightArgument.getValue());
+         try
+         {
+            bulkCompare.run(input,getOut());
+         }
+         finally
+         {
+            input.close();
+         }
+         err(bulkCompare.getReport());
+         return bulkCompare.getErrorCount() == 0 ? ResultCode.SUCCESS : ResultCode.OTHER;
+      }
+      catch(LDAPException exception)
+      {
+         getLogger().fatal(exception.getExceptionMessage());
+         return exception.getResultCode();
+      }
+      catch(IOException exception)
+      {
+         getLogger().fatal(exception);
+         return ResultCode.LOCAL_ERROR;
+      }
+      catch(InterruptedException exception)
+      {
+         Thread.currentThread().interrupt();
+         return ResultCode.USER_CANCELED;
+      }
+      finally
+      {
+         if(pool != null)
+         {
+            for(final LDAPConnection connection : connections)
+            {
+               pool.releaseConnection(connection);
+            }
+            pool.close();
+         }
+      }
    }
 
 
@@ -137,4 +254,10 @@ public final class CompareDemo extends AbstractTool
       return new CompareRequest(commandLineOptions.getBaseObject(),attributeName,assertionValue);
    }
 
+
+   private StringArgument bulkCompareFileArgument;
+
+
+   private IntegerArgument maxInFlightArgument;
+
 }
@@ -22,6 +22,7 @@ import com.unboundid.util.Validator;
 import com.unboundid.util.args.Argument;
 import com.unboundid.util.args.ArgumentException;
 import com.unboundid.util.args.ArgumentParser;
+import com.unboundid.util.args.BooleanArgument;
 import com.unboundid.util.args.StringArgument;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,13 +40,21 @@ import samplecode.util.SampleCodeCollectionUtils;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
  * Provides a demonstration of the assertion request control described
  * in RFC 4528. The demonstrator should provide an assertion, an
  * attribute name (--attribute), a filter (--filter) and a new value for
- * that attribute (--newAttributeValue).
+ * that attribute (--newAttributeValue). With --compareAndSwap, the
+ * attribute is instead incremented by --newAttributeValue once by each
+ * of --numThreads threads, using {@link CompareAndSwap}, and the
+ * contention is reported.
  */
 @Author("terry.gardner@unboundid.com")
 @Since("Dec 4, 2011")
@@ -221,6 +230,19 @@ public final class AssertionRequestControlDemo extends AbstractTool {
     "newAttributeValue";
 
 
+  /**
+   * The long identifier of the command line argument which specifies
+   * that the attribute is incremented with compare-and-swap updates.
+   */
+  public static final String ARG_NAME_COMPARE_AND_SWAP = "compareAndSwap";
+
+
+  /**
+   * The number of times a compare-and-swap update is attempted.
+   */
+  public static final int COMPARE_AND_SWAP_MAX_ATTEMPTS = 20;
+
+
 
   /**
    * Prepares a new AssertionRequestControlDemo object using the
@@ -269,6 +291,13 @@ public final class AssertionRequestControlDemo extends AbstractTool {
         maxOccurrences,valuePlaceholder,description);
     argumentParser.addArgument(newAttributeValueArgument);
 
+    compareAndSwapArgument =
+      new BooleanArgument(null,ARG_NAME_COMPARE_AND_SWAP,1,"Increment the attribute " +
+        "specified by '--attribute' by the integer specified by '--newAttributeValue' " +
+        "once in each of '--numThreads' threads with compare-and-swap modify requests, " +
+        "which are retried when their assertion fails, and report the contention.");
+    argumentParser.addArgument(compareAndSwapArgument);
+
     String argName = CommandLineOptions.ARG_NAME_FILTER;
     final Argument filterArgument = argumentParser.getNamedArgument(argName);
 
@@ -366,6 +395,9 @@ public final class AssertionRequestControlDemo extends AbstractTool {
        * the --newAttributeValue command line argument.
        */
       final String newAttributeValue = newAttributeValueArgument.getValue();
+      if(compareAndSwapArgument.isPresent()) {
+        return incrementConcurrently(bindDn,attributeName,newAttributeValue);
+      }
 
       /*
        * Construct the modification and transmit the modify request to
@@ -389,6 +421,57 @@ public final class AssertionRequestControlDemo extends AbstractTool {
 
 
 
+  /**
+   * Increments {@code attributeName} of the entry at {@code dn} by
+   * {@code delta} once in each of {@code --numThreads} threads, which
+   * contend for the entry.
+   */
+  private ResultCode incrementConcurrently(final String dn, final String attributeName,
+                                           final String delta) throws LDAPException {
+    final CompareAndSwap.Update increment;
+    try {
+      increment = CompareAndSwap.increment(Long.parseLong(delta));
+    } catch(final NumberFormatException numberFormatException) {
+      getLogger().fatal(String.format("'%s' is not an integer.",delta));
+      return ResultCode.PARAM_ERROR;
+    }
+    final CompareAndSwap compareAndSwap =
+      CompareAndSwap.newInstance(ldapConnectionPool,COMPARE_AND_SWAP_MAX_ATTEMPTS);
+    final int numThreads = Math.max(1,commandLineOptions.getNumThreads());
+    final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+    final List<Future<String[]>> futures = SampleCodeCollectionUtils.newArrayList();
+    try {
+      for(int i = 0; i < numThreads; ++i) {
+        futures.add(executorService.submit(new Callable<String[]>() {
+
+          @Override
+          public String[] call() throws Exception {
+            return compareAndSwap.update(dn,attributeName,increment);
+          }
+        }));
+      }
+      for(final Future<String[]> future : futures) {
+        try {
+          future.get();
+        } catch(final ExecutionException executionException) {
+          if(executionException.getCause() instanceof LDAPException) {
+            throw (LDAPException) executionException.getCause();
+          }
+          throw new LDAPException(ResultCode.LOCAL_ERROR,executionException.getCause());
+        }
+      }
+    } catch(final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      return ResultCode.USER_CANCELED;
+    } finally {
+      executorService.shutdownNow();
+    }
+    out(compareAndSwap.getReport());
+    return ResultCode.SUCCESS;
+  }
+
+
+
   @Override
   protected String classSpecificPropertiesResourceName() {
     return "AssertionRequestControlDemo.properties";
@@ -396,6 +479,9 @@ public final class AssertionRequestControlDemo extends AbstractTool {
 
 
 
+  private BooleanArgument compareAndSwapArgument;
+
+
   private StringArgument newAttributeValueArgument;
 
 }
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.controls;
+
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.AssertionRequestControl;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Performs read-modify-write updates of an attribute of shared entries,
+ * such as quota pools and sequence allocators, without external locks.
+ * Each update reads the current values of the attribute, computes the
+ * new values, and replaces the values with a modify request carrying an
+ * assertion request control (RFC 4528) which asserts the values read.
+ * When another client has changed the attribute in between, the server
+ * returns {@code ASSERTION_FAILED}, and the update is retried after a
+ * jittered exponential backoff, with the values read again.
+ * <p/>
+ * The values written by a successful update are remembered, and the next
+ * update of the same attribute of the same entry asserts them without
+ * reading the entry first; when another client has changed them the
+ * assertion fails and the entry is read. An uncontended update therefore
+ * costs a single round-trip. (A pre-read request control would only
+ * return the asserted values when the modify succeeds, so it would not
+ * save the read.)
+ * <p/>
+ * The assertion is that the attribute has each of the values read, or
+ * that it is absent if it had no value, so the attribute should be
+ * single-valued or its values should only be changed by this engine.
+ * Contention is reported by {@link #getReport()}: the number of
+ * assertion failures, the number of updates which gave up, and how many
+ * updates took each number of attempts.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final CompareAndSwap compareAndSwap = CompareAndSwap.newInstance(ldapConnectionPool,10);
+ * final String[] next =
+ *   compareAndSwap.update("cn=sequence,dc=example,dc=com","uidNumber",
+ *     CompareAndSwap.increment(1));
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * This class is safe for use by multiple threads.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class CompareAndSwap {
+
+  /**
+   * Computes the new values of an attribute from its current values.
+   * An update may be computed more than once, so it should have no side
+   * effects.
+   */
+  public interface Update {
+
+    /**
+     * @param dn
+     *   the DN of the entry.
+     * @param currentValues
+     *   the current values of the attribute, which are empty if the
+     *   attribute is absent.
+     *
+     * @return the new values, which are empty to remove the attribute, or
+     *         {@code null} to leave the entry unchanged
+     *
+     * @throws LDAPException
+     *   to abandon the update, for example when a quota is exhausted.
+     */
+    String[] apply(String dn, String[] currentValues) throws LDAPException;
+  }
+
+
+
+  /**
+   * The backoff before the first retry, which doubles for each further
+   * retry.
+   */
+  public static final long INITIAL_BACKOFF_MILLIS = 5L;
+
+
+  /**
+   * The longest backoff between retries.
+   */
+  public static final long MAX_BACKOFF_MILLIS = 1000L;
+
+
+
+  /**
+   * Creates a compare-and-swap engine.
+   *
+   * @param ldapInterface
+   *   the connection or pool used to read and modify entries.
+   *   {@code ldapInterface} is not permitted to be {@code null}.
+   * @param maxAttempts
+   *   the number of times an update is attempted before it gives up,
+   *   which must be positive.
+   *
+   * @return a new compare-and-swap engine
+   */
+  public static CompareAndSwap newInstance(final LDAPInterface ldapInterface,
+                                           final int maxAttempts) {
+    ensureNotNull(ldapInterface);
+    ensureTrue(maxAttempts > 0);
+    return new CompareAndSwap(ldapInterface,maxAttempts);
+  }
+
+
+
+  /**
+   * Creates an update which adds {@code delta} to the integer value of
+   * an attribute, or sets it to {@code delta} if the attribute is
+   * absent.
+   *
+   * @param delta
+   *   the number to add.
+   *
+   * @return a new update
+   */
+  public static Update increment(final long delta) {
+    return new Update() {
+
+      @Override
+      public String[] apply(final String dn, final String[] currentValues)
+        throws LDAPException {
+        if(currentValues.length > 1) {
+          throw new LDAPException(ResultCode.CONSTRAINT_VIOLATION,
+            "the attribute to increment of " + dn + " has more than one value");
+        }
+        try {
+          final long current = currentValues.length == 0 ? 0L : Long.parseLong(currentValues[0]);
+          return new String[] {String.valueOf(current + delta)};
+        } catch(final NumberFormatException numberFormatException) {
+          throw new LDAPException(ResultCode.CONSTRAINT_VIOLATION,
+            "the attribute to increment of " + dn + " is not an integer");
+        }
+      }
+    };
+  }
+
+
+
+  private CompareAndSwap(final LDAPInterface ldapInterface, final int maxAttempts) {
+    this.ldapInterface = ldapInterface;
+    this.maxAttempts = maxAttempts;
+    attemptHistogram = new AtomicLongArray(maxAttempts);
+  }
+
+
+
+  /**
+   * Updates {@code attribute} of the entry at {@code dn}.
+   *
+   * @param dn
+   *   the DN of the entry. {@code dn} is not permitted to be
+   *   {@code null}.
+   * @param attribute
+   *   the attribute to update. {@code attribute} is not permitted to be
+   *   {@code null}.
+   * @param update
+   *   computes the new values. {@code update} is not permitted to be
+   *   {@code null}.
+   *
+   * @return the values written, or the values last read or written if
+   *         {@code update} left the entry unchanged
+   *
+   * @throws LDAPException
+   *   if the entry does not exist, {@code update} abandons the update, a
+   *   request fails, or the assertion failed on every attempt
+   *   ({@code ASSERTION_FAILED}).
+   * @throws InterruptedException
+   *   if the calling thread is interrupted during a backoff.
+   */
+  public String[] update(final String dn, final String attribute, final Update update)
+    throws LDAPException, InterruptedException {
+    ensureNotNull(dn,attribute,update);
+    final String key = getKey(dn,attribute);
+    for(int attempt = 1; ; ++attempt) {
+      String[] currentValues = knownValues.get(key);
+      if(currentValues == null) {
+        currentValues = read(dn,attribute);
+        reads.incrementAndGet();
+      } else {
+        readsSkipped.incrementAndGet();
+      }
+
+      final String[] newValues = update.apply(dn,currentValues.clone());
+      if(newValues == null) {
+        attemptHistogram.incrementAndGet(attempt - 1);
+        return currentValues;
+      }
+
+      final ModifyRequest modifyRequest = new ModifyRequest(dn,
+        new Modification(ModificationType.REPLACE,attribute,newValues));
+      modifyRequest.addControl(new AssertionRequestControl(assertion(attribute,currentValues)));
+      try {
+        ldapInterface.modify(modifyRequest);
+        knownValues.put(key,newValues.clone());
+        attemptHistogram.incrementAndGet(attempt - 1);
+        return newValues;
+      } catch(final LDAPException ldapException) {
+        knownValues.remove(key);
+        if(!ResultCode.ASSERTION_FAILED.equals(ldapException.getResultCode())) {
+          throw ldapException;
+        }
+        conflicts.incrementAndGet();
+        if(attempt == maxAttempts) {
+          exhausted.incrementAndGet();
+          throw new LDAPException(ResultCode.ASSERTION_FAILED,String.format("%s of %s was " +
+            "changed by another client during each of %d attempts",attribute,dn,maxAttempts));
+        }
+      }
+      backoff(attempt);
+    }
+  }
+
+
+
+  /**
+   * Forgets the values written by this engine, so that the next update
+   * of each entry reads it first.
+   */
+  public void clearKnownValues() {
+    knownValues.clear();
+  }
+
+
+
+  /**
+   * @return the number of modify requests whose assertion failed
+   */
+  public long getConflictCount() {
+    return conflicts.get();
+  }
+
+
+
+  /**
+   * @return the number of updates which gave up because the assertion
+   *         failed on every attempt
+   */
+  public long getExhaustedCount() {
+    return exhausted.get();
+  }
+
+
+
+  /**
+   * @return the number of updates which succeeded or left the entry
+   *         unchanged
+   */
+  public long getCompletedCount() {
+    long count = 0;
+    for(int i = 0; i < attemptHistogram.length(); ++i) {
+      count += attemptHistogram.get(i);
+    }
+    return count;
+  }
+
+
+
+  /**
+   * @return the number of entries read
+   */
+  public long getReadCount() {
+    return reads.get();
+  }
+
+
+
+  /**
+   * @return the number of attempts which asserted the values last
+   *         written instead of reading the entry
+   */
+  public long getReadSkippedCount() {
+    return readsSkipped.get();
+  }
+
+
+
+  /**
+   * @param attempts
+   *   a number of attempts, from 1 to the maximum number of attempts.
+   *
+   * @return the number of updates which completed on attempt
+   *         {@code attempts}
+   */
+  public long getCompletedCount(final int attempts) {
+    ensureTrue((attempts > 0) && (attempts <= maxAttempts));
+    return attemptHistogram.get(attempts - 1);
+  }
+
+
+
+  /**
+   * @return a multi-line report of the contention
+   */
+  public String getReport() {
+    final String eol = System.getProperty("line.separator");
+    final StringBuilder builder = new StringBuilder();
+    builder.append(String.format("completed=%d conflicts=%d exhausted=%d reads=%d " +
+      "readsSkipped=%d",getCompletedCount(),getConflictCount(),getExhaustedCount(),
+      getReadCount(),getReadSkippedCount())).append(eol);
+    for(int i = 0; i < attemptHistogram.length(); ++i) {
+      final long count = attemptHistogram.get(i);
+      if(count > 0) {
+        builder.append(String.format("  attempts=%-4d updates=%d",i + 1,count)).append(eol);
+      }
+    }
+    return builder.toString();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("CompareAndSwap [maxAttempts=%d, completed=%d, conflicts=%d, " +
+      "exhausted=%d]",maxAttempts,getCompletedCount(),getConflictCount(),getExhaustedCount());
+  }
+
+
+
+  private String[] read(final String dn, final String attribute) throws LDAPException {
+    final SearchResultEntry entry = ldapInterface.getEntry(dn,attribute);
+    if(entry == null) {
+      throw new LDAPException(ResultCode.NO_SUCH_OBJECT,"there is no entry " + dn);
+    }
+    final String[] values = entry.getAttributeValues(attribute);
+    return values == null ? new String[0] : values;
+  }
+
+
+
+  /**
+   * @return a filter which matches if {@code attribute} has each of
+   *         {@code values}, or if it is absent and {@code values} is empty
+   */
+  private static Filter assertion(final String attribute, final String[] values) {
+    if(values.length == 0) {
+      return Filter.createNOTFilter(Filter.createPresenceFilter(attribute));
+    }
+    final List<Filter> components = SampleCodeCollectionUtils.newArrayList(values.length);
+    for(final String value : values) {
+      components.add(Filter.createEqualityFilter(attribute,value));
+    }
+    return components.size() == 1 ? components.get(0) : Filter.createANDFilter(components);
+  }
+
+
+
+  /**
+   * Sleeps for a random time up to the exponential backoff of
+   * {@code attempt}, so that clients which conflicted do not retry in
+   * step.
+   */
+  private static void backoff(final int attempt) throws InterruptedException {
+    final long ceiling = Math.min(MAX_BACKOFF_MILLIS,
+      INITIAL_BACKOFF_MILLIS << Math.min(attempt - 1,20));
+    final long millis;
+    synchronized(JITTER) {
+      millis = (long) (JITTER.nextDouble() * ceiling);
+    }
+    Thread.sleep(millis);
+  }
+
+
+
+  private static String getKey(final String dn, final String attribute) {
+    String normalizedDn;
+    try {
+      normalizedDn = DN.normalize(dn);
+    } catch(final LDAPException ldapException) {
+      normalizedDn = dn.toLowerCase();
+    }
+    return normalizedDn + '\u0000' + attribute.toLowerCase();
+  }
+
+
+
+  private static final Random JITTER = new Random();
+
+
+
+  // the number of updates which completed on each attempt.
+  private final AtomicLongArray attemptHistogram;
+
+
+  private final AtomicLong conflicts = new AtomicLong();
+
+
+  private final AtomicLong exhausted = new AtomicLong();
+
+
+  // the values last written, keyed by normalized DN and attribute.
+  private final Map<String,String[]> knownValues =
+    SampleCodeCollectionUtils.newConcurrentHashMap();
+
+
+  private final LDAPInterface ldapInterface;
+
+
+  private final int maxAttempts;
+
+
+  private final AtomicLong reads = new AtomicLong();
+
+
+  private final AtomicLong readsSkipped = new AtomicLong();
+
+}
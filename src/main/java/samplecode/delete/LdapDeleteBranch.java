@@ -33,11 +33,8 @@ import samplecode.controls.ControlHandler;
 import samplecode.ldap.SupportedFeature;
 import samplecode.listener.LdapExceptionEvent;
 import samplecode.listener.LdapExceptionListener;
+import samplecode.listener.ListenerRegistry;
 import samplecode.listener.ObservedByLdapExceptionListener;
-import samplecode.util.SampleCodeCollectionUtils;
-
-import java.util.List;
-import java.util.Vector;
 
 import static com.unboundid.util.Validator.ensureNotNull;
 
@@ -83,45 +80,37 @@ public final class LdapDeleteBranch
   /**
    * interested parties to {@code LdapExceptionEvents}
    */
-  private volatile Vector<LdapExceptionListener> ldapExceptionListeners =
-    new Vector<LdapExceptionListener>();
+  private final ListenerRegistry<LdapExceptionListener> ldapExceptionListeners =
+    ListenerRegistry.newInstance(LdapExceptionListener.class);
 
 
   /**
    * {@inheritDoc}
    */
   @Override
-  public synchronized void addLdapExceptionListener(
+  public void addLdapExceptionListener(
     final LdapExceptionListener ldapExceptionListener)
   {
-    if(ldapExceptionListener != null)
-    {
-      ldapExceptionListeners.add(ldapExceptionListener);
-    }
+    ldapExceptionListeners.add(ldapExceptionListener);
   }
 
 
   /**
    * {@inheritDoc}
    */
-  @SuppressWarnings("unchecked")
   @Override
   public void fireLdapExceptionListener(final LDAPConnection ldapConnection,
                                         final LDAPException ldapException)
   {
     ensureNotNull(ldapConnection,ldapException);
-    final List<LdapExceptionListener> copy;
-    synchronized(this)
-    {
-      copy = SampleCodeCollectionUtils.newArrayList(ldapExceptionListeners);
-    }
-    if(copy.size() == 0)
+    final LdapExceptionListener[] listeners = ldapExceptionListeners.getListeners();
+    if(listeners.length == 0)
     {
       return;
     }
     final LdapExceptionEvent ev =
       new LdapExceptionEvent(this,ldapConnection,ldapException);
-    for(final LdapExceptionListener l : copy)
+    for(final LdapExceptionListener l : listeners)
     {
       l.ldapRequestFailed(ev);
     }
@@ -132,13 +121,10 @@ public final class LdapDeleteBranch
    * {@inheritDoc}
    */
   @Override
-  public synchronized void removeLdapExceptionListener(
+  public void removeLdapExceptionListener(
     final LdapExceptionListener ldapExceptionListener)
   {
-    if(ldapExceptionListener != null)
-    {
-      ldapExceptionListeners.remove(ldapExceptionListener);
-    }
+    ldapExceptionListeners.remove(ldapExceptionListener);
   }
 
 
@@ -17,25 +17,26 @@
 package samplecode.ldap;
 
 import com.unboundid.ldap.sdk.*;
-import com.unboundid.ldap.sdk.controls.PostReadRequestControl;
-import com.unboundid.ldap.sdk.controls.PostReadResponseControl;
-import com.unboundid.ldap.sdk.controls.PreReadRequestControl;
-import com.unboundid.ldap.sdk.controls.PreReadResponseControl;
 import com.unboundid.util.Validator;
 import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Since;
+import samplecode.listener.EntryChangeEvent;
+import samplecode.listener.EntryChangeListener;
+import samplecode.modify.ChangeCapture;
 
 import java.util.ArrayList;
 import java.util.List;
 
 
 /**
- * An example of how to replace values of multi-valued attributes.
+ * An example of how to replace values of multi-valued attributes. The
+ * modify requests are transmitted by a {@link ChangeCapture}, which
+ * publishes the values before and after each change to its listeners.
  */
 @Author("terry.gardner@unboundid.com")
 @Since("01-Nov-2011")
-@CodeVersion("1.1")
+@CodeVersion("1.2")
 public final class ReplaceValue {
 
   /**
@@ -56,8 +57,20 @@ public final class ReplaceValue {
 
 
   private ReplaceValue(final LDAPConnectionPool ldapConnectionPool, final String entry) {
-    this.ldapConnectionPool = ldapConnectionPool;
     this.entry = entry;
+    changeCapture = ChangeCapture.newInstance(ldapConnectionPool,"description");
+    changeCapture.addEntryChangeListener(new EntryChangeListener() {
+
+      @Override
+      public void entryChanged(final EntryChangeEvent entryChangeEvent) {
+        if(entryChangeEvent.getBefore() != null) {
+          System.out.println("the entry pre-modify:" + entryChangeEvent.getBefore());
+        }
+        if(entryChangeEvent.getAfter() != null) {
+          System.out.println("the entry post-modify:" + entryChangeEvent.getAfter());
+        }
+      }
+    });
   }
 
 
@@ -70,23 +83,9 @@ public final class ReplaceValue {
     mods.add(new Modification(ModificationType.ADD,"description","description 1"));
     mods.add(new Modification(ModificationType.ADD,"description","description 2"));
     final ModifyRequest modifyRequest = new ModifyRequest(entry,mods);
-    modifyRequest.addControl(new PreReadRequestControl("description"));
-    modifyRequest.addControl(new PostReadRequestControl("description"));
 
     try {
-      final LDAPResult result = ldapConnectionPool.modify(modifyRequest);
-      if(result.hasResponseControl(PreReadResponseControl.PRE_READ_RESPONSE_OID)) {
-        final Control c =
-          result.getResponseControl(PreReadResponseControl.PRE_READ_RESPONSE_OID);
-        final ReadOnlyEntry e = ((PreReadResponseControl) c).getEntry();
-        System.out.println("the entry pre-modify:" + e);
-      }
-      if(result.hasResponseControl(PostReadResponseControl.POST_READ_RESPONSE_OID)) {
-        final Control c =
-          result.getResponseControl(PostReadResponseControl.POST_READ_RESPONSE_OID);
-        final ReadOnlyEntry e = ((PostReadResponseControl) c).getEntry();
-        System.out.println("the entry post-modify:" + e);
-      }
+      changeCapture.modify(modifyRequest);
     } catch(final LDAPException lex) {
       lex.printStackTrace();
     }
@@ -102,23 +101,9 @@ public final class ReplaceValue {
     mods.add(new Modification(ModificationType.REPLACE,"description","description 1",
       "description 3"));
     final ModifyRequest modifyRequest = new ModifyRequest(entry,mods);
-    modifyRequest.addControl(new PreReadRequestControl("description"));
-    modifyRequest.addControl(new PostReadRequestControl("description"));
 
     try {
-      final LDAPResult result = ldapConnectionPool.modify(modifyRequest);
-      if(result.hasResponseControl(PreReadResponseControl.PRE_READ_RESPONSE_OID)) {
-        final Control c =
-          result.getResponseControl(PreReadResponseControl.PRE_READ_RESPONSE_OID);
-        final ReadOnlyEntry e = ((PreReadResponseControl) c).getEntry();
-        System.out.println("the entry pre-modify:" + e);
-      }
-      if(result.hasResponseControl(PostReadResponseControl.POST_READ_RESPONSE_OID)) {
-        final Control c =
-          result.getResponseControl(PostReadResponseControl.POST_READ_RESPONSE_OID);
-        final ReadOnlyEntry e = ((PostReadResponseControl) c).getEntry();
-        System.out.println("the entry post-modify:" + e);
-      }
+      changeCapture.modify(modifyRequest);
     } catch(final LDAPException lex) {
       lex.printStackTrace();
     }
@@ -126,7 +111,7 @@ public final class ReplaceValue {
 
 
 
-  private final LDAPConnectionPool ldapConnectionPool;
+  private final ChangeCapture changeCapture;
 
 
   private final String entry;
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldif.LDIFWriter;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Opens LDIF files and streams which may be compressed. On the read
+ * path a gzip stream is recognized by its magic bytes or by a name
+ * ending in {@code .gz}, and is decompressed on a separate thread so
+ * that decompression overlaps with parsing; an uncompressed stream is
+ * returned unchanged apart from buffering. On the write path a file
+ * whose name ends in {@code .gz} is compressed with gzip.
+ * <p/>
+ * zstd-compressed LDIF is recognized but rejected with an
+ * {@code IOException}, since the JDK has no zstd codec; decompress such
+ * files with {@code zstd -dc} and pipe the output to the tool.
+ * This class cannot be instantiated.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public abstract class CompressedLdifStreams {
+
+  /**
+   * The file name extension of gzip-compressed LDIF.
+   */
+  public static final String GZIP_EXTENSION = ".gz";
+
+
+
+  /**
+   * Opens {@code ldifFile} for reading, decompressing it if it is
+   * compressed.
+   *
+   * @param ldifFile
+   *   the file. {@code ldifFile} is not permitted to be {@code null}.
+   *
+   * @return a stream of uncompressed LDIF
+   *
+   * @throws IOException
+   *   if the file cannot be opened or uses an unsupported compression
+   *   format.
+   */
+  public static InputStream newInputStream(final File ldifFile) throws IOException {
+    ensureNotNull(ldifFile);
+    final InputStream inputStream = new FileInputStream(ldifFile);
+    try {
+      return decompress(inputStream,ldifFile.getName());
+    } catch(final IOException e) {
+      inputStream.close();
+      throw e;
+    }
+  }
+
+
+
+  /**
+   * @param ldifFile
+   *   the file. {@code ldifFile} is not permitted to be {@code null}.
+   *
+   * @return whether {@code ldifFile} is compressed, judged by its
+   *         extension and its first bytes
+   *
+   * @throws IOException
+   *   if the file cannot be read.
+   */
+  public static boolean isCompressed(final File ldifFile) throws IOException {
+    ensureNotNull(ldifFile);
+    final String name = ldifFile.getName();
+    if(name.endsWith(GZIP_EXTENSION) || name.endsWith(ZSTD_EXTENSION)) {
+      return true;
+    }
+    final InputStream inputStream = new FileInputStream(ldifFile);
+    try {
+      final byte[] magic = new byte[4];
+      final int length = readMagic(inputStream,magic);
+      return startsWith(magic,length,GZIP_MAGIC) || startsWith(magic,length,ZSTD_MAGIC);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+
+
+  /**
+   * Wraps {@code inputStream} in a stream which decompresses it if it
+   * is compressed. Closing the returned stream closes
+   * {@code inputStream}.
+   *
+   * @param inputStream
+   *   the possibly compressed stream. {@code inputStream} is not
+   *   permitted to be {@code null}.
+   * @param name
+   *   the name of the file or resource from which
+   *   {@code inputStream} was opened, used to recognize compressed
+   *   streams by extension. {@code name} is permitted to be
+   *   {@code null}.
+   *
+   * @return a stream of uncompressed LDIF
+   *
+   * @throws IOException
+   *   if the stream cannot be read or uses an unsupported compression
+   *   format.
+   */
+  public static InputStream decompress(final InputStream inputStream, final String name)
+    throws IOException {
+    ensureNotNull(inputStream);
+    final BufferedInputStream buffered = new BufferedInputStream(inputStream,BUFFER_SIZE);
+    final byte[] magic = new byte[4];
+    buffered.mark(magic.length);
+    final int length = readMagic(buffered,magic);
+    buffered.reset();
+
+    if(startsWith(magic,length,ZSTD_MAGIC) ||
+      ((name != null) && name.endsWith(ZSTD_EXTENSION))) {
+      throw new IOException(String.format("'%s' is zstd-compressed, which is not " +
+        "supported; decompress it with zstd -dc first.",name));
+    }
+    if(startsWith(magic,length,GZIP_MAGIC) ||
+      ((name != null) && name.endsWith(GZIP_EXTENSION))) {
+      return new PipelinedInputStream(new GZIPInputStream(buffered,BUFFER_SIZE));
+    }
+    return buffered;
+  }
+
+
+
+  /**
+   * Opens {@code ldifFile} for writing, compressing it with gzip if its
+   * name ends in {@value #GZIP_EXTENSION}. An existing file is replaced.
+   *
+   * @param ldifFile
+   *   the file. {@code ldifFile} is not permitted to be {@code null}.
+   *
+   * @return a stream to which LDIF is written
+   *
+   * @throws IOException
+   *   if the file cannot be created.
+   */
+  public static OutputStream newOutputStream(final File ldifFile) throws IOException {
+    ensureNotNull(ldifFile);
+    final OutputStream outputStream = new FileOutputStream(ldifFile);
+    if(ldifFile.getName().endsWith(GZIP_EXTENSION)) {
+      return new GZIPOutputStream(outputStream,BUFFER_SIZE);
+    }
+    return new BufferedOutputStream(outputStream,BUFFER_SIZE);
+  }
+
+
+
+  /**
+   * Creates an {@code LDIFWriter} which writes to {@code ldifFile},
+   * compressing it with gzip if its name ends in
+   * {@value #GZIP_EXTENSION}.
+   *
+   * @param ldifFile
+   *   the file. {@code ldifFile} is not permitted to be {@code null}.
+   *
+   * @return a new LDIF writer
+   *
+   * @throws IOException
+   *   if the file cannot be created.
+   */
+  public static LDIFWriter newLdifWriter(final File ldifFile) throws IOException {
+    return new LDIFWriter(newOutputStream(ldifFile));
+  }
+
+
+
+  private static int readMagic(final InputStream inputStream, final byte[] magic)
+    throws IOException {
+    int length = 0;
+    while(length < magic.length) {
+      final int n = inputStream.read(magic,length,magic.length - length);
+      if(n < 0) {
+        break;
+      }
+      length += n;
+    }
+    return length;
+  }
+
+
+
+  private static boolean startsWith(final byte[] bytes, final int length,
+                                    final byte[] prefix) {
+    if(length < prefix.length) {
+      return false;
+    }
+    for(int i = 0; i < prefix.length; ++i) {
+      if(bytes[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+  /**
+   * Reads blocks from the source stream on a separate daemon thread and
+   * hands them to the reading thread through a bounded queue.
+   */
+  private static final class PipelinedInputStream extends InputStream {
+
+    private PipelinedInputStream(final InputStream source) {
+      this.source = source;
+      producer = new Thread(new Producer(),"CompressedLdifStreams-decompressor");
+      producer.setDaemon(true);
+      producer.start();
+    }
+
+
+
+    @Override
+    public int read() throws IOException {
+      final byte[] b = new byte[1];
+      return read(b,0,1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length)
+      throws IOException {
+      if(length == 0) {
+        return 0;
+      }
+      if((block == null) || (blockPosition == block.length)) {
+        if(block == END_OF_STREAM) {
+          return -1;
+        }
+        try {
+          block = blocks.take();
+        } catch(final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+        blockPosition = 0;
+        if(block == END_OF_STREAM) {
+          if(error != null) {
+            throw new IOException(error);
+          }
+          return -1;
+        }
+      }
+      final int n = Math.min(length,block.length - blockPosition);
+      System.arraycopy(block,blockPosition,bytes,offset,n);
+      blockPosition += n;
+      return n;
+    }
+
+
+
+    @Override
+    public void close() throws IOException {
+      producer.interrupt();
+      source.close();
+    }
+
+
+
+    private final class Producer implements Runnable {
+
+      @Override
+      public void run() {
+        try {
+          while(true) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int length = 0;
+            while(length < buffer.length) {
+              final int n = source.read(buffer,length,buffer.length - length);
+              if(n < 0) {
+                break;
+              }
+              length += n;
+            }
+            if(length == 0) {
+              break;
+            }
+            blocks.put(length == buffer.length ? buffer : copyOf(buffer,length));
+          }
+        } catch(final IOException e) {
+          error = e;
+        } catch(final InterruptedException e) {
+          // the reader closed the stream.
+          return;
+        }
+        try {
+          blocks.put(END_OF_STREAM);
+        } catch(final InterruptedException e) {
+          // the reader closed the stream.
+        }
+      }
+
+
+
+      private byte[] copyOf(final byte[] buffer, final int length) {
+        final byte[] copy = new byte[length];
+        System.arraycopy(buffer,0,copy,0,length);
+        return copy;
+      }
+
+    }
+
+
+
+    private byte[] block;
+
+
+    private int blockPosition;
+
+
+    private final BlockingQueue<byte[]> blocks =
+      new ArrayBlockingQueue<byte[]>(PIPELINE_DEPTH);
+
+
+    private volatile IOException error;
+
+
+    private final Thread producer;
+
+
+    private final InputStream source;
+
+  }
+
+
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+
+  // the blocks decompressed ahead of the parser
+  private static final int PIPELINE_DEPTH = 16;
+
+
+  private static final byte[] END_OF_STREAM = new byte[0];
+
+
+  private static final byte[] GZIP_MAGIC = { (byte) 0x1f, (byte) 0x8b };
+
+
+  private static final byte[] ZSTD_MAGIC = { (byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd };
+
+
+  private static final String ZSTD_EXTENSION = ".zst";
+
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFWriter;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Sorts entries which may not fit in memory. Entries are collected in
+ * memory until {@code maxEntriesInMemory} have been added; the
+ * collected entries are then sorted and written as a run to a temporary
+ * LDIF file. {@link #sort()} merges the runs, reading one entry at a
+ * time from each of them. At most {@link #MAX_MERGE_FAN_IN} runs are
+ * merged at once: when there are more, groups of runs are first merged
+ * into longer runs, in as many passes as needed, so that no more than
+ * {@code maxEntriesInMemory} entries, or {@link #MAX_MERGE_FAN_IN}
+ * entries during a merge, are held in memory and no more than
+ * {@link #MAX_MERGE_FAN_IN} files are open. When every entry fits in
+ * memory no temporary file is written.
+ * Entries which compare equal are returned in the order in which they
+ * were added.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final ExternalEntrySorter sorter =
+ *   ExternalEntrySorter.newInstance(ExternalEntrySorter.DN_ORDER,100000,null);
+ * try {
+ *   ... sorter.add(entry) for each entry ...
+ *   final ExternalEntrySorter.SortedEntries sorted = sorter.sort();
+ *   Entry entry;
+ *   while((entry = sorted.read()) != null) {
+ *     ...
+ *   }
+ * } finally {
+ *   sorter.close();
+ * }
+ * </pre>
+ * <p/>
+ * </blockquote>
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class ExternalEntrySorter implements Closeable {
+
+  /**
+   * Orders entries by DN as {@code DN.compareTo} does: by RDN starting
+   * from the rightmost, so that an entry sorts before its subordinates
+   * and the subordinates of an entry are contiguous. Entries whose DNs
+   * differ only in case or in insignificant spaces compare equal.
+   */
+  public static final Comparator<Entry> DN_ORDER = new Comparator<Entry>() {
+
+    @Override
+    public int compare(final Entry entry1, final Entry entry2) {
+      try {
+        return entry1.getParsedDN().compareTo(entry2.getParsedDN());
+      } catch(final LDAPException e) {
+        throw new IllegalArgumentException(e.getExceptionMessage(),e);
+      }
+    }
+
+  };
+
+
+
+  /**
+   * The maximum number of runs merged at once.
+   */
+  public static final int MAX_MERGE_FAN_IN = 64;
+
+
+
+  /**
+   * Creates a sorter.
+   *
+   * @param comparator
+   *   the order in which entries are returned. {@code comparator} is
+   *   not permitted to be {@code null}.
+   * @param maxEntriesInMemory
+   *   the number of entries collected in memory before a run is
+   *   written, which must be positive.
+   * @param tempDirectory
+   *   the directory in which runs are written. If {@code tempDirectory}
+   *   is {@code null}, the default temporary-file directory is used.
+   *
+   * @return a new sorter
+   */
+  public static ExternalEntrySorter newInstance(final Comparator<Entry> comparator,
+                                                final int maxEntriesInMemory,
+                                                final File tempDirectory) {
+    ensureNotNull(comparator);
+    ensureTrue(maxEntriesInMemory > 0);
+    return new ExternalEntrySorter(comparator,maxEntriesInMemory,tempDirectory);
+  }
+
+
+
+  private ExternalEntrySorter(final Comparator<Entry> comparator,
+                              final int maxEntriesInMemory,
+                              final File tempDirectory) {
+    this.comparator = comparator;
+    this.maxEntriesInMemory = maxEntriesInMemory;
+    this.tempDirectory = tempDirectory;
+  }
+
+
+
+  /**
+   * Adds an entry. A run is written if {@code maxEntriesInMemory}
+   * entries have been collected.
+   *
+   * @param entry
+   *   the entry. {@code entry} is not permitted to be {@code null}.
+   *
+   * @throws IOException
+   *   if a run cannot be written.
+   */
+  public synchronized void add(final Entry entry) throws IOException {
+    ensureNotNull(entry);
+    if(sorted) {
+      throw new IllegalStateException("entries cannot be added after sort()");
+    }
+    entries.add(entry);
+    ++entryCount;
+    if(entries.size() == maxEntriesInMemory) {
+      writeRun();
+    }
+  }
+
+
+
+  /**
+   * @return the number of entries added
+   */
+  public synchronized long getEntryCount() {
+    return entryCount;
+  }
+
+
+
+  /**
+   * @return the number of runs written to temporary files from the
+   *         entries collected in memory, not counting the runs written
+   *         by intermediate merge passes
+   */
+  public synchronized int getRunCount() {
+    return runCount;
+  }
+
+
+
+  /**
+   * Finishes adding entries and returns them in order. This method may
+   * be called only once.
+   *
+   * @return the entries in order
+   *
+   * @throws IOException
+   *   if the last run cannot be written, or a run cannot be opened or
+   *   merged.
+   */
+  public synchronized SortedEntries sort() throws IOException {
+    if(sorted) {
+      throw new IllegalStateException("sort() has already been called");
+    }
+    sorted = true;
+    if(runs.isEmpty()) {
+      Collections.sort(entries,comparator);
+      return new InMemoryEntries(entries);
+    }
+    if(!entries.isEmpty()) {
+      writeRun();
+    }
+    while(runs.size() > MAX_MERGE_FAN_IN) {
+      mergePass();
+    }
+    return new MergedEntries(runs);
+  }
+
+
+
+  /**
+   * Deletes the temporary files. The entries returned by
+   * {@link #sort()} cannot be read after the sorter is closed.
+   */
+  @Override
+  public synchronized void close() {
+    for(final LDIFReader reader : readers) {
+      try {
+        reader.close();
+      } catch(final IOException e) {
+        // the file is deleted anyway.
+      }
+    }
+    readers.clear();
+    for(final File run : runs) {
+      run.delete();
+    }
+    runs.clear();
+    entries.clear();
+  }
+
+
+
+  private void writeRun() throws IOException {
+    Collections.sort(entries,comparator);
+    final File run = newRunFile();
+    runs.add(run);
+    ++runCount;
+    final LDIFWriter writer = CompressedLdifStreams.newLdifWriter(run);
+    try {
+      for(final Entry entry : entries) {
+        writer.writeEntry(entry);
+      }
+    } finally {
+      writer.close();
+    }
+    entries.clear();
+  }
+
+
+
+  /**
+   * Merges consecutive groups of {@link #MAX_MERGE_FAN_IN} runs into one
+   * run each. Merging consecutive runs keeps the sort stable. The runs
+   * merged are deleted; if the pass fails, the runs it wrote are deleted
+   * instead.
+   */
+  private void mergePass() throws IOException {
+    final List<File> mergedRuns = SampleCodeCollectionUtils.newArrayList();
+    boolean merged = false;
+    try {
+      for(int first = 0; first < runs.size(); first += MAX_MERGE_FAN_IN) {
+        final File run = newRunFile();
+        mergedRuns.add(run);
+        merge(runs.subList(first,Math.min(first + MAX_MERGE_FAN_IN,runs.size())),run);
+      }
+      merged = true;
+    } finally {
+      for(final File run : merged ? runs : mergedRuns) {
+        run.delete();
+      }
+    }
+    runs.clear();
+    runs.addAll(mergedRuns);
+  }
+
+
+
+  private void merge(final List<File> group, final File run) throws IOException {
+    final MergedEntries mergedEntries = new MergedEntries(group);
+    try {
+      final LDIFWriter writer = CompressedLdifStreams.newLdifWriter(run);
+      try {
+        Entry entry;
+        while((entry = mergedEntries.read()) != null) {
+          writer.writeEntry(entry);
+        }
+      } finally {
+        writer.close();
+      }
+    } catch(final LDIFException ldifException) {
+      throw new IOException("run cannot be merged: " + ldifException.getMessage(),ldifException);
+    } finally {
+      mergedEntries.close();
+    }
+  }
+
+
+
+  private File newRunFile() throws IOException {
+    final File run = File.createTempFile("ExternalEntrySorter-",".ldif",tempDirectory);
+    run.deleteOnExit();
+    return run;
+  }
+
+
+
+  /**
+   * Entries returned in order by a sorter.
+   */
+  public interface SortedEntries {
+
+    /**
+     * @return the next entry, or {@code null} when every entry has been
+     *         returned
+     *
+     * @throws IOException
+     *   if a run cannot be read.
+     * @throws LDIFException
+     *   if a run does not contain valid LDIF.
+     */
+    Entry read() throws IOException, LDIFException;
+  }
+
+
+
+  /**
+   * Returns the sorted entries of a sorter which wrote no run, releasing
+   * each entry as it is returned.
+   */
+  private static final class InMemoryEntries implements SortedEntries {
+
+    private InMemoryEntries(final List<Entry> entries) {
+      this.entries = entries;
+    }
+
+
+
+    @Override
+    public Entry read() {
+      if(index == entries.size()) {
+        return null;
+      }
+      return entries.set(index++,null);
+    }
+
+
+
+    private final List<Entry> entries;
+
+
+    private int index;
+
+  }
+
+
+
+  /**
+   * Merges runs with a priority queue holding the next entry of each
+   * run.
+   */
+  private final class MergedEntries implements SortedEntries {
+
+    private MergedEntries(final List<File> runFiles) throws IOException {
+      heads = new PriorityQueue<RunHead>(runFiles.size());
+      for(final File runFile : runFiles) {
+        final LDIFReader reader = new LDIFReader(runFile);
+        readers.add(reader);
+        runReaders.add(reader);
+      }
+    }
+
+
+
+    @Override
+    public Entry read() throws IOException, LDIFException {
+      if(!started) {
+        started = true;
+        for(int i = 0; i < runReaders.size(); ++i) {
+          advance(i);
+        }
+      }
+      final RunHead head = heads.poll();
+      if(head == null) {
+        return null;
+      }
+      advance(head.run);
+      return head.entry;
+    }
+
+
+
+    private void advance(final int run) throws IOException, LDIFException {
+      final Entry entry = runReaders.get(run).readEntry();
+      if(entry != null) {
+        heads.add(new RunHead(entry,run));
+      }
+    }
+
+
+
+    private void close() {
+      for(final LDIFReader reader : runReaders) {
+        try {
+          reader.close();
+        } catch(final IOException e) {
+          // the file is deleted anyway.
+        }
+      }
+      readers.removeAll(runReaders);
+      runReaders.clear();
+    }
+
+
+
+    private final PriorityQueue<RunHead> heads;
+
+
+    private final List<LDIFReader> runReaders = SampleCodeCollectionUtils.newArrayList();
+
+
+    private boolean started;
+
+  }
+
+
+
+  /**
+   * The next entry of a run. Equal entries are ordered by run, and runs
+   * are written in the order in which entries were added, which keeps
+   * the sort stable.
+   */
+  private final class RunHead implements Comparable<RunHead> {
+
+    private RunHead(final Entry entry, final int run) {
+      this.entry = entry;
+      this.run = run;
+    }
+
+
+
+    @Override
+    public int compareTo(final RunHead that) {
+      final int c = comparator.compare(entry,that.entry);
+      return c != 0 ? c : (run < that.run ? -1 : (run == that.run ? 0 : 1));
+    }
+
+
+
+    private final Entry entry;
+
+
+    private final int run;
+
+  }
+
+
+
+  private final Comparator<Entry> comparator;
+
+
+  private long entryCount;
+
+
+  private final List<Entry> entries = SampleCodeCollectionUtils.newArrayList();
+
+
+  private final int maxEntriesInMemory;
+
+
+  private final List<LDIFReader> readers = SampleCodeCollectionUtils.newArrayList();
+
+
+  private int runCount;
+
+
+  private final List<File> runs = SampleCodeCollectionUtils.newArrayList();
+
+
+  private boolean sorted;
+
+
+  private final File tempDirectory;
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldif.LDIFAddChangeRecord;
+import com.unboundid.ldif.LDIFDeleteChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFModifyChangeRecord;
+import com.unboundid.ldif.LDIFWriter;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Computes the change records which transform one set of entries (the
+ * source) into another (the target). Both sets are supplied in
+ * {@link ExternalEntrySorter#DN_ORDER} order, typically by an
+ * {@link ExternalEntrySorter}, and are compared in a single merge pass:
+ * <ul>
+ * <li>an entry only in the target becomes an add change record</li>
+ * <li>an entry only in the source becomes a delete change record</li>
+ * <li>an entry in both becomes a modify change record with the
+ * attribute values which were added or removed, or no record if the
+ * entries are equal</li>
+ * </ul>
+ * Adds and modifies are written in DN order, so that a parent is added
+ * before its subordinates. Deletes are sorted in reverse DN order,
+ * spilling to disk like the inputs, and written last, so that a
+ * subordinate is deleted before its parent. The output can be replayed
+ * with {@link ReadLdifFile#applyChangesFromLdifInputStream}.
+ * <p/>
+ * If an input contains more than one entry with the same DN, only the
+ * first is compared.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class LdifDiff {
+
+  /**
+   * Creates a diff which writes change records to {@code writer}.
+   *
+   * @param writer
+   *   the writer to which change records are written.
+   *   {@code writer} is not permitted to be {@code null}.
+   * @param maxEntriesInMemory
+   *   the number of deleted DNs held in memory before they are sorted
+   *   on disk, which must be positive.
+   * @param tempDirectory
+   *   the directory in which deleted DNs are sorted. If
+   *   {@code tempDirectory} is {@code null}, the default temporary-file
+   *   directory is used.
+   * @param ignoredAttributes
+   *   the names of attributes which are not compared, for example
+   *   operational attributes present in only one of the inputs.
+   *   {@code ignoredAttributes} is not permitted to be {@code null}.
+   *
+   * @return a new diff
+   */
+  public static LdifDiff newInstance(final LDIFWriter writer, final int maxEntriesInMemory,
+                                     final File tempDirectory,
+                                     final Collection<String> ignoredAttributes) {
+    ensureNotNull(writer,ignoredAttributes);
+    ensureTrue(maxEntriesInMemory > 0);
+    return new LdifDiff(writer,maxEntriesInMemory,tempDirectory,ignoredAttributes);
+  }
+
+
+
+  private LdifDiff(final LDIFWriter writer, final int maxEntriesInMemory,
+                   final File tempDirectory, final Collection<String> ignoredAttributes) {
+    this.writer = writer;
+    this.maxEntriesInMemory = maxEntriesInMemory;
+    this.tempDirectory = tempDirectory;
+    this.ignoredAttributes = SampleCodeCollectionUtils.newHashSet();
+    for(final String name : ignoredAttributes) {
+      this.ignoredAttributes.add(name.toLowerCase());
+    }
+  }
+
+
+
+  /**
+   * Writes the change records which transform {@code source} into
+   * {@code target}.
+   *
+   * @param source
+   *   the entries to be changed, in DN order.
+   *   {@code source} is not permitted to be {@code null}.
+   * @param target
+   *   the entries after the change, in DN order.
+   *   {@code target} is not permitted to be {@code null}.
+   *
+   * @return the number of change records written
+   *
+   * @throws IOException
+   *   if an input cannot be read or the output cannot be written.
+   * @throws LDIFException
+   *   if an input does not contain valid LDIF.
+   */
+  public long diff(final ExternalEntrySorter.SortedEntries source,
+                   final ExternalEntrySorter.SortedEntries target)
+    throws IOException, LDIFException {
+    ensureNotNull(source,target);
+
+    final ExternalEntrySorter deletes =
+      ExternalEntrySorter.newInstance(Collections.reverseOrder(ExternalEntrySorter.DN_ORDER),
+        maxEntriesInMemory,tempDirectory);
+    try {
+      final Cursor sourceCursor = new Cursor(source);
+      final Cursor targetCursor = new Cursor(target);
+      while((sourceCursor.entry != null) || (targetCursor.entry != null)) {
+        final int c;
+        if(sourceCursor.entry == null) {
+          c = 1;
+        } else if(targetCursor.entry == null) {
+          c = -1;
+        } else {
+          c = ExternalEntrySorter.DN_ORDER.compare(sourceCursor.entry,targetCursor.entry);
+        }
+        if(c < 0) {
+          deletes.add(new Entry(sourceCursor.entry.getDN()));
+          sourceCursor.advance();
+        } else if(c > 0) {
+          writer.writeChangeRecord(new LDIFAddChangeRecord(compared(targetCursor.entry)));
+          ++addCount;
+          targetCursor.advance();
+        } else {
+          final List<Modification> modifications =
+            Entry.diff(compared(sourceCursor.entry),compared(targetCursor.entry),true,true);
+          if(!modifications.isEmpty()) {
+            writer.writeChangeRecord(new LDIFModifyChangeRecord(targetCursor.entry.getDN(),
+              modifications.toArray(new Modification[modifications.size()])));
+            ++modifyCount;
+          }
+          sourceCursor.advance();
+          targetCursor.advance();
+        }
+      }
+
+      final ExternalEntrySorter.SortedEntries sortedDeletes = deletes.sort();
+      Entry deleted;
+      while((deleted = sortedDeletes.read()) != null) {
+        writer.writeChangeRecord(new LDIFDeleteChangeRecord(deleted.getDN()));
+        ++deleteCount;
+      }
+      writer.flush();
+    } finally {
+      deletes.close();
+    }
+    return addCount + deleteCount + modifyCount;
+  }
+
+
+
+  /**
+   * @return the number of add change records written
+   */
+  public long getAddCount() {
+    return addCount;
+  }
+
+
+
+  /**
+   * @return the number of delete change records written
+   */
+  public long getDeleteCount() {
+    return deleteCount;
+  }
+
+
+
+  /**
+   * @return the number of modify change records written
+   */
+  public long getModifyCount() {
+    return modifyCount;
+  }
+
+
+
+  /**
+   * @return {@code entry} without the ignored attributes
+   */
+  private Entry compared(final Entry entry) {
+    if(ignoredAttributes.isEmpty()) {
+      return entry;
+    }
+    final Entry copy = entry.duplicate();
+    for(final String name : ignoredAttributes) {
+      copy.removeAttribute(name);
+    }
+    return copy;
+  }
+
+
+
+  /**
+   * The current entry of an input, skipping entries whose DN is the same
+   * as the DN of the previous entry.
+   */
+  private static final class Cursor {
+
+    private Cursor(final ExternalEntrySorter.SortedEntries entries)
+      throws IOException, LDIFException {
+      this.entries = entries;
+      entry = entries.read();
+    }
+
+
+
+    private void advance() throws IOException, LDIFException {
+      final Entry previous = entry;
+      do {
+        entry = entries.read();
+      } while((entry != null) && (ExternalEntrySorter.DN_ORDER.compare(previous,entry) == 0));
+    }
+
+
+
+    private final ExternalEntrySorter.SortedEntries entries;
+
+
+    private Entry entry;
+
+  }
+
+
+
+  private long addCount;
+
+
+  private long deleteCount;
+
+
+  private final Set<String> ignoredAttributes;
+
+
+  private final int maxEntriesInMemory;
+
+
+  private long modifyCount;
+
+
+  private final File tempDirectory;
+
+
+  private final LDIFWriter writer;
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFWriter;
+import com.unboundid.util.args.*;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Launchable;
+import samplecode.annotation.Since;
+import samplecode.tools.AbstractTool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+
+/**
+ * Writes the change records which transform a source directory state
+ * into a target directory state. The target is a file containing LDIF;
+ * the source is either another file containing LDIF or, when
+ * {@code --sourceLdif} is not specified, the entries returned by a
+ * subtree search of the server at {@code --baseObject} using
+ * {@code --filter} and {@code --attribute}. Both inputs are sorted by
+ * DN with an {@link ExternalEntrySorter}, so memory use is bounded by
+ * {@code --maxEntriesInMemory}, and compared by an {@link LdifDiff}.
+ * Replaying the output with {@code ldapmodify} or
+ * {@link ReadLdifFile#applyChangesFromLdifInputStream} applies only the
+ * differences. Input and output files whose names end in {@code .gz}
+ * are gzip-compressed. <blockquote>
+ * <p/>
+ * <pre>
+ * Usage:  LdifDiffTool {options}
+ *
+ * Available options include (in addition to the connection options):
+ * --sourceLdif {filename}
+ *     A file containing the source entries in LDIF format. If this argument
+ *     is not specified, the source entries are retrieved from the server
+ *     with a subtree search of --baseObject.
+ * --targetLdif {filename}
+ *     A file containing the target entries in LDIF format. This argument is
+ *     required.
+ * --outputLdif {filename}
+ *     The file to which change records are written. This argument is
+ *     required.
+ * --maxEntriesInMemory {positive-integer}
+ *     The number of entries of each input held in memory before they are
+ *     sorted on disk.
+ * --ignoreAttribute {attribute name or type}
+ *     An attribute which is not compared. This argument may be specified
+ *     zero, one or more times.
+ * </pre>
+ * <p/>
+ * </blockquote>
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+@Launchable
+public final class LdifDiffTool extends AbstractTool {
+
+  /**
+   * @param args
+   *   list of arguments
+   */
+  public static void main(final String... args) {
+    final LdifDiffTool tool = new LdifDiffTool(System.out,System.err);
+    final ResultCode resultCode = tool.runTool(args);
+    if(resultCode.intValue() != 0) {
+      System.exit(resultCode.intValue());
+    }
+  }
+
+
+
+  /**
+   * The long identifier of the argument which specifies an attribute
+   * which is not compared.
+   */
+  public static final String ARG_NAME_IGNORE_ATTRIBUTE = "ignoreAttribute";
+
+
+  /**
+   * The long identifier of the argument which specifies the number of
+   * entries held in memory before they are sorted on disk.
+   */
+  public static final String ARG_NAME_MAX_ENTRIES_IN_MEMORY = "maxEntriesInMemory";
+
+
+  /**
+   * The long identifier of the argument which specifies the file to
+   * which change records are written.
+   */
+  public static final String ARG_NAME_OUTPUT_LDIF = "outputLdif";
+
+
+  /**
+   * The long identifier of the argument which specifies the file
+   * containing the source entries.
+   */
+  public static final String ARG_NAME_SOURCE_LDIF = "sourceLdif";
+
+
+  /**
+   * The long identifier of the argument which specifies the file
+   * containing the target entries.
+   */
+  public static final String ARG_NAME_TARGET_LDIF = "targetLdif";
+
+
+  /**
+   * The number of entries held in memory when
+   * {@code --maxEntriesInMemory} is not specified.
+   */
+  public static final int DEFAULT_MAX_ENTRIES_IN_MEMORY = 100000;
+
+
+
+  /**
+   * Prepares {@code LdifDiffTool} for use by a client - the provided
+   * output streams are used.
+   */
+  public LdifDiffTool(final OutputStream outStream, final OutputStream errStream) {
+    super(outStream,errStream);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addArguments(final ArgumentParser argumentParser) throws ArgumentException {
+    Character shortIdentifier = null;
+    String longIdentifier = ARG_NAME_SOURCE_LDIF;
+    boolean isRequired = false;
+    int maxOccurrences = 1;
+    String valuePlaceholder = "{filename}";
+    StringBuilder builder = new StringBuilder();
+    builder.append("A file containing the source entries in LDIF format. If this argument ");
+    builder.append("is not specified, the source entries are retrieved from the server ");
+    builder.append("with a subtree search of --baseObject.");
+    String description = builder.toString();
+    sourceLdifArgument =
+      new FileArgument(shortIdentifier,longIdentifier,isRequired,maxOccurrences,
+        valuePlaceholder,description,true,true,true,false);
+    argumentParser.addArgument(sourceLdifArgument);
+
+    longIdentifier = ARG_NAME_TARGET_LDIF;
+    isRequired = true;
+    description = "A file containing the target entries in LDIF format. This argument is " +
+      "required.";
+    targetLdifArgument =
+      new FileArgument(shortIdentifier,longIdentifier,isRequired,maxOccurrences,
+        valuePlaceholder,description,true,true,true,false);
+    argumentParser.addArgument(targetLdifArgument);
+
+    longIdentifier = ARG_NAME_OUTPUT_LDIF;
+    description = "The file to which change records are written. This argument is required.";
+    outputLdifArgument =
+      new FileArgument(shortIdentifier,longIdentifier,isRequired,maxOccurrences,
+        valuePlaceholder,description);
+    argumentParser.addArgument(outputLdifArgument);
+
+    longIdentifier = ARG_NAME_MAX_ENTRIES_IN_MEMORY;
+    isRequired = false;
+    valuePlaceholder = "{positive-integer}";
+    description = "The number of entries of each input held in memory before they are " +
+      "sorted on disk.";
+    maxEntriesInMemoryArgument =
+      new IntegerArgument(shortIdentifier,longIdentifier,isRequired,maxOccurrences,
+        valuePlaceholder,description,1,Integer.MAX_VALUE,DEFAULT_MAX_ENTRIES_IN_MEMORY);
+    argumentParser.addArgument(maxEntriesInMemoryArgument);
+
+    longIdentifier = ARG_NAME_IGNORE_ATTRIBUTE;
+    maxOccurrences = 0;
+    valuePlaceholder = "{attribute name or type}";
+    description = "An attribute which is not compared. This argument may be specified " +
+      "zero, one or more times.";
+    ignoreAttributeArgument =
+      new StringArgument(shortIdentifier,longIdentifier,isRequired,maxOccurrences,
+        valuePlaceholder,description);
+    argumentParser.addArgument(ignoreAttributeArgument);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected ResultCode executeToolTasks() {
+    if(isVerbose()) {
+      displayArguments();
+    }
+
+    final int maxEntriesInMemory = maxEntriesInMemoryArgument.getValue();
+    final ExternalEntrySorter source =
+      ExternalEntrySorter.newInstance(ExternalEntrySorter.DN_ORDER,maxEntriesInMemory,null);
+    final ExternalEntrySorter target =
+      ExternalEntrySorter.newInstance(ExternalEntrySorter.DN_ORDER,maxEntriesInMemory,null);
+    try {
+      if(sourceLdifArgument.isPresent()) {
+        addEntriesFromFile(sourceLdifArgument.getValue(),source);
+      } else {
+        addEntriesFromServer(source);
+      }
+      addEntriesFromFile(targetLdifArgument.getValue(),target);
+
+      final LDIFWriter writer = CompressedLdifStreams.newLdifWriter(outputLdifArgument.getValue());
+      try {
+        final LdifDiff diff = LdifDiff.newInstance(writer,maxEntriesInMemory,null,
+          ignoreAttributeArgument.getValues());
+        diff.diff(source.sort(),target.sort());
+        out(String.format("%d source entries, %d target entries: %d adds, %d modifies, " +
+          "%d deletes",source.getEntryCount(),target.getEntryCount(),diff.getAddCount(),
+          diff.getModifyCount(),diff.getDeleteCount()));
+      } finally {
+        writer.close();
+      }
+    } catch(final LDAPException e) {
+      getLogger().fatal(e.getExceptionMessage());
+      return e.getResultCode();
+    } catch(final LDIFException e) {
+      getLogger().fatal(e.getExceptionMessage());
+      return ResultCode.DECODING_ERROR;
+    } catch(final IOException e) {
+      getLogger().fatal(e);
+      return ResultCode.LOCAL_ERROR;
+    } finally {
+      source.close();
+      target.close();
+    }
+    return ResultCode.SUCCESS;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected String classSpecificPropertiesResourceName() {
+    return "LdifDiffTool.properties";
+  }
+
+
+
+  private void addEntriesFromFile(final File ldifFile, final ExternalEntrySorter sorter)
+    throws IOException, LDIFException {
+    final int numParseThreads = Math.max(1,commandLineOptions.getNumThreads());
+    final LDIFReader ldifReader =
+      new LDIFReader(CompressedLdifStreams.newInputStream(ldifFile),numParseThreads);
+    try {
+      while(true) {
+        final Entry entry;
+        try {
+          entry = ldifReader.readEntry();
+        } catch(final LDIFException e) {
+          if(!e.mayContinueReading()) {
+            throw e;
+          }
+          getLogger().warn(e.getExceptionMessage());
+          continue;
+        }
+        if(entry == null) {
+          break;
+        }
+        sorter.add(entry);
+      }
+    } finally {
+      ldifReader.close();
+    }
+  }
+
+
+
+  /**
+   * Adds the entries returned by a subtree search to {@code sorter} as
+   * they arrive, without collecting the search result in memory.
+   */
+  private void addEntriesFromServer(final ExternalEntrySorter sorter)
+    throws LDAPException, IOException {
+    final IOException[] failure = new IOException[1];
+    final SearchResultListener listener = new SearchResultListener() {
+
+      private static final long serialVersionUID = -2955493853440870133L;
+
+
+
+      @Override
+      public void searchEntryReturned(final SearchResultEntry searchEntry) {
+        if(failure[0] == null) {
+          try {
+            sorter.add(searchEntry);
+          } catch(final IOException e) {
+            failure[0] = e;
+          }
+        }
+      }
+
+
+
+      @Override
+      public void searchReferenceReturned(final SearchResultReference searchReference) {
+        // references are not followed.
+      }
+
+    };
+    final List<String> requestedAttributes = commandLineOptions.getRequestedAttributes();
+    final SearchRequest searchRequest = new SearchRequest(listener,
+      commandLineOptions.getBaseObject(),SearchScope.SUB,commandLineOptions.getFilter(),
+      requestedAttributes.toArray(new String[requestedAttributes.size()]));
+    final LDAPConnection ldapConnection = getConnection();
+    try {
+      ldapConnection.search(searchRequest);
+    } finally {
+      ldapConnection.close();
+    }
+    if(failure[0] != null) {
+      throw failure[0];
+    }
+  }
+
+
+
+  private StringArgument ignoreAttributeArgument;
+
+
+  private IntegerArgument maxEntriesInMemoryArgument;
+
+
+  private FileArgument outputLdifArgument;
+
+
+  private FileArgument sourceLdifArgument;
+
+
+  private FileArgument targetLdifArgument;
+
+}
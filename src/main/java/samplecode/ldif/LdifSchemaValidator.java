@@ -0,0 +1,276 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.schema.EntryValidator;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFReaderEntryTranslator;
+import com.unboundid.ldif.LDIFWriter;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Validates entries read from LDIF against a schema before they are
+ * sent to a server. The schema is retrieved once, for example with
+ * {@code Schema.getSchema(ldapConnection)}, and every entry is checked
+ * by an {@code EntryValidator}: object classes and their required and
+ * allowed attributes, attribute syntaxes, and single-valued attributes.
+ * <p/>
+ * The validator is an {@code LDIFReaderEntryTranslator}, so entries are
+ * validated on the parse threads of the {@code LDIFReader} returned by
+ * {@link #newLdifReader(InputStream)}, and the reader still returns the
+ * valid entries in file order. An invalid entry is not returned by the
+ * reader; it is written to the reject file, if there is one, preceded
+ * by a comment giving its line number and the reasons it was rejected.
+ * {@link #validate(InputStream)} validates a file without sending
+ * anything to a server.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class LdifSchemaValidator implements LDIFReaderEntryTranslator, Closeable {
+
+  /**
+   * Creates a validator.
+   *
+   * @param schema
+   *   the schema against which entries are checked.
+   *   {@code schema} is not permitted to be {@code null}.
+   * @param numParseThreads
+   *   the number of threads which parse and validate entries, which
+   *   must be positive.
+   * @param rejectFile
+   *   the file to which invalid entries are written, which is
+   *   gzip-compressed if its name ends in {@code .gz}. If
+   *   {@code rejectFile} is {@code null}, invalid entries are only
+   *   counted.
+   *
+   * @return a new validator
+   *
+   * @throws IOException
+   *   if the reject file cannot be created.
+   */
+  public static LdifSchemaValidator newInstance(final Schema schema, final int numParseThreads,
+                                                final File rejectFile) throws IOException {
+    ensureNotNull(schema);
+    ensureTrue(numParseThreads > 0);
+    final LDIFWriter rejectWriter =
+      rejectFile == null ? null : CompressedLdifStreams.newLdifWriter(rejectFile);
+    return new LdifSchemaValidator(new EntryValidator(schema),numParseThreads,rejectWriter);
+  }
+
+
+
+  private LdifSchemaValidator(final EntryValidator entryValidator, final int numParseThreads,
+                              final LDIFWriter rejectWriter) {
+    this.entryValidator = entryValidator;
+    this.numParseThreads = numParseThreads;
+    this.rejectWriter = rejectWriter;
+  }
+
+
+
+  /**
+   * @param inputStream
+   *   the stream from which LDIF is read.
+   *   {@code inputStream} is not permitted to be {@code null}.
+   *
+   * @return a reader which returns only the valid entries read from
+   *         {@code inputStream}
+   */
+  public LDIFReader newLdifReader(final InputStream inputStream) {
+    ensureNotNull(inputStream);
+    return new LDIFReader(inputStream,numParseThreads,this);
+  }
+
+
+
+  /**
+   * Validates every entry read from {@code inputStream} without sending
+   * anything to a server, and closes the stream.
+   *
+   * @param inputStream
+   *   the stream from which LDIF is read.
+   *   {@code inputStream} is not permitted to be {@code null}.
+   *
+   * @return the number of valid entries
+   *
+   * @throws IOException
+   *   if the stream cannot be read or the reject file cannot be
+   *   written.
+   * @throws LDIFException
+   *   if the stream contains LDIF which cannot be parsed and reading
+   *   cannot continue.
+   */
+  public long validate(final InputStream inputStream) throws IOException, LDIFException {
+    final LDIFReader reader = newLdifReader(inputStream);
+    long count = 0;
+    try {
+      while(true) {
+        try {
+          if(reader.readEntry() == null) {
+            break;
+          }
+          ++count;
+        } catch(final LDIFException e) {
+          if(!e.mayContinueReading()) {
+            throw e;
+          }
+          rejectUnparseable(e);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return count;
+  }
+
+
+
+  /**
+   * Checks {@code entry} against the schema. This method is invoked by
+   * the parse threads of the reader.
+   *
+   * @return {@code entry} if it is valid, otherwise {@code null}
+   *
+   * @throws LDIFException
+   *   if an invalid entry cannot be written to the reject file.
+   */
+  @Override
+  public Entry translate(final Entry entry, final long firstLineNumber) throws LDIFException {
+    final List<String> reasons = SampleCodeCollectionUtils.newArrayList();
+    if(entryValidator.entryIsValid(entry,reasons)) {
+      validEntries.incrementAndGet();
+      return entry;
+    }
+    rejectedEntries.incrementAndGet();
+    if(rejectWriter != null) {
+      final StringBuilder comment = new StringBuilder("rejected: line ");
+      comment.append(firstLineNumber);
+      for(final String reason : reasons) {
+        comment.append("; ").append(reason);
+      }
+      try {
+        synchronized(rejectWriter) {
+          rejectWriter.writeEntry(entry,comment.toString());
+        }
+      } catch(final IOException e) {
+        throw new LDIFException(e.getMessage(),firstLineNumber,false,e);
+      }
+    }
+    return null;
+  }
+
+
+
+  /**
+   * Counts a record which could not be parsed as a rejected entry and
+   * writes its lines to the reject file, as a comment.
+   *
+   * @param ldifException
+   *   the exception thrown by the reader.
+   *
+   * @throws IOException
+   *   if the reject file cannot be written.
+   */
+  public void rejectUnparseable(final LDIFException ldifException) throws IOException {
+    ensureNotNull(ldifException);
+    rejectedEntries.incrementAndGet();
+    if(rejectWriter != null) {
+      final StringBuilder comment = new StringBuilder("rejected: ");
+      comment.append(ldifException.getExceptionMessage());
+      final List<String> dataLines = ldifException.getDataLines();
+      if(dataLines != null) {
+        for(final String line : dataLines) {
+          comment.append('\n').append(line);
+        }
+      }
+      synchronized(rejectWriter) {
+        rejectWriter.writeComment(comment.toString(),false,true);
+      }
+    }
+  }
+
+
+
+  /**
+   * @return the number of entries which passed validation
+   */
+  public long getValidEntryCount() {
+    return validEntries.get();
+  }
+
+
+
+  /**
+   * @return the number of entries which failed validation or could not
+   *         be parsed
+   */
+  public long getRejectedEntryCount() {
+    return rejectedEntries.get();
+  }
+
+
+
+  /**
+   * Closes the reject file.
+   *
+   * @throws IOException
+   *   if the reject file cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if(rejectWriter != null) {
+      synchronized(rejectWriter) {
+        rejectWriter.close();
+      }
+    }
+  }
+
+
+
+  private final EntryValidator entryValidator;
+
+
+  private final int numParseThreads;
+
+
+  private final AtomicLong rejectedEntries = new AtomicLong();
+
+
+  private final LDIFWriter rejectWriter;
+
+
+  private final AtomicLong validEntries = new AtomicLong();
+
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.ldif;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFRecord;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Reads LDIF records from a file by memory-mapping the file and
+ * decoding it in parallel. The file is divided into chunks of roughly
+ * {@code chunkSize} bytes; each worker thread moves the start and end
+ * of its chunk forward to the next record boundary (the line following
+ * an empty line, since an empty line can never be part of a record or
+ * of a continuation), maps the resulting byte range and decodes the
+ * records in it with its own {@code LDIFReader}. The records are
+ * returned in the order in which they appear in the file.
+ * <p/>
+ * At most twice as many chunks as there are threads are decoded ahead
+ * of the caller, so memory use does not grow with the size of the
+ * file. Line numbers in {@code LDIFException} objects are line numbers
+ * in the file. An exception from which reading cannot continue ends the
+ * chunk in which it occurred, but records in later chunks are still
+ * returned if the caller keeps reading.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final MappedLdifReader reader = MappedLdifReader.newInstance(ldifFile,4);
+ * try {
+ *   Entry entry;
+ *   while((entry = reader.readEntry()) != null) {
+ *     ...
+ *   }
+ * } finally {
+ *   reader.close();
+ * }
+ * </pre>
+ * <p/>
+ * </blockquote>
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class MappedLdifReader implements Closeable {
+
+  /**
+   * The approximate number of bytes decoded by one task unless another
+   * chunk size is specified.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+
+
+  /**
+   * Opens {@code ldifFile} for reading with the default chunk size.
+   *
+   * @param ldifFile
+   *   a file containing LDIF. {@code ldifFile} is not permitted to be
+   *   {@code null}.
+   * @param numThreads
+   *   the number of threads which decode chunks, which must be
+   *   positive.
+   *
+   * @return a new reader
+   *
+   * @throws IOException
+   *   if the file cannot be opened.
+   */
+  public static MappedLdifReader newInstance(final File ldifFile, final int numThreads)
+    throws IOException {
+    return newInstance(ldifFile,numThreads,DEFAULT_CHUNK_SIZE);
+  }
+
+
+
+  /**
+   * Opens {@code ldifFile} for reading.
+   *
+   * @param ldifFile
+   *   a file containing LDIF. {@code ldifFile} is not permitted to be
+   *   {@code null}.
+   * @param numThreads
+   *   the number of threads which decode chunks, which must be
+   *   positive.
+   * @param chunkSize
+   *   the approximate number of bytes decoded by one task, which must
+   *   be positive. A record larger than the chunk size is decoded in
+   *   one piece by a single task.
+   *
+   * @return a new reader
+   *
+   * @throws IOException
+   *   if the file cannot be opened.
+   */
+  public static MappedLdifReader newInstance(final File ldifFile, final int numThreads,
+                                             final int chunkSize) throws IOException {
+    ensureNotNull(ldifFile);
+    ensureTrue(numThreads > 0);
+    ensureTrue(chunkSize > 0);
+    final RandomAccessFile file = new RandomAccessFile(ldifFile,"r");
+    return new MappedLdifReader(file,numThreads,chunkSize);
+  }
+
+
+
+  private MappedLdifReader(final RandomAccessFile file, final int numThreads,
+                           final int chunkSize) throws IOException {
+    this.file = file;
+    channel = file.getChannel();
+    size = channel.size();
+    this.chunkSize = chunkSize;
+    numChunks = size == 0 ? 0 : (size - 1) / chunkSize + 1;
+    maxChunksAhead = 2 * numThreads;
+    executor = Executors.newFixedThreadPool(numThreads,new DaemonThreadFactory());
+    while((pending.size() < maxChunksAhead) && (nextChunkToSubmit < numChunks)) {
+      submitNextChunk();
+    }
+  }
+
+
+
+  /**
+   * Reads the next record, which is an {@code Entry} or an
+   * {@code LDIFChangeRecord}.
+   *
+   * @return the next record, or {@code null} at the end of the file
+   *
+   * @throws IOException
+   *   if the file cannot be read or the reader is closed.
+   * @throws LDIFException
+   *   if the next record is not valid LDIF.
+   */
+  public LDIFRecord readLDIFRecord() throws IOException, LDIFException {
+    while((current == null) || (currentIndex == current.records.size())) {
+      if(!nextChunk()) {
+        return null;
+      }
+    }
+    final Object record = current.records.get(currentIndex);
+    current.records.set(currentIndex++,null);
+    if(record instanceof LDIFException) {
+      final LDIFException e = (LDIFException) record;
+      throw new LDIFException(e.getExceptionMessage(),
+        e.getLineNumber() + current.firstLineNumber - 1,e.mayContinueReading(),
+        e.getDataLines(),e);
+    }
+    return (LDIFRecord) record;
+  }
+
+
+
+  /**
+   * Reads the next entry.
+   *
+   * @return the next entry, or {@code null} at the end of the file
+   *
+   * @throws IOException
+   *   if the file cannot be read or the reader is closed.
+   * @throws LDIFException
+   *   if the next record is not valid LDIF or is a change record.
+   */
+  public Entry readEntry() throws IOException, LDIFException {
+    final LDIFRecord record = readLDIFRecord();
+    if((record == null) || (record instanceof Entry)) {
+      return (Entry) record;
+    }
+    throw new LDIFException(String.format("the record for '%s' is a change record, " +
+      "not an entry",record.getDN()),-1,true);
+  }
+
+
+
+  /**
+   * Reads the next change record.
+   *
+   * @return the next change record, or {@code null} at the end of the
+   *         file
+   *
+   * @throws IOException
+   *   if the file cannot be read or the reader is closed.
+   * @throws LDIFException
+   *   if the next record is not valid LDIF or is an entry.
+   */
+  public LDIFChangeRecord readChangeRecord() throws IOException, LDIFException {
+    final LDIFRecord record = readLDIFRecord();
+    if((record == null) || (record instanceof LDIFChangeRecord)) {
+      return (LDIFChangeRecord) record;
+    }
+    throw new LDIFException(String.format("the record for '%s' is an entry, " +
+      "not a change record",record.getDN()),-1,true);
+  }
+
+
+
+  /**
+   * Stops the worker threads and closes the file.
+   *
+   * @throws IOException
+   *   if the file cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    executor.shutdownNow();
+    pending.clear();
+    current = null;
+    file.close();
+  }
+
+
+
+  private void submitNextChunk() {
+    final long nominalStart = nextChunkToSubmit * chunkSize;
+    final long nominalEnd = Math.min(size,nominalStart + chunkSize);
+    pending.add(executor.submit(new ChunkDecoder(nominalStart,nominalEnd)));
+    ++nextChunkToSubmit;
+  }
+
+
+
+  private boolean nextChunk() throws IOException {
+    final Future<Chunk> future = pending.poll();
+    if(future == null) {
+      return false;
+    }
+    final long firstLineNumber = current == null ? 1L :
+      current.firstLineNumber + current.lineCount;
+    if(nextChunkToSubmit < numChunks) {
+      submitNextChunk();
+    }
+    try {
+      current = future.get();
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch(final ExecutionException e) {
+      if(e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    current.firstLineNumber = firstLineNumber;
+    currentIndex = 0;
+    return true;
+  }
+
+
+
+  /**
+   * @return the offset of the first record which starts at or after
+   *         {@code offset}: the offset of the first line at or after
+   *         {@code offset} which follows an empty line, or the size of
+   *         the file
+   */
+  private long findRecordStart(final long offset) throws IOException {
+    if((offset == 0) || (offset >= size)) {
+      return Math.min(offset,size);
+    }
+
+    // the three bytes before a candidate are inspected: "\n\n" or "\n\r\n".
+    long windowStart = Math.max(0,offset - 3);
+    while(windowStart < size) {
+      final long windowEnd = Math.min(size,windowStart + SCAN_WINDOW_SIZE);
+      final MappedByteBuffer window =
+        channel.map(FileChannel.MapMode.READ_ONLY,windowStart,windowEnd - windowStart);
+      final int limit = window.limit();
+      for(int i = (int) Math.max(2,offset - windowStart); i < limit; ++i) {
+        if(window.get(i - 1) == '\n') {
+          final byte b = window.get(i - 2);
+          if((b == '\n') || ((b == '\r') && (i >= 3) && (window.get(i - 3) == '\n'))) {
+            return windowStart + i;
+          }
+        }
+      }
+      if(windowEnd == size) {
+        break;
+      }
+      // overlap so that a separator spanning two windows is found.
+      windowStart = windowEnd - 3;
+    }
+    return size;
+  }
+
+
+
+  /**
+   * Finds the record boundaries of one chunk of the file and decodes the
+   * records between them.
+   */
+  private final class ChunkDecoder implements Callable<Chunk> {
+
+    private ChunkDecoder(final long nominalStart, final long nominalEnd) {
+      this.nominalStart = nominalStart;
+      this.nominalEnd = nominalEnd;
+    }
+
+
+
+    @Override
+    public Chunk call() throws IOException {
+      final long start = findRecordStart(nominalStart);
+      final long end = findRecordStart(nominalEnd);
+      final Chunk chunk = new Chunk();
+      if(start >= end) {
+        return chunk;
+      }
+      if(end - start > Integer.MAX_VALUE) {
+        throw new IOException(String.format("the record at offset %d is too large " +
+          "to be mapped",start));
+      }
+      final MappedByteBuffer buffer =
+        channel.map(FileChannel.MapMode.READ_ONLY,start,end - start);
+      final int limit = buffer.limit();
+      for(int i = 0; i < limit; ++i) {
+        if(buffer.get(i) == '\n') {
+          ++chunk.lineCount;
+        }
+      }
+
+      final LDIFReader reader = new LDIFReader(new ByteBufferInputStream(buffer));
+      try {
+        while(true) {
+          try {
+            final LDIFRecord record = reader.readLDIFRecord();
+            if(record == null) {
+              break;
+            }
+            chunk.records.add(record);
+          } catch(final LDIFException e) {
+            chunk.records.add(e);
+            if(!e.mayContinueReading()) {
+              break;
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      return chunk;
+    }
+
+
+
+    private final long nominalEnd;
+
+
+    private final long nominalStart;
+
+  }
+
+
+
+  /**
+   * The records decoded from one chunk, each of which is an
+   * {@code LDIFRecord} or an {@code LDIFException}.
+   */
+  private static final class Chunk {
+
+    private long firstLineNumber;
+
+
+    private long lineCount;
+
+
+    private final List<Object> records = SampleCodeCollectionUtils.newArrayList();
+
+  }
+
+
+
+  /**
+   * Reads a mapped byte range.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private ByteBufferInputStream(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+      if(length == 0) {
+        return 0;
+      }
+      if(!buffer.hasRemaining()) {
+        return -1;
+      }
+      final int n = Math.min(length,buffer.remaining());
+      buffer.get(bytes,offset,n);
+      return n;
+    }
+
+
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+
+
+
+    private final ByteBuffer buffer;
+
+  }
+
+
+
+  /**
+   * Creates the worker threads as daemon threads, so that a reader which
+   * is not closed does not prevent the JVM from exiting.
+   */
+  private static final class DaemonThreadFactory implements ThreadFactory {
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread =
+        new Thread(runnable,"MappedLdifReader-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+  }
+
+
+
+  /**
+   * The number of bytes mapped at a time while looking for a record
+   * boundary.
+   */
+  private static final int SCAN_WINDOW_SIZE = 64 * 1024;
+
+
+
+  private final FileChannel channel;
+
+
+  private final int chunkSize;
+
+
+  private Chunk current;
+
+
+  private int currentIndex;
+
+
+  private final ExecutorService executor;
+
+
+  private final RandomAccessFile file;
+
+
+  private final int maxChunksAhead;
+
+
+  private long nextChunkToSubmit;
+
+
+  private final long numChunks;
+
+
+  private final Queue<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+
+
+  private final long size;
+
+}
@@ -27,11 +27,12 @@ import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Since;
 import samplecode.listener.*;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Vector;
 
 
 /**
@@ -62,6 +63,26 @@ import java.util.Vector;
  * <ul>
  * <li>The connection to the LDAP server is not closed</li>
  * </ul>
+ * <p/>
+ * Entries read from the file are delivered to
+ * {@link LdifEntryEventListener LdifEntryEventListeners} one at a time
+ * and to {@link LdifEntryBatchListener LdifEntryBatchListeners} in
+ * chunks of {@link #getLdifEntryBatchSize()} entries. The chunk buffer
+ * is allocated once per file and reused for every chunk. When adding
+ * the entries stops because of an exception, the entries buffered so
+ * far, including the entry whose add request failed, are delivered as a
+ * final, shorter chunk before the exception propagates.
+ * <p/>
+ * The entries must appear in the file before their subordinates unless
+ * {@link #setSortByDn(boolean)} is called with {@code true}; in that
+ * case the file is first sorted by DN with an
+ * {@link ExternalEntrySorter}, which holds at most
+ * {@link #getSortMaxEntriesInMemory()} entries in memory, and the sorted
+ * entries are added as they are merged.
+ * <p/>
+ * If a {@link LdifSchemaValidator} is set, entries are checked against
+ * its schema on its parse threads and only valid entries are added;
+ * invalid entries go to its reject file.
  *
  * @see <a href="http://tools.ietf.org/html/rfc2849">LDIF</a>
  */
@@ -70,14 +91,30 @@ import java.util.Vector;
 @CodeVersion("1.0")
 public class ReadLdifFile
   implements ObservedByLdapExceptionListener, ObservedByLdifEntryEventListener,
-  ObservedByIOExceptionListener {
+  ObservedByIOExceptionListener, ObservedByLdifEntryBatchListener {
+
+  /**
+   * The number of entries delivered in each chunk to
+   * {@link LdifEntryBatchListener LdifEntryBatchListeners} unless
+   * {@link #setLdifEntryBatchSize(int)} is called.
+   */
+  public static final int DEFAULT_LDIF_ENTRY_BATCH_SIZE = 256;
+
+
+  /**
+   * The number of entries held in memory while sorting a file by DN
+   * unless {@link #setSortMaxEntriesInMemory(int)} is called.
+   */
+  public static final int DEFAULT_SORT_MAX_ENTRIES_IN_MEMORY = 100000;
+
+
 
   /**
    * @return an unmodifiable list of event listeners
    */
   @Override
   public List<LdifEntryEventListener> getLdifEventListeners() {
-    return this.ldifEventListeners;
+    return ldifEventListeners.asList();
   }
 
 
@@ -92,7 +129,7 @@ public class ReadLdifFile
    *
    * @return an instance of {@code LdapAddEntriesFromResource}
    */
-  public static ReadLdifFile getInstance() {
+  public static synchronized ReadLdifFile getInstance() {
     if(ReadLdifFile.instance == null) {
       ReadLdifFile.instance = new ReadLdifFile();
     }
@@ -103,7 +140,8 @@ public class ReadLdifFile
 
   /**
    * Adds the entries from the specified resource. The resource must be
-   * on the CLASSPATH.
+   * on the CLASSPATH. A gzip-compressed resource is decompressed while
+   * it is read.
    *
    * @param ldapConnection
    *   a connection to the LDAP server.
@@ -119,7 +157,8 @@ public class ReadLdifFile
    * @return number of entries read from the resource file.
    *
    * @throws IOException
-   *   if the file cannot be read.
+   *   if the file cannot be read or uses an unsupported compression
+   *   format.
    * @throws LDIFException
    *   if the LDIF in the file is invalid.
    * @throws LDAPException
@@ -141,7 +180,43 @@ public class ReadLdifFile
       throw new FileNotFoundException(exceptionMsg);
     }
     return addEntriesFromInputStream(ldapConnection,
-      inputStreamConnectionToResourceContainingLdif,controls);
+      CompressedLdifStreams.decompress(inputStreamConnectionToResourceContainingLdif,
+        resourceContainingLdif),controls);
+  }
+
+
+
+  /**
+   * Adds the entries from the specified file, which may be
+   * gzip-compressed.
+   *
+   * @param ldapConnection
+   *   a connection to the LDAP server.
+   * @param ldifFile
+   *   a file containing entries in the form of LDIF to add to the
+   *   directory server database. {@code ldifFile} is not permitted to
+   *   be {@code null}.
+   * @param controls
+   *   any controls to be added to the add requests.
+   *   {@code controls} is permitted to be {@code null}.
+   *
+   * @return number of entries read from the file.
+   *
+   * @throws IOException
+   *   if the file cannot be read or uses an unsupported compression
+   *   format.
+   * @throws LDIFException
+   *   if the LDIF in the file is invalid.
+   * @throws LDAPException
+   *   if the current entry already exists or the connection
+   *   fails
+   */
+  public int addEntriesFromFile(final LDAPConnection ldapConnection, final File ldifFile,
+                                final Control[] controls)
+    throws LDIFException, IOException, LDAPException {
+    Validator.ensureNotNull(ldapConnection,ldifFile);
+    return addEntriesFromInputStream(ldapConnection,
+      CompressedLdifStreams.newInputStream(ldifFile),controls);
   }
 
 
@@ -150,11 +225,9 @@ public class ReadLdifFile
    * {@inheritDoc}
    */
   @Override
-  public synchronized void
+  public void
   addIOExceptionListener(final IOExceptionListener ioExceptionListener) {
-    if(ioExceptionListener != null) {
-      ioExceptionListeners.add(ioExceptionListener);
-    }
+    ioExceptionListeners.add(ioExceptionListener);
   }
 
 
@@ -163,11 +236,9 @@ public class ReadLdifFile
    * {@inheritDoc}
    */
   @Override
-  public synchronized void addLdapExceptionListener(
+  public void addLdapExceptionListener(
     final LdapExceptionListener ldapExceptionListener) {
-    if(ldapExceptionListener != null) {
-      ldapExceptionListeners.add(ldapExceptionListener);
-    }
+    ldapExceptionListeners.add(ldapExceptionListener);
   }
 
 
@@ -176,10 +247,18 @@ public class ReadLdifFile
    * {@inheritDoc}
    */
   @Override
-  public synchronized void addLdifEventListener(final LdifEntryEventListener ldifEventListener) {
-    if(ldifEventListener != null) {
-      ldifEventListeners.add(ldifEventListener);
-    }
+  public void addLdifEventListener(final LdifEntryEventListener ldifEventListener) {
+    ldifEventListeners.add(ldifEventListener);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addLdifEntryBatchListener(final LdifEntryBatchListener ldifEntryBatchListener) {
+    ldifEntryBatchListeners.add(ldifEntryBatchListener);
   }
 
 
@@ -187,7 +266,8 @@ public class ReadLdifFile
   /**
    * Apply changes that arrive in LDIF format via the
    * {@code ldifInputStream}. Changes are processed in a single-threaded
-   * fashion (like the {@code ldapmodify} tool).
+   * fashion (like the {@code ldapmodify} tool). A gzip-compressed
+   * stream is decompressed while it is read.
    * <p/>
    * <b>example LDIF</b><blockquote>
    * <p/>
@@ -214,7 +294,13 @@ public class ReadLdifFile
                                              final InputStream ldifInputStream, final long millisBetweenChanges) {
     Validator.ensureNotNull(ldapConnection,ldifInputStream);
 
-    final LDIFReader reader = new LDIFReader(ldifInputStream);
+    final LDIFReader reader;
+    try {
+      reader = new LDIFReader(CompressedLdifStreams.decompress(ldifInputStream,null));
+    } catch(final IOException iox) {
+      fireIOExceptionListener(iox);
+      return 0;
+    }
     numberOfEntriesRead = 0;
     while(true) {
       LDIFChangeRecord ldifChangeRecord = null;
@@ -274,18 +360,14 @@ public class ReadLdifFile
    * {@inheritDoc}
    */
   @Override
-  @SuppressWarnings("unchecked")
   public void fireIOExceptionListener(final IOException ioException) {
     Validator.ensureNotNull(ioException);
-    Vector<IOExceptionListener> copy;
-    synchronized(this) {
-      copy = (Vector<IOExceptionListener>) ioExceptionListeners.clone();
-    }
-    if(copy.size() == 0) {
+    final IOExceptionListener[] listeners = ioExceptionListeners.getListeners();
+    if(listeners.length == 0) {
       return;
     }
     final IOExceptionEvent ev = new IOExceptionEvent(this,ioException);
-    for(final IOExceptionListener l : copy) {
+    for(final IOExceptionListener l : listeners) {
       l.ioExceptionOccurred(ev);
     }
   }
@@ -295,20 +377,16 @@ public class ReadLdifFile
   /**
    * {@inheritDoc}
    */
-  @SuppressWarnings("unchecked")
   @Override
   public void fireLdapExceptionListener(final LDAPConnection ldapConnection,
                                         final LDAPException ldapException) {
     Validator.ensureNotNull(ldapConnection,ldapException);
-    Vector<LdapExceptionListener> copy;
-    synchronized(this) {
-      copy = (Vector<LdapExceptionListener>) ldapExceptionListeners.clone();
-    }
-    if(copy.size() == 0) {
+    final LdapExceptionListener[] listeners = ldapExceptionListeners.getListeners();
+    if(listeners.length == 0) {
       return;
     }
     final LdapExceptionEvent ev = new LdapExceptionEvent(this,ldapConnection,ldapException);
-    for(final LdapExceptionListener l : copy) {
+    for(final LdapExceptionListener l : listeners) {
       l.ldapRequestFailed(ev);
     }
   }
@@ -318,25 +396,125 @@ public class ReadLdifFile
   /**
    * {@inheritDoc}
    */
-  @SuppressWarnings("unchecked")
   @Override
   public void fireLdifEventListener(final Entry entry) {
     Validator.ensureNotNull(entry);
-    Vector<LdifEntryEventListener> copy;
-    synchronized(this) {
-      copy = (Vector<LdifEntryEventListener>) ldifEventListeners.clone();
-    }
-    if(copy.size() == 0) {
+    final LdifEntryEventListener[] listeners = ldifEventListeners.getListeners();
+    if(listeners.length == 0) {
       return;
     }
     final LdifEntryEvent ev = new LdifEntryEvent(this,entry);
-    for(final LdifEntryEventListener l : copy) {
+    for(final LdifEntryEventListener l : listeners) {
       l.entryReadFromLdifFile(ev);
     }
   }
 
 
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void fireLdifEntryBatchListener(final Entry[] entries, final int size) {
+    Validator.ensureNotNull(entries);
+    Validator.ensureTrue(size >= 0 && size <= entries.length);
+    final LdifEntryBatchListener[] listeners = ldifEntryBatchListeners.getListeners();
+    if(listeners.length == 0 || size == 0) {
+      return;
+    }
+    final LdifEntryBatchEvent ev = new LdifEntryBatchEvent(this,entries,size);
+    for(final LdifEntryBatchListener l : listeners) {
+      l.entriesReadFromLdifFile(ev);
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getLdifEntryBatchSize() {
+    return ldifEntryBatchSize;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setLdifEntryBatchSize(final int batchSize) {
+    Validator.ensureTrue(batchSize > 0);
+    ldifEntryBatchSize = batchSize;
+  }
+
+
+
+  /**
+   * @return whether entries are sorted by DN before they are added
+   */
+  public boolean isSortByDn() {
+    return sortByDn;
+  }
+
+
+
+  /**
+   * @param sortByDn
+   *   whether entries are sorted by DN, so that an entry is added before
+   *   its subordinates, before they are added. Sorting is needed only
+   *   for files in which an entry may follow its subordinates.
+   */
+  public void setSortByDn(final boolean sortByDn) {
+    this.sortByDn = sortByDn;
+  }
+
+
+
+  /**
+   * @return the number of entries held in memory while sorting by DN
+   */
+  public int getSortMaxEntriesInMemory() {
+    return sortMaxEntriesInMemory;
+  }
+
+
+
+  /**
+   * @param maxEntriesInMemory
+   *   the number of entries held in memory while sorting by DN, which
+   *   must be positive. Larger files are sorted in runs written to
+   *   temporary files.
+   */
+  public void setSortMaxEntriesInMemory(final int maxEntriesInMemory) {
+    Validator.ensureTrue(maxEntriesInMemory > 0);
+    sortMaxEntriesInMemory = maxEntriesInMemory;
+  }
+
+
+
+  /**
+   * @return the validator which checks entries before they are added, or
+   *         {@code null} if entries are not checked
+   */
+  public LdifSchemaValidator getSchemaValidator() {
+    return schemaValidator;
+  }
+
+
+
+  /**
+   * @param schemaValidator
+   *   the validator which checks entries before they are added. If
+   *   {@code schemaValidator} is {@code null}, entries are not checked.
+   */
+  public void setSchemaValidator(final LdifSchemaValidator schemaValidator) {
+    this.schemaValidator = schemaValidator;
+  }
+
+
+
   /**
    * @return the numberOfEntriesRead
    */
@@ -350,11 +528,9 @@ public class ReadLdifFile
    * {@inheritDoc}
    */
   @Override
-  public synchronized void removeIOExceptionListener(
+  public void removeIOExceptionListener(
     final IOExceptionListener ioExceptionListener) {
-    if(ioExceptionListener != null) {
-      ioExceptionListeners.remove(ioExceptionListener);
-    }
+    ioExceptionListeners.remove(ioExceptionListener);
   }
 
 
@@ -363,11 +539,9 @@ public class ReadLdifFile
    * {@inheritDoc}
    */
   @Override
-  public synchronized void removeLdapExceptionListener(
+  public void removeLdapExceptionListener(
     final LdapExceptionListener ldapExceptionListener) {
-    if(ldapExceptionListener != null) {
-      ldapExceptionListeners.remove(ldapExceptionListener);
-    }
+    ldapExceptionListeners.remove(ldapExceptionListener);
   }
 
 
@@ -376,11 +550,19 @@ public class ReadLdifFile
    * {@inheritDoc}
    */
   @Override
-  public synchronized void removeLdifEventListener(
+  public void removeLdifEventListener(
     final LdifEntryEventListener ldifEventListener) {
-    if(ldifEventListener != null) {
-      ldifEventListeners.remove(ldifEventListener);
-    }
+    ldifEventListeners.remove(ldifEventListener);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeLdifEntryBatchListener(final LdifEntryBatchListener ldifEntryBatchListener) {
+    ldifEntryBatchListeners.remove(ldifEntryBatchListener);
   }
 
 
@@ -402,21 +584,72 @@ public class ReadLdifFile
      * from the add(), therefore the result code from the add() is
      * ignored.
      */
-    final LDIFReader reader = new LDIFReader(inputStreamConnectionToResourceContainingLdif);
+    final LdifSchemaValidator validator = schemaValidator;
+    final LDIFReader reader = validator == null ?
+      new LDIFReader(inputStreamConnectionToResourceContainingLdif) :
+      validator.newLdifReader(inputStreamConnectionToResourceContainingLdif);
     numberOfEntriesRead = 0;
-    while(true) {
-      final Entry entry = reader.readEntry();
-      if(entry == null) {
-        break;
+
+    /*
+     * The chunk buffer is allocated only when batch listeners are
+     * registered when the file is opened, and is reused for every
+     * chunk read from the file.
+     */
+    final Entry[] batch =
+      ldifEntryBatchListeners.isEmpty() ? null : new Entry[ldifEntryBatchSize];
+    int batchCount = 0;
+
+    /*
+     * When sorting by DN, every entry is read into the sorter first and
+     * the sorted entries are then added as they are merged from the
+     * sorter's runs.
+     */
+    final ExternalEntrySorter sorter = sortByDn ?
+      ExternalEntrySorter.newInstance(ExternalEntrySorter.DN_ORDER,sortMaxEntriesInMemory,null) :
+      null;
+    try {
+      ExternalEntrySorter.SortedEntries sortedEntries = null;
+      if(sorter != null) {
+        Entry entry;
+        while((entry = reader.readEntry()) != null) {
+          sorter.add(entry);
+        }
+        sortedEntries = sorter.sort();
+      }
+      while(true) {
+        final Entry entry = sortedEntries == null ? reader.readEntry() : sortedEntries.read();
+        if(entry == null) {
+          break;
+        }
+        fireLdifEventListener(entry);
+        if(batch != null) {
+          batch[batchCount++] = entry;
+          if(batchCount == batch.length) {
+            // reset first, so that the finally block below does not
+            // deliver the batch again if a listener throws
+            batchCount = 0;
+            fireLdifEntryBatchListener(batch,batch.length);
+          }
+        }
+        final AddRequest addRequest = new AddRequest(entry,controls);
+        ldapConnection.add(addRequest);
+        synchronized(this) {
+          ++numberOfEntriesRead;
+        }
       }
-      fireLdifEventListener(entry);
-      final AddRequest addRequest = new AddRequest(entry,controls);
-      ldapConnection.add(addRequest);
-      synchronized(this) {
-        ++numberOfEntriesRead;
+    } finally {
+      try {
+        if(batch != null) {
+          fireLdifEntryBatchListener(batch,batchCount);
+          Arrays.fill(batch,null);
+        }
+      } finally {
+        if(sorter != null) {
+          sorter.close();
+        }
+        reader.close();
       }
     }
-    reader.close();
     return numberOfEntriesRead;
   }
 
@@ -425,22 +658,41 @@ public class ReadLdifFile
   /**
    * The list of io exception listeners.
    */
-  private volatile Vector<IOExceptionListener> ioExceptionListeners =
-    new Vector<IOExceptionListener>();
+  private final ListenerRegistry<IOExceptionListener> ioExceptionListeners =
+    ListenerRegistry.newInstance(IOExceptionListener.class);
 
 
   /**
    * interested parties to {@code LdapExceptionEvents}
    */
-  private volatile Vector<LdapExceptionListener> ldapExceptionListeners =
-    new Vector<LdapExceptionListener>();
+  private final ListenerRegistry<LdapExceptionListener> ldapExceptionListeners =
+    ListenerRegistry.newInstance(LdapExceptionListener.class);
 
 
   /**
    * The list of event listeners.
    */
-  private volatile Vector<LdifEntryEventListener> ldifEventListeners =
-    new Vector<LdifEntryEventListener>();
+  private final ListenerRegistry<LdifEntryEventListener> ldifEventListeners =
+    ListenerRegistry.newInstance(LdifEntryEventListener.class);
+
+
+  /**
+   * The list of batch event listeners.
+   */
+  private final ListenerRegistry<LdifEntryBatchListener> ldifEntryBatchListeners =
+    ListenerRegistry.newInstance(LdifEntryBatchListener.class);
+
+
+  private volatile int ldifEntryBatchSize = DEFAULT_LDIF_ENTRY_BATCH_SIZE;
+
+
+  private volatile LdifSchemaValidator schemaValidator;
+
+
+  private volatile boolean sortByDn;
+
+
+  private volatile int sortMaxEntriesInMemory = DEFAULT_SORT_MAX_ENTRIES_IN_MEMORY;
 
 
   private int numberOfEntriesRead = 0;
@@ -23,8 +23,6 @@ import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Since;
 
-import java.util.Vector;
-
 
 /**
  * a minimal implementation of {@code ObservedByLdapExceptionListener}
@@ -40,11 +38,9 @@ public abstract class AbstractObservedByLdapExceptionListener
    * {@inheritDoc}
    */
   @Override
-  public synchronized void addLdapExceptionListener(
+  public void addLdapExceptionListener(
     final LdapExceptionListener ldapExceptionListener) {
-    if(ldapExceptionListener != null) {
-      ldapExceptionListeners.add(ldapExceptionListener);
-    }
+    ldapExceptionListeners.add(ldapExceptionListener);
   }
 
 
@@ -53,11 +49,9 @@ public abstract class AbstractObservedByLdapExceptionListener
    * {@inheritDoc}
    */
   @Override
-  public synchronized void removeLdapExceptionListener(
+  public void removeLdapExceptionListener(
     final LdapExceptionListener ldapExceptionListener) {
-    if(ldapExceptionListener != null) {
-      ldapExceptionListeners.remove(ldapExceptionListener);
-    }
+    ldapExceptionListeners.remove(ldapExceptionListener);
   }
 
 
@@ -65,20 +59,16 @@ public abstract class AbstractObservedByLdapExceptionListener
   /**
    * {@inheritDoc}
    */
-  @SuppressWarnings("unchecked")
   @Override
   public void fireLdapExceptionListener(final LDAPConnection ldapConnection,
                                         final LDAPException ldapException) {
     Validator.ensureNotNull(ldapConnection,ldapException);
-    Vector<LdapExceptionListener> copy;
-    synchronized(this) {
-      copy = (Vector<LdapExceptionListener>) ldapExceptionListeners.clone();
-    }
-    if(copy.size() == 0) {
+    final LdapExceptionListener[] listeners = ldapExceptionListeners.getListeners();
+    if(listeners.length == 0) {
       return;
     }
     final LdapExceptionEvent ev = new LdapExceptionEvent(this,ldapConnection,ldapException);
-    for(final LdapExceptionListener l : copy) {
+    for(final LdapExceptionListener l : listeners) {
       l.ldapRequestFailed(ev);
     }
   }
@@ -88,7 +78,7 @@ public abstract class AbstractObservedByLdapExceptionListener
   /**
    * interested parties to {@code LdapExceptionEvents}
    */
-  private volatile Vector<LdapExceptionListener> ldapExceptionListeners =
-    new Vector<LdapExceptionListener>();
+  private final ListenerRegistry<LdapExceptionListener> ldapExceptionListeners =
+    ListenerRegistry.newInstance(LdapExceptionListener.class);
 
 }
@@ -22,8 +22,6 @@ import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Since;
 
-import java.util.Vector;
-
 
 /**
  * a minimal implementation of
@@ -40,11 +38,9 @@ public class AbstractObservedByLdapSearchExceptionListener
    * {@inheritDoc}
    */
   @Override
-  public synchronized void addLdapSearchExceptionListener(
+  public void addLdapSearchExceptionListener(
     final LdapSearchExceptionListener ldapSearchExceptionListener) {
-    if(ldapSearchExceptionListener != null) {
-      ldapSearchExceptionListeners.add(ldapSearchExceptionListener);
-    }
+    ldapSearchExceptionListeners.add(ldapSearchExceptionListener);
   }
 
 
@@ -53,11 +49,9 @@ public class AbstractObservedByLdapSearchExceptionListener
    * {@inheritDoc}
    */
   @Override
-  public synchronized void removeLdapSearchExceptionListener(
+  public void removeLdapSearchExceptionListener(
     final LdapSearchExceptionListener ldapSearchExceptionListener) {
-    if(ldapSearchExceptionListener != null) {
-      ldapSearchExceptionListeners.remove(ldapSearchExceptionListener);
-    }
+    ldapSearchExceptionListeners.remove(ldapSearchExceptionListener);
   }
 
 
@@ -65,20 +59,16 @@ public class AbstractObservedByLdapSearchExceptionListener
   /**
    * {@inheritDoc}
    */
-  @SuppressWarnings("unchecked")
   @Override
   public void fireLdapSearchExceptionListener(final LDAPConnection ldapConnection,
                                               final LDAPSearchException ldapSearchException) {
-    Vector<LdapSearchExceptionListener> copy;
-    synchronized(this) {
-      copy = (Vector<LdapSearchExceptionListener>) ldapSearchExceptionListeners.clone();
-    }
-    if(copy.size() == 0) {
+    final LdapSearchExceptionListener[] listeners = ldapSearchExceptionListeners.getListeners();
+    if(listeners.length == 0) {
       return;
     }
     final LdapSearchExceptionEvent ev =
       new LdapSearchExceptionEvent(this,ldapConnection,ldapSearchException);
-    for(final LdapSearchExceptionListener l : copy) {
+    for(final LdapSearchExceptionListener l : listeners) {
       l.searchRequestFailed(ev);
     }
   }
@@ -88,7 +78,7 @@ public class AbstractObservedByLdapSearchExceptionListener
   /**
    * interested parties to {@code LdapExceptionEvents}
    */
-  private volatile Vector<LdapSearchExceptionListener> ldapSearchExceptionListeners =
-    new Vector<LdapSearchExceptionListener>();
+  private final ListenerRegistry<LdapSearchExceptionListener> ldapSearchExceptionListeners =
+    ListenerRegistry.newInstance(LdapSearchExceptionListener.class);
 
 }
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.listener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.logging.LogAware;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Delivers events to listeners on a dispatcher thread instead of the
+ * thread that fires them, so that a slow listener (for example one
+ * that logs to a file) does not slow down the search or import loop
+ * firing the events.
+ * <p/>
+ * A listener is wrapped by one of the {@code wrap...} methods and the
+ * wrapper is registered in its place. Events are queued in a bounded
+ * queue; when the queue is full the {@link OverflowPolicy} decides
+ * whether the firing thread waits or the event is dropped. A single
+ * dispatcher thread delivers the events in the order in which they
+ * were queued, so each listener sees its events in the order in which
+ * they were fired.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final AsyncEventBus bus =
+ *   AsyncEventBus.newInstance(1024,AsyncEventBus.OverflowPolicy.BLOCK);
+ * readLdifFile.addLdifEventListener(bus.wrapLdifEntryEventListener(slowListener));
+ * ...
+ * bus.shutDown(5000);
+ * </pre>
+ * <p/>
+ * </blockquote>
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class AsyncEventBus implements LogAware {
+
+  /**
+   * What happens to an event when the queue is full.
+   */
+  public enum OverflowPolicy {
+
+    /**
+     * The firing thread waits for room in the queue; no event is lost.
+     */
+    BLOCK,
+
+    /**
+     * The new event is discarded.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The oldest queued event is discarded to make room for the new
+     * event.
+     */
+    DROP_OLDEST
+  }
+
+
+
+  /**
+   * Creates an event bus and starts its dispatcher thread, which is a
+   * daemon thread.
+   *
+   * @param capacity
+   *   the maximum number of queued events, which must be positive.
+   * @param overflowPolicy
+   *   what happens to an event when the queue is full.
+   *
+   * @return a new event bus
+   */
+  public static AsyncEventBus newInstance(final int capacity,
+                                          final OverflowPolicy overflowPolicy) {
+    ensureTrue(capacity > 0);
+    ensureNotNull(overflowPolicy);
+    final AsyncEventBus bus = new AsyncEventBus(capacity,overflowPolicy);
+    bus.dispatcher.start();
+    return bus;
+  }
+
+
+
+  private AsyncEventBus(final int capacity, final OverflowPolicy overflowPolicy) {
+    queue = new ArrayBlockingQueue<Runnable>(capacity);
+    this.overflowPolicy = overflowPolicy;
+    dispatcher = new Thread(new Dispatcher(),"AsyncEventBus-dispatcher");
+    dispatcher.setDaemon(true);
+  }
+
+
+
+  /**
+   * @param listener
+   *   the listener to which events are delivered. {@code listener} is
+   *   not permitted to be {@code null}.
+   *
+   * @return a listener which queues each event for delivery to
+   *         {@code listener}
+   */
+  public LdapExceptionListener wrapLdapExceptionListener(final LdapExceptionListener listener) {
+    ensureNotNull(listener);
+    return new LdapExceptionListener() {
+
+      @Override
+      public void ldapRequestFailed(final LdapExceptionEvent ev) {
+        post(new Runnable() {
+
+          @Override
+          public void run() {
+            listener.ldapRequestFailed(ev);
+          }
+
+        });
+      }
+
+    };
+  }
+
+
+
+  /**
+   * @param listener
+   *   the listener to which events are delivered. {@code listener} is
+   *   not permitted to be {@code null}.
+   *
+   * @return a listener which queues each event for delivery to
+   *         {@code listener}
+   */
+  public IOExceptionListener wrapIOExceptionListener(final IOExceptionListener listener) {
+    ensureNotNull(listener);
+    return new IOExceptionListener() {
+
+      @Override
+      public void ioExceptionOccurred(final IOExceptionEvent ev) {
+        post(new Runnable() {
+
+          @Override
+          public void run() {
+            listener.ioExceptionOccurred(ev);
+          }
+
+        });
+      }
+
+    };
+  }
+
+
+
+  /**
+   * @param listener
+   *   the listener to which events are delivered. {@code listener} is
+   *   not permitted to be {@code null}.
+   *
+   * @return a listener which queues each event for delivery to
+   *         {@code listener}
+   */
+  public LdifEntryEventListener wrapLdifEntryEventListener(final LdifEntryEventListener listener) {
+    ensureNotNull(listener);
+    return new LdifEntryEventListener() {
+
+      @Override
+      public void entryReadFromLdifFile(final LdifEntryEvent ev) {
+        post(new Runnable() {
+
+          @Override
+          public void run() {
+            listener.entryReadFromLdifFile(ev);
+          }
+
+        });
+      }
+
+    };
+  }
+
+
+
+  /**
+   * @param listener
+   *   the listener to which events are delivered. {@code listener} is
+   *   not permitted to be {@code null}.
+   *
+   * @return a listener which queues each event for delivery to
+   *         {@code listener}
+   */
+  public EntryChangeListener wrapEntryChangeListener(final EntryChangeListener listener) {
+    ensureNotNull(listener);
+    return new EntryChangeListener() {
+
+      @Override
+      public void entryChanged(final EntryChangeEvent ev) {
+        post(new Runnable() {
+
+          @Override
+          public void run() {
+            listener.entryChanged(ev);
+          }
+
+        });
+      }
+
+    };
+  }
+
+
+
+  /**
+   * Queues a delivery according to the overflow policy. Deliveries
+   * posted after {@link #shutDown(long)} are dropped, including a
+   * delivery queued while the dispatcher thread was stopping.
+   *
+   * @param delivery
+   *   the delivery, which is run on the dispatcher thread.
+   *   {@code delivery} is not permitted to be {@code null}.
+   */
+  public void post(final Runnable delivery) {
+    ensureNotNull(delivery);
+    if(shutDown) {
+      droppedEvents.incrementAndGet();
+      return;
+    }
+    switch(overflowPolicy) {
+      case BLOCK:
+        try {
+          while(!queue.offer(delivery,POLL_INTERVAL_MILLIS,TimeUnit.MILLISECONDS)) {
+            if(shutDown) {
+              droppedEvents.incrementAndGet();
+              return;
+            }
+          }
+        } catch(final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          droppedEvents.incrementAndGet();
+          return;
+        }
+        break;
+      case DROP_NEWEST:
+        if(!queue.offer(delivery)) {
+          droppedEvents.incrementAndGet();
+          return;
+        }
+        break;
+      case DROP_OLDEST:
+        while(!queue.offer(delivery)) {
+          if(queue.poll() != null) {
+            droppedEvents.incrementAndGet();
+          }
+        }
+        break;
+    }
+
+    // the dispatcher may have found the queue empty and stopped after the
+    // check above; whichever of this thread and the dispatcher removes
+    // the delivery accounts for it.
+    if(shutDown && queue.remove(delivery)) {
+      droppedEvents.incrementAndGet();
+    }
+  }
+
+
+
+  /**
+   * @return the number of events discarded because the queue was full,
+   *         the firing thread was interrupted, the bus was shut down, or
+   *         the dispatcher thread was stopped before delivering them
+   */
+  public long getDroppedEventCount() {
+    return droppedEvents.get();
+  }
+
+
+
+  /**
+   * @return the number of events waiting for delivery
+   */
+  public int getQueuedEventCount() {
+    return queue.size();
+  }
+
+
+
+  /**
+   * Stops accepting events, delivers the events already queued, and
+   * stops the dispatcher thread.
+   *
+   * @param timeoutMillis
+   *   the maximum time in milliseconds to wait for queued events to be
+   *   delivered, which must be positive.
+   *
+   * @return {@code true} if every queued event was delivered
+   *
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting.
+   */
+  public boolean shutDown(final long timeoutMillis) throws InterruptedException {
+    ensureTrue(timeoutMillis > 0);
+    shutDown = true;
+    dispatcher.join(timeoutMillis);
+    if(dispatcher.isAlive()) {
+      dispatcher.interrupt();
+      return false;
+    }
+    return true;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Log getLogger() {
+    if(logger == null) {
+      logger = LogFactory.getLog(getClass());
+    }
+    return logger;
+  }
+
+
+
+  /**
+   * Takes deliveries from the queue until the bus is shut down and the
+   * queue is empty. A listener that throws does not stop the
+   * dispatcher. When the dispatcher is interrupted, the deliveries
+   * still queued are counted as dropped.
+   */
+  private final class Dispatcher implements Runnable {
+
+    @Override
+    public void run() {
+      while(true) {
+        final Runnable delivery;
+        try {
+          delivery = queue.poll(POLL_INTERVAL_MILLIS,TimeUnit.MILLISECONDS);
+        } catch(final InterruptedException e) {
+          while(queue.poll() != null) {
+            droppedEvents.incrementAndGet();
+          }
+          return;
+        }
+        if(delivery == null) {
+          if(shutDown) {
+            return;
+          }
+          continue;
+        }
+        try {
+          delivery.run();
+        } catch(final RuntimeException e) {
+          getLogger().error("listener failed",e);
+        }
+      }
+    }
+
+  }
+
+
+
+  /**
+   * How often the dispatcher checks for shut down when idle.
+   */
+  private static final long POLL_INTERVAL_MILLIS = 100L;
+
+
+
+  private final Thread dispatcher;
+
+
+  private final AtomicLong droppedEvents = new AtomicLong();
+
+
+  private Log logger;
+
+
+  private final OverflowPolicy overflowPolicy;
+
+
+  private final BlockingQueue<Runnable> queue;
+
+
+  private volatile boolean shutDown;
+
+}
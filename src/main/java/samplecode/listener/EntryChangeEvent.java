@@ -0,0 +1,166 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.listener;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+
+
+/**
+ * An event created when a modify request has changed an entry. The
+ * event carries the modifications which were requested and the entry
+ * as it was before and after the change, as returned by the server in
+ * the pre-read and post-read response controls (RFC 4527). The entries
+ * contain only the attributes which were requested in the read
+ * controls.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public class EntryChangeEvent extends EventObject {
+
+  private static final long serialVersionUID = -4066297818839021742L;
+
+
+
+  /**
+   * Creates a {@code EntryChangeEvent}.
+   *
+   * @param source
+   *   the object which changed the entry
+   * @param dn
+   *   the DN of the entry
+   * @param modifications
+   *   the modifications which were requested
+   * @param before
+   *   the entry before the change, or {@code null} if the server did
+   *   not return it
+   * @param after
+   *   the entry after the change, or {@code null} if the server did not
+   *   return it
+   */
+  public EntryChangeEvent(final Object source, final String dn,
+                          final List<Modification> modifications, final ReadOnlyEntry before,
+                          final ReadOnlyEntry after) {
+    super(source);
+    this.dn = dn;
+    this.modifications = modifications;
+    this.before = before;
+    this.after = after;
+  }
+
+
+
+  /**
+   * @return the DN of the entry, as specified in the modify request
+   */
+  public String getDN() {
+    return dn;
+  }
+
+
+
+  /**
+   * @return the modifications which were requested
+   */
+  public List<Modification> getModifications() {
+    return modifications;
+  }
+
+
+
+  /**
+   * @return the entry before the change, or {@code null} if the server
+   *         did not return it
+   */
+  public ReadOnlyEntry getBefore() {
+    return before;
+  }
+
+
+
+  /**
+   * @return the entry after the change, or {@code null} if the server
+   *         did not return it
+   */
+  public ReadOnlyEntry getAfter() {
+    return after;
+  }
+
+
+
+  /**
+   * @return whether the server returned the entry both before and after
+   *         the change. A listener which keeps a copy of the entry
+   *         must read the entry itself when the event is not complete.
+   */
+  public boolean isComplete() {
+    return (before != null) && (after != null);
+  }
+
+
+
+  /**
+   * Compares the entry before and after the change. Unlike the
+   * requested modifications, the result reflects what the server did,
+   * for example when values were added which were already present or
+   * a value was incremented.
+   *
+   * @return the modifications which transform the entry before the
+   *         change into the entry after the change, or an empty list if
+   *         the event is not complete
+   */
+  public List<Modification> getChanges() {
+    if(!isComplete()) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(Entry.diff(before,after,true));
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("EntryChangeEvent [dn=%s, modifications=%s, before=%s, after=%s]",dn,
+      modifications,before,after);
+  }
+
+
+
+  private final transient ReadOnlyEntry after;
+
+
+  private final transient ReadOnlyEntry before;
+
+
+  private final String dn;
+
+
+  private final transient List<Modification> modifications;
+
+}
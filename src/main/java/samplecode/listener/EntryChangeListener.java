@@ -0,0 +1,45 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.listener;
+
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.EventListener;
+
+
+/**
+ * Provided to support notification that an entry has been changed by a
+ * modify request. The event carries the entry as it was before and
+ * after the change, so that a cache of entries can be brought up to
+ * date without searching for the entry.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public interface EntryChangeListener extends EventListener {
+
+  /**
+   * An entry has been changed.
+   *
+   * @param entryChangeEvent
+   *   the event that transpired
+   */
+  void entryChanged(EntryChangeEvent entryChangeEvent);
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.listener;
+
+import com.unboundid.ldap.sdk.Entry;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+
+
+/**
+ * An event created from a chunk of entries that were read from an LDIF
+ * file. The entries are held in a buffer which the reader reuses for
+ * the next chunk, so the event and its entry list are valid only for
+ * the duration of the call to the listener; a listener that needs the
+ * entries later must copy them.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public class LdifEntryBatchEvent extends EventObject {
+
+  private static final long serialVersionUID = 2618405733102474417L;
+
+
+
+  /**
+   * Creates a {@code LdifEntryBatchEvent} for the first {@code size}
+   * entries of {@code entries}.
+   *
+   * @param source
+   *   the object which read the entries
+   * @param entries
+   *   the buffer holding the entries
+   * @param size
+   *   the number of entries in the buffer
+   */
+  public LdifEntryBatchEvent(final Object source, final Entry[] entries, final int size) {
+    super(source);
+    this.entries = entries;
+    this.size = size;
+  }
+
+
+
+  /**
+   * @return the number of entries in the chunk
+   */
+  public int size() {
+    return size;
+  }
+
+
+
+  /**
+   * @param index
+   *   the index of an entry, from zero to {@code size() - 1}
+   *
+   * @return the entry
+   */
+  public Entry getEntry(final int index) {
+    if(index >= size) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    return entries[index];
+  }
+
+
+
+  /**
+   * @return an unmodifiable view of the entries in the chunk, in the
+   *         order in which they were read
+   */
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(Arrays.asList(entries).subList(0,size));
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("LdifEntryBatchEvent [size=%d]",size);
+  }
+
+
+
+  // the reader's buffer, of which the first size elements are valid.
+  private final transient Entry[] entries;
+
+
+  private final int size;
+
+}
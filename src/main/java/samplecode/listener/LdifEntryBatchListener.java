@@ -0,0 +1,46 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.listener;
+
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.EventListener;
+
+
+/**
+ * Provided to support notification that a chunk of entries has been
+ * read from an LDIF file. Compared to {@link LdifEntryEventListener},
+ * a listener that counts, indexes or validates entries receives one
+ * call per chunk instead of one call per entry.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public interface LdifEntryBatchListener extends EventListener {
+
+  /**
+   * A chunk of entries has been read from an LDIF file. The event is
+   * valid only until this method returns.
+   *
+   * @param ldifEntryBatchEvent
+   *   the event that transpired
+   */
+  void entriesReadFromLdifFile(LdifEntryBatchEvent ldifEntryBatchEvent);
+
+}
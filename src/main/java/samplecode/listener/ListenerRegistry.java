@@ -0,0 +1,175 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.listener;
+
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EventListener;
+import java.util.List;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * The listeners registered with an observed class. Adding or removing
+ * a listener copies the array of listeners; firing an event reads the
+ * current array without locking or copying, so an observed class which
+ * fires events often (for example once per LDIF entry) pays nothing
+ * when no listener is registered and nothing beyond the calls when
+ * listeners are registered.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final LdapExceptionListener[] listeners =
+ *   ldapExceptionListeners.getListeners();
+ * if(listeners.length == 0) {
+ *   return;
+ * }
+ * final LdapExceptionEvent ev =
+ *   new LdapExceptionEvent(this,ldapConnection,ldapException);
+ * for(final LdapExceptionListener l : listeners) {
+ *   l.ldapRequestFailed(ev);
+ * }
+ * </pre>
+ * <p/>
+ * </blockquote>
+ *
+ * @param <L>
+ *   the type of listener
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class ListenerRegistry<L extends EventListener> {
+
+  /**
+   * Creates a registry with no listeners.
+   *
+   * @param listenerClass
+   *   the type of listener. {@code listenerClass} is not permitted to
+   *   be {@code null}.
+   *
+   * @return a new registry
+   */
+  public static <L extends EventListener> ListenerRegistry<L>
+  newInstance(final Class<L> listenerClass) {
+    ensureNotNull(listenerClass);
+    return new ListenerRegistry<L>(listenerClass);
+  }
+
+
+
+  @SuppressWarnings("unchecked")
+  private ListenerRegistry(final Class<L> listenerClass) {
+    listeners = (L[]) Array.newInstance(listenerClass,0);
+  }
+
+
+
+  /**
+   * Adds {@code listener}. No action is taken if {@code listener} is
+   * {@code null}. A listener added more than once is notified more
+   * than once.
+   *
+   * @param listener
+   *   the listener to add
+   */
+  public synchronized void add(final L listener) {
+    if(listener != null) {
+      final L[] copy = Arrays.copyOf(listeners,listeners.length + 1);
+      copy[listeners.length] = listener;
+      listeners = copy;
+    }
+  }
+
+
+
+  /**
+   * Removes the first occurrence of {@code listener}. No action is
+   * taken if {@code listener} is {@code null} or is not registered.
+   *
+   * @param listener
+   *   the listener to remove
+   */
+  public synchronized void remove(final L listener) {
+    if(listener == null) {
+      return;
+    }
+    for(int i = 0; i < listeners.length; ++i) {
+      if(listener.equals(listeners[i])) {
+        final L[] copy = Arrays.copyOf(listeners,listeners.length - 1);
+        System.arraycopy(listeners,i + 1,copy,i,listeners.length - i - 1);
+        listeners = copy;
+        return;
+      }
+    }
+  }
+
+
+
+  /**
+   * Retrieves the listeners registered at the time of the call, in the
+   * order in which they were added. The array is shared: callers must
+   * not modify it. Listeners added or removed later do not affect the
+   * returned array.
+   *
+   * @return the registered listeners, never {@code null}
+   */
+  public L[] getListeners() {
+    return listeners;
+  }
+
+
+
+  /**
+   * @return whether no listener is registered
+   */
+  public boolean isEmpty() {
+    return listeners.length == 0;
+  }
+
+
+
+  /**
+   * @return an unmodifiable list of the listeners registered at the
+   *         time of the call
+   */
+  public List<L> asList() {
+    return Collections.unmodifiableList(Arrays.asList(listeners));
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return Arrays.toString(listeners);
+  }
+
+
+
+  private volatile L[] listeners;
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.listener;
+
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ReadOnlyEntry;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.EventListener;
+
+
+/**
+ * defines services for classes that are observed by another class which is
+ * interested in changes made to entries.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public interface ObservedByEntryChangeListener extends EventListener {
+
+  /**
+   * adds the specified {@code entryChangeListener} to receive changes
+   * from this class.
+   *
+   * @param entryChangeListener
+   *   the listener. If {@code entryChangeListener} is {@code null}, no
+   *   action is taken and no exception is thrown.
+   */
+  void addEntryChangeListener(EntryChangeListener entryChangeListener);
+
+  /**
+   * notifies the listeners that the entry targeted by
+   * {@code modifyRequest} has been changed.
+   *
+   * @param modifyRequest
+   *   the modify request which changed the entry
+   * @param before
+   *   the entry before the change, or {@code null} if it was not
+   *   returned by the server
+   * @param after
+   *   the entry after the change, or {@code null} if it was not
+   *   returned by the server
+   */
+  void fireEntryChangeListener(ModifyRequest modifyRequest, ReadOnlyEntry before,
+                               ReadOnlyEntry after);
+
+  /**
+   * removes the specified {@code entryChangeListener}.
+   *
+   * @param entryChangeListener
+   *   the listener. If {@code entryChangeListener} is {@code null}, no
+   *   action is taken and no exception is thrown.
+   */
+  void removeEntryChangeListener(EntryChangeListener entryChangeListener);
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.listener;
+
+import com.unboundid.ldap.sdk.Entry;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.EventListener;
+
+
+/**
+ * defines services for classes that are observed by another class which is
+ * interested in chunks of entries read from an LDIF file.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public interface ObservedByLdifEntryBatchListener extends EventListener {
+
+  /**
+   * adds the specified {@code ldifEntryBatchListener} to receive chunks
+   * of entries from this class.
+   *
+   * @param ldifEntryBatchListener
+   *   the listener. If {@code ldifEntryBatchListener} is {@code null},
+   *   no action is taken and no exception is thrown.
+   */
+  void addLdifEntryBatchListener(LdifEntryBatchListener ldifEntryBatchListener);
+
+  /**
+   * notifies the listeners that the first {@code size} entries of
+   * {@code entries} have been read from a file.
+   *
+   * @param entries
+   *   the buffer holding the entries, which may be reused after this
+   *   method returns
+   * @param size
+   *   the number of entries in the buffer
+   */
+  void fireLdifEntryBatchListener(Entry[] entries, int size);
+
+  /**
+   * removes the specified {@code ldifEntryBatchListener}.
+   *
+   * @param ldifEntryBatchListener
+   *   the listener. If {@code ldifEntryBatchListener} is {@code null},
+   *   no action is taken and no exception is thrown.
+   */
+  void removeLdifEntryBatchListener(LdifEntryBatchListener ldifEntryBatchListener);
+
+  /**
+   * @return the number of entries delivered in each chunk; the last
+   *         chunk of a file may be smaller
+   */
+  int getLdifEntryBatchSize();
+
+  /**
+   * @param batchSize
+   *   the number of entries delivered in each chunk, which must be
+   *   positive
+   */
+  void setLdifEntryBatchSize(int batchSize);
+}
@@ -16,19 +16,19 @@
 
 package samplecode.listener;
 
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.util.Validator;
 import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
 import samplecode.annotation.Since;
-import samplecode.util.SampleCodeCollectionUtils;
 
-import java.util.Collections;
 import java.util.List;
 
 
 /**
  * A minimal, abstract implementation of
- * {@code ObservedByLdifEntryEventListener} supplying methods to add and
- * remove listeners.
+ * {@code ObservedByLdifEntryEventListener} supplying methods to add,
+ * remove, and fire listeners.
  */
 @Author("terry.gardner@unboundid.com")
 @Since("Jan 5, 2012")
@@ -37,26 +37,41 @@ public abstract class ObservedByLdifEntryEventAdapter
   implements ObservedByLdifEntryEventListener {
 
   protected ObservedByLdifEntryEventAdapter() {
-    ldifEventListeners =
-      SampleCodeCollectionUtils.newArrayList();
+    ldifEventListeners = ListenerRegistry.newInstance(LdifEntryEventListener.class);
   }
 
 
 
   @Override
-  public synchronized void addLdifEventListener(final LdifEntryEventListener ldifEventListener) {
-    if(ldifEventListener != null) {
-      ldifEventListeners.add(ldifEventListener);
-    }
+  public void addLdifEventListener(final LdifEntryEventListener ldifEventListener) {
+    ldifEventListeners.add(ldifEventListener);
   }
 
 
 
   @Override
-  public synchronized void removeLdifEventListener(
+  public void removeLdifEventListener(
     final LdifEntryEventListener ldifEventListener) {
-    if(ldifEventListener != null) {
-      ldifEventListeners.remove(ldifEventListener);
+    ldifEventListeners.remove(ldifEventListener);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * No event is created when no listener is registered.
+   */
+  @Override
+  public void fireLdifEventListener(final Entry entry) {
+    Validator.ensureNotNull(entry);
+    final LdifEntryEventListener[] listeners = ldifEventListeners.getListeners();
+    if(listeners.length == 0) {
+      return;
+    }
+    final LdifEntryEvent ev = new LdifEntryEvent(this,entry);
+    for(final LdifEntryEventListener l : listeners) {
+      l.entryReadFromLdifFile(ev);
     }
   }
 
@@ -67,11 +82,11 @@ public abstract class ObservedByLdifEntryEventAdapter
    */
   @Override
   public List<LdifEntryEventListener> getLdifEventListeners() {
-    return Collections.unmodifiableList(ldifEventListeners);
+    return ldifEventListeners.asList();
   }
 
 
 
-  private List<LdifEntryEventListener> ldifEventListeners;
+  private final ListenerRegistry<LdifEntryEventListener> ldifEventListeners;
 
 }
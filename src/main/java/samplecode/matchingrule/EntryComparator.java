@@ -0,0 +1,551 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.matchingrule;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.matchingrules.MatchingRule;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.schema.Schema;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Compares every value of every attribute of entries using the equality
+ * matching rules of a schema, for example to verify a data migration.
+ * The matching rule of each attribute type is selected once and cached.
+ * Each value is normalized once, and the values of an attribute are
+ * compared as hash sets of normalized values, so that comparing
+ * attributes with hundreds of values takes time proportional to the
+ * number of values rather than its square. A value which cannot be
+ * normalized by its matching rule, for example because it does not
+ * conform to the attribute syntax, is compared as it is.
+ * <p/>
+ * {@link #compare(Collection,Collection,int)} compares two result sets,
+ * pairing entries by normalized DN, and shards the entries of the first
+ * across threads.
+ * <p/>
+ * This class is safe for use by multiple threads.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class EntryComparator {
+
+  /**
+   * Creates a comparator.
+   *
+   * @param schema
+   *   the schema from which matching rules are selected. If
+   *   {@code schema} is {@code null}, matching rules are selected from
+   *   the attribute names known to the SDK, and other attributes are
+   *   compared with the default equality matching rule.
+   * @param ignoredAttributes
+   *   the names of attributes which are not compared.
+   *   {@code ignoredAttributes} is not permitted to be {@code null}.
+   *
+   * @return a new comparator
+   */
+  public static EntryComparator newInstance(final Schema schema,
+                                            final Collection<String> ignoredAttributes) {
+    ensureNotNull(ignoredAttributes);
+    return new EntryComparator(schema,ignoredAttributes);
+  }
+
+
+
+  private EntryComparator(final Schema schema, final Collection<String> ignoredAttributes) {
+    this.schema = schema;
+    this.ignoredAttributes = SampleCodeCollectionUtils.newHashSet();
+    for(final String name : ignoredAttributes) {
+      this.ignoredAttributes.add(name.toLowerCase());
+    }
+  }
+
+
+
+  /**
+   * Compares the values of two attributes of the same type.
+   *
+   * @param attribute1
+   *   the attribute of the first entry, or {@code null} if the first
+   *   entry does not have the attribute.
+   * @param attribute2
+   *   the attribute of the second entry, or {@code null} if the second
+   *   entry does not have the attribute.
+   *
+   * @return the values present in only one of the attributes, or
+   *         {@code null} if the attributes have the same values
+   */
+  public AttributeDifference compare(final Attribute attribute1, final Attribute attribute2) {
+    ensureTrue((attribute1 != null) || (attribute2 != null));
+    final String name = attribute1 == null ? attribute2.getName() : attribute1.getName();
+    final MatchingRule matchingRule = getMatchingRule(Attribute.getBaseName(name));
+
+    final ASN1OctetString[] values1 = rawValues(attribute1);
+    final ASN1OctetString[] values2 = rawValues(attribute2);
+    final ASN1OctetString[] normalized1 = normalize(matchingRule,values1);
+    final ASN1OctetString[] normalized2 = normalize(matchingRule,values2);
+
+    final List<String> onlyInFirst = onlyIn(values1,normalized1,normalized2);
+    final List<String> onlyInSecond = onlyIn(values2,normalized2,normalized1);
+    if(onlyInFirst.isEmpty() && onlyInSecond.isEmpty()) {
+      return null;
+    }
+    return new AttributeDifference(name,onlyInFirst,onlyInSecond);
+  }
+
+
+
+  /**
+   * Compares every attribute of two entries, except the ignored
+   * attributes. The DNs of the entries are not compared.
+   *
+   * @param entry1
+   *   the first entry. {@code entry1} is not permitted to be
+   *   {@code null}.
+   * @param entry2
+   *   the second entry. {@code entry2} is not permitted to be
+   *   {@code null}.
+   *
+   * @return the attributes whose values differ, in the order of their
+   *         names, or {@code null} if the entries have the same
+   *         attribute values
+   */
+  public EntryDifference compare(final Entry entry1, final Entry entry2) {
+    ensureNotNull(entry1,entry2);
+    final Map<String,Attribute> attributes1 = attributesByName(entry1);
+    final Map<String,Attribute> attributes2 = attributesByName(entry2);
+    final Set<String> names = new TreeSet<String>(attributes1.keySet());
+    names.addAll(attributes2.keySet());
+
+    final List<AttributeDifference> differences = SampleCodeCollectionUtils.newArrayList();
+    for(final String name : names) {
+      final AttributeDifference difference =
+        compare(attributes1.get(name),attributes2.get(name));
+      if(difference != null) {
+        differences.add(difference);
+      }
+    }
+    if(differences.isEmpty()) {
+      return null;
+    }
+    return new EntryDifference(entry1.getDN(),true,true,differences);
+  }
+
+
+
+  /**
+   * Compares two result sets. Entries are paired by normalized DN; an
+   * entry present in only one of the sets is reported as such. The
+   * entries of {@code entries1} are divided into shards which are
+   * compared by {@code numThreads} threads.
+   *
+   * @param entries1
+   *   the first result set. {@code entries1} is not permitted to be
+   *   {@code null}.
+   * @param entries2
+   *   the second result set. {@code entries2} is not permitted to be
+   *   {@code null}.
+   * @param numThreads
+   *   the number of threads which compare entries, which must be
+   *   positive.
+   *
+   * @return the differences: first those of the entries of
+   *         {@code entries1}, in the order of {@code entries1}, then the
+   *         entries present only in {@code entries2}, in the order of
+   *         {@code entries2}
+   *
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting for the
+   *   comparisons.
+   */
+  public List<EntryDifference> compare(final Collection<Entry> entries1,
+                                       final Collection<Entry> entries2,
+                                       final int numThreads) throws InterruptedException {
+    ensureNotNull(entries1,entries2);
+    ensureTrue(numThreads > 0);
+
+    final Map<String,Entry> index = SampleCodeCollectionUtils.newHashMap();
+    for(final Entry entry : entries2) {
+      final String key = normalizedDn(entry);
+      if(!index.containsKey(key)) {
+        index.put(key,entry);
+      }
+    }
+    final Set<String> keys1 = SampleCodeCollectionUtils.newHashSet();
+    final List<Entry> list1 = SampleCodeCollectionUtils.newArrayList(entries1.size());
+    for(final Entry entry : entries1) {
+      keys1.add(normalizedDn(entry));
+      list1.add(entry);
+    }
+
+    final List<EntryDifference> differences = SampleCodeCollectionUtils.newArrayList();
+    final int shardSize = Math.max(MIN_SHARD_SIZE,
+      (list1.size() + numThreads * SHARDS_PER_THREAD - 1) / (numThreads * SHARDS_PER_THREAD));
+    if((numThreads == 1) || (list1.size() <= shardSize)) {
+      differences.addAll(new Shard(list1,index).call());
+    } else {
+      final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+      try {
+        final List<Future<List<EntryDifference>>> futures =
+          SampleCodeCollectionUtils.newArrayList();
+        for(int from = 0; from < list1.size(); from += shardSize) {
+          final int to = Math.min(list1.size(),from + shardSize);
+          futures.add(executorService.submit(new Shard(list1.subList(from,to),index)));
+        }
+        for(final Future<List<EntryDifference>> future : futures) {
+          differences.addAll(future.get());
+        }
+      } catch(final ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if(cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw (Error) cause;
+      } finally {
+        executorService.shutdownNow();
+      }
+    }
+
+    for(final Entry entry : entries2) {
+      if(!keys1.contains(normalizedDn(entry))) {
+        final List<AttributeDifference> none = Collections.emptyList();
+        differences.add(new EntryDifference(entry.getDN(),false,true,none));
+      }
+    }
+    return differences;
+  }
+
+
+
+  /**
+   * The values present in only one of two attributes of the same type.
+   */
+  public static final class AttributeDifference {
+
+    private AttributeDifference(final String attributeName, final List<String> onlyInFirst,
+                                final List<String> onlyInSecond) {
+      this.attributeName = attributeName;
+      this.onlyInFirst = Collections.unmodifiableList(onlyInFirst);
+      this.onlyInSecond = Collections.unmodifiableList(onlyInSecond);
+    }
+
+
+
+    /**
+     * @return the name of the attribute
+     */
+    public String getAttributeName() {
+      return attributeName;
+    }
+
+
+
+    /**
+     * @return the values present only in the attribute of the first
+     *         entry
+     */
+    public List<String> getOnlyInFirst() {
+      return onlyInFirst;
+    }
+
+
+
+    /**
+     * @return the values present only in the attribute of the second
+     *         entry
+     */
+    public List<String> getOnlyInSecond() {
+      return onlyInSecond;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return String.format("%s: only in first %s, only in second %s",attributeName,
+        onlyInFirst,onlyInSecond);
+    }
+
+
+
+    private final String attributeName;
+
+
+    private final List<String> onlyInFirst;
+
+
+    private final List<String> onlyInSecond;
+
+  }
+
+
+
+  /**
+   * The differences between two entries with the same DN, or an entry
+   * present in only one of two result sets.
+   */
+  public static final class EntryDifference {
+
+    private EntryDifference(final String dn, final boolean inFirst, final boolean inSecond,
+                            final List<AttributeDifference> attributeDifferences) {
+      this.dn = dn;
+      this.inFirst = inFirst;
+      this.inSecond = inSecond;
+      this.attributeDifferences = Collections.unmodifiableList(attributeDifferences);
+    }
+
+
+
+    /**
+     * @return the DN of the entry
+     */
+    public String getDN() {
+      return dn;
+    }
+
+
+
+    /**
+     * @return whether the entry is present in the first result set
+     */
+    public boolean isInFirst() {
+      return inFirst;
+    }
+
+
+
+    /**
+     * @return whether the entry is present in the second result set
+     */
+    public boolean isInSecond() {
+      return inSecond;
+    }
+
+
+
+    /**
+     * @return the attributes whose values differ, which is empty if the
+     *         entry is present in only one of the result sets
+     */
+    public List<AttributeDifference> getAttributeDifferences() {
+      return attributeDifferences;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      if(!inFirst) {
+        return dn + ": only in second";
+      }
+      if(!inSecond) {
+        return dn + ": only in first";
+      }
+      return dn + ": " + attributeDifferences;
+    }
+
+
+
+    private final List<AttributeDifference> attributeDifferences;
+
+
+    private final String dn;
+
+
+    private final boolean inFirst;
+
+
+    private final boolean inSecond;
+
+  }
+
+
+
+  /**
+   * Compares a shard of the first result set with the entries of the
+   * second.
+   */
+  private final class Shard implements Callable<List<EntryDifference>> {
+
+    private Shard(final List<Entry> entries, final Map<String,Entry> index) {
+      this.entries = entries;
+      this.index = index;
+    }
+
+
+
+    @Override
+    public List<EntryDifference> call() {
+      final List<EntryDifference> differences = SampleCodeCollectionUtils.newArrayList();
+      for(final Entry entry : entries) {
+        final Entry other = index.get(normalizedDn(entry));
+        if(other == null) {
+          final List<AttributeDifference> none = Collections.emptyList();
+          differences.add(new EntryDifference(entry.getDN(),true,false,none));
+        } else {
+          final EntryDifference difference = compare(entry,other);
+          if(difference != null) {
+            differences.add(difference);
+          }
+        }
+      }
+      return differences;
+    }
+
+
+
+    private final List<Entry> entries;
+
+
+    private final Map<String,Entry> index;
+
+  }
+
+
+
+  private Map<String,Attribute> attributesByName(final Entry entry) {
+    final Map<String,Attribute> attributes = SampleCodeCollectionUtils.newHashMap();
+    for(final Attribute attribute : entry.getAttributes()) {
+      final String name = attribute.getName().toLowerCase();
+      if(!ignoredAttributes.contains(name) &&
+        !ignoredAttributes.contains(attribute.getBaseName().toLowerCase())) {
+        attributes.put(name,attribute);
+      }
+    }
+    return attributes;
+  }
+
+
+
+  private MatchingRule getMatchingRule(final String baseName) {
+    final String key = baseName.toLowerCase();
+    MatchingRule matchingRule = matchingRules.get(key);
+    if(matchingRule == null) {
+      matchingRule = MatchingRule.selectEqualityMatchingRule(baseName,schema);
+      matchingRules.put(key,matchingRule);
+    }
+    return matchingRule;
+  }
+
+
+
+  private static ASN1OctetString[] normalize(final MatchingRule matchingRule,
+                                             final ASN1OctetString[] values) {
+    final ASN1OctetString[] normalized = new ASN1OctetString[values.length];
+    for(int i = 0; i < values.length; ++i) {
+      try {
+        normalized[i] = matchingRule.normalize(values[i]);
+      } catch(final LDAPException e) {
+        normalized[i] = values[i];
+      }
+    }
+    return normalized;
+  }
+
+
+
+  private static String normalizedDn(final Entry entry) {
+    try {
+      return new DN(entry.getDN()).toNormalizedString();
+    } catch(final LDAPException e) {
+      return entry.getDN().toLowerCase();
+    }
+  }
+
+
+
+  /**
+   * @return the values whose normalized form is not present in
+   *         {@code others}, as strings
+   */
+  private static List<String> onlyIn(final ASN1OctetString[] values,
+                                     final ASN1OctetString[] normalized,
+                                     final ASN1OctetString[] others) {
+    final List<String> onlyIn = SampleCodeCollectionUtils.newArrayList();
+    if(normalized.length == 0) {
+      return onlyIn;
+    }
+    final Set<ASN1OctetString> otherSet = SampleCodeCollectionUtils.newHashSet();
+    Collections.addAll(otherSet,others);
+    for(int i = 0; i < values.length; ++i) {
+      if(!otherSet.contains(normalized[i])) {
+        onlyIn.add(values[i].stringValue());
+      }
+    }
+    return onlyIn;
+  }
+
+
+
+  private static ASN1OctetString[] rawValues(final Attribute attribute) {
+    return attribute == null ? new ASN1OctetString[0] : attribute.getRawValues();
+  }
+
+
+
+  /**
+   * The minimum number of entries compared by a thread at a time.
+   */
+  private static final int MIN_SHARD_SIZE = 64;
+
+
+  /**
+   * The number of shards per thread, which evens out the work when
+   * entries differ in size.
+   */
+  private static final int SHARDS_PER_THREAD = 4;
+
+
+
+  private final Set<String> ignoredAttributes;
+
+
+  private final Map<String,MatchingRule> matchingRules =
+    SampleCodeCollectionUtils.newConcurrentHashMap();
+
+
+  private final Schema schema;
+
+}
@@ -16,8 +16,6 @@
 
 package samplecode.matchingrule;
 
-import com.unboundid.asn1.ASN1OctetString;
-import com.unboundid.ldap.matchingrules.MatchingRule;
 import com.unboundid.ldap.sdk.*;
 import com.unboundid.util.Validator;
 import com.unboundid.util.args.Argument;
@@ -40,12 +38,14 @@ import samplecode.tools.ToolCompletedProcessing;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.List;
 
 
 /**
  * Demonstrates the use of matching rules for attribute value
- * comparisons by comparing an attribute from two entries. NB: the
+ * comparisons by comparing an attribute from two entries. Every value
+ * of the attribute is compared, using an {@link EntryComparator}. NB: the
  * {@code --attribute} command line argument can be specified multiple
  * times, but only the first instance of the command line argument is
  * used.
@@ -136,15 +136,12 @@ public final class MatchingRuleDemo extends AbstractTool
 
 
     private void match() throws LDAPException, AttributeValueMatchException {
-      // Get the raw values of the attributes:
-      final ASN1OctetString[] strs1 = attributeEntry1.getRawValues();
-      final ASN1OctetString[] strs2 = attributeEntry2.getRawValues();
-      // Only compare the first values:
-      final ASN1OctetString asnOctetString1 = strs1[0];
-      final ASN1OctetString asnOctetString2 = strs2[0];
-      // Get the matching rule and check for value match:
-      final MatchingRule matchingRule = attributeEntry1.getMatchingRule();
-      if(!matchingRule.valuesMatch(asnOctetString1,asnOctetString2)) {
+      // Compare every value using the matching rule from the server
+      // schema:
+      final List<String> ignoredAttributes = Collections.emptyList();
+      final EntryComparator entryComparator =
+        EntryComparator.newInstance(ldapConnection.getSchema(),ignoredAttributes);
+      if(entryComparator.compare(attributeEntry1,attributeEntry2) != null) {
         throw new AttributeValueMatchException(attributeEntry1,attributeEntry2);
       }
     }
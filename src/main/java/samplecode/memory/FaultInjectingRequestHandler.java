@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ProtocolOp;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.OperationType;
+
+import java.util.List;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * An interceptor which applies a {@link FaultInjector} to every request
+ * before passing it on, so that clients of an in-memory directory
+ * server see a slow or unreliable server.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * FaultInjector faultInjector = new FaultInjector();
+ * faultInjector.setLatency(OperationType.SEARCH,
+ *   LatencyDistribution.longTail(5,250));
+ * InMemoryFrontEnd frontEnd = new InMemoryFrontEnd(1389,
+ *   new FaultInjectingRequestHandler(
+ *     InMemoryFrontEnd.newProxyRequestHandler(server),faultInjector));
+ * frontEnd.startListening();
+ * </pre>
+ * <p/>
+ * </blockquote>
+ */
+public final class FaultInjectingRequestHandler extends InterceptingRequestHandler {
+
+  /**
+   * Creates an interceptor which applies {@code faultInjector} to the
+   * requests passed to {@code delegate}.
+   *
+   * @param delegate
+   *   The request handler to which requests are passed.
+   * @param faultInjector
+   *   The fault injector, which is shared by every connection.
+   */
+  public FaultInjectingRequestHandler(final LDAPListenerRequestHandler delegate,
+                                      final FaultInjector faultInjector) {
+    this(delegate,null,faultInjector);
+  }
+
+
+
+  private FaultInjectingRequestHandler(final LDAPListenerRequestHandler delegate,
+                                       final LDAPListenerClientConnection clientConnection,
+                                       final FaultInjector faultInjector) {
+    super(delegate,clientConnection);
+    ensureNotNull(faultInjector);
+    this.faultInjector = faultInjector;
+  }
+
+
+
+  /**
+   * @return the fault injector applied to requests
+   */
+  public FaultInjector getFaultInjector() {
+    return faultInjector;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected InterceptingRequestHandler
+  newInstance(final LDAPListenerRequestHandler delegateInstance,
+              final LDAPListenerClientConnection clientConnection) throws LDAPException {
+    return new FaultInjectingRequestHandler(delegateInstance,clientConnection,faultInjector);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected LDAPMessage beforeRequest(final OperationType operationType,
+                                      final int messageID,
+                                      final ProtocolOp request,
+                                      final List<Control> controls) {
+    return faultInjector.inject(operationType,messageID,getClientConnection());
+  }
+
+
+
+  private final FaultInjector faultInjector;
+
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Adds latency to the requests that reach an
+ * {@link InterceptingRequestHandler}. It can also drop a proportion of
+ * the client connections or fail a proportion of the requests. The
+ * latency can differ by operation type. The settings may be changed
+ * while the server is running.
+ * <p/>
+ * A fault injector can be configured from properties whose names begin
+ * with {@code faultInjection.}:
+ * <blockquote>
+ * <p/>
+ * <pre>
+ * # latency of every operation type that has no setting of its own
+ * faultInjection.latency = uniform:1-5
+ * # latency of search requests
+ * faultInjection.latency.SEARCH = longTail:5,250
+ * # proportion of requests whose connection is closed
+ * faultInjection.dropRate = 0.001
+ * # proportion of requests that fail, and the result code they fail with
+ * faultInjection.failureRate = 0.01
+ * faultInjection.failureResultCode = busy
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * See {@link LatencyDistribution} for the form of latency values.
+ */
+public class FaultInjector {
+
+  /**
+   * The prefix of the names of the properties read by
+   * {@link #configure(Properties)}.
+   */
+  public static final String PROP_NAME_PREFIX = "faultInjection.";
+
+
+  /**
+   * The name of the property whose value is the proportion of requests
+   * whose connection is closed.
+   */
+  public static final String PROP_NAME_DROP_RATE = PROP_NAME_PREFIX + "dropRate";
+
+
+  /**
+   * The name of the property whose value is the proportion of requests
+   * that fail.
+   */
+  public static final String PROP_NAME_FAILURE_RATE = PROP_NAME_PREFIX + "failureRate";
+
+
+  /**
+   * The name of the property whose value is the name or integer value
+   * of the result code returned by failed requests.
+   */
+  public static final String PROP_NAME_FAILURE_RESULT_CODE =
+    PROP_NAME_PREFIX + "failureResultCode";
+
+
+  /**
+   * The name of the property whose value is the latency of operation
+   * types with no latency of their own. The latency of an operation
+   * type is given by this name followed by a period and the name of
+   * the operation type, for example {@code faultInjection.latency.BIND}.
+   */
+  public static final String PROP_NAME_LATENCY = PROP_NAME_PREFIX + "latency";
+
+
+
+  /**
+   * Creates a {@code FaultInjector} which neither delays nor fails
+   * requests.
+   */
+  public FaultInjector() {
+    failureResultCode = ResultCode.UNAVAILABLE;
+  }
+
+
+
+  /**
+   * Applies the settings in {@code properties}; settings that are not
+   * present are left unchanged.
+   *
+   * @param properties
+   *   the properties; see the class documentation. {@code properties}
+   *   is not permitted to be {@code null}.
+   *
+   * @throws IllegalArgumentException
+   *   If a property has an invalid value.
+   */
+  public void configure(final Properties properties) {
+    ensureNotNull(properties);
+    String value = properties.getProperty(PROP_NAME_LATENCY);
+    if(value != null) {
+      setLatency(LatencyDistribution.parse(value));
+    }
+    for(final OperationType operationType : OperationType.values()) {
+      value = properties.getProperty(PROP_NAME_LATENCY + "." + operationType.name());
+      if(value != null) {
+        setLatency(operationType,LatencyDistribution.parse(value));
+      }
+    }
+    value = properties.getProperty(PROP_NAME_DROP_RATE);
+    if(value != null) {
+      setDropRate(parseRate(PROP_NAME_DROP_RATE,value));
+    }
+    value = properties.getProperty(PROP_NAME_FAILURE_RATE);
+    if(value != null) {
+      setFailureRate(parseRate(PROP_NAME_FAILURE_RATE,value));
+    }
+    value = properties.getProperty(PROP_NAME_FAILURE_RESULT_CODE);
+    if(value != null) {
+      setFailureResultCode(parseResultCode(value));
+    }
+  }
+
+
+
+  /**
+   * Delays the calling thread, then decides whether to drop the
+   * connection or fail the request.
+   *
+   * @param operationType
+   *   The type of the operation.
+   * @param messageID
+   *   The message ID of the request.
+   * @param clientConnection
+   *   The connection on which the request was received, or
+   *   {@code null} if connections are not to be dropped.
+   *
+   * @return An error response, or {@code null} if the request should
+   *         be processed normally. When the connection has been dropped
+   *         the response is never delivered.
+   */
+  public LDAPMessage inject(final OperationType operationType,
+                            final int messageID,
+                            final LDAPListenerClientConnection clientConnection) {
+    final LatencyDistribution latency = getLatency(operationType);
+    if(!latency.isNone()) {
+      final long delay;
+      synchronized(random) {
+        delay = latency.nextMillis(random);
+      }
+      try {
+        Thread.sleep(delay);
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return InterceptingRequestHandler.errorResponse(operationType,messageID,
+          ResultCode.UNAVAILABLE,"interrupted while injecting latency");
+      }
+    }
+    final double drop = dropRate;
+    if((clientConnection != null) && (drop > 0) && (nextDouble() < drop)) {
+      try {
+        clientConnection.close();
+      } catch(final IOException e) {
+        // the connection is going away regardless
+      }
+      return InterceptingRequestHandler.errorResponse(operationType,messageID,
+        ResultCode.SERVER_DOWN,"injected connection drop");
+    }
+    final double rate = failureRate;
+    if((rate > 0) && (nextDouble() < rate)) {
+      return InterceptingRequestHandler.errorResponse(operationType,messageID,
+        failureResultCode,"injected failure");
+    }
+    return null;
+  }
+
+
+
+  /**
+   * @return the latency of operation types with no latency of their
+   *         own
+   */
+  public LatencyDistribution getLatency() {
+    return defaultLatency;
+  }
+
+
+
+  /**
+   * @param latency
+   *   the latency of operation types with no latency of their own.
+   *   {@code latency} is not permitted to be {@code null}.
+   */
+  public void setLatency(final LatencyDistribution latency) {
+    ensureNotNull(latency);
+    defaultLatency = latency;
+  }
+
+
+
+  /**
+   * @param operationType
+   *   the operation type.
+   *
+   * @return the latency of {@code operationType}
+   */
+  public LatencyDistribution getLatency(final OperationType operationType) {
+    final LatencyDistribution latency;
+    synchronized(latencies) {
+      latency = latencies.get(operationType);
+    }
+    return latency == null ? defaultLatency : latency;
+  }
+
+
+
+  /**
+   * @param operationType
+   *   the operation type. {@code operationType} is not permitted to be
+   *   {@code null}.
+   * @param latency
+   *   the latency of {@code operationType}, or {@code null} to use the
+   *   latency of operation types with no latency of their own.
+   */
+  public void setLatency(final OperationType operationType, final LatencyDistribution latency) {
+    ensureNotNull(operationType);
+    synchronized(latencies) {
+      if(latency == null) {
+        latencies.remove(operationType);
+      } else {
+        latencies.put(operationType,latency);
+      }
+    }
+  }
+
+
+
+  /**
+   * @param latencyMillis
+   *   a fixed latency in milliseconds added to every request; zero
+   *   disables the added latency. Latencies set for individual
+   *   operation types are removed.
+   *
+   * @throws IllegalArgumentException
+   *   If {@code latencyMillis} is negative.
+   */
+  public void setLatencyMillis(final long latencyMillis) {
+    synchronized(latencies) {
+      latencies.clear();
+    }
+    setLatency(LatencyDistribution.fixed(latencyMillis));
+  }
+
+
+
+  /**
+   * @return the proportion of requests whose connection is closed
+   */
+  public double getDropRate() {
+    return dropRate;
+  }
+
+
+
+  /**
+   * @param dropRate
+   *   the proportion, from 0.0 to 1.0, of requests whose connection is
+   *   closed instead of being answered.
+   *
+   * @throws IllegalArgumentException
+   *   If {@code dropRate} is not between 0.0 and 1.0.
+   */
+  public void setDropRate(final double dropRate) {
+    checkRate(PROP_NAME_DROP_RATE,dropRate);
+    this.dropRate = dropRate;
+  }
+
+
+
+  /**
+   * @return the proportion of requests that fail
+   */
+  public double getFailureRate() {
+    return failureRate;
+  }
+
+
+
+  /**
+   * @param failureRate
+   *   the proportion, from 0.0 to 1.0, of requests that fail with the
+   *   failure result code.
+   *
+   * @throws IllegalArgumentException
+   *   If {@code failureRate} is not between 0.0 and 1.0.
+   */
+  public void setFailureRate(final double failureRate) {
+    checkRate(PROP_NAME_FAILURE_RATE,failureRate);
+    this.failureRate = failureRate;
+  }
+
+
+
+  /**
+   * @return the result code returned by failed requests
+   */
+  public ResultCode getFailureResultCode() {
+    return failureResultCode;
+  }
+
+
+
+  /**
+   * @param failureResultCode
+   *   the result code returned by failed requests, for example
+   *   {@code BUSY} or {@code UNAVAILABLE}.
+   */
+  public void setFailureResultCode(final ResultCode failureResultCode) {
+    ensureNotNull(failureResultCode);
+    this.failureResultCode = failureResultCode;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    final Map<OperationType,LatencyDistribution> copy;
+    synchronized(latencies) {
+      copy = new EnumMap<OperationType,LatencyDistribution>(latencies);
+    }
+    return String.format("FaultInjector [latency=%s, operationLatencies=%s, dropRate=%s, " +
+      "failureRate=%s, failureResultCode=%s]",defaultLatency,copy,dropRate,failureRate,
+      failureResultCode);
+  }
+
+
+
+  /**
+   * @return a uniformly distributed value between 0.0 and 1.0
+   */
+  protected final double nextDouble() {
+    synchronized(random) {
+      return random.nextDouble();
+    }
+  }
+
+
+
+  private static void checkRate(final String propertyName, final double rate) {
+    // the negated test also rejects NaN.
+    if(!((rate >= 0.0) && (rate <= 1.0))) {
+      throw new IllegalArgumentException(String.format("%s: %s is not between 0.0 and 1.0",
+        propertyName,rate));
+    }
+  }
+
+
+
+  private static double parseRate(final String propertyName, final String value) {
+    try {
+      return Double.parseDouble(value.trim());
+    } catch(final NumberFormatException e) {
+      throw new IllegalArgumentException(String.format("%s: '%s' is not a number",
+        propertyName,value));
+    }
+  }
+
+
+
+  private static ResultCode parseResultCode(final String value) {
+    final String trimmed = value.trim();
+    for(final ResultCode resultCode : ResultCode.values()) {
+      if(resultCode.getName().equalsIgnoreCase(trimmed)) {
+        return resultCode;
+      }
+    }
+    try {
+      return ResultCode.valueOf(Integer.parseInt(trimmed));
+    } catch(final NumberFormatException e) {
+      throw new IllegalArgumentException(String.format("%s: '%s' is not a result code",
+        PROP_NAME_FAILURE_RESULT_CODE,value));
+    }
+  }
+
+
+
+  private volatile LatencyDistribution defaultLatency = LatencyDistribution.NONE;
+
+
+  private volatile double dropRate;
+
+
+  private volatile double failureRate;
+
+
+  private volatile ResultCode failureResultCode;
+
+
+  private final Map<OperationType,LatencyDistribution> latencies =
+    new EnumMap<OperationType,LatencyDistribution>(OperationType.class);
+
+
+  private final Random random = new Random();
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import samplecode.ldif.CompressedLdifStreams;
+import samplecode.logging.LogAware;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Loads entries from a file containing LDIF into an in-memory directory
+ * server without going through the network listener. The LDIF is
+ * decoded by {@code numParseThreads} threads (the {@code LDIFReader}
+ * still returns entries in the order in which they appear in the
+ * file), and the entries are added to the server in-process with a
+ * single call to {@code InMemoryDirectoryServer.addEntries}, which
+ * takes one snapshot of the server for the whole load instead of one
+ * round-trip per entry.
+ * <p/>
+ * {@code InMemoryDirectoryServerListener} objects are notified of each
+ * entry, in file order, only after every entry has been added, so that
+ * a listener is never told of an entry which the server rejected. A
+ * slow listener therefore does not hold up the load itself, but
+ * {@link #load(File)} does not return until every listener has been
+ * notified.
+ */
+public final class InMemoryBulkLoader implements LogAware {
+
+  /**
+   * Creates a {@code InMemoryBulkLoader} that adds entries to
+   * {@code server} and notifies {@code listeners} of each entry.
+   *
+   * @param server
+   *   The in-memory directory server into which entries are loaded.
+   *   {@code server} is not permitted to be {@code null}.
+   * @param ldapConnectionPool
+   *   The connection pool supplied to the listeners. This parameter is
+   *   permitted to be {@code null} if the listeners do not use it.
+   * @param listeners
+   *   The listeners that are notified of each entry. This parameter is
+   *   not permitted to be {@code null}, but it may be empty.
+   * @param numParseThreads
+   *   The number of threads used to decode LDIF records. A value of
+   *   zero decodes records on the calling thread.
+   */
+  public InMemoryBulkLoader(final InMemoryDirectoryServer server,
+                            final LDAPConnectionPool ldapConnectionPool,
+                            final List<InMemoryDirectoryServerListener> listeners,
+                            final int numParseThreads) {
+    ensureNotNull(server,listeners);
+    ensureTrue(numParseThreads >= 0);
+    this.server = server;
+    this.ldapConnectionPool = ldapConnectionPool;
+    this.listeners = SampleCodeCollectionUtils.newArrayList(listeners);
+    this.numParseThreads = numParseThreads;
+  }
+
+
+
+  /**
+   * Reads every entry from {@code ldifFile}, which may be
+   * gzip-compressed, and adds the entries to the server in-process.
+   *
+   * @param ldifFile
+   *   A file containing entries in the form of LDIF.
+   *
+   * @return The number of entries added to the server.
+   *
+   * @throws IOException
+   *   If an error occurs reading the file.
+   * @throws LDAPException
+   *   If the server rejects one of the entries; in this case none of
+   *   the entries are added and the listeners are not notified.
+   */
+  public int load(final File ldifFile) throws IOException, LDAPException {
+    ensureNotNull(ldifFile);
+
+    final List<Entry> entries = SampleCodeCollectionUtils.newArrayList();
+    final LDIFReader ldifReader =
+      new LDIFReader(CompressedLdifStreams.newInputStream(ldifFile),numParseThreads);
+    try {
+      while(true) {
+        final Entry entry;
+        try {
+          entry = ldifReader.readEntry();
+        } catch(final LDIFException e) {
+          if(e.mayContinueReading()) {
+            getLogger().warn(e);
+            continue;
+          }
+          getLogger().fatal(e);
+          break;
+        }
+        if(entry == null) {
+          break;
+        }
+        entries.add(entry);
+      }
+    } finally {
+      ldifReader.close();
+    }
+
+    server.addEntries(entries);
+    for(final Entry entry : entries) {
+      for(final InMemoryDirectoryServerListener l : listeners) {
+        try {
+          l.entryAction(ldapConnectionPool,entry);
+        } catch(final LDAPException e) {
+          getLogger().error(e);
+        }
+      }
+    }
+    return entries.size();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Log getLogger() {
+    if(logger == null) {
+      logger = LogFactory.getLog(getClass());
+    }
+    return logger;
+  }
+
+
+
+  private final LDAPConnectionPool ldapConnectionPool;
+
+
+  private final List<InMemoryDirectoryServerListener> listeners;
+
+
+  private Log logger;
+
+
+  private final int numParseThreads;
+
+
+  private final InMemoryDirectoryServer server;
+
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ProtocolOp;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+
+/**
+ * One member of an {@link InMemoryDirectoryCluster}. A node is an
+ * in-memory directory server whose clients connect through an
+ * {@link InMemoryFrontEnd}, so that the node can be stopped, started,
+ * paused and resumed, and can have latency and failures injected,
+ * without losing its data. Successful writes received from clients are
+ * handed to the cluster for replication to the other nodes.
+ */
+public final class InMemoryClusterNode {
+
+  InMemoryClusterNode(final String name,
+                      final InMemoryDirectoryServer server,
+                      final int port,
+                      final InMemoryDirectoryCluster cluster) {
+    this.name = name;
+    this.server = server;
+    this.cluster = cluster;
+    this.port = port;
+    faultInjector = new FaultInjector();
+  }
+
+
+
+  /**
+   * @return the name of the node
+   */
+  public String getName() {
+    return name;
+  }
+
+
+
+  /**
+   * @return the in-memory directory server holding the data of the
+   *         node. Changes made directly to the server are not
+   *         replicated.
+   */
+  public InMemoryDirectoryServer getServer() {
+    return server;
+  }
+
+
+
+  /**
+   * @return the fault injector applied to client requests
+   */
+  public FaultInjector getFaultInjector() {
+    return faultInjector;
+  }
+
+
+
+  /**
+   * @return the port on which clients connect to the node
+   */
+  public synchronized int getListenPort() {
+    return frontEnd == null ? port : frontEnd.getListenPort();
+  }
+
+
+
+  /**
+   * @return an LDAP URL for the node
+   */
+  public String getLdapUrl() {
+    return String.format("ldap://localhost:%d",getListenPort());
+  }
+
+
+
+  /**
+   * Starts accepting client connections and applies any changes that
+   * were replicated to the node while it was stopped. The in-memory
+   * server must be listening.
+   *
+   * @throws IOException
+   *   If the port cannot be bound.
+   */
+  public synchronized void start() throws IOException {
+    if(frontEnd == null) {
+      frontEnd = new InMemoryFrontEnd(port,
+        new NodeRequestHandler(InMemoryFrontEnd.newProxyRequestHandler(server),null));
+    }
+    frontEnd.startListening();
+    // a replay which is still running picks up the backlog itself.
+    if(!replaying && !replicationBacklog.isEmpty()) {
+      replaying = true;
+      cluster.replay(this,takeBacklog());
+    }
+  }
+
+
+
+  /**
+   * Stops accepting client connections and closes the connections
+   * that are open. Changes replicated to the node while it is stopped
+   * are applied when it is started again.
+   */
+  public void stop() {
+    synchronized(this) {
+      if(frontEnd != null) {
+        frontEnd.shutDown(true);
+      }
+    }
+  }
+
+
+
+  /**
+   * @return whether the node is stopped
+   */
+  public synchronized boolean isStopped() {
+    return (frontEnd == null) || !frontEnd.isListening();
+  }
+
+
+
+  /**
+   * Holds client requests until {@link #resume()} is invoked, which
+   * simulates a hung server: connections stay open but no responses
+   * are returned. Replication to the node continues.
+   */
+  public void pause() {
+    synchronized(pauseLock) {
+      paused = true;
+    }
+  }
+
+
+
+  /**
+   * Releases client requests held by {@link #pause()}.
+   */
+  public void resume() {
+    synchronized(pauseLock) {
+      paused = false;
+      pauseLock.notifyAll();
+    }
+  }
+
+
+
+  /**
+   * @return whether the node is paused
+   */
+  public boolean isPaused() {
+    synchronized(pauseLock) {
+      return paused;
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("InMemoryClusterNode [name=%s, url=%s, stopped=%b, paused=%b]",
+      name,getLdapUrl(),isStopped(),isPaused());
+  }
+
+
+
+  /**
+   * Queues a replicated change if the node is stopped or is replaying
+   * the changes queued while it was stopped.
+   *
+   * @return {@code true} if the change was queued, {@code false} if
+   *         the node is running and the change should be applied.
+   */
+  synchronized boolean deferIfStopped(final ProtocolOp change) {
+    if(!isStopped() && !replaying) {
+      return false;
+    }
+    replicationBacklog.add(change);
+    return true;
+  }
+
+
+
+  /**
+   * Ends a replay when the backlog is empty or the node has been
+   * stopped again.
+   *
+   * @return the changes queued during the replay, which are replayed
+   *         next, or {@code null} if the replay has ended.
+   */
+  synchronized List<ProtocolOp> nextReplayBatch() {
+    if(replicationBacklog.isEmpty() || isStopped()) {
+      replaying = false;
+      return null;
+    }
+    return takeBacklog();
+  }
+
+
+
+  private List<ProtocolOp> takeBacklog() {
+    final List<ProtocolOp> backlog = replicationBacklog;
+    replicationBacklog = SampleCodeCollectionUtils.newArrayList();
+    return backlog;
+  }
+
+
+
+  void shutDown() {
+    stop();
+    resume();
+    server.shutDown(true);
+  }
+
+
+
+  private LDAPMessage awaitResume(final OperationType operationType, final int messageID) {
+    synchronized(pauseLock) {
+      while(paused) {
+        try {
+          pauseLock.wait();
+        } catch(final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return InterceptingRequestHandler.errorResponse(operationType,messageID,
+            ResultCode.UNAVAILABLE,"interrupted while paused");
+        }
+      }
+    }
+    return null;
+  }
+
+
+
+  /**
+   * Applies the node's pause state and fault injector to each client
+   * request, and hands successful writes to the cluster.
+   */
+  private final class NodeRequestHandler extends InterceptingRequestHandler {
+
+    private NodeRequestHandler(final LDAPListenerRequestHandler delegate,
+                               final LDAPListenerClientConnection clientConnection) {
+      super(delegate,clientConnection);
+    }
+
+
+
+    @Override
+    protected InterceptingRequestHandler
+    newInstance(final LDAPListenerRequestHandler delegateInstance,
+                final LDAPListenerClientConnection clientConnection) throws LDAPException {
+      return new NodeRequestHandler(delegateInstance,clientConnection);
+    }
+
+
+
+    @Override
+    protected LDAPMessage beforeRequest(final OperationType operationType,
+                                        final int messageID,
+                                        final ProtocolOp request,
+                                        final List<Control> controls) {
+      final LDAPMessage response = awaitResume(operationType,messageID);
+      if(response != null) {
+        return response;
+      }
+      return faultInjector.inject(operationType,messageID,getClientConnection());
+    }
+
+
+
+    @Override
+    protected void afterRequest(final OperationType operationType,
+                                final int messageID,
+                                final ProtocolOp request,
+                                final LDAPMessage response,
+                                final long elapsedNanos) {
+      switch(operationType) {
+        case ADD:
+        case DELETE:
+        case MODIFY:
+        case MODIFY_DN:
+          if(ResultCode.SUCCESS.equals(getResultCode(response))) {
+            cluster.replicate(InMemoryClusterNode.this,request);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+  }
+
+
+
+  private final InMemoryDirectoryCluster cluster;
+
+
+  private final FaultInjector faultInjector;
+
+
+  private InMemoryFrontEnd frontEnd;
+
+
+  private final String name;
+
+
+  private final Object pauseLock = new Object();
+
+
+  private boolean paused;
+
+
+  private final int port;
+
+
+  // whether the changes queued while the node was stopped are being
+  // applied; new changes are queued behind them.
+  private boolean replaying;
+
+
+  private List<ProtocolOp> replicationBacklog = SampleCodeCollectionUtils.newArrayList();
+
+
+  private final InMemoryDirectoryServer server;
+
+}
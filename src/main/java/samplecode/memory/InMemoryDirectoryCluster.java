@@ -0,0 +1,453 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.protocol.*;
+import com.unboundid.ldap.sdk.*;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import samplecode.logging.LogAware;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * A set of in-memory directory servers that replicate client changes
+ * to one another, for exercising failover and load-balancing code
+ * such as {@code ServerSetDemo} on a single machine.
+ * <p/>
+ * A successful add, delete, modify or modify DN received by one node
+ * from a client is applied to every other node after the replication
+ * lag. Nodes can be stopped, started, paused and resumed, and each
+ * node has its own {@link FaultInjector}; see
+ * {@link InMemoryClusterNode}.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * InMemoryDirectoryServerConfig cfg =
+ *   new InMemoryDirectoryServerConfig("dc=example,dc=com");
+ * InMemoryDirectoryCluster cluster =
+ *   InMemoryDirectoryCluster.newInstance(cfg,3,0);
+ * cluster.setReplicationLagMillis(250);
+ * cluster.startListening();
+ * ServerSet serverSet = cluster.newFailoverServerSet();
+ * ...
+ * cluster.getNode(0).stop();
+ * ...
+ * cluster.shutDown();
+ * </pre>
+ * <p/>
+ * </blockquote>
+ */
+public final class InMemoryDirectoryCluster implements LogAware {
+
+  /**
+   * Creates a cluster of {@code numNodes} nodes. The nodes do not
+   * accept connections until {@link #startListening()} is invoked.
+   *
+   * @param template
+   *   The configuration of each node. The listener configurations of
+   *   {@code template} are ignored.
+   * @param numNodes
+   *   The number of nodes, which must be at least one.
+   * @param basePort
+   *   The port of the first node; node {@code i} listens on
+   *   {@code basePort + i}. If {@code basePort} is zero, each node
+   *   listens on a free port.
+   *
+   * @return a new cluster
+   *
+   * @throws LDAPException
+   *   If a node cannot be created.
+   */
+  public static InMemoryDirectoryCluster newInstance(final InMemoryDirectoryServerConfig template,
+                                                     final int numNodes,
+                                                     final int basePort)
+    throws LDAPException {
+    ensureNotNull(template);
+    ensureTrue(numNodes >= 1);
+    ensureTrue(basePort >= 0);
+    return new InMemoryDirectoryCluster(template,numNodes,basePort);
+  }
+
+
+
+  private InMemoryDirectoryCluster(final InMemoryDirectoryServerConfig template,
+                                   final int numNodes,
+                                   final int basePort) throws LDAPException {
+    final List<InMemoryClusterNode> list = SampleCodeCollectionUtils.newArrayList(numNodes);
+    replicationExecutors = SampleCodeCollectionUtils.newHashMap();
+    for(int i = 0; i < numNodes; ++i) {
+      final InMemoryDirectoryServerConfig cfg = new InMemoryDirectoryServerConfig(template);
+      cfg.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("backend",0));
+      final InMemoryDirectoryServer server = new InMemoryDirectoryServer(cfg);
+      final int port = basePort == 0 ? 0 : basePort + i;
+      final InMemoryClusterNode node =
+        new InMemoryClusterNode("node-" + i,server,port,this);
+      list.add(node);
+      replicationExecutors.put(node,Executors.newSingleThreadScheduledExecutor());
+    }
+    nodes = Collections.unmodifiableList(list);
+  }
+
+
+
+  /**
+   * Starts the in-memory servers and the client listeners of every
+   * node.
+   *
+   * @throws LDAPException
+   *   If an in-memory server cannot be started.
+   * @throws IOException
+   *   If a client listener cannot be started.
+   */
+  public void startListening() throws LDAPException, IOException {
+    for(final InMemoryClusterNode node : nodes) {
+      node.getServer().startListening();
+      node.start();
+    }
+  }
+
+
+
+  /**
+   * Shuts down every node and stops replication. Changes that have not
+   * yet been replicated are discarded.
+   */
+  public void shutDown() {
+    for(final ScheduledExecutorService executor : replicationExecutors.values()) {
+      executor.shutdownNow();
+    }
+    for(final InMemoryClusterNode node : nodes) {
+      node.shutDown();
+    }
+  }
+
+
+
+  /**
+   * Adds {@code entries} to every node directly, without replication;
+   * this is the way to load the initial data set.
+   *
+   * @param entries
+   *   The entries, parents first.
+   *
+   * @throws LDAPException
+   *   If a node rejects an entry.
+   */
+  public void addEntries(final List<? extends Entry> entries) throws LDAPException {
+    ensureNotNull(entries);
+    for(final InMemoryClusterNode node : nodes) {
+      node.getServer().addEntries(entries);
+    }
+  }
+
+
+
+  /**
+   * @param index
+   *   the index of a node, from zero.
+   *
+   * @return the node
+   */
+  public InMemoryClusterNode getNode(final int index) {
+    return nodes.get(index);
+  }
+
+
+
+  /**
+   * @return an unmodifiable list of the nodes
+   */
+  public List<InMemoryClusterNode> getNodes() {
+    return nodes;
+  }
+
+
+
+  /**
+   * @return the LDAP URLs of the nodes, suitable for the
+   *         {@code --server-url} argument of {@code ServerSetDemo}
+   */
+  public List<String> getLdapUrls() {
+    final List<String> urls = SampleCodeCollectionUtils.newArrayList(nodes.size());
+    for(final InMemoryClusterNode node : nodes) {
+      urls.add(node.getLdapUrl());
+    }
+    return urls;
+  }
+
+
+
+  /**
+   * @return a server set which tries the nodes in order
+   */
+  public ServerSet newFailoverServerSet() {
+    return new FailoverServerSet(getHostnames(),getPorts());
+  }
+
+
+
+  /**
+   * @return a server set which spreads connections across the nodes
+   */
+  public ServerSet newRoundRobinServerSet() {
+    return new RoundRobinServerSet(getHostnames(),getPorts());
+  }
+
+
+
+  /**
+   * @return the delay in milliseconds before a change is applied to
+   *         the other nodes
+   */
+  public long getReplicationLagMillis() {
+    return replicationLagMillis;
+  }
+
+
+
+  /**
+   * Sets the delay before a change is applied to the other nodes.
+   * Changes are applied to a node in the order in which they become
+   * due, so reducing the lag while changes are outstanding may reorder
+   * them.
+   *
+   * @param replicationLagMillis
+   *   the delay in milliseconds; zero applies changes as soon as
+   *   possible.
+   */
+  public void setReplicationLagMillis(final long replicationLagMillis) {
+    ensureTrue(replicationLagMillis >= 0);
+    this.replicationLagMillis = replicationLagMillis;
+  }
+
+
+
+  /**
+   * @return the number of changes waiting to be applied to running
+   *         nodes
+   */
+  public int getPendingChangeCount() {
+    return pendingChanges.get();
+  }
+
+
+
+  /**
+   * @return the number of replicated changes a node rejected, for
+   *         example because of a conflicting change made to that node
+   */
+  public long getReplicationConflictCount() {
+    return replicationConflicts.get();
+  }
+
+
+
+  /**
+   * Waits for replication to catch up.
+   *
+   * @param timeoutMillis
+   *   The maximum time to wait in milliseconds.
+   *
+   * @return {@code true} if no changes are waiting to be applied to
+   *         running nodes.
+   *
+   * @throws InterruptedException
+   *   If the thread is interrupted while waiting.
+   */
+  public boolean awaitReplication(final long timeoutMillis) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized(pendingChanges) {
+      while(pendingChanges.get() > 0) {
+        final long remaining = deadline - System.currentTimeMillis();
+        if(remaining <= 0) {
+          return false;
+        }
+        pendingChanges.wait(remaining);
+      }
+    }
+    return true;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Log getLogger() {
+    if(logger == null) {
+      logger = LogFactory.getLog(getClass());
+    }
+    return logger;
+  }
+
+
+
+  /**
+   * Schedules {@code change}, which {@code source} has applied, for
+   * every other node.
+   */
+  void replicate(final InMemoryClusterNode source, final ProtocolOp change) {
+    final long lag = replicationLagMillis;
+    for(final InMemoryClusterNode target : nodes) {
+      if(target == source) {
+        continue;
+      }
+      pendingChanges.incrementAndGet();
+      replicationExecutors.get(target).schedule(new Runnable() {
+
+        @Override
+        public void run() {
+          try {
+            apply(target,change);
+          } finally {
+            changeApplied();
+          }
+        }
+
+      },lag,TimeUnit.MILLISECONDS);
+    }
+  }
+
+
+
+  /**
+   * Applies the changes that were queued while {@code target} was
+   * stopped, ahead of changes that are not yet due. The changes are
+   * counted as pending until they are applied, and the replay itself
+   * counts as one more pending change until it ends. {@code target}
+   * keeps queueing new changes until its backlog is empty, so that no
+   * change overtakes an older one; the changes queued during the
+   * replay are replayed in turn.
+   */
+  void replay(final InMemoryClusterNode target, final List<ProtocolOp> backlog) {
+    pendingChanges.addAndGet(backlog.size() + 1);
+    replicationExecutors.get(target).execute(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          List<ProtocolOp> changes = backlog;
+          while(changes != null) {
+            for(final ProtocolOp change : changes) {
+              try {
+                applyNow(target,change);
+              } finally {
+                changeApplied();
+              }
+            }
+            changes = target.nextReplayBatch();
+            if(changes != null) {
+              pendingChanges.addAndGet(changes.size());
+            }
+          }
+        } finally {
+          changeApplied();
+        }
+      }
+
+    });
+  }
+
+
+
+  /**
+   * Applies a replicated change to {@code target}, or queues it if
+   * {@code target} is stopped or is replaying its backlog.
+   */
+  void apply(final InMemoryClusterNode target, final ProtocolOp change) {
+    if(!target.deferIfStopped(change)) {
+      applyNow(target,change);
+    }
+  }
+
+
+
+  private void changeApplied() {
+    synchronized(pendingChanges) {
+      pendingChanges.decrementAndGet();
+      pendingChanges.notifyAll();
+    }
+  }
+
+
+
+  private void applyNow(final InMemoryClusterNode target, final ProtocolOp change) {
+    final InMemoryDirectoryServer server = target.getServer();
+    try {
+      if(change instanceof AddRequestProtocolOp) {
+        server.add(((AddRequestProtocolOp) change).toAddRequest());
+      } else if(change instanceof DeleteRequestProtocolOp) {
+        server.delete(((DeleteRequestProtocolOp) change).toDeleteRequest());
+      } else if(change instanceof ModifyRequestProtocolOp) {
+        server.modify(((ModifyRequestProtocolOp) change).toModifyRequest());
+      } else if(change instanceof ModifyDNRequestProtocolOp) {
+        server.modifyDN(((ModifyDNRequestProtocolOp) change).toModifyDNRequest());
+      }
+    } catch(final LDAPException e) {
+      replicationConflicts.incrementAndGet();
+      getLogger().warn(String.format("%s rejected replicated change %s: %s",
+        target.getName(),change,e.getMessage()));
+    }
+  }
+
+
+
+  private String[] getHostnames() {
+    final String[] hostnames = new String[nodes.size()];
+    for(int i = 0; i < hostnames.length; ++i) {
+      hostnames[i] = "localhost";
+    }
+    return hostnames;
+  }
+
+
+
+  private int[] getPorts() {
+    final int[] ports = new int[nodes.size()];
+    for(int i = 0; i < ports.length; ++i) {
+      ports[i] = nodes.get(i).getListenPort();
+    }
+    return ports;
+  }
+
+
+
+  private Log logger;
+
+
+  private final List<InMemoryClusterNode> nodes;
+
+
+  private final AtomicInteger pendingChanges = new AtomicInteger();
+
+
+  private final AtomicLong replicationConflicts = new AtomicLong();
+
+
+  private final Map<InMemoryClusterNode,ScheduledExecutorService> replicationExecutors;
+
+
+  private volatile long replicationLagMillis;
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.listener.ProxyRequestHandler;
+import com.unboundid.ldap.sdk.SingleServerSet;
+
+import java.io.IOException;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * A network listener that accepts client connections on behalf of an
+ * in-memory directory server. Requests are handled by a chain of
+ * {@link InterceptingRequestHandler} objects ending in a
+ * {@code ProxyRequestHandler} that forwards to the listener of the
+ * in-memory server. The front end can be shut down and started again
+ * on the same port, which the in-memory server's own listener does not
+ * support independently of its data.
+ */
+public final class InMemoryFrontEnd {
+
+  /**
+   * Creates a request handler which forwards every request to the
+   * first listener of {@code server}. The server must be listening.
+   *
+   * @param server
+   *   The in-memory directory server. {@code server} is not permitted
+   *   to be {@code null}.
+   *
+   * @return A proxy request handler.
+   */
+  public static LDAPListenerRequestHandler
+  newProxyRequestHandler(final InMemoryDirectoryServer server) {
+    ensureNotNull(server);
+    return new ProxyRequestHandler(new SingleServerSet("localhost",server.getListenPort()));
+  }
+
+
+
+  /**
+   * Creates a front end which listens on {@code port}.
+   *
+   * @param port
+   *   The port on which to listen, or zero to choose a free port
+   *   when the front end is first started. A chosen port is reused
+   *   when the front end is started again.
+   * @param requestHandler
+   *   The request handler for client connections.
+   */
+  public InMemoryFrontEnd(final int port, final LDAPListenerRequestHandler requestHandler) {
+    ensureTrue(port >= 0);
+    ensureNotNull(requestHandler);
+    listenerConfig = new LDAPListenerConfig(port,requestHandler);
+    listenerConfig.setUseReuseAddress(true);
+  }
+
+
+
+  /**
+   * Starts accepting client connections. This method has no effect if
+   * the front end is already listening.
+   *
+   * @throws IOException
+   *   If the port cannot be bound.
+   */
+  public synchronized void startListening() throws IOException {
+    if(listener != null) {
+      return;
+    }
+    final LDAPListener l = new LDAPListener(listenerConfig);
+    l.startListening();
+    listenerConfig.setListenPort(l.getListenPort());
+    listener = l;
+  }
+
+
+
+  /**
+   * Stops accepting client connections.
+   *
+   * @param closeExistingConnections
+   *   Whether connections that have already been accepted should be
+   *   closed.
+   */
+  public synchronized void shutDown(final boolean closeExistingConnections) {
+    if(listener != null) {
+      listener.shutDown(closeExistingConnections);
+      listener = null;
+    }
+  }
+
+
+
+  /**
+   * @return whether the front end is accepting client connections
+   */
+  public synchronized boolean isListening() {
+    return listener != null;
+  }
+
+
+
+  /**
+   * @return the port on which the front end listens, which is zero
+   *         if a free port was requested and the front end has not
+   *         been started.
+   */
+  public synchronized int getListenPort() {
+    return listenerConfig.getListenPort();
+  }
+
+
+
+  private LDAPListener listener;
+
+
+  private final LDAPListenerConfig listenerConfig;
+
+}
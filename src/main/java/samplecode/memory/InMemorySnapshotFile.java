@@ -0,0 +1,364 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.asn1.ASN1Element;
+import com.unboundid.asn1.ASN1Exception;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.asn1.ASN1Sequence;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.sdk.*;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * A compact binary snapshot of the contents of an in-memory directory
+ * server. Restoring a snapshot is a single pass over a memory-mapped
+ * file and avoids parsing LDIF, which makes it suitable for test
+ * fixtures that start many servers with the same data.
+ * <p/>
+ * <b>file format</b>
+ * <p/>
+ * <pre>
+ * header:  int magic, int version, int entryCount, long indexOffset
+ * entries: entryCount records of int length, byte[length] where the
+ *          bytes are the BER encoding of
+ *          SEQUENCE { dn OCTET STRING, attributes SEQUENCE OF Attribute }
+ * index:   entryCount records of int length, byte[length] (the UTF-8
+ *          normalized DN), long offset (of the entry record)
+ * </pre>
+ * Entries are stored parents first, in the order in which the server
+ * returns them, so that they can be added back in one pass. Only user
+ * attributes are stored; the server regenerates operational attributes
+ * (if it is configured to do so) when the snapshot is restored.
+ */
+public final class InMemorySnapshotFile {
+
+  /**
+   * Creates a {@code InMemorySnapshotFile} which reads and writes
+   * {@code file}.
+   *
+   * @param file
+   *   The snapshot file. {@code file} is not permitted to be
+   *   {@code null}.
+   *
+   * @return a new {@code InMemorySnapshotFile}
+   */
+  public static InMemorySnapshotFile newInstance(final File file) {
+    ensureNotNull(file);
+    return new InMemorySnapshotFile(file);
+  }
+
+
+
+  /**
+   * Identifies a file as an in-memory server snapshot.
+   */
+  private static final int MAGIC = 0x4C445353;
+
+
+  /**
+   * The version of the file format.
+   */
+  private static final int VERSION = 1;
+
+
+  /**
+   * The size of the header in bytes.
+   */
+  private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+
+  private InMemorySnapshotFile(final File file) {
+    this.file = file;
+  }
+
+
+
+  /**
+   * @return the snapshot file
+   */
+  public File getFile() {
+    return file;
+  }
+
+
+
+  /**
+   * Writes every entry held by {@code server} to the snapshot file. An
+   * existing file is replaced.
+   *
+   * @param server
+   *   The server whose contents are written.
+   *
+   * @return The number of entries written.
+   *
+   * @throws LDAPException
+   *   If the entries cannot be retrieved from the server.
+   * @throws IOException
+   *   If the file cannot be written.
+   */
+  public int write(final InMemoryDirectoryServer server) throws LDAPException, IOException {
+    ensureNotNull(server);
+
+    final List<byte[]> encodedEntries = SampleCodeCollectionUtils.newArrayList();
+    final List<byte[]> encodedDns = SampleCodeCollectionUtils.newArrayList();
+    long size = HEADER_SIZE;
+    for(final Entry entry : getEntries(server)) {
+      final byte[] encodedEntry = encode(entry).encode();
+      final byte[] encodedDn = entry.getParsedDN().toNormalizedString().getBytes(UTF8);
+      encodedEntries.add(encodedEntry);
+      encodedDns.add(encodedDn);
+      size += 4 + encodedEntry.length + 4 + encodedDn.length + 8;
+    }
+    if(size > Integer.MAX_VALUE) {
+      throw new IOException(String.format("a snapshot of %d bytes is too large to map.",size));
+    }
+
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file,"rw");
+    try {
+      randomAccessFile.setLength(size);
+      final FileChannel channel = randomAccessFile.getChannel();
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,0,size);
+      final int entryCount = encodedEntries.size();
+      final long[] offsets = new long[entryCount];
+      buffer.position(HEADER_SIZE);
+      for(int i = 0; i < entryCount; ++i) {
+        offsets[i] = buffer.position();
+        final byte[] encodedEntry = encodedEntries.get(i);
+        buffer.putInt(encodedEntry.length);
+        buffer.put(encodedEntry);
+      }
+      final long indexOffset = buffer.position();
+      for(int i = 0; i < entryCount; ++i) {
+        final byte[] encodedDn = encodedDns.get(i);
+        buffer.putInt(encodedDn.length);
+        buffer.put(encodedDn);
+        buffer.putLong(offsets[i]);
+      }
+      buffer.putInt(0,MAGIC);
+      buffer.putInt(4,VERSION);
+      buffer.putInt(8,entryCount);
+      buffer.putLong(12,indexOffset);
+      buffer.force();
+      index = null;
+      return entryCount;
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+
+
+  /**
+   * Replaces the contents of {@code server} with the entries in the
+   * snapshot file.
+   *
+   * @param server
+   *   The server into which the entries are restored.
+   *
+   * @return The number of entries restored.
+   *
+   * @throws LDAPException
+   *   If the server rejects an entry; in this case the server is left
+   *   empty.
+   * @throws IOException
+   *   If the file cannot be read or is not a snapshot.
+   */
+  public int restore(final InMemoryDirectoryServer server) throws LDAPException, IOException {
+    ensureNotNull(server);
+
+    final List<Entry> entries = readEntries();
+    server.clear();
+    server.addEntries(entries);
+    return entries.size();
+  }
+
+
+
+  /**
+   * Decodes every entry in the snapshot file, in the order in which
+   * they were written.
+   *
+   * @return The entries in the snapshot file.
+   *
+   * @throws IOException
+   *   If the file cannot be read or is not a snapshot.
+   */
+  public List<Entry> readEntries() throws IOException {
+    final ByteBuffer buffer = map();
+    final int entryCount = buffer.getInt(8);
+    final List<Entry> entries = SampleCodeCollectionUtils.newArrayList(entryCount);
+    buffer.position(HEADER_SIZE);
+    for(int i = 0; i < entryCount; ++i) {
+      entries.add(decodeEntry(buffer));
+    }
+    return entries;
+  }
+
+
+
+  /**
+   * Decodes the entry named by {@code dn} using the DN index, without
+   * decoding any other entry.
+   *
+   * @param dn
+   *   The distinguished name of the entry.
+   *
+   * @return The entry, or {@code null} if the snapshot does not
+   *         contain an entry named by {@code dn}.
+   *
+   * @throws IOException
+   *   If the file cannot be read or is not a snapshot.
+   * @throws LDAPException
+   *   If {@code dn} is not a valid distinguished name.
+   */
+  public Entry readEntry(final String dn) throws IOException, LDAPException {
+    ensureNotNull(dn);
+
+    final ByteBuffer buffer = map();
+    final Long offset = getIndex(buffer).get(new DN(dn).toNormalizedString());
+    if(offset == null) {
+      return null;
+    }
+    buffer.position(offset.intValue());
+    return decodeEntry(buffer);
+  }
+
+
+
+  private Map<String,Long> getIndex(final ByteBuffer buffer) {
+    if(index == null) {
+      final int entryCount = buffer.getInt(8);
+      final Map<String,Long> map = SampleCodeCollectionUtils.newHashMap();
+      buffer.position((int) buffer.getLong(12));
+      for(int i = 0; i < entryCount; ++i) {
+        final byte[] encodedDn = new byte[buffer.getInt()];
+        buffer.get(encodedDn);
+        map.put(new String(encodedDn,UTF8),buffer.getLong());
+      }
+      index = map;
+    }
+    return index;
+  }
+
+
+
+  /**
+   * Maps the snapshot file read-only and validates the header.
+   */
+  private ByteBuffer map() throws IOException {
+    if(!file.exists()) {
+      throw new FileNotFoundException(String.format("%s does not exist.",
+        file.getAbsolutePath()));
+    }
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file,"r");
+    try {
+      final FileChannel channel = randomAccessFile.getChannel();
+      final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+      if((buffer.limit() < HEADER_SIZE) || (buffer.getInt(0) != MAGIC)) {
+        throw new IOException(String.format("%s is not an in-memory server snapshot.",
+          file.getAbsolutePath()));
+      }
+      if(buffer.getInt(4) != VERSION) {
+        throw new IOException(String.format("%s has unsupported snapshot version %d.",
+          file.getAbsolutePath(),buffer.getInt(4)));
+      }
+      return buffer;
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+
+
+  /**
+   * Decodes the entry record at the current position of
+   * {@code buffer}, advancing the position past the record.
+   */
+  private Entry decodeEntry(final ByteBuffer buffer) throws IOException {
+    final byte[] encodedEntry = new byte[buffer.getInt()];
+    buffer.get(encodedEntry);
+    try {
+      final ASN1Element[] elements = ASN1Sequence.decodeAsSequence(encodedEntry).elements();
+      final String dn = elements[0].decodeAsOctetString().stringValue();
+      final ASN1Element[] encodedAttributes = elements[1].decodeAsSequence().elements();
+      final List<Attribute> attributes =
+        SampleCodeCollectionUtils.newArrayList(encodedAttributes.length);
+      for(final ASN1Element encodedAttribute : encodedAttributes) {
+        attributes.add(Attribute.decode(encodedAttribute.decodeAsSequence()));
+      }
+      return new Entry(dn,attributes);
+    } catch(final ASN1Exception e) {
+      throw new IOException(e.getMessage());
+    } catch(final LDAPException e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+
+
+  private static ASN1Sequence encode(final Entry entry) {
+    final List<ASN1Element> encodedAttributes = SampleCodeCollectionUtils.newArrayList();
+    for(final Attribute attribute : entry.getAttributes()) {
+      encodedAttributes.add(attribute.encode());
+    }
+    return new ASN1Sequence(new ASN1OctetString(entry.getDN()),
+      new ASN1Sequence(encodedAttributes));
+  }
+
+
+
+  /**
+   * Retrieves every entry, parents first, from each base DN of
+   * {@code server}.
+   */
+  private static List<Entry> getEntries(final InMemoryDirectoryServer server)
+    throws LDAPException {
+    final List<Entry> entries = SampleCodeCollectionUtils.newArrayList();
+    final Filter filter = Filter.createPresenceFilter("objectClass");
+    for(final DN baseDn : server.getBaseDNs()) {
+      final SearchResult searchResult;
+      try {
+        searchResult = server.search(baseDn.toString(),SearchScope.SUB,filter,"*");
+      } catch(final LDAPSearchException e) {
+        if(e.getResultCode().equals(ResultCode.NO_SUCH_OBJECT)) {
+          continue;
+        }
+        throw e;
+      }
+      entries.addAll(searchResult.getSearchEntries());
+    }
+    return entries;
+  }
+
+
+
+  private final File file;
+
+
+  /**
+   * Maps normalized DNs to entry record offsets; loaded on first use.
+   */
+  private Map<String,Long> index;
+
+}
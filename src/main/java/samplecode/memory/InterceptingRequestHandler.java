@@ -0,0 +1,428 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.*;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+
+import java.util.List;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * A request handler that passes every request to another request
+ * handler, giving subclasses the opportunity to act before and after
+ * each operation. A subclass can answer a request itself (for example
+ * with an error result) by returning a response from
+ * {@link #beforeRequest}, in which case the delegate never sees the
+ * request.
+ * <p/>
+ * Interceptors are chained by passing one interceptor as the delegate
+ * of another; the innermost delegate is usually a
+ * {@code ProxyRequestHandler} in front of an in-memory directory
+ * server (see {@link InMemoryFrontEnd}).
+ */
+public abstract class InterceptingRequestHandler extends LDAPListenerRequestHandler {
+
+  /**
+   * Creates an error response of the type appropriate to
+   * {@code operationType}.
+   *
+   * @param operationType
+   *   The type of the operation being answered.
+   * @param messageID
+   *   The message ID of the request.
+   * @param resultCode
+   *   The result code of the response.
+   * @param diagnosticMessage
+   *   The diagnostic message of the response, which may be
+   *   {@code null}.
+   *
+   * @return The response message.
+   */
+  protected static LDAPMessage errorResponse(final OperationType operationType,
+                                             final int messageID,
+                                             final ResultCode resultCode,
+                                             final String diagnosticMessage) {
+    final int rc = resultCode.intValue();
+    final ProtocolOp op;
+    switch(operationType) {
+      case ADD:
+        op = new AddResponseProtocolOp(rc,null,diagnosticMessage,null);
+        break;
+      case BIND:
+        op = new BindResponseProtocolOp(rc,null,diagnosticMessage,null,null);
+        break;
+      case COMPARE:
+        op = new CompareResponseProtocolOp(rc,null,diagnosticMessage,null);
+        break;
+      case DELETE:
+        op = new DeleteResponseProtocolOp(rc,null,diagnosticMessage,null);
+        break;
+      case EXTENDED:
+        op = new ExtendedResponseProtocolOp(rc,null,diagnosticMessage,null,null,null);
+        break;
+      case MODIFY:
+        op = new ModifyResponseProtocolOp(rc,null,diagnosticMessage,null);
+        break;
+      case MODIFY_DN:
+        op = new ModifyDNResponseProtocolOp(rc,null,diagnosticMessage,null);
+        break;
+      case SEARCH:
+        op = new SearchResultDoneProtocolOp(rc,null,diagnosticMessage,null);
+        break;
+      default:
+        throw new IllegalArgumentException(operationType + " has no response.");
+    }
+    return new LDAPMessage(messageID,op);
+  }
+
+
+
+  /**
+   * Retrieves the result code from a response message.
+   *
+   * @param response
+   *   A response message returned by a request handler.
+   *
+   * @return The result code, or {@code null} if {@code response} is
+   *         {@code null} or is not a result.
+   */
+  protected static ResultCode getResultCode(final LDAPMessage response) {
+    if(response == null) {
+      return null;
+    }
+    final ProtocolOp op = response.getProtocolOp();
+    if(op instanceof GenericResponseProtocolOp) {
+      return ResultCode.valueOf(((GenericResponseProtocolOp) op).getResultCode());
+    } else if(op instanceof BindResponseProtocolOp) {
+      return ResultCode.valueOf(((BindResponseProtocolOp) op).getResultCode());
+    } else if(op instanceof ExtendedResponseProtocolOp) {
+      return ResultCode.valueOf(((ExtendedResponseProtocolOp) op).getResultCode());
+    }
+    return null;
+  }
+
+
+
+  /**
+   * Creates an interceptor which passes requests to {@code delegate}.
+   *
+   * @param delegate
+   *   The request handler to which requests are passed.
+   *   {@code delegate} is not permitted to be {@code null}.
+   * @param clientConnection
+   *   The client connection served by this instance, or {@code null}
+   *   for the template instance given to the listener.
+   */
+  protected InterceptingRequestHandler(final LDAPListenerRequestHandler delegate,
+                                       final LDAPListenerClientConnection clientConnection) {
+    ensureNotNull(delegate);
+    this.delegate = delegate;
+    this.clientConnection = clientConnection;
+  }
+
+
+
+  /**
+   * Creates the per-connection instance of this interceptor. This is
+   * invoked by {@link #newInstance(LDAPListenerClientConnection)} with
+   * the per-connection instance of the delegate.
+   *
+   * @param delegateInstance
+   *   The per-connection instance of the delegate.
+   * @param clientConnection
+   *   The client connection.
+   *
+   * @return A new interceptor that shares any state (statistics,
+   *         configuration) with this interceptor.
+   *
+   * @throws LDAPException
+   *   If the instance cannot be created.
+   */
+  protected abstract InterceptingRequestHandler
+  newInstance(LDAPListenerRequestHandler delegateInstance,
+              LDAPListenerClientConnection clientConnection) throws LDAPException;
+
+
+
+  /**
+   * Invoked before a request is passed to the delegate. This
+   * implementation does nothing and returns {@code null}.
+   *
+   * @param operationType
+   *   The type of the operation.
+   * @param messageID
+   *   The message ID of the request.
+   * @param request
+   *   The request protocol op.
+   * @param controls
+   *   The request controls.
+   *
+   * @return A response which is returned to the client instead of
+   *         passing the request to the delegate, or {@code null} to
+   *         pass the request to the delegate.
+   */
+  protected LDAPMessage beforeRequest(final OperationType operationType,
+                                      final int messageID,
+                                      final ProtocolOp request,
+                                      final List<Control> controls) {
+    return null;
+  }
+
+
+
+  /**
+   * Invoked after the delegate has processed a request. This
+   * implementation does nothing.
+   *
+   * @param operationType
+   *   The type of the operation.
+   * @param messageID
+   *   The message ID of the request.
+   * @param request
+   *   The request protocol op.
+   * @param response
+   *   The response returned by the delegate.
+   * @param elapsedNanos
+   *   The time in nanoseconds the delegate spent processing the
+   *   request.
+   */
+  protected void afterRequest(final OperationType operationType,
+                              final int messageID,
+                              final ProtocolOp request,
+                              final LDAPMessage response,
+                              final long elapsedNanos) {
+    // This block deliberately left empty
+  }
+
+
+
+  /**
+   * @return the request handler to which requests are passed
+   */
+  protected final LDAPListenerRequestHandler getDelegate() {
+    return delegate;
+  }
+
+
+
+  /**
+   * @return the client connection served by this instance, or
+   *         {@code null} for the template instance
+   */
+  protected final LDAPListenerClientConnection getClientConnection() {
+    return clientConnection;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public final LDAPListenerRequestHandler
+  newInstance(final LDAPListenerClientConnection connection) throws LDAPException {
+    return newInstance(delegate.newInstance(connection),connection);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void closeInstance() {
+    delegate.closeInstance();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void processAbandonRequest(final int messageID,
+                                    final AbandonRequestProtocolOp request,
+                                    final List<Control> controls) {
+    delegate.processAbandonRequest(messageID,request,controls);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPMessage processAddRequest(final int messageID,
+                                       final AddRequestProtocolOp request,
+                                       final List<Control> controls) {
+    LDAPMessage response = beforeRequest(OperationType.ADD,messageID,request,controls);
+    if(response == null) {
+      final long start = System.nanoTime();
+      response = delegate.processAddRequest(messageID,request,controls);
+      afterRequest(OperationType.ADD,messageID,request,response,System.nanoTime() - start);
+    }
+    return response;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPMessage processBindRequest(final int messageID,
+                                        final BindRequestProtocolOp request,
+                                        final List<Control> controls) {
+    LDAPMessage response = beforeRequest(OperationType.BIND,messageID,request,controls);
+    if(response == null) {
+      final long start = System.nanoTime();
+      response = delegate.processBindRequest(messageID,request,controls);
+      afterRequest(OperationType.BIND,messageID,request,response,System.nanoTime() - start);
+    }
+    return response;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPMessage processCompareRequest(final int messageID,
+                                           final CompareRequestProtocolOp request,
+                                           final List<Control> controls) {
+    LDAPMessage response = beforeRequest(OperationType.COMPARE,messageID,request,controls);
+    if(response == null) {
+      final long start = System.nanoTime();
+      response = delegate.processCompareRequest(messageID,request,controls);
+      afterRequest(OperationType.COMPARE,messageID,request,response,
+        System.nanoTime() - start);
+    }
+    return response;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPMessage processDeleteRequest(final int messageID,
+                                          final DeleteRequestProtocolOp request,
+                                          final List<Control> controls) {
+    LDAPMessage response = beforeRequest(OperationType.DELETE,messageID,request,controls);
+    if(response == null) {
+      final long start = System.nanoTime();
+      response = delegate.processDeleteRequest(messageID,request,controls);
+      afterRequest(OperationType.DELETE,messageID,request,response,
+        System.nanoTime() - start);
+    }
+    return response;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPMessage processExtendedRequest(final int messageID,
+                                            final ExtendedRequestProtocolOp request,
+                                            final List<Control> controls) {
+    LDAPMessage response = beforeRequest(OperationType.EXTENDED,messageID,request,controls);
+    if(response == null) {
+      final long start = System.nanoTime();
+      response = delegate.processExtendedRequest(messageID,request,controls);
+      afterRequest(OperationType.EXTENDED,messageID,request,response,
+        System.nanoTime() - start);
+    }
+    return response;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPMessage processModifyRequest(final int messageID,
+                                          final ModifyRequestProtocolOp request,
+                                          final List<Control> controls) {
+    LDAPMessage response = beforeRequest(OperationType.MODIFY,messageID,request,controls);
+    if(response == null) {
+      final long start = System.nanoTime();
+      response = delegate.processModifyRequest(messageID,request,controls);
+      afterRequest(OperationType.MODIFY,messageID,request,response,
+        System.nanoTime() - start);
+    }
+    return response;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPMessage processModifyDNRequest(final int messageID,
+                                            final ModifyDNRequestProtocolOp request,
+                                            final List<Control> controls) {
+    LDAPMessage response = beforeRequest(OperationType.MODIFY_DN,messageID,request,controls);
+    if(response == null) {
+      final long start = System.nanoTime();
+      response = delegate.processModifyDNRequest(messageID,request,controls);
+      afterRequest(OperationType.MODIFY_DN,messageID,request,response,
+        System.nanoTime() - start);
+    }
+    return response;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public LDAPMessage processSearchRequest(final int messageID,
+                                          final SearchRequestProtocolOp request,
+                                          final List<Control> controls) {
+    LDAPMessage response = beforeRequest(OperationType.SEARCH,messageID,request,controls);
+    if(response == null) {
+      final long start = System.nanoTime();
+      response = delegate.processSearchRequest(messageID,request,controls);
+      afterRequest(OperationType.SEARCH,messageID,request,response,
+        System.nanoTime() - start);
+    }
+    return response;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void processUnbindRequest(final int messageID,
+                                   final UnbindRequestProtocolOp request,
+                                   final List<Control> controls) {
+    delegate.processUnbindRequest(messageID,request,controls);
+  }
+
+
+
+  private final LDAPListenerClientConnection clientConnection;
+
+
+  private final LDAPListenerRequestHandler delegate;
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import java.util.Random;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * The distribution from which a {@link FaultInjector} draws the latency
+ * added to a request. Three shapes are supported:
+ * <ul>
+ * <li>fixed: every request is delayed by the same amount</li>
+ * <li>uniform: the delay is drawn uniformly from a range</li>
+ * <li>long-tail: the delay is drawn from a log-normal distribution
+ * described by its median and 99th percentile, so that most requests
+ * are fast and a few are very slow</li>
+ * </ul>
+ * Distributions can be written as strings, for use in properties files:
+ * {@code none}, {@code fixed:5}, {@code uniform:1-20} and
+ * {@code longTail:5,250} (median 5ms, 99th percentile 250ms).
+ */
+public final class LatencyDistribution {
+
+  /**
+   * A distribution which adds no latency.
+   */
+  public static final LatencyDistribution NONE = new LatencyDistribution(Shape.FIXED,0,0);
+
+
+
+  /**
+   * @param millis
+   *   the delay in milliseconds, which must not be negative.
+   *
+   * @return a distribution which always returns {@code millis}
+   *
+   * @throws IllegalArgumentException
+   *   If {@code millis} is negative.
+   */
+  public static LatencyDistribution fixed(final long millis) {
+    if(millis < 0) {
+      throw new IllegalArgumentException(String.format("the latency %d is negative",millis));
+    }
+    return millis == 0 ? NONE : new LatencyDistribution(Shape.FIXED,millis,millis);
+  }
+
+
+
+  /**
+   * @param minMillis
+   *   the smallest delay in milliseconds, which must not be negative.
+   * @param maxMillis
+   *   the largest delay in milliseconds, which must not be less than
+   *   {@code minMillis}.
+   *
+   * @return a distribution which returns values uniformly distributed
+   *         between {@code minMillis} and {@code maxMillis}
+   *
+   * @throws IllegalArgumentException
+   *   If {@code minMillis} is negative or greater than
+   *   {@code maxMillis}.
+   */
+  public static LatencyDistribution uniform(final long minMillis, final long maxMillis) {
+    if((minMillis < 0) || (maxMillis < minMillis)) {
+      throw new IllegalArgumentException(String.format("the latency range %d-%d is invalid",
+        minMillis,maxMillis));
+    }
+    return new LatencyDistribution(Shape.UNIFORM,minMillis,maxMillis);
+  }
+
+
+
+  /**
+   * @param medianMillis
+   *   the median delay in milliseconds, which must be positive.
+   * @param p99Millis
+   *   the 99th percentile delay in milliseconds, which must not be less
+   *   than {@code medianMillis}.
+   *
+   * @return a log-normal distribution with the given median and 99th
+   *         percentile
+   *
+   * @throws IllegalArgumentException
+   *   If {@code medianMillis} is not positive or is greater than
+   *   {@code p99Millis}.
+   */
+  public static LatencyDistribution longTail(final long medianMillis, final long p99Millis) {
+    if((medianMillis <= 0) || (p99Millis < medianMillis)) {
+      throw new IllegalArgumentException(String.format("the median %d and 99th percentile %d " +
+        "are invalid",medianMillis,p99Millis));
+    }
+    return new LatencyDistribution(Shape.LONG_TAIL,medianMillis,p99Millis);
+  }
+
+
+
+  /**
+   * Parses the string form of a distribution; see the class
+   * documentation.
+   *
+   * @param s
+   *   the string form. {@code s} is not permitted to be {@code null}.
+   *
+   * @return the distribution
+   *
+   * @throws IllegalArgumentException
+   *   If {@code s} is not a valid distribution.
+   */
+  public static LatencyDistribution parse(final String s) {
+    ensureNotNull(s);
+    final String trimmed = s.trim();
+    if(trimmed.equalsIgnoreCase("none")) {
+      return NONE;
+    }
+    final int colon = trimmed.indexOf(':');
+    if(colon < 0) {
+      throw new IllegalArgumentException(String.format("'%s' is not a latency distribution",s));
+    }
+    final String shape = trimmed.substring(0,colon).trim();
+    final String args = trimmed.substring(colon + 1).trim();
+    try {
+      if(shape.equalsIgnoreCase("fixed")) {
+        return fixed(Long.parseLong(args));
+      } else if(shape.equalsIgnoreCase("uniform")) {
+        final int dash = args.indexOf('-');
+        return uniform(Long.parseLong(args.substring(0,dash).trim()),
+          Long.parseLong(args.substring(dash + 1).trim()));
+      } else if(shape.equalsIgnoreCase("longTail")) {
+        final int comma = args.indexOf(',');
+        return longTail(Long.parseLong(args.substring(0,comma).trim()),
+          Long.parseLong(args.substring(comma + 1).trim()));
+      }
+    } catch(final NumberFormatException e) {
+      // fall through
+    } catch(final StringIndexOutOfBoundsException e) {
+      // fall through
+    }
+    throw new IllegalArgumentException(String.format("'%s' is not a latency distribution",s));
+  }
+
+
+
+  private LatencyDistribution(final Shape shape, final long a, final long b) {
+    this.shape = shape;
+    this.a = a;
+    this.b = b;
+  }
+
+
+
+  /**
+   * Draws a delay from the distribution.
+   *
+   * @param random
+   *   the source of randomness, which the caller must not use
+   *   concurrently.
+   *
+   * @return the delay in milliseconds
+   */
+  public long nextMillis(final Random random) {
+    switch(shape) {
+      case UNIFORM:
+        return a + (long) (random.nextDouble() * (b - a + 1));
+      case LONG_TAIL:
+        // ln(delay) is normal with mean ln(median); the 99th percentile
+        // of a standard normal is 2.326.
+        final double sigma = Math.log((double) b / a) / 2.326;
+        return Math.round(a * Math.exp(sigma * random.nextGaussian()));
+      default:
+        return a;
+    }
+  }
+
+
+
+  /**
+   * @return whether the distribution never adds latency
+   */
+  public boolean isNone() {
+    return (shape == Shape.FIXED) && (a == 0);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    switch(shape) {
+      case UNIFORM:
+        return String.format("uniform:%d-%d",a,b);
+      case LONG_TAIL:
+        return String.format("longTail:%d,%d",a,b);
+      default:
+        return a == 0 ? "none" : String.format("fixed:%d",a);
+    }
+  }
+
+
+
+  private enum Shape {
+    FIXED,
+    UNIFORM,
+    LONG_TAIL
+  }
+
+
+
+  private final long a;
+
+
+  private final long b;
+
+
+  private final Shape shape;
+
+}
@@ -18,6 +18,8 @@ package samplecode.memory;
 
 import com.unboundid.ldap.listener.InMemoryDirectoryServer;
 import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
 import com.unboundid.ldap.sdk.*;
 import com.unboundid.ldif.LDIFException;
 import com.unboundid.ldif.LDIFReader;
@@ -29,6 +31,8 @@ import samplecode.annotation.Launchable;
 import samplecode.annotation.Since;
 import samplecode.config.ConfigStrategy;
 import samplecode.ldap.SupportedFeature;
+import samplecode.ldif.CompressedLdifStreams;
+import samplecode.ldif.MappedLdifReader;
 import samplecode.tools.AbstractTool;
 import samplecode.tools.BasicToolCompletedProcessing;
 import samplecode.tools.ToolCompletedProcessing;
@@ -40,6 +44,7 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
 
 import static com.unboundid.util.Validator.ensureNotNull;
 
@@ -163,6 +168,21 @@ import static com.unboundid.util.Validator.ensureNotNull;
  *     A series of dot-separated octets that are a control OID that should be
  *     checked against the root DSE. This parameter is optional, and may be
  *     specified zero, one, or more times.
+ * --bulkLoad
+ *     Load the LDIF file in-process, decoding it with --numThreads threads,
+ *     instead of adding each entry through the connection pool.
+ * --snapshotFile {filename}
+ *     A binary snapshot of the server contents. If the file exists the server
+ *     is restored from it and the --ldifFile is not read, otherwise the
+ *     snapshot is written after the --ldifFile has been loaded.
+ * --injectFaults
+ *     Serve clients connecting to --port through a fault injector which adds
+ *     latency, drops connections and fails requests as configured by the
+ *     faultInjection properties in LdapListenerExample.properties.
+ * --operationStatistics
+ *     Record statistics about the requests of clients connecting to --port.
+ *     The statistics can be read from the cn=monitor entry and are displayed
+ *     when the server shuts down.
  * -H, -?, --help
  *     Display usage information for this program.
  * </pre>
@@ -208,6 +228,16 @@ public final class LdapListenerExample extends AbstractTool {
   public static final String ARG_NAME_CONTROL_OID = "controlOID";
 
 
+  /**
+   * The long identifier of the command line argument the presence of
+   * which instructs the class to load the LDIF file in-process with a
+   * {@link InMemoryBulkLoader} instead of adding each entry through the
+   * connection pool. The number of LDIF parse threads is taken from
+   * the {@code --numThreads} command line argument.
+   */
+  public static final String ARG_NAME_BULK_LOAD = "bulkLoad";
+
+
   /**
    * The long indentifier of the command line argument the presence of which
    * instructs the class that operational attributes should be generated.
@@ -216,6 +246,18 @@ public final class LdapListenerExample extends AbstractTool {
     "generateOperationalAttributes";
 
 
+  /**
+   * The long identifier of the command line argument the presence of
+   * which instructs the class to serve clients connecting to
+   * {@code --port} through a {@link FaultInjectingRequestHandler}. The
+   * fault injector is configured by the {@code faultInjection.}
+   * properties in the class-specific properties; see
+   * {@link FaultInjector}. The tool's own connection pool is not
+   * subject to the injected faults.
+   */
+  public static final String ARG_NAME_INJECT_FAULTS = "injectFaults";
+
+
   /**
    * The long identifier of the argument which specifies the file
    * containing entries in LDIF format that will be loaded into
@@ -224,6 +266,16 @@ public final class LdapListenerExample extends AbstractTool {
   public static final String ARG_NAME_LDIF_FILE = "ldifFile";
 
 
+  /**
+   * The long identifier of the command line argument the presence of
+   * which instructs the class to record statistics about the requests
+   * of clients connecting to {@code --port}. The statistics are
+   * available from a monitor entry while the server runs and are
+   * displayed when it shuts down.
+   */
+  public static final String ARG_NAME_OPERATION_STATISTICS = "operationStatistics";
+
+
   /**
    * The long identifier of the argument which specifies the naming
    * context to use in the in-memory directory server.
@@ -239,6 +291,31 @@ public final class LdapListenerExample extends AbstractTool {
   public static final String ARG_NAME_SCHEMA_FILE = "schemaFile";
 
 
+  /**
+   * The long identifier of the argument which specifies a binary
+   * snapshot of the server contents. If the file exists, the server is
+   * restored from it and the LDIF file is not read; otherwise the
+   * snapshot is written after the LDIF file has been loaded.
+   */
+  public static final String ARG_NAME_SNAPSHOT_FILE = "snapshotFile";
+
+
+  /**
+   * The name of the class-specific property whose value is the DN of
+   * the monitor entry published when {@code --operationStatistics} is
+   * present.
+   */
+  public static final String PROP_NAME_MONITOR_DN = "operationStatistics.monitorDN";
+
+
+  /**
+   * The name of the class-specific property whose value is the number
+   * of slowest operations kept when {@code --operationStatistics} is
+   * present.
+   */
+  public static final String PROP_NAME_SLOW_OPERATIONS = "operationStatistics.slowOperations";
+
+
   /**
    * The bind DN to use when the operator does not supply one on the
    * command line with the {@code --bindDn} argument. This bind DN is
@@ -473,6 +550,73 @@ public final class LdapListenerExample extends AbstractTool {
     operationalAttributeArgument =
       new BooleanArgument(shortIdentifier,longIdentifier,description);
     argumentParser.addArgument(operationalAttributeArgument);
+
+    /*
+    * Add the command line argument to the argument parser whose
+    * presence indicates the LDIF file should be loaded in-process
+    * rather than through the connection pool.
+    */
+    shortIdentifier = null;
+    longIdentifier = ARG_NAME_BULK_LOAD;
+    builder.delete(0,builder.capacity());
+    builder.append("Load the LDIF file in-process, decoding it with --numThreads ");
+    builder.append("threads, instead of adding each entry through the connection pool.");
+    description = builder.toString();
+    bulkLoadArgument =
+      new BooleanArgument(shortIdentifier,longIdentifier,description);
+    argumentParser.addArgument(bulkLoadArgument);
+
+    /*
+     * Add the argument whose parameter is the binary snapshot file from
+     * which the server is restored, or to which the server contents are
+     * written after the LDIF file is loaded.
+     */
+    shortIdentifier = null;
+    longIdentifier = ARG_NAME_SNAPSHOT_FILE;
+    isRequired = false;
+    maxOccurrences = 1;
+    valuePlaceholder = "{filename}";
+    builder.delete(0,builder.capacity());
+    builder.append("A binary snapshot of the server contents. If the file exists ");
+    builder.append("the server is restored from it and the --ldifFile is not read, ");
+    builder.append("otherwise the snapshot is written after the --ldifFile has been loaded.");
+    description = builder.toString();
+    snapshotFileArgument =
+      new FileArgument(shortIdentifier,longIdentifier,isRequired,maxOccurrences,
+        valuePlaceholder,description);
+    argumentParser.addArgument(snapshotFileArgument);
+
+    /*
+    * Add the command line argument to the argument parser whose
+    * presence indicates clients should be served through a fault
+    * injector.
+    */
+    shortIdentifier = null;
+    longIdentifier = ARG_NAME_INJECT_FAULTS;
+    builder.delete(0,builder.capacity());
+    builder.append("Serve clients connecting to --port through a fault injector which ");
+    builder.append("adds latency, drops connections and fails requests as configured ");
+    builder.append("by the faultInjection properties in LdapListenerExample.properties.");
+    description = builder.toString();
+    injectFaultsArgument =
+      new BooleanArgument(shortIdentifier,longIdentifier,description);
+    argumentParser.addArgument(injectFaultsArgument);
+
+    /*
+    * Add the command line argument to the argument parser whose
+    * presence indicates statistics should be recorded about the
+    * requests of clients.
+    */
+    shortIdentifier = null;
+    longIdentifier = ARG_NAME_OPERATION_STATISTICS;
+    builder.delete(0,builder.capacity());
+    builder.append("Record statistics about the requests of clients connecting to --port. ");
+    builder.append("The statistics can be read from the cn=monitor entry and are displayed ");
+    builder.append("when the server shuts down.");
+    description = builder.toString();
+    operationStatisticsArgument =
+      new BooleanArgument(shortIdentifier,longIdentifier,description);
+    argumentParser.addArgument(operationStatisticsArgument);
   }
 
 
@@ -547,6 +691,40 @@ public final class LdapListenerExample extends AbstractTool {
       cfg.generateOperationalAttributes();
     }
 
+    FaultInjector faultInjector = null;
+    OperationStatistics statistics = null;
+    String monitorDn = OperationStatisticsRequestHandler.DEFAULT_MONITOR_DN;
+    if(injectFaultsArgument.isPresent() || operationStatisticsArgument.isPresent()) {
+      // The in-memory server listens on a free port; clients reach it
+      // on --port through the interceptors.
+      try {
+        final Properties properties = classSpecificProperties();
+        if(injectFaultsArgument.isPresent()) {
+          faultInjector = new FaultInjector();
+          faultInjector.configure(properties);
+          if(isVerbose()) {
+            getLogger().info(faultInjector);
+          }
+        }
+        if(operationStatisticsArgument.isPresent()) {
+          statistics = new OperationStatistics(Integer.parseInt(
+            properties.getProperty(PROP_NAME_SLOW_OPERATIONS,"10").trim()));
+          monitorDn = properties.getProperty(PROP_NAME_MONITOR_DN,monitorDn).trim();
+        }
+        cfg.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("backend",0));
+      } catch(final IOException e) {
+        getLogger().fatal(e);
+        return ResultCode.PARAM_ERROR;
+      } catch(final IllegalArgumentException e) {
+        getLogger().fatal(e.getMessage());
+        return ResultCode.PARAM_ERROR;
+      } catch(final LDAPException e) {
+        getLogger().fatal(e);
+        return e.getResultCode();
+      }
+    }
+    InMemoryFrontEnd frontEnd = null;
+
     // Retrieve the bind DN and bind password from the command line options.
     final DN bindDn = commandLineOptions.getBindDn();
     String dn;
@@ -571,16 +749,62 @@ public final class LdapListenerExample extends AbstractTool {
       server = new InMemoryDirectoryServer(cfg);
 
       addListener(displayEntryListener);
-      addListener(addEntryListener);
 
       // start the listener
       server.startListening();
+      if((faultInjector != null) || (statistics != null)) {
+        // The statistics are outermost so that they include injected
+        // latency and failures, which is what a client experiences.
+        LDAPListenerRequestHandler requestHandler =
+          InMemoryFrontEnd.newProxyRequestHandler(server);
+        if(faultInjector != null) {
+          requestHandler = new FaultInjectingRequestHandler(requestHandler,faultInjector);
+        }
+        if(statistics != null) {
+          requestHandler =
+            new OperationStatisticsRequestHandler(requestHandler,statistics,monitorDn);
+        }
+        frontEnd = new InMemoryFrontEnd(port,requestHandler);
+        frontEnd.startListening();
+      }
 
       // get a pool of connection to the in-memory server
       ldapConnectionPool = server.getConnectionPool(5);
 
-      // Read the entries from the specified LDIF file and execute the listeners
-      getEntriesFromFile(ldifFile);
+      final InMemorySnapshotFile snapshotFile = snapshotFileArgument.isPresent() ?
+        InMemorySnapshotFile.newInstance(snapshotFileArgument.getValue()) : null;
+      if((snapshotFile != null) && snapshotFile.getFile().exists()) {
+        // Restore the entries from the snapshot instead of parsing LDIF.
+        final int count = snapshotFile.restore(server);
+        if(isVerbose()) {
+          getLogger().info(String.format("restored %d entries from %s",count,
+            snapshotFile.getFile()));
+        }
+      } else {
+        if(bulkLoadArgument.isPresent()) {
+          // Add the entries in-process; the listeners are notified once
+          // every entry has been added.
+          final int numParseThreads = commandLineOptions.getNumThreads();
+          final InMemoryBulkLoader loader =
+            new InMemoryBulkLoader(server,ldapConnectionPool,listeners,numParseThreads);
+          final int count = loader.load(ldifFile);
+          if(isVerbose()) {
+            getLogger().info(String.format("loaded %d entries from %s",count,ldifFile));
+          }
+        } else {
+          addListener(addEntryListener);
+
+          // Read the entries from the specified LDIF file and execute the listeners
+          getEntriesFromFile(ldifFile);
+        }
+        if(snapshotFile != null) {
+          final int count = snapshotFile.write(server);
+          if(isVerbose()) {
+            getLogger().info(String.format("wrote %d entries to %s",count,
+              snapshotFile.getFile()));
+          }
+        }
+      }
 
       // Retrieve the list of control OIDs that the in-memory server
       // demonstration will check as to whether the controlOIDs are
@@ -602,7 +826,13 @@ public final class LdapListenerExample extends AbstractTool {
       getLogger().fatal(e);
       resultCode = ResultCode.PARAM_ERROR;
     }
+    if(frontEnd != null) {
+      frontEnd.shutDown(true);
+    }
     server.shutDown(true);
+    if(statistics != null) {
+      out(statistics.getReport());
+    }
     return resultCode;
   }
 
@@ -639,7 +869,8 @@ public final class LdapListenerExample extends AbstractTool {
    * {@code entryAction} method is invoked for each entry.
    *
    * @param ldifFile
-   *   A file containing entries in the form of LDIF.
+   *   A file containing entries in the form of LDIF, which may be
+   *   gzip-compressed.
    *
    * @throws IOException
    *   If an eror occurs reading the file.
@@ -651,18 +882,41 @@ public final class LdapListenerExample extends AbstractTool {
    */
   private void getEntriesFromFile(final File ldifFile)
     throws IOException, LDIFException, LDAPException {
+    final int numParseThreads = Math.max(1,commandLineOptions.getNumThreads());
+    if(CompressedLdifStreams.isCompressed(ldifFile)) {
+      // A compressed file cannot be mapped: decompress it on a pipeline thread
+      // and let the LDIFReader decode it in parallel.
+      final LDIFReader ldifReader =
+        new LDIFReader(CompressedLdifStreams.newInputStream(ldifFile),numParseThreads);
+      while(true) {
+        try {
+          final Entry entry = ldifReader.readEntry();
+          if(entry == null) {
+            break;
+          }
+          entryAction(entry);
+        } catch(final LDIFException e) {
+          if(!e.mayContinueReading()) {
+            getLogger().fatal(e);
+            break;
+          }
+        }
+      }
+      ldifReader.close();
+      return;
+    }
+
     // Read each entry from the file containing entries in LDIF format and invoke the
-    // listeners for each entry.
-    final LDIFReader ldifReader = new LDIFReader(ldifFile);
+    // listeners for each entry. The file is memory-mapped and decoded in parallel,
+    // but the entries are returned in the order in which they appear in the file.
+    final MappedLdifReader ldifReader = MappedLdifReader.newInstance(ldifFile,numParseThreads);
     while(true) {
       try {
         final Entry entry = ldifReader.readEntry();
         if(entry == null) {
           break;
         }
-        for(final InMemoryDirectoryServerListener l : listeners) {
-          l.entryAction(ldapConnectionPool,entry);
-        }
+        entryAction(entry);
       } catch(final LDIFException e) {
         if(!e.mayContinueReading()) {
           getLogger().fatal(e);
@@ -675,12 +929,29 @@ public final class LdapListenerExample extends AbstractTool {
 
 
 
+  /**
+   * Invokes every listener for {@code entry}.
+   */
+  private void entryAction(final Entry entry) throws LDAPException {
+    for(final InMemoryDirectoryServerListener l : listeners) {
+      l.entryAction(ldapConnectionPool,entry);
+    }
+  }
+
+
+
+  private BooleanArgument bulkLoadArgument;
+
+
   private StringArgument controlOidArgument;
 
 
   private DNArgument dnArgument;
 
 
+  private BooleanArgument injectFaultsArgument;
+
+
   private FileArgument ldifFileArgument;
 
 
@@ -691,6 +962,12 @@ public final class LdapListenerExample extends AbstractTool {
   private BooleanArgument operationalAttributeArgument;
 
 
+  private BooleanArgument operationStatisticsArgument;
+
+
   private FileArgument schemaFileArgument;
 
+
+  private FileArgument snapshotFileArgument;
+
 }
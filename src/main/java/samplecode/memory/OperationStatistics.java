@@ -0,0 +1,568 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.ldap.protocol.AddRequestProtocolOp;
+import com.unboundid.ldap.protocol.BindRequestProtocolOp;
+import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
+import com.unboundid.ldap.protocol.ProtocolOp;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Statistics about the requests an in-memory directory server has
+ * processed: the number of operations of each type, a processing time
+ * histogram for each type, and the slowest operations. Searches are
+ * also counted by filter shape (the filter with its assertion values
+ * removed, for example {@code (&(objectClass=?)(uid=?))}), by base DN
+ * and by requested attribute. This is the access pattern a client tool
+ * would impose on a production server.
+ * <p/>
+ * Statistics are recorded by an {@link OperationStatisticsRequestHandler}
+ * and may be recorded and read concurrently.
+ */
+public final class OperationStatistics {
+
+  /**
+   * The inclusive upper bounds, in microseconds, of the processing
+   * time histogram buckets; the last bucket holds everything slower.
+   */
+  private static final long[] BUCKET_UPPER_BOUNDS_MICROS = {
+    100L,250L,500L,1000L,2500L,5000L,10000L,25000L,50000L,100000L,250000L,500000L,1000000L
+  };
+
+
+  /**
+   * The maximum number of characters of the target DN kept for a slow
+   * operation.
+   */
+  private static final int MAX_TARGET_LENGTH = 256;
+
+
+
+  /**
+   * Removes the assertion values from {@code filter}, leaving the
+   * attribute names and structure.
+   *
+   * @param filter
+   *   a search filter. {@code filter} is not permitted to be
+   *   {@code null}.
+   *
+   * @return the shape of {@code filter}, for example {@code (cn=?*)}
+   */
+  public static String getFilterShape(final Filter filter) {
+    ensureNotNull(filter);
+    final StringBuilder builder = new StringBuilder();
+    appendFilterShape(builder,filter);
+    return builder.toString();
+  }
+
+
+
+  private static void appendFilterShape(final StringBuilder builder, final Filter filter) {
+    builder.append('(');
+    switch(filter.getFilterType()) {
+      case Filter.FILTER_TYPE_AND:
+      case Filter.FILTER_TYPE_OR:
+        builder.append(filter.getFilterType() == Filter.FILTER_TYPE_AND ? '&' : '|');
+        for(final Filter component : filter.getComponents()) {
+          appendFilterShape(builder,component);
+        }
+        break;
+      case Filter.FILTER_TYPE_NOT:
+        builder.append('!');
+        appendFilterShape(builder,filter.getNOTComponent());
+        break;
+      case Filter.FILTER_TYPE_EQUALITY:
+        builder.append(attributeName(filter)).append("=?");
+        break;
+      case Filter.FILTER_TYPE_SUBSTRING:
+        builder.append(attributeName(filter)).append('=');
+        if(filter.getSubInitialString() != null) {
+          builder.append('?');
+        }
+        builder.append('*');
+        if(filter.getSubAnyStrings().length > 0) {
+          builder.append("?*");
+        }
+        if(filter.getSubFinalString() != null) {
+          builder.append('?');
+        }
+        break;
+      case Filter.FILTER_TYPE_GREATER_OR_EQUAL:
+        builder.append(attributeName(filter)).append(">=?");
+        break;
+      case Filter.FILTER_TYPE_LESS_OR_EQUAL:
+        builder.append(attributeName(filter)).append("<=?");
+        break;
+      case Filter.FILTER_TYPE_PRESENCE:
+        builder.append(attributeName(filter)).append("=*");
+        break;
+      case Filter.FILTER_TYPE_APPROXIMATE_MATCH:
+        builder.append(attributeName(filter)).append("~=?");
+        break;
+      case Filter.FILTER_TYPE_EXTENSIBLE_MATCH:
+        if(filter.getAttributeName() != null) {
+          builder.append(attributeName(filter));
+        }
+        if(filter.getDNAttributes()) {
+          builder.append(":dn");
+        }
+        if(filter.getMatchingRuleID() != null) {
+          builder.append(':').append(filter.getMatchingRuleID());
+        }
+        builder.append(":=?");
+        break;
+      default:
+        builder.append('?');
+        break;
+    }
+    builder.append(')');
+  }
+
+
+
+  private static String attributeName(final Filter filter) {
+    return filter.getAttributeName().toLowerCase(Locale.ENGLISH);
+  }
+
+
+
+  /**
+   * Creates an object which keeps the {@code maxSlowOperations}
+   * slowest operations.
+   *
+   * @param maxSlowOperations
+   *   the number of slow operations to keep, which may be zero.
+   */
+  public OperationStatistics(final int maxSlowOperations) {
+    ensureTrue(maxSlowOperations >= 0);
+    this.maxSlowOperations = maxSlowOperations;
+    for(final OperationType operationType : OperationType.values()) {
+      counts.put(operationType,new AtomicLong());
+      totalNanos.put(operationType,new AtomicLong());
+      histograms.put(operationType,new AtomicLongArray(BUCKET_UPPER_BOUNDS_MICROS.length + 1));
+    }
+    slowOperations = new PriorityQueue<SlowOperation>(Math.max(1,maxSlowOperations));
+  }
+
+
+
+  /**
+   * Records a processed request.
+   *
+   * @param operationType
+   *   The type of the operation.
+   * @param messageID
+   *   The message ID of the request.
+   * @param request
+   *   The request protocol op. Only its target DN is kept, never its
+   *   attribute values or credentials.
+   * @param resultCode
+   *   The result code of the response, or {@code null} if there was no
+   *   result.
+   * @param elapsedNanos
+   *   The processing time in nanoseconds.
+   */
+  public void record(final OperationType operationType,
+                     final int messageID,
+                     final ProtocolOp request,
+                     final ResultCode resultCode,
+                     final long elapsedNanos) {
+    counts.get(operationType).incrementAndGet();
+    totalNanos.get(operationType).addAndGet(elapsedNanos);
+    histograms.get(operationType).incrementAndGet(bucket(elapsedNanos / 1000L));
+    if(request instanceof SearchRequestProtocolOp) {
+      final SearchRequestProtocolOp search = (SearchRequestProtocolOp) request;
+      increment(filterShapes,getFilterShape(search.getFilter()));
+      increment(baseDns,search.getBaseDN().toLowerCase(Locale.ENGLISH));
+      if(search.getAttributes().isEmpty()) {
+        increment(requestedAttributes,"(none)");
+      } else {
+        for(final String attribute : search.getAttributes()) {
+          increment(requestedAttributes,attribute.toLowerCase(Locale.ENGLISH));
+        }
+      }
+    }
+    if(maxSlowOperations > 0) {
+      synchronized(slowOperations) {
+        if(slowOperations.size() < maxSlowOperations) {
+          slowOperations.add(new SlowOperation(operationType,messageID,request,resultCode,elapsedNanos));
+        } else if(slowOperations.peek().elapsedNanos < elapsedNanos) {
+          slowOperations.poll();
+          slowOperations.add(new SlowOperation(operationType,messageID,request,resultCode,elapsedNanos));
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * @param operationType
+   *   an operation type.
+   *
+   * @return the number of operations of {@code operationType}
+   */
+  public long getCount(final OperationType operationType) {
+    return counts.get(operationType).get();
+  }
+
+
+
+  /**
+   * @return the number of searches for each filter shape
+   */
+  public Map<String,Long> getFilterShapeCounts() {
+    return snapshot(filterShapes);
+  }
+
+
+
+  /**
+   * @return the number of searches for each base DN
+   */
+  public Map<String,Long> getBaseDnCounts() {
+    return snapshot(baseDns);
+  }
+
+
+
+  /**
+   * @return the number of searches requesting each attribute;
+   *         searches requesting no attributes are counted under
+   *         {@code (none)}
+   */
+  public Map<String,Long> getRequestedAttributeCounts() {
+    return snapshot(requestedAttributes);
+  }
+
+
+
+  /**
+   * @return descriptions of the slowest operations, slowest first
+   */
+  public List<String> getSlowOperations() {
+    final List<SlowOperation> list;
+    synchronized(slowOperations) {
+      list = new ArrayList<SlowOperation>(slowOperations);
+    }
+    Collections.sort(list,Collections.reverseOrder());
+    final List<String> descriptions = SampleCodeCollectionUtils.newArrayList(list.size());
+    for(final SlowOperation slowOperation : list) {
+      descriptions.add(slowOperation.toString());
+    }
+    return descriptions;
+  }
+
+
+
+  /**
+   * Describes the statistics as a monitor entry. Each statistic is a
+   * value of the form {@code name count}; histogram values give the
+   * upper bound of the bucket in microseconds.
+   *
+   * @param dn
+   *   the DN of the entry.
+   *
+   * @return an entry describing the statistics
+   */
+  public Entry toMonitorEntry(final String dn) {
+    ensureNotNull(dn);
+    final Entry entry = new Entry(dn);
+    entry.addAttribute("objectClass","top","extensibleObject");
+    entry.addAttribute("cn","monitor");
+    for(final OperationType operationType : OperationType.values()) {
+      final long count = getCount(operationType);
+      if(count == 0) {
+        continue;
+      }
+      entry.addAttribute("operationCount",operationType + " " + count);
+      entry.addAttribute("meanProcessingTimeMicros",
+        operationType + " " + (totalNanos.get(operationType).get() / count / 1000L));
+      final AtomicLongArray histogram = histograms.get(operationType);
+      for(int i = 0; i < histogram.length(); ++i) {
+        final long n = histogram.get(i);
+        if(n > 0) {
+          entry.addAttribute("processingTimeHistogram",
+            String.format("%s %s %d",operationType,bucketLabel(i),n));
+        }
+      }
+    }
+    addCounts(entry,"filterShape",getFilterShapeCounts());
+    addCounts(entry,"baseDN",getBaseDnCounts());
+    addCounts(entry,"requestedAttribute",getRequestedAttributeCounts());
+    for(final String slowOperation : getSlowOperations()) {
+      entry.addAttribute("slowOperation",slowOperation);
+    }
+    return entry;
+  }
+
+
+
+  /**
+   * @return a multi-line report of the statistics, suitable for
+   *         display when the server shuts down
+   */
+  public String getReport() {
+    final String eol = System.getProperty("line.separator");
+    final StringBuilder builder = new StringBuilder("operation statistics").append(eol);
+    for(final OperationType operationType : OperationType.values()) {
+      final long count = getCount(operationType);
+      if(count == 0) {
+        continue;
+      }
+      builder.append(String.format("  %-10s count=%d meanMicros=%d",operationType,count,
+        totalNanos.get(operationType).get() / count / 1000L)).append(eol);
+      final AtomicLongArray histogram = histograms.get(operationType);
+      for(int i = 0; i < histogram.length(); ++i) {
+        final long n = histogram.get(i);
+        if(n > 0) {
+          builder.append(String.format("    %-10s %d",bucketLabel(i),n)).append(eol);
+        }
+      }
+    }
+    appendCounts(builder,"filter shapes",getFilterShapeCounts(),eol);
+    appendCounts(builder,"base DNs",getBaseDnCounts(),eol);
+    appendCounts(builder,"requested attributes",getRequestedAttributeCounts(),eol);
+    final List<String> slow = getSlowOperations();
+    if(!slow.isEmpty()) {
+      builder.append("slowest operations").append(eol);
+      for(final String s : slow) {
+        builder.append("  ").append(s).append(eol);
+      }
+    }
+    return builder.toString();
+  }
+
+
+
+  private static int bucket(final long micros) {
+    for(int i = 0; i < BUCKET_UPPER_BOUNDS_MICROS.length; ++i) {
+      if(micros <= BUCKET_UPPER_BOUNDS_MICROS[i]) {
+        return i;
+      }
+    }
+    return BUCKET_UPPER_BOUNDS_MICROS.length;
+  }
+
+
+
+  private static String bucketLabel(final int bucket) {
+    if(bucket < BUCKET_UPPER_BOUNDS_MICROS.length) {
+      return "<=" + BUCKET_UPPER_BOUNDS_MICROS[bucket] + "us";
+    }
+    return ">" + BUCKET_UPPER_BOUNDS_MICROS[BUCKET_UPPER_BOUNDS_MICROS.length - 1] + "us";
+  }
+
+
+
+  private static void increment(final ConcurrentMap<String,AtomicLong> map, final String key) {
+    AtomicLong count = map.get(key);
+    if(count == null) {
+      final AtomicLong newCount = new AtomicLong();
+      count = map.putIfAbsent(key,newCount);
+      if(count == null) {
+        count = newCount;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+
+
+  /**
+   * Copies {@code map}, most frequent key first.
+   */
+  private static Map<String,Long> snapshot(final ConcurrentMap<String,AtomicLong> map) {
+    final List<Map.Entry<String,AtomicLong>> entries =
+      new ArrayList<Map.Entry<String,AtomicLong>>(map.entrySet());
+    final List<Map.Entry<String,Long>> copies =
+      SampleCodeCollectionUtils.newArrayList(entries.size());
+    for(final Map.Entry<String,AtomicLong> e : entries) {
+      copies.add(new AbstractMap.SimpleImmutableEntry<String,Long>(e.getKey(),
+        e.getValue().get()));
+    }
+    Collections.sort(copies,new Comparator<Map.Entry<String,Long>>() {
+
+      @Override
+      public int compare(final Map.Entry<String,Long> a, final Map.Entry<String,Long> b) {
+        return b.getValue().compareTo(a.getValue());
+      }
+
+    });
+    final Map<String,Long> result = new LinkedHashMap<String,Long>();
+    for(final Map.Entry<String,Long> e : copies) {
+      result.put(e.getKey(),e.getValue());
+    }
+    return result;
+  }
+
+
+
+  private static void addCounts(final Entry entry,
+                                final String attributeName,
+                                final Map<String,Long> counts) {
+    for(final Map.Entry<String,Long> e : counts.entrySet()) {
+      entry.addAttribute(attributeName,e.getKey() + " " + e.getValue());
+    }
+  }
+
+
+
+  private static void appendCounts(final StringBuilder builder,
+                                   final String heading,
+                                   final Map<String,Long> counts,
+                                   final String eol) {
+    if(counts.isEmpty()) {
+      return;
+    }
+    builder.append(heading).append(eol);
+    for(final Map.Entry<String,Long> e : counts.entrySet()) {
+      builder.append(String.format("  %8d %s",e.getValue(),e.getKey())).append(eol);
+    }
+  }
+
+
+
+  /**
+   * @return the DN targeted by {@code request}, the OID of an extended
+   *         request, or an empty string, truncated to
+   *         {@code MAX_TARGET_LENGTH} characters.
+   */
+  private static String getTarget(final ProtocolOp request) {
+    final String target;
+    if(request instanceof SearchRequestProtocolOp) {
+      target = ((SearchRequestProtocolOp) request).getBaseDN();
+    } else if(request instanceof AddRequestProtocolOp) {
+      target = ((AddRequestProtocolOp) request).getDN();
+    } else if(request instanceof ModifyRequestProtocolOp) {
+      target = ((ModifyRequestProtocolOp) request).getDN();
+    } else if(request instanceof DeleteRequestProtocolOp) {
+      target = ((DeleteRequestProtocolOp) request).getDN();
+    } else if(request instanceof ModifyDNRequestProtocolOp) {
+      target = ((ModifyDNRequestProtocolOp) request).getDN();
+    } else if(request instanceof CompareRequestProtocolOp) {
+      target = ((CompareRequestProtocolOp) request).getDN();
+    } else if(request instanceof BindRequestProtocolOp) {
+      target = ((BindRequestProtocolOp) request).getBindDN();
+    } else if(request instanceof ExtendedRequestProtocolOp) {
+      target = ((ExtendedRequestProtocolOp) request).getOID();
+    } else {
+      target = "";
+    }
+    if(target.length() > MAX_TARGET_LENGTH) {
+      return target.substring(0,MAX_TARGET_LENGTH) + "...";
+    }
+    return target;
+  }
+
+
+
+  /**
+   * An operation kept because it is one of the slowest; ordered by
+   * processing time. Only the type, message ID and target of the
+   * request are kept: the slow operations are published in the monitor
+   * entry, and the request itself may carry passwords and other
+   * attribute values.
+   */
+  private static final class SlowOperation implements Comparable<SlowOperation> {
+
+    private SlowOperation(final OperationType operationType,
+                          final int messageID,
+                          final ProtocolOp request,
+                          final ResultCode resultCode,
+                          final long elapsedNanos) {
+      this.operationType = operationType;
+      this.messageID = messageID;
+      target = getTarget(request);
+      this.resultCode = resultCode;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+
+
+    @Override
+    public int compareTo(final SlowOperation other) {
+      return elapsedNanos < other.elapsedNanos ? -1 :
+        (elapsedNanos == other.elapsedNanos ? 0 : 1);
+    }
+
+
+
+    @Override
+    public String toString() {
+      return String.format("%dus %s msgID=%d %s target=\"%s\"",elapsedNanos / 1000L,
+        operationType,messageID,resultCode,target);
+    }
+
+
+
+    private final long elapsedNanos;
+
+
+    private final int messageID;
+
+
+    private final OperationType operationType;
+
+
+    private final ResultCode resultCode;
+
+
+    private final String target;
+
+  }
+
+
+
+  private final ConcurrentMap<String,AtomicLong> baseDns =
+    new ConcurrentHashMap<String,AtomicLong>();
+
+
+  private final Map<OperationType,AtomicLong> counts =
+    new EnumMap<OperationType,AtomicLong>(OperationType.class);
+
+
+  private final ConcurrentMap<String,AtomicLong> filterShapes =
+    new ConcurrentHashMap<String,AtomicLong>();
+
+
+  private final Map<OperationType,AtomicLongArray> histograms =
+    new EnumMap<OperationType,AtomicLongArray>(OperationType.class);
+
+
+  private final int maxSlowOperations;
+
+
+  private final ConcurrentMap<String,AtomicLong> requestedAttributes =
+    new ConcurrentHashMap<String,AtomicLong>();
+
+
+  private final PriorityQueue<SlowOperation> slowOperations;
+
+
+  private final Map<OperationType,AtomicLong> totalNanos =
+    new EnumMap<OperationType,AtomicLong>(OperationType.class);
+
+}
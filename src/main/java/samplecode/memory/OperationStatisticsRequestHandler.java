@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.memory;
+
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ProtocolOp;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchResultDoneProtocolOp;
+import com.unboundid.ldap.sdk.*;
+
+import java.util.List;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * An interceptor which records every request in an
+ * {@link OperationStatistics} object and publishes the statistics as a
+ * monitor entry. A base-scoped search of the monitor DN (by default
+ * {@code cn=monitor}) is answered by the interceptor and is not
+ * recorded, for example:
+ * <blockquote>
+ * <p/>
+ * <pre>
+ * ldapsearch -p 1389 -b cn=monitor -s base '(objectClass=*)'
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * The processing time recorded is the time the delegate took to answer
+ * the request, so an interceptor placed further from the client, such
+ * as a {@link FaultInjectingRequestHandler}, is included in the time.
+ */
+public final class OperationStatisticsRequestHandler extends InterceptingRequestHandler {
+
+  /**
+   * The default DN of the monitor entry.
+   */
+  public static final String DEFAULT_MONITOR_DN = "cn=monitor";
+
+
+
+  /**
+   * Creates an interceptor which records the requests passed to
+   * {@code delegate} in {@code statistics}.
+   *
+   * @param delegate
+   *   The request handler to which requests are passed.
+   * @param statistics
+   *   The statistics, which are shared by every connection.
+   * @param monitorDn
+   *   The DN of the monitor entry.
+   *
+   * @throws LDAPException
+   *   If {@code monitorDn} is not a valid DN.
+   */
+  public OperationStatisticsRequestHandler(final LDAPListenerRequestHandler delegate,
+                                           final OperationStatistics statistics,
+                                           final String monitorDn) throws LDAPException {
+    this(delegate,null,statistics,new DN(monitorDn));
+  }
+
+
+
+  private OperationStatisticsRequestHandler(final LDAPListenerRequestHandler delegate,
+                                            final LDAPListenerClientConnection clientConnection,
+                                            final OperationStatistics statistics,
+                                            final DN monitorDn) {
+    super(delegate,clientConnection);
+    ensureNotNull(statistics,monitorDn);
+    this.statistics = statistics;
+    this.monitorDn = monitorDn;
+  }
+
+
+
+  /**
+   * @return the statistics to which requests are recorded
+   */
+  public OperationStatistics getStatistics() {
+    return statistics;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected InterceptingRequestHandler
+  newInstance(final LDAPListenerRequestHandler delegateInstance,
+              final LDAPListenerClientConnection clientConnection) throws LDAPException {
+    return new OperationStatisticsRequestHandler(delegateInstance,clientConnection,statistics,
+      monitorDn);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected LDAPMessage beforeRequest(final OperationType operationType,
+                                      final int messageID,
+                                      final ProtocolOp request,
+                                      final List<Control> controls) {
+    if(operationType != OperationType.SEARCH) {
+      return null;
+    }
+    final SearchRequestProtocolOp search = (SearchRequestProtocolOp) request;
+    try {
+      if(!monitorDn.equals(new DN(search.getBaseDN()))) {
+        return null;
+      }
+    } catch(final LDAPException e) {
+      // let the server reject the malformed DN
+      return null;
+    }
+    if(search.getScope() != SearchScope.ONE) {
+      final Entry entry = statistics.toMonitorEntry(monitorDn.toString());
+      try {
+        if(search.getFilter().matchesEntry(entry)) {
+          getClientConnection().sendSearchResultEntry(messageID,entry);
+        }
+      } catch(final LDAPException e) {
+        return errorResponse(operationType,messageID,e.getResultCode(),e.getMessage());
+      }
+    }
+    return new LDAPMessage(messageID,
+      new SearchResultDoneProtocolOp(ResultCode.SUCCESS_INT_VALUE,null,null,null));
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void afterRequest(final OperationType operationType,
+                              final int messageID,
+                              final ProtocolOp request,
+                              final LDAPMessage response,
+                              final long elapsedNanos) {
+    statistics.record(operationType,messageID,request,getResultCode(response),elapsedNanos);
+  }
+
+
+
+  private final DN monitorDn;
+
+
+  private final OperationStatistics statistics;
+
+}
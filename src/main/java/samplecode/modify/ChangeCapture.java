@@ -0,0 +1,234 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.modify;
+
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.PostReadRequestControl;
+import com.unboundid.ldap.sdk.controls.PostReadResponseControl;
+import com.unboundid.ldap.sdk.controls.PreReadRequestControl;
+import com.unboundid.ldap.sdk.controls.PreReadResponseControl;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.listener.EntryChangeEvent;
+import samplecode.listener.EntryChangeListener;
+import samplecode.listener.ListenerRegistry;
+import samplecode.listener.ObservedByEntryChangeListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Transmits modify requests with a pre-read and a post-read request
+ * control (RFC 4527) attached and publishes the entry before and after
+ * each change to {@link EntryChangeListener}s as an
+ * {@link EntryChangeEvent}. A listener which keeps a copy of entries,
+ * such as a write-through cache, is brought up to date by the event
+ * and does not need to search for the entry after each modify request.
+ * <p/>
+ * The read controls are not critical, so a modify request succeeds on
+ * a server which does not support them; the entries which the server
+ * does not return are {@code null} in the event, and
+ * {@link #getIncompleteCount()} counts such events. No event is
+ * published for a modify request which fails. Listeners are invoked on
+ * the thread which transmitted the modify request, in the order of the
+ * modify requests transmitted by that thread; wrap a listener with
+ * {@link samplecode.listener.AsyncEventBus#wrapEntryChangeListener(EntryChangeListener)}
+ * to deliver the events on another thread.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final ChangeCapture changeCapture =
+ *   ChangeCapture.newInstance(ldapConnectionPool,"description","mail");
+ * changeCapture.addEntryChangeListener(cache);
+ * changeCapture.modify(new ModifyRequest(dn,
+ *   new Modification(ModificationType.REPLACE,"mail","user.0@example.com")));
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * This class is safe for use by multiple threads.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class ChangeCapture implements ObservedByEntryChangeListener {
+
+  /**
+   * Creates a change capture.
+   *
+   * @param ldapInterface
+   *   the connection or pool on which modify requests are transmitted.
+   *   {@code ldapInterface} is not permitted to be {@code null}.
+   * @param attributes
+   *   the attributes returned in the entries before and after each
+   *   change. If no attributes are specified, all user attributes are
+   *   returned.
+   *
+   * @return a new change capture
+   */
+  public static ChangeCapture newInstance(final LDAPInterface ldapInterface,
+                                          final String... attributes) {
+    ensureNotNull(ldapInterface,attributes);
+    return new ChangeCapture(ldapInterface,attributes.clone());
+  }
+
+
+
+  private ChangeCapture(final LDAPInterface ldapInterface, final String[] attributes) {
+    this.ldapInterface = ldapInterface;
+    this.attributes = attributes;
+  }
+
+
+
+  /**
+   * Transmits a copy of {@code modifyRequest} with the read controls
+   * attached and, if it succeeds, notifies the listeners of the change.
+   *
+   * @param modifyRequest
+   *   the modify request. {@code modifyRequest} is not changed and is
+   *   not permitted to be {@code null}.
+   *
+   * @return the result of the modify request
+   *
+   * @throws LDAPException
+   *   if the modify request fails.
+   */
+  public LDAPResult modify(final ModifyRequest modifyRequest) throws LDAPException {
+    ensureNotNull(modifyRequest);
+    final ModifyRequest capturingRequest = modifyRequest.duplicate();
+    capturingRequest.addControl(new PreReadRequestControl(false,attributes));
+    capturingRequest.addControl(new PostReadRequestControl(false,attributes));
+    final LDAPResult ldapResult = ldapInterface.modify(capturingRequest);
+
+    final PreReadResponseControl preReadResponseControl = PreReadResponseControl.get(ldapResult);
+    final PostReadResponseControl postReadResponseControl =
+      PostReadResponseControl.get(ldapResult);
+    final ReadOnlyEntry before =
+      preReadResponseControl == null ? null : preReadResponseControl.getEntry();
+    final ReadOnlyEntry after =
+      postReadResponseControl == null ? null : postReadResponseControl.getEntry();
+    changes.incrementAndGet();
+    if((before == null) || (after == null)) {
+      incomplete.incrementAndGet();
+    }
+    fireEntryChangeListener(modifyRequest,before,after);
+    return ldapResult;
+  }
+
+
+
+  /**
+   * Transmits a modify request with the read controls attached and, if
+   * it succeeds, notifies the listeners of the change.
+   *
+   * @param dn
+   *   the DN of the entry to modify. {@code dn} is not permitted to be
+   *   {@code null}.
+   * @param modifications
+   *   the modifications to apply.
+   *
+   * @return the result of the modify request
+   *
+   * @throws LDAPException
+   *   if the modify request fails.
+   */
+  public LDAPResult modify(final String dn, final Modification... modifications)
+    throws LDAPException {
+    ensureNotNull(dn,modifications);
+    return modify(new ModifyRequest(dn,modifications));
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addEntryChangeListener(final EntryChangeListener entryChangeListener) {
+    entryChangeListeners.add(entryChangeListener);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void fireEntryChangeListener(final ModifyRequest modifyRequest,
+                                      final ReadOnlyEntry before, final ReadOnlyEntry after) {
+    ensureNotNull(modifyRequest);
+    final EntryChangeListener[] listeners = entryChangeListeners.getListeners();
+    if(listeners.length == 0) {
+      return;
+    }
+    final EntryChangeEvent ev = new EntryChangeEvent(this,modifyRequest.getDN(),
+      modifyRequest.getModifications(),before,after);
+    for(final EntryChangeListener l : listeners) {
+      l.entryChanged(ev);
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeEntryChangeListener(final EntryChangeListener entryChangeListener) {
+    entryChangeListeners.remove(entryChangeListener);
+  }
+
+
+
+  /**
+   * @return the number of successful modify requests
+   */
+  public long getChangeCount() {
+    return changes.get();
+  }
+
+
+
+  /**
+   * @return the number of successful modify requests for which the
+   *         server did not return the entry before or after the change
+   */
+  public long getIncompleteCount() {
+    return incomplete.get();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("ChangeCapture [changes=%d, incomplete=%d, listeners=%s]",
+      changes.get(),incomplete.get(),entryChangeListeners);
+  }
+
+
+
+  private final String[] attributes;
+
+
+  private final AtomicLong changes = new AtomicLong();
+
+
+  private final ListenerRegistry<EntryChangeListener> entryChangeListeners =
+    ListenerRegistry.newInstance(EntryChangeListener.class);
+
+
+  private final AtomicLong incomplete = new AtomicLong();
+
+
+  private final LDAPInterface ldapInterface;
+
+}
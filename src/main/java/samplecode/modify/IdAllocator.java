@@ -0,0 +1,332 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.modify;
+
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.PostReadRequestControl;
+import com.unboundid.ldap.sdk.controls.PostReadResponseControl;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Allocates unique IDs, such as uidNumbers or employee numbers, from an
+ * integer attribute of an entry which holds the next unreserved ID.
+ * Instead of writing to the server for each ID, the allocator reserves a
+ * block of {@code blockSize} IDs with a single modify request which
+ * increments the attribute by {@code blockSize} (the modify-increment
+ * extension, RFC 4525) and carries a critical post-read request control
+ * (RFC 4527): the value after the increment is the end of the block, so
+ * the block is reserved atomically even when many clients share the
+ * entry. The IDs of the block are then handed out locally with an atomic
+ * increment, without locking.
+ * <p/>
+ * When a block is down to a quarter of its IDs, the next block is
+ * reserved in the background, so that callers rarely wait for the
+ * server. IDs of a block which is not used up before the allocator is
+ * discarded are never handed out, so the IDs are unique and increasing
+ * per allocator but not contiguous.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final IdAllocator idAllocator =
+ *   IdAllocator.newInstance(ldapConnectionPool,"cn=uidNumber,dc=example,dc=com",
+ *     "uidNumber",100);
+ * final long uidNumber = idAllocator.nextId();
+ * ...
+ * idAllocator.close();
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * This class is safe for use by multiple threads.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class IdAllocator {
+
+  /**
+   * Creates an allocator.
+   *
+   * @param ldapInterface
+   *   the connection or pool used to reserve blocks. The server must
+   *   support the modify-increment extension and the post-read request
+   *   control. {@code ldapInterface} is not permitted to be {@code null}.
+   * @param dn
+   *   the DN of the entry which holds the next unreserved ID. {@code dn}
+   *   is not permitted to be {@code null}.
+   * @param attributeName
+   *   the integer attribute which holds the next unreserved ID.
+   *   {@code attributeName} is not permitted to be {@code null}.
+   * @param blockSize
+   *   the number of IDs reserved at a time, which must be positive.
+   *
+   * @return a new allocator
+   */
+  public static IdAllocator newInstance(final LDAPInterface ldapInterface, final String dn,
+                                        final String attributeName, final int blockSize) {
+    ensureNotNull(ldapInterface,dn,attributeName);
+    ensureTrue(blockSize > 0);
+    return new IdAllocator(ldapInterface,dn,attributeName,blockSize);
+  }
+
+
+
+  private IdAllocator(final LDAPInterface ldapInterface, final String dn,
+                      final String attributeName, final int blockSize) {
+    this.ldapInterface = ldapInterface;
+    this.dn = dn;
+    this.attributeName = attributeName;
+    this.blockSize = blockSize;
+    lowWaterMark = Math.max(1,blockSize / 4);
+    executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable,"IdAllocator " + attributeName + " " + dn);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+
+
+  /**
+   * Hands out the next ID, reserving a block first if necessary.
+   *
+   * @return an ID which no other caller of this or any other allocator
+   *         of the same attribute receives
+   *
+   * @throws LDAPException
+   *   if a block cannot be reserved.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting for a block.
+   */
+  public long nextId() throws LDAPException, InterruptedException {
+    Block block = current;
+    while(true) {
+      final long id = block.next.getAndIncrement();
+      if(id < block.end) {
+        if(id == block.end - lowWaterMark) {
+          prefetch(block);
+        }
+        allocated.incrementAndGet();
+        return id;
+      }
+      block = replace(block);
+    }
+  }
+
+
+
+  /**
+   * Stops the background reservation of blocks. IDs remaining in the
+   * current block are not handed out.
+   */
+  public void close() {
+    executorService.shutdownNow();
+  }
+
+
+
+  /**
+   * @return the number of IDs handed out
+   */
+  public long getAllocatedCount() {
+    return allocated.get();
+  }
+
+
+
+  /**
+   * @return the number of blocks reserved
+   */
+  public long getReservationCount() {
+    return reservations.get();
+  }
+
+
+
+  /**
+   * @return the number of times a caller waited for a block to be
+   *         reserved
+   */
+  public long getWaitCount() {
+    return waits.get();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("IdAllocator [dn=%s, attributeName=%s, blockSize=%d, allocated=%d, " +
+      "reservations=%d, waits=%d]",dn,attributeName,blockSize,allocated.get(),
+      reservations.get(),waits.get());
+  }
+
+
+
+  /**
+   * Starts reserving the block which follows {@code block}, unless the
+   * reservation has started or {@code block} has been replaced.
+   */
+  private synchronized void prefetch(final Block block) {
+    if((current == block) && (pending == null) && !executorService.isShutdown()) {
+      pending = executorService.submit(new Callable<Block>() {
+
+        @Override
+        public Block call() throws LDAPException {
+          return reserve();
+        }
+      });
+    }
+  }
+
+
+
+  /**
+   * Replaces {@code exhausted} with the block reserved in the
+   * background, waiting for it if necessary, or with a block reserved
+   * now.
+   *
+   * @return the current block
+   */
+  private synchronized Block replace(final Block exhausted)
+    throws LDAPException, InterruptedException {
+    if(current != exhausted) {
+      return current;
+    }
+    final Future<Block> future = pending;
+    pending = null;
+    final Block block;
+    if(future == null) {
+      if(exhausted != EMPTY) {
+        waits.incrementAndGet();
+      }
+      block = reserve();
+    } else {
+      if(!future.isDone()) {
+        waits.incrementAndGet();
+      }
+      try {
+        block = future.get();
+      } catch(final ExecutionException executionException) {
+        if(executionException.getCause() instanceof LDAPException) {
+          throw (LDAPException) executionException.getCause();
+        }
+        throw new LDAPException(ResultCode.LOCAL_ERROR,executionException.getCause());
+      }
+    }
+    current = block;
+    return block;
+  }
+
+
+
+  /**
+   * Increments the attribute by the block size.
+   *
+   * @return the block of IDs between the values of the attribute before
+   *         and after the increment
+   */
+  private Block reserve() throws LDAPException {
+    final ModifyRequest modifyRequest = new ModifyRequest(dn,
+      new Modification(ModificationType.INCREMENT,attributeName,String.valueOf(blockSize)));
+    modifyRequest.addControl(new PostReadRequestControl(true,attributeName));
+    final LDAPResult ldapResult = ldapInterface.modify(modifyRequest);
+
+    final PostReadResponseControl postReadResponseControl =
+      PostReadResponseControl.get(ldapResult);
+    final Long end = postReadResponseControl == null ? null :
+      postReadResponseControl.getEntry().getAttributeValueAsLong(attributeName);
+    if(end == null) {
+      throw new LDAPException(ResultCode.CONTROL_NOT_FOUND,"the server did not return the " +
+        "integer value of " + attributeName + " of " + dn + " after reserving a block");
+    }
+    reservations.incrementAndGet();
+    return new Block(end - blockSize,end);
+  }
+
+
+
+  /**
+   * A block of reserved IDs, from {@code next} (inclusive) to
+   * {@code end} (exclusive).
+   */
+  private static final class Block {
+
+    private Block(final long start, final long end) {
+      next = new AtomicLong(start);
+      this.end = end;
+    }
+
+
+
+    private final long end;
+
+
+    private final AtomicLong next;
+
+  }
+
+
+
+  // the block before the first reservation.
+  private static final Block EMPTY = new Block(0L,0L);
+
+
+
+  private final AtomicLong allocated = new AtomicLong();
+
+
+  private final String attributeName;
+
+
+  private final int blockSize;
+
+
+  private volatile Block current = EMPTY;
+
+
+  private final String dn;
+
+
+  private final ExecutorService executorService;
+
+
+  private final LDAPInterface ldapInterface;
+
+
+  // the number of IDs left in a block when the next one is reserved.
+  private final int lowWaterMark;
+
+
+  // the reservation of the next block, if it has started.
+  private Future<Block> pending;
+
+
+  private final AtomicLong reservations = new AtomicLong();
+
+
+  private final AtomicLong waits = new AtomicLong();
+
+}
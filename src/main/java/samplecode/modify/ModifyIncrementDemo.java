@@ -43,7 +43,9 @@ import java.util.List;
  * control is permitted by the server, the post-read response will
  * contain the value of the attribute after the modification occurs. if
  * the server permits, the operation purpose request control is attached
- * to all requests. <blockquote>
+ * to all requests. With --allocateIds, IDs are instead allocated from
+ * each attribute by an {@link IdAllocator}, which reserves blocks of
+ * --blockSize IDs with one modify-increment request each. <blockquote>
  * <p/>
  * <pre>
  * Provides a demonstration of the use of the modify-increment extension. The
@@ -208,6 +210,34 @@ public final class ModifyIncrementDemo extends AbstractTool
   public static final String ARG_NAME_INCREMENT_VALUE = "incrementValue";
 
 
+  /**
+   * The long identifier of the command line argument that is used to
+   * specify the number of IDs allocated from each attribute.
+   */
+  public static final String ARG_NAME_ALLOCATE_IDS = "allocateIds";
+
+
+  /**
+   * The long identifier of the command line argument that is used to
+   * specify the number of IDs reserved with each modify-increment
+   * request when IDs are allocated.
+   */
+  public static final String ARG_NAME_BLOCK_SIZE = "blockSize";
+
+
+  /**
+   * The default number of IDs reserved with each modify-increment
+   * request when IDs are allocated.
+   */
+  public static final Integer DEFAULT_BLOCK_SIZE = 100;
+
+
+  private IntegerArgument allocateIdsArgument;
+
+
+  private IntegerArgument blockSizeArgument;
+
+
   private String[] requestedAttributes;
 
 
@@ -312,6 +342,21 @@ public final class ModifyIncrementDemo extends AbstractTool
         valuePlaceholder, description);
     argumentParser.addArgument(dnArgument);
 
+    allocateIdsArgument =
+      new IntegerArgument(null, ModifyIncrementDemo.ARG_NAME_ALLOCATE_IDS, false, 1,
+        "{positiveInteger}", "Specifies the number of IDs to allocate from each " +
+        "attribute specified by the --attribute command line argument, instead of " +
+        "incrementing the attribute once. IDs are reserved in blocks of --blockSize " +
+        "with one modify-increment request per block.", 1, Integer.MAX_VALUE);
+    argumentParser.addArgument(allocateIdsArgument);
+
+    blockSizeArgument =
+      new IntegerArgument(null, ModifyIncrementDemo.ARG_NAME_BLOCK_SIZE, false, 1,
+        "{positiveInteger}", "Specifies the number of IDs reserved with each " +
+        "modify-increment request when --allocateIds is specified.", 1,
+        Integer.MAX_VALUE, ModifyIncrementDemo.DEFAULT_BLOCK_SIZE);
+    argumentParser.addArgument(blockSizeArgument);
+
     Argument filterArgument = commandLineOptions.getFilterArgument();
     filterArgument.setMaxOccurrences(1);
 
@@ -339,7 +384,14 @@ public final class ModifyIncrementDemo extends AbstractTool
     ResultCode resultCode = ResultCode.SUCCESS;
     try
     {
-      modifyIncrementAttributes();
+      if (allocateIdsArgument.isPresent())
+      {
+        allocateIds();
+      }
+      else
+      {
+        modifyIncrementAttributes();
+      }
     }
     catch(LDAPException e)
     {
@@ -391,6 +443,47 @@ public final class ModifyIncrementDemo extends AbstractTool
   }
 
 
+  void allocateIds() throws LDAPException
+  {
+    initializeDemo();
+    int count = allocateIdsArgument.getValue();
+    LDAPConnection ldapConnection = getConnection();
+    try
+    {
+      for(final String attribute : requestedAttributes)
+      {
+        IdAllocator idAllocator =
+          IdAllocator.newInstance(ldapConnection, entryDn.toString(), attribute,
+            blockSizeArgument.getValue());
+        try
+        {
+          long first = idAllocator.nextId();
+          long last = first;
+          for(int i = 1; i < count; ++i)
+          {
+            last = idAllocator.nextId();
+          }
+          out(String.format("Allocated %d IDs from %s, %d to %d: %s", count, attribute,
+            first, last, idAllocator));
+        }
+        catch(InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          throw new LDAPException(ResultCode.USER_CANCELED, e);
+        }
+        finally
+        {
+          idAllocator.close();
+        }
+      }
+    }
+    finally
+    {
+      ldapConnection.close();
+    }
+  }
+
+
   void modifyIncrementAttributes() throws LDAPException
   {
 
@@ -16,6 +16,8 @@
 
 package samplecode.modifydn;
 
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.ModifyDNRequest;
@@ -23,6 +25,7 @@ import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.util.args.ArgumentException;
 import com.unboundid.util.args.ArgumentParser;
 import com.unboundid.util.args.BooleanArgument;
+import com.unboundid.util.args.FileArgument;
 import com.unboundid.util.args.StringArgument;
 import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
@@ -31,9 +34,23 @@ import samplecode.annotation.Since;
 import samplecode.listener.DefaultLdapExceptionListener;
 import samplecode.tools.AbstractTool;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 
 /**
- * Demonstrates how to use the modify DN request
+ * Demonstrates how to use the modify DN request. With
+ * {@code --moveSubtree}, an entry which has subordinates is moved even
+ * when the server does not support the modify DN operation on such
+ * entries: the request is tried first, and if the server refuses it the
+ * subtree is moved entry by entry by {@link SubtreeMove}, with progress
+ * recorded in the file specified by {@code --checkpointFile} so that a
+ * failed move is resumed by running the demo again; the file is deleted
+ * when the move is complete. References to moved entries below
+ * {@code --baseObject} are fixed, and the old RDN values of the moved
+ * entry are kept or removed as specified by {@code --deleteOldRdn}.
  */
 @Author("terry.gardner@unboundID.com")
 @Since("Oct 30, 2011")
@@ -69,6 +86,28 @@ public final class ModifyDnDemo extends AbstractTool {
   private static final String ARG_NAME_NEW_SUPERIOR_DN = "newSuperiorDn";
 
 
+  /**
+   * The long identifier of the argument used to specify that an entry
+   * with subordinates is moved entry by entry if the server refuses to
+   * move it
+   */
+  private static final String ARG_NAME_MOVE_SUBTREE = "moveSubtree";
+
+
+  /**
+   * The long identifier of the argument used to specify the file in
+   * which the progress of a subtree move is recorded
+   */
+  private static final String ARG_NAME_CHECKPOINT_FILE = "checkpointFile";
+
+
+  /**
+   * The long identifier of the argument used to specify an attribute
+   * whose references to moved entries are fixed
+   */
+  private static final String ARG_NAME_REFERENCE_ATTRIBUTE = "referenceAttribute";
+
+
 
   @Override
   protected ResultCode executeToolTasks() {
@@ -87,6 +126,9 @@ public final class ModifyDnDemo extends AbstractTool {
       (String) commandLineOptions.get(ModifyDnDemo.ARG_NAME_NEW_SUPERIOR_DN);
     final ModifyDNRequest modifyDnRequest =
       new ModifyDNRequest(existingDn,newDn,deleteOldRdn,newSuperiorDn);
+    if((Boolean) commandLineOptions.get(ModifyDnDemo.ARG_NAME_MOVE_SUBTREE)) {
+      return moveSubtree(modifyDnRequest);
+    }
     LDAPResult ldapResult;
     try {
       ldapResult = getConnection().modifyDN(modifyDnRequest);
@@ -100,6 +142,66 @@ public final class ModifyDnDemo extends AbstractTool {
 
 
 
+  /**
+   * Sends {@code modifyDnRequest} unless a subtree move is already
+   * recorded in the checkpoint file, and moves the subtree entry by
+   * entry if the server refuses to move an entry with subordinates.
+   */
+  private ResultCode moveSubtree(final ModifyDNRequest modifyDnRequest) {
+    final FileArgument checkpointFileArgument =
+      commandLineOptions.getNamedArgument(ModifyDnDemo.ARG_NAME_CHECKPOINT_FILE);
+    final File checkpointFile = checkpointFileArgument.getValue();
+    LDAPConnectionPool ldapConnectionPool = null;
+    try {
+      ldapConnectionPool = getLdapConnectionPool();
+      if(!checkpointFile.exists()) {
+        try {
+          return ldapConnectionPool.modifyDN(modifyDnRequest).getResultCode();
+        } catch(final LDAPException exception) {
+          final ResultCode resultCode = exception.getResultCode();
+          if(!ResultCode.NOT_ALLOWED_ON_NONLEAF.equals(resultCode) &&
+            !ResultCode.UNWILLING_TO_PERFORM.equals(resultCode) &&
+            !ResultCode.AFFECTS_MULTIPLE_DSAS.equals(resultCode)) {
+            throw exception;
+          }
+          getLogger().info(String.format("the server refused to move %s (%s), moving it " +
+            "entry by entry",modifyDnRequest.getDN(),resultCode));
+        }
+      }
+
+      final StringArgument referenceAttributeArgument =
+        commandLineOptions.getNamedArgument(ModifyDnDemo.ARG_NAME_REFERENCE_ATTRIBUTE);
+      final List<String> referenceAttributes = referenceAttributeArgument.isPresent() ?
+        referenceAttributeArgument.getValues() : SubtreeMove.DEFAULT_REFERENCE_ATTRIBUTES;
+      final String newSuperiorDn = modifyDnRequest.getNewSuperiorDN() != null ?
+        modifyDnRequest.getNewSuperiorDN() :
+        new DN(modifyDnRequest.getDN()).getParentString();
+      final SubtreeMove subtreeMove =
+        SubtreeMove.newInstance(ldapConnectionPool,
+          Math.max(1,commandLineOptions.getNumThreads()),commandLineOptions.getPageSize(),
+          referenceAttributes,checkpointFile);
+      subtreeMove.move(modifyDnRequest.getDN(),modifyDnRequest.getNewRDN(),
+        modifyDnRequest.deleteOldRDN(),newSuperiorDn,commandLineOptions.getBaseObject());
+      out(subtreeMove);
+    } catch(final LDAPException exception) {
+      getLogger().fatal(exception.getExceptionMessage());
+      return exception.getResultCode();
+    } catch(final IOException exception) {
+      getLogger().fatal(exception.getMessage());
+      return ResultCode.LOCAL_ERROR;
+    } catch(final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      return ResultCode.USER_CANCELED;
+    } finally {
+      if(ldapConnectionPool != null) {
+        ldapConnectionPool.close();
+      }
+    }
+    return ResultCode.SUCCESS;
+  }
+
+
+
   @Override
   protected String classSpecificPropertiesResourceName() {
     return "ModifyDnDemo.properties";
@@ -126,6 +228,23 @@ public final class ModifyDnDemo extends AbstractTool {
     /** add --newSuperiorDn command line argument */
     argumentParser.addArgument(new StringArgument(null,
       ModifyDnDemo.ARG_NAME_NEW_SUPERIOR_DN,false,1,"dn","The new superior DN"));
+
+    /** add --moveSubtree command line argument */
+    argumentParser.addArgument(new BooleanArgument(null,ModifyDnDemo.ARG_NAME_MOVE_SUBTREE,
+      1,"whether to move an entry with subordinates entry by entry if the server refuses " +
+      "to move it"));
+
+    /** add --checkpointFile command line argument */
+    argumentParser.addArgument(new FileArgument(null,ModifyDnDemo.ARG_NAME_CHECKPOINT_FILE,
+      false,1,"path","The file in which the progress of a subtree move is recorded, and " +
+      "from which a failed move is resumed",false,true,true,false,
+      Arrays.asList(new File("ModifyDnDemo.checkpoint"))));
+
+    /** add --referenceAttribute command line argument */
+    argumentParser.addArgument(new StringArgument(null,
+      ModifyDnDemo.ARG_NAME_REFERENCE_ATTRIBUTE,false,0,"attribute","An attribute whose " +
+      "references to moved entries are fixed by a subtree move; by default " +
+      SubtreeMove.DEFAULT_REFERENCE_ATTRIBUTES));
   }
 
 
@@ -0,0 +1,794 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.modifydn;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Moves and renames a subtree entry by entry, for servers which do not
+ * support the modify DN operation on entries which have subordinates.
+ * The move has three phases:
+ * <ol>
+ * <li><b>copy</b>: the source subtree is enumerated with a paged search
+ * and recreated top-down under the new DN. The entries of each level
+ * are added in parallel, each level after the one above it. Values of
+ * the reference attributes at or below the source are rewritten.</li>
+ * <li><b>references</b>: the entries below the reference base which have
+ * a reference attribute (such as {@code member} or {@code manager})
+ * naming an entry at or below the source are found with a paged search,
+ * and each is fixed with one modify request. The modifies of each page
+ * are sent in parallel.</li>
+ * <li><b>delete</b>: the source subtree is enumerated again and deleted
+ * bottom-up, the entries of each level in parallel.</li>
+ * </ol>
+ * Progress is appended to a checkpoint file: the source and target of
+ * the move, each entry added, and the completion of each phase. A move
+ * which fails is resumed by running it again with the same checkpoint
+ * file: completed phases are skipped, entries recorded as added are not
+ * added again, and the references and delete phases only find the work
+ * which remains. The checkpoint file is deleted when every phase is
+ * complete, so that it can be used for the next move.
+ * <p/>
+ * A target entry which already exists but is not recorded as added,
+ * for example because the move failed after adding it and before
+ * recording it, is accepted only if its user attributes equal those of
+ * the copy; otherwise the move fails with
+ * {@code ENTRY_ALREADY_EXISTS} before any source entry is deleted.
+ * <p/>
+ * Only user attributes are copied, so operational attributes such as
+ * {@code entryUUID} and {@code createTimestamp} are assigned anew by the
+ * server, and the source subtree is held in memory during the copy
+ * phase.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final SubtreeMove subtreeMove =
+ *   SubtreeMove.newInstance(ldapConnectionPool,8,500,
+ *     SubtreeMove.DEFAULT_REFERENCE_ATTRIBUTES,new File("move.checkpoint"));
+ * subtreeMove.move("ou=sales,dc=example,dc=com","ou=sales",
+ *   "ou=emea,dc=example,dc=com","dc=example,dc=com");
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * A {@code SubtreeMove} performs one move at a time.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class SubtreeMove {
+
+  /**
+   * The attributes whose DN values are fixed unless others are
+   * specified.
+   */
+  public static final List<String> DEFAULT_REFERENCE_ATTRIBUTES =
+    Collections.unmodifiableList(Arrays.asList("member","uniqueMember","manager",
+      "owner","secretary","seeAlso"));
+
+
+
+  /**
+   * Creates a subtree move.
+   *
+   * @param ldapConnectionPool
+   *   the pool from which connections are checked out. The pool must be
+   *   authenticated as an identity which may read, add, modify and
+   *   delete the entries involved. {@code ldapConnectionPool} is not
+   *   permitted to be {@code null}.
+   * @param numThreads
+   *   the number of requests sent concurrently, which must be positive.
+   * @param pageSize
+   *   the number of entries requested per page, which must be positive.
+   * @param referenceAttributes
+   *   the attributes whose DN values are fixed. {@code
+   *   referenceAttributes} is not permitted to be {@code null}.
+   * @param checkpointFile
+   *   the file to which progress is appended. {@code checkpointFile} is
+   *   not permitted to be {@code null}.
+   *
+   * @return a new subtree move
+   */
+  public static SubtreeMove newInstance(final LDAPConnectionPool ldapConnectionPool,
+                                        final int numThreads, final int pageSize,
+                                        final Collection<String> referenceAttributes,
+                                        final File checkpointFile) {
+    ensureNotNull(ldapConnectionPool,referenceAttributes,checkpointFile);
+    ensureTrue(numThreads > 0);
+    ensureTrue(pageSize > 0);
+    return new SubtreeMove(ldapConnectionPool,numThreads,pageSize,referenceAttributes,
+      checkpointFile);
+  }
+
+
+
+  private SubtreeMove(final LDAPConnectionPool ldapConnectionPool, final int numThreads,
+                      final int pageSize, final Collection<String> referenceAttributes,
+                      final File checkpointFile) {
+    this.ldapConnectionPool = ldapConnectionPool;
+    this.numThreads = numThreads;
+    this.pageSize = pageSize;
+    this.referenceAttributes = new ArrayList<String>(referenceAttributes);
+    this.checkpointFile = checkpointFile;
+  }
+
+
+
+  /**
+   * Moves the subtree at {@code sourceDn} to {@code newRdn} below
+   * {@code newSuperiorDn}, removing the old RDN values from the base
+   * entry, or resumes the move recorded in the checkpoint file.
+   *
+   * @param sourceDn
+   *   the DN of the base entry of the subtree. {@code sourceDn} is not
+   *   permitted to be {@code null}.
+   * @param newRdn
+   *   the new RDN of the base entry, or {@code null} to keep its RDN.
+   * @param newSuperiorDn
+   *   the DN of the new parent of the base entry. {@code newSuperiorDn}
+   *   is not permitted to be {@code null}.
+   * @param referenceBaseDn
+   *   the base DN below which references to moved entries are fixed.
+   *   {@code referenceBaseDn} is not permitted to be {@code null}.
+   *
+   * @throws LDAPException
+   *   if a DN is invalid, the target is at or below the source, the
+   *   checkpoint file records another move, or a request fails. The
+   *   move can then be resumed.
+   * @throws IOException
+   *   if the checkpoint file cannot be read, written or deleted.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting for requests.
+   */
+  public void move(final String sourceDn, final String newRdn, final String newSuperiorDn,
+                   final String referenceBaseDn)
+    throws LDAPException, IOException, InterruptedException {
+    move(sourceDn,newRdn,true,newSuperiorDn,referenceBaseDn);
+  }
+
+
+
+  /**
+   * Moves the subtree at {@code sourceDn} to {@code newRdn} below
+   * {@code newSuperiorDn}, or resumes the move recorded in the
+   * checkpoint file.
+   *
+   * @param sourceDn
+   *   the DN of the base entry of the subtree. {@code sourceDn} is not
+   *   permitted to be {@code null}.
+   * @param newRdn
+   *   the new RDN of the base entry, or {@code null} to keep its RDN.
+   * @param deleteOldRdn
+   *   whether the values of the old RDN are removed from the base entry
+   *   when it is renamed, as in a modify DN request.
+   * @param newSuperiorDn
+   *   the DN of the new parent of the base entry. {@code newSuperiorDn}
+   *   is not permitted to be {@code null}.
+   * @param referenceBaseDn
+   *   the base DN below which references to moved entries are fixed.
+   *   {@code referenceBaseDn} is not permitted to be {@code null}.
+   *
+   * @throws LDAPException
+   *   if a DN is invalid, the target is at or below the source, the
+   *   checkpoint file records another move, or a request fails. The
+   *   move can then be resumed.
+   * @throws IOException
+   *   if the checkpoint file cannot be read, written or deleted.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting for requests.
+   */
+  public void move(final String sourceDn, final String newRdn, final boolean deleteOldRdn,
+                   final String newSuperiorDn, final String referenceBaseDn)
+    throws LDAPException, IOException, InterruptedException {
+    ensureNotNull(sourceDn,newSuperiorDn,referenceBaseDn);
+    this.deleteOldRdn = deleteOldRdn;
+    source = new DN(sourceDn);
+    targetRdn = newRdn == null ? source.getRDN() : new RDN(newRdn);
+    targetParent = new DN(newSuperiorDn);
+    target = new DN(targetRdn,targetParent);
+    if(target.isDescendantOf(source,true)) {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+        "the target " + target + " is at or below the source " + source);
+    }
+
+    final Set<String> completedPhases = SampleCodeCollectionUtils.newHashSet();
+    added = SampleCodeCollectionUtils.newConcurrentHashMap();
+    readCheckpoint(completedPhases);
+    checkpoint = new BufferedWriter(new OutputStreamWriter(
+      new FileOutputStream(checkpointFile,true),"UTF-8"));
+    final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+    boolean complete = false;
+    try {
+      if(!moveRecorded) {
+        writeCheckpoint(MOVE + "\t" + source + "\t" + target);
+      }
+      if(!completedPhases.contains(PHASE_COPY)) {
+        copy(executorService);
+        writeCheckpoint(PHASE + "\t" + PHASE_COPY);
+      }
+      if(!completedPhases.contains(PHASE_REFERENCES)) {
+        fixReferences(executorService,new DN(referenceBaseDn));
+        writeCheckpoint(PHASE + "\t" + PHASE_REFERENCES);
+      }
+      if(!completedPhases.contains(PHASE_DELETE)) {
+        delete(executorService);
+        writeCheckpoint(PHASE + "\t" + PHASE_DELETE);
+      }
+      complete = true;
+    } finally {
+      executorService.shutdownNow();
+      if(pagingConnection != null) {
+        releasePagingConnection(true);
+      }
+      checkpoint.close();
+    }
+    if(complete && !checkpointFile.delete()) {
+      throw new IOException("the move is complete but the checkpoint file " + checkpointFile +
+        " cannot be deleted");
+    }
+  }
+
+
+
+  /**
+   * @return the number of entries added
+   */
+  public synchronized long getAddedCount() {
+    return addedCount;
+  }
+
+
+
+  /**
+   * @return the number of entries not added because they had been added
+   *         before the move was resumed, whether recorded in the
+   *         checkpoint file or found on the server equal to the copy
+   */
+  public synchronized long getSkippedCount() {
+    return skippedCount;
+  }
+
+
+
+  /**
+   * @return the number of entries whose references were fixed
+   */
+  public synchronized long getFixedCount() {
+    return fixedCount;
+  }
+
+
+
+  /**
+   * @return the number of entries deleted
+   */
+  public synchronized long getDeletedCount() {
+    return deletedCount;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format("SubtreeMove [source=%s, target=%s, added=%d, skipped=%d, fixed=%d, " +
+      "deleted=%d]",source,target,addedCount,skippedCount,fixedCount,deletedCount);
+  }
+
+
+
+  private void copy(final ExecutorService executorService)
+    throws LDAPException, IOException, InterruptedException {
+    final SortedMap<Integer,List<Entry>> levels =
+      enumerateSource(new String[] {SearchRequest.ALL_USER_ATTRIBUTES});
+    for(final List<Entry> level : levels.values()) {
+      final List<Callable<Void>> tasks = SampleCodeCollectionUtils.newArrayList();
+      for(final Entry entry : level) {
+        final Entry copy = newEntry(entry);
+        final String key = copy.getParsedDN().toNormalizedString();
+        if(added.containsKey(key)) {
+          synchronized(this) {
+            ++skippedCount;
+          }
+          continue;
+        }
+        tasks.add(new Callable<Void>() {
+
+          @Override
+          public Void call() throws LDAPException {
+            try {
+              ldapConnectionPool.add(copy);
+              synchronized(SubtreeMove.this) {
+                ++addedCount;
+              }
+            } catch(final LDAPException ldapException) {
+              if(!ResultCode.ENTRY_ALREADY_EXISTS.equals(ldapException.getResultCode())) {
+                throw ldapException;
+              }
+              final Entry existing = ldapConnectionPool.getEntry(copy.getDN());
+              if((existing == null) || !Entry.diff(existing,copy,false).isEmpty()) {
+                throw new LDAPException(ResultCode.ENTRY_ALREADY_EXISTS,"the target entry " +
+                  copy.getDN() + " already exists and differs from the copy of " +
+                  entry.getDN());
+              }
+              synchronized(SubtreeMove.this) {
+                ++skippedCount;
+              }
+            }
+            added.put(key,key);
+            writeCheckpoint(ADD + "\t" + copy.getDN());
+            return null;
+          }
+        });
+      }
+      invokeAll(executorService,tasks);
+    }
+  }
+
+
+
+  private void fixReferences(final ExecutorService executorService, final DN referenceBase)
+    throws LDAPException, IOException, InterruptedException {
+    final List<Filter> presence = SampleCodeCollectionUtils.newArrayList();
+    for(final String attribute : referenceAttributes) {
+      presence.add(Filter.createPresenceFilter(attribute));
+    }
+    final SearchRequest searchRequest = new SearchRequest(referenceBase.toString(),
+      SearchScope.SUB,Filter.createORFilter(presence),
+      referenceAttributes.toArray(new String[referenceAttributes.size()]));
+    final List<Entry> page = SampleCodeCollectionUtils.newArrayList();
+    ASN1OctetString cookie = null;
+    do {
+      page.clear();
+      cookie = searchPage(searchRequest,cookie,page);
+      final List<Callable<Void>> tasks = SampleCodeCollectionUtils.newArrayList();
+      for(final Entry entry : page) {
+        if(entry.getParsedDN().isDescendantOf(source,true)) {
+          continue;
+        }
+        final List<Modification> modifications = getReferenceModifications(entry);
+        if(modifications.isEmpty()) {
+          continue;
+        }
+        tasks.add(new Callable<Void>() {
+
+          @Override
+          public Void call() throws LDAPException {
+            ldapConnectionPool.modify(entry.getDN(),modifications);
+            synchronized(SubtreeMove.this) {
+              ++fixedCount;
+            }
+            return null;
+          }
+        });
+      }
+      invokeAll(executorService,tasks);
+    } while(cookie != null);
+  }
+
+
+
+  private void delete(final ExecutorService executorService)
+    throws LDAPException, IOException, InterruptedException {
+    // a resumed move may have deleted the base entry, and with it the
+    // whole source subtree, before recording the phase as complete.
+    final SortedMap<Integer,List<Entry>> levels;
+    try {
+      levels = enumerateSource(new String[] {SearchRequest.NO_ATTRIBUTES});
+    } catch(final LDAPException ldapException) {
+      if(ResultCode.NO_SUCH_OBJECT.equals(ldapException.getResultCode())) {
+        return;
+      }
+      throw ldapException;
+    }
+    final List<List<Entry>> bottomUp = new ArrayList<List<Entry>>(levels.values());
+    Collections.reverse(bottomUp);
+    for(final List<Entry> level : bottomUp) {
+      final List<Callable<Void>> tasks = SampleCodeCollectionUtils.newArrayList();
+      for(final Entry entry : level) {
+        tasks.add(new Callable<Void>() {
+
+          @Override
+          public Void call() throws LDAPException {
+            try {
+              ldapConnectionPool.delete(entry.getDN());
+              synchronized(SubtreeMove.this) {
+                ++deletedCount;
+              }
+            } catch(final LDAPException ldapException) {
+              if(!ResultCode.NO_SUCH_OBJECT.equals(ldapException.getResultCode())) {
+                throw ldapException;
+              }
+            }
+            return null;
+          }
+        });
+      }
+      invokeAll(executorService,tasks);
+    }
+  }
+
+
+
+  /**
+   * @return the entries of the source subtree keyed by depth, shallowest
+   *         first
+   */
+  private SortedMap<Integer,List<Entry>> enumerateSource(final String[] attributes)
+    throws LDAPException {
+    final SearchRequest searchRequest = new SearchRequest(source.toString(),SearchScope.SUB,
+      Filter.createPresenceFilter("objectClass"),attributes);
+    final SortedMap<Integer,List<Entry>> levels = new TreeMap<Integer,List<Entry>>();
+    final List<Entry> page = SampleCodeCollectionUtils.newArrayList();
+    ASN1OctetString cookie = null;
+    do {
+      page.clear();
+      cookie = searchPage(searchRequest,cookie,page);
+      for(final Entry entry : page) {
+        final Integer depth = entry.getParsedDN().getRDNs().length;
+        List<Entry> level = levels.get(depth);
+        if(level == null) {
+          level = SampleCodeCollectionUtils.newArrayList();
+          levels.put(depth,level);
+        }
+        level.add(entry);
+      }
+    } while(cookie != null);
+    return levels;
+  }
+
+
+
+  /**
+   * Retrieves one page of the results of {@code searchRequest} into
+   * {@code page}. The paged results cookie is only valid on the
+   * connection which returned it, so every page of a search is retrieved
+   * on one connection, which is checked out until the last page.
+   *
+   * @return the cookie of the next page, or {@code null} after the last
+   *         page
+   */
+  private ASN1OctetString searchPage(final SearchRequest searchRequest,
+                                     final ASN1OctetString cookie, final List<Entry> page)
+    throws LDAPException {
+    final SearchRequest pageRequest =
+      searchRequest.duplicate(new Control[] {new SimplePagedResultsControl(pageSize,cookie)});
+    final LDAPConnection ldapConnection = getPagingConnection();
+    final SearchResult searchResult;
+    try {
+      searchResult = ldapConnection.search(pageRequest);
+    } catch(final LDAPException ldapException) {
+      releasePagingConnection(ResultCode.isConnectionUsable(ldapException.getResultCode()));
+      throw ldapException;
+    }
+    page.addAll(searchResult.getSearchEntries());
+    final SimplePagedResultsControl responseControl =
+      SimplePagedResultsControl.get(searchResult);
+    if((responseControl == null) || !responseControl.moreResultsToReturn()) {
+      releasePagingConnection(true);
+      return null;
+    }
+    return responseControl.getCookie();
+  }
+
+
+
+  private LDAPConnection getPagingConnection() throws LDAPException {
+    if(pagingConnection == null) {
+      pagingConnection = ldapConnectionPool.getConnection();
+    }
+    return pagingConnection;
+  }
+
+
+
+  private void releasePagingConnection(final boolean usable) {
+    if(usable) {
+      ldapConnectionPool.releaseConnection(pagingConnection);
+    } else {
+      ldapConnectionPool.releaseDefunctConnection(pagingConnection);
+    }
+    pagingConnection = null;
+  }
+
+
+
+  /**
+   * @return a copy of {@code entry} with its new DN and its references
+   *         rewritten
+   */
+  private Entry newEntry(final Entry entry) throws LDAPException {
+    final DN dn = entry.getParsedDN();
+    final Entry copy = entry.duplicate();
+    copy.setDN(rename(dn));
+    if(dn.equals(source) && !targetRdn.equals(source.getRDN())) {
+      if(deleteOldRdn) {
+        final RDN oldRdn = source.getRDN();
+        for(int i = 0; i < oldRdn.getAttributeNames().length; ++i) {
+          copy.removeAttributeValue(oldRdn.getAttributeNames()[i],
+            oldRdn.getAttributeValues()[i]);
+        }
+      }
+      for(int i = 0; i < targetRdn.getAttributeNames().length; ++i) {
+        copy.addAttribute(targetRdn.getAttributeNames()[i],targetRdn.getAttributeValues()[i]);
+      }
+    }
+    for(final String attribute : referenceAttributes) {
+      final String[] values = copy.getAttributeValues(attribute);
+      if(values == null) {
+        continue;
+      }
+      final String[] newValues = new String[values.length];
+      for(int i = 0; i < values.length; ++i) {
+        newValues[i] = renameReference(values[i]);
+      }
+      copy.setAttribute(attribute,newValues);
+    }
+    return copy;
+  }
+
+
+
+  /**
+   * @return the modifications which replace the references of
+   *         {@code entry} to entries at or below the source
+   */
+  private List<Modification> getReferenceModifications(final Entry entry) {
+    final List<Modification> modifications = SampleCodeCollectionUtils.newArrayList();
+    for(final Attribute attribute : entry.getAttributes()) {
+      final List<String> oldValues = SampleCodeCollectionUtils.newArrayList();
+      final List<String> newValues = SampleCodeCollectionUtils.newArrayList();
+      for(final String value : attribute.getValues()) {
+        final String newValue = renameReference(value);
+        if(!newValue.equals(value)) {
+          oldValues.add(value);
+          newValues.add(newValue);
+        }
+      }
+      if(!oldValues.isEmpty()) {
+        modifications.add(new Modification(ModificationType.DELETE,attribute.getName(),
+          oldValues.toArray(new String[oldValues.size()])));
+        modifications.add(new Modification(ModificationType.ADD,attribute.getName(),
+          newValues.toArray(new String[newValues.size()])));
+      }
+    }
+    return modifications;
+  }
+
+
+
+  /**
+   * @return the new DN of {@code value} if it names an entry at or below
+   *         the source, else {@code value}
+   */
+  private String renameReference(final String value) {
+    try {
+      final DN dn = new DN(value);
+      return dn.isDescendantOf(source,true) ? rename(dn).toString() : value;
+    } catch(final LDAPException ldapException) {
+      return value;
+    }
+  }
+
+
+
+  private DN rename(final DN dn) {
+    final RDN[] rdns = dn.getRDNs();
+    final RDN[] parentRdns = targetParent.getRDNs();
+    final int relative = rdns.length - source.getRDNs().length;
+    final RDN[] newRdns = new RDN[relative + 1 + parentRdns.length];
+    System.arraycopy(rdns,0,newRdns,0,relative);
+    newRdns[relative] = targetRdn;
+    System.arraycopy(parentRdns,0,newRdns,relative + 1,parentRdns.length);
+    return new DN(newRdns);
+  }
+
+
+
+  /**
+   * Runs {@code tasks} and waits for all of them, so that the checkpoint
+   * records every task which succeeded before the first failure is
+   * reported.
+   */
+  private void invokeAll(final ExecutorService executorService,
+                         final List<Callable<Void>> tasks)
+    throws LDAPException, IOException, InterruptedException {
+    LDAPException failure = null;
+    for(final Future<Void> future : executorService.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch(final ExecutionException executionException) {
+        if(failure == null) {
+          failure = executionException.getCause() instanceof LDAPException ?
+            (LDAPException) executionException.getCause() :
+            new LDAPException(ResultCode.LOCAL_ERROR,executionException.getCause());
+        }
+      }
+    }
+    if(checkpointFailure != null) {
+      throw checkpointFailure;
+    }
+    if(failure != null) {
+      throw failure;
+    }
+  }
+
+
+
+  private void readCheckpoint(final Set<String> completedPhases)
+    throws LDAPException, IOException {
+    moveRecorded = false;
+    checkpointFailure = null;
+    if(!checkpointFile.exists()) {
+      return;
+    }
+    final BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new FileInputStream(checkpointFile),"UTF-8"));
+    try {
+      String line;
+      while((line = reader.readLine()) != null) {
+        final String[] fields = line.split("\t");
+        if(MOVE.equals(fields[0]) && (fields.length == 3)) {
+          if(!source.equals(new DN(fields[1])) || !target.equals(new DN(fields[2]))) {
+            throw new LDAPException(ResultCode.PARAM_ERROR,"the checkpoint file " +
+              checkpointFile + " records the move of " + fields[1] + " to " + fields[2]);
+          }
+          moveRecorded = true;
+        } else if(PHASE.equals(fields[0]) && (fields.length == 2)) {
+          completedPhases.add(fields[1]);
+        } else if(ADD.equals(fields[0]) && (fields.length == 2)) {
+          final String key = new DN(fields[1]).toNormalizedString();
+          added.put(key,key);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+
+
+  private synchronized void writeCheckpoint(final String line) {
+    if(checkpointFailure != null) {
+      return;
+    }
+    try {
+      checkpoint.write(line);
+      checkpoint.write('\n');
+      checkpoint.flush();
+    } catch(final IOException ioException) {
+      checkpointFailure = ioException;
+    }
+  }
+
+
+
+  private static final String ADD = "ADD";
+
+
+  private static final String MOVE = "MOVE";
+
+
+  private static final String PHASE = "PHASE";
+
+
+  private static final String PHASE_COPY = "copy";
+
+
+  private static final String PHASE_DELETE = "delete";
+
+
+  private static final String PHASE_REFERENCES = "references";
+
+
+
+  // the normalized DNs of the entries added, as a concurrent set.
+  private Map<String,String> added;
+
+
+  private long addedCount;
+
+
+  private Writer checkpoint;
+
+
+  private IOException checkpointFailure;
+
+
+  private final File checkpointFile;
+
+
+  private long deletedCount;
+
+
+  // whether the old RDN values are removed from the base entry.
+  private boolean deleteOldRdn;
+
+
+  private long fixedCount;
+
+
+  private final LDAPConnectionPool ldapConnectionPool;
+
+
+  private boolean moveRecorded;
+
+
+  private final int numThreads;
+
+
+  private final int pageSize;
+
+
+  // the connection on which a paged search is in progress.
+  private LDAPConnection pagingConnection;
+
+
+  private final List<String> referenceAttributes;
+
+
+  private long skippedCount;
+
+
+  private DN source;
+
+
+  private DN target;
+
+
+  private DN targetParent;
+
+
+  private RDN targetRdn;
+
+}
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.password;
+
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.ExtendedResult;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.extensions.PasswordModifyExtendedRequest;
+import com.unboundid.ldap.sdk.extensions.PasswordModifyExtendedResult;
+import com.unboundid.util.FixedRateBarrier;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.tools.AdaptiveConcurrencyLimiter;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Resets the passwords of many entries with the password modify
+ * extended operation, for example to force-reset accounts after a
+ * security incident. Each input line holds the DN of an entry,
+ * optionally followed by a tab and the new password; empty lines and
+ * lines starting with {@code #} are skipped. When a line has no
+ * password, the password is generated by the {@link PasswordGenerator},
+ * if there is one, or else by the server.
+ * <p/>
+ * Requests are processed by {@code numThreads} threads, each using a
+ * connection checked out of a pool, at no more than
+ * {@code maxPerSecond} requests per second. The number of requests
+ * outstanding at once is set by an {@link AdaptiveConcurrencyLimiter}:
+ * it starts at a quarter of {@code numThreads}, rises towards
+ * {@code numThreads} while the server keeps up, and falls when the
+ * server returns {@code BUSY} or slows down. A request which returns
+ * {@code BUSY} is retried up to {@code maxRetries} times; while the
+ * limiter is at its lowest limit of one request, so that it cannot shed
+ * more load, the retry waits for a jittered exponential backoff first.
+ * <p/>
+ * The outcome of every entry is appended to a journal as a line
+ * holding the result code, a tab and the DN, followed, when the
+ * password was generated, by a tab and the password. The journal is
+ * flushed after each line and is readable only by its owner. When the
+ * journal exists at start-up, the entries it records as successfully
+ * reset are skipped, so an interrupted run is resumed by running it
+ * again with the same input and journal.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class BulkPasswordReset {
+
+  /**
+   * Generates a new password for an entry whose input line has none.
+   */
+  public interface PasswordGenerator {
+
+    /**
+     * @param dn
+     *   the DN of the entry.
+     *
+     * @return the new password of the entry
+     */
+    String generatePassword(String dn);
+  }
+
+
+
+  /**
+   * The backoff before the first retry of a {@code BUSY} request made
+   * while the concurrency limit is one, which doubles for each further
+   * retry.
+   */
+  public static final long INITIAL_BACKOFF_MILLIS = 100L;
+
+
+  /**
+   * The longest backoff between retries.
+   */
+  public static final long MAX_BACKOFF_MILLIS = 10000L;
+
+
+
+  /**
+   * Creates a bulk password reset.
+   *
+   * @param ldapConnectionPool
+   *   the pool from which connections are checked out. The pool must be
+   *   authenticated as an identity which may reset the passwords.
+   *   {@code ldapConnectionPool} is not permitted to be {@code null}.
+   * @param numThreads
+   *   the maximum number of requests processed concurrently, which must
+   *   be positive.
+   * @param maxPerSecond
+   *   the maximum number of requests sent per second, or zero for no
+   *   limit.
+   * @param maxRetries
+   *   the number of times a {@code BUSY} request is retried, which must
+   *   not be negative.
+   * @param journalFile
+   *   the file to which outcomes are appended.
+   *   {@code journalFile} is not permitted to be {@code null}.
+   * @param passwordGenerator
+   *   generates passwords for entries whose input line has none. If
+   *   {@code passwordGenerator} is {@code null}, the server generates
+   *   them.
+   *
+   * @return a new bulk password reset
+   */
+  public static BulkPasswordReset newInstance(final LDAPConnectionPool ldapConnectionPool,
+                                              final int numThreads, final int maxPerSecond,
+                                              final int maxRetries, final File journalFile,
+                                              final PasswordGenerator passwordGenerator) {
+    ensureNotNull(ldapConnectionPool,journalFile);
+    ensureTrue(numThreads > 0);
+    ensureTrue(maxPerSecond >= 0);
+    ensureTrue(maxRetries >= 0);
+    return new BulkPasswordReset(ldapConnectionPool,numThreads,maxPerSecond,maxRetries,
+      journalFile,passwordGenerator);
+  }
+
+
+
+  /**
+   * Creates a generator of random passwords drawn from upper and lower
+   * case letters, digits and punctuation.
+   *
+   * @param length
+   *   the length of the passwords, which must be positive.
+   *
+   * @return a new generator
+   */
+  public static PasswordGenerator newRandomPasswordGenerator(final int length) {
+    ensureTrue(length > 0);
+    final Random random = new SecureRandom();
+    return new PasswordGenerator() {
+
+      @Override
+      public String generatePassword(final String dn) {
+        final char[] password = new char[length];
+        synchronized(random) {
+          for(int i = 0; i < length; ++i) {
+            password[i] = PASSWORD_CHARACTERS.charAt(random.nextInt(PASSWORD_CHARACTERS.length()));
+          }
+        }
+        return new String(password);
+      }
+
+    };
+  }
+
+
+
+  private BulkPasswordReset(final LDAPConnectionPool ldapConnectionPool, final int numThreads,
+                            final int maxPerSecond, final int maxRetries,
+                            final File journalFile, final PasswordGenerator passwordGenerator) {
+    this.ldapConnectionPool = ldapConnectionPool;
+    this.numThreads = numThreads;
+    this.maxRetries = maxRetries;
+    this.journalFile = journalFile;
+    this.passwordGenerator = passwordGenerator;
+    rateBarrier = maxPerSecond == 0 ? null : new FixedRateBarrier(1000L,maxPerSecond);
+    limiter = AdaptiveConcurrencyLimiter.newInstance(Math.max(1,numThreads / 4),1,numThreads);
+  }
+
+
+
+  /**
+   * Resets the password of every entry read from {@code input} which
+   * the journal does not record as already reset, and waits until every
+   * request has completed.
+   *
+   * @param input
+   *   the source of DNs and passwords. {@code input} is not permitted
+   *   to be {@code null}.
+   *
+   * @throws IOException
+   *   if the input or the journal cannot be read, or the journal cannot
+   *   be written. When a journal write fails no further input is read
+   *   and no further request is sent, so that no password is reset
+   *   without being recorded; only the requests already in progress
+   *   complete.
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting for the
+   *   requests to complete.
+   */
+  public void run(final BufferedReader input) throws IOException, InterruptedException {
+    ensureNotNull(input);
+    final Set<String> completed = readJournal();
+    final boolean created = journalFile.createNewFile();
+    if(created) {
+      journalFile.setReadable(false,false);
+      journalFile.setWritable(false,false);
+      journalFile.setReadable(true,true);
+      journalFile.setWritable(true,true);
+    }
+    journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile,true),
+      "UTF-8"));
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads,numThreads,0L,
+      TimeUnit.MILLISECONDS,new ArrayBlockingQueue<Runnable>(numThreads * 4),
+      new ThreadPoolExecutor.CallerRunsPolicy());
+    try {
+      String line;
+      while(!isJournalFailed() && ((line = input.readLine()) != null)) {
+        if((line.length() == 0) || line.startsWith("#")) {
+          continue;
+        }
+        final int tab = line.indexOf('\t');
+        final String dn = tab < 0 ? line : line.substring(0,tab);
+        final String newPassword = tab < 0 ? null : line.substring(tab + 1);
+        if(completed.contains(normalize(dn))) {
+          skipped.incrementAndGet();
+          continue;
+        }
+        executor.execute(new Runnable() {
+
+          @Override
+          public void run() {
+            reset(dn,newPassword);
+          }
+
+        });
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE,TimeUnit.MILLISECONDS);
+      synchronized(this) {
+        journal.close();
+      }
+    }
+    if(journalFailure != null) {
+      throw journalFailure;
+    }
+  }
+
+
+
+  /**
+   * @return the number of passwords reset
+   */
+  public long getSuccessCount() {
+    return succeeded.get();
+  }
+
+
+
+  /**
+   * @return the number of passwords which could not be reset
+   */
+  public long getFailureCount() {
+    return failed.get();
+  }
+
+
+
+  /**
+   * @return the number of entries skipped because the journal records
+   *         them as already reset
+   */
+  public long getSkippedCount() {
+    return skipped.get();
+  }
+
+
+
+  /**
+   * @return the number of {@code BUSY} requests which were retried
+   */
+  public long getRetryCount() {
+    return retried.get();
+  }
+
+
+
+  /**
+   * @return the number of requests currently permitted to be
+   *         outstanding at once
+   */
+  public int getConcurrencyLimit() {
+    return limiter.getLimit();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("BulkPasswordReset [succeeded=%d, failed=%d, skipped=%d, retried=%d, " +
+      "concurrencyLimit=%d]",succeeded.get(),failed.get(),skipped.get(),retried.get(),
+      limiter.getLimit());
+  }
+
+
+
+  private void reset(final String dn, final String newPassword) {
+    if(isJournalFailed()) {
+      // the outcome could not be recorded.
+      return;
+    }
+    String password = newPassword;
+    boolean generated = false;
+    if((password == null) && (passwordGenerator != null)) {
+      password = passwordGenerator.generatePassword(dn);
+      generated = true;
+    }
+    // The user identity is the bare DN, which RFC 3062 permits and
+    // which more servers accept than the "dn:" authorization ID form.
+    final PasswordModifyExtendedRequest request =
+      new PasswordModifyExtendedRequest(dn,null,password);
+
+    ResultCode resultCode;
+    for(int attempt = 0; ; ++attempt) {
+      if(rateBarrier != null) {
+        rateBarrier.await();
+      }
+      try {
+        limiter.acquire();
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        resultCode = ResultCode.USER_CANCELED;
+        break;
+      }
+      resultCode = ResultCode.LOCAL_ERROR;
+      final long start = System.nanoTime();
+      try {
+        final ExtendedResult result = process(request);
+        resultCode = result.getResultCode();
+        if((password == null) && (result instanceof PasswordModifyExtendedResult)) {
+          password = ((PasswordModifyExtendedResult) result).getGeneratedPassword();
+          generated = password != null;
+        }
+      } catch(final LDAPException e) {
+        resultCode = e.getResultCode();
+      } finally {
+        limiter.release(resultCode,System.nanoTime() - start);
+      }
+      if(!ResultCode.BUSY.equals(resultCode) || (attempt == maxRetries)) {
+        break;
+      }
+      retried.incrementAndGet();
+      if(limiter.getLimit() > 1) {
+        continue;
+      }
+      try {
+        Thread.sleep(backoffMillis(attempt));
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    if(ResultCode.SUCCESS.equals(resultCode)) {
+      succeeded.incrementAndGet();
+    } else {
+      failed.incrementAndGet();
+    }
+    final StringBuilder builder = new StringBuilder();
+    builder.append(resultCode.intValue()).append('\t').append(dn);
+    if(generated && ResultCode.SUCCESS.equals(resultCode)) {
+      builder.append('\t').append(password);
+    }
+    writeJournal(builder.toString());
+  }
+
+
+
+  private ExtendedResult process(final PasswordModifyExtendedRequest request)
+    throws LDAPException {
+    final LDAPConnection ldapConnection = ldapConnectionPool.getConnection();
+    try {
+      final ExtendedResult result = ldapConnection.processExtendedOperation(request);
+      ldapConnectionPool.releaseConnection(ldapConnection);
+      return result;
+    } catch(final LDAPException e) {
+      if(ResultCode.isConnectionUsable(e.getResultCode())) {
+        ldapConnectionPool.releaseConnection(ldapConnection);
+      } else {
+        ldapConnectionPool.releaseDefunctConnection(ldapConnection);
+      }
+      throw e;
+    }
+  }
+
+
+
+  /**
+   * @return the backoff before retry {@code attempt + 1}: the doubled
+   *         initial backoff, capped, of which a random half is waited
+   */
+  private static long backoffMillis(final int attempt) {
+    final long backoff = Math.min(MAX_BACKOFF_MILLIS,INITIAL_BACKOFF_MILLIS << Math.min(attempt,16));
+    final long half = backoff / 2;
+    synchronized(JITTER) {
+      return half + (long) (JITTER.nextDouble() * half);
+    }
+  }
+
+
+
+  private static String normalize(final String dn) {
+    try {
+      return new DN(dn).toNormalizedString();
+    } catch(final LDAPException e) {
+      return dn.toLowerCase();
+    }
+  }
+
+
+
+  /**
+   * @return the normalized DNs which the journal records as reset
+   */
+  private Set<String> readJournal() throws IOException {
+    final Set<String> completed = SampleCodeCollectionUtils.newHashSet();
+    if(!journalFile.exists()) {
+      return completed;
+    }
+    final BufferedReader reader =
+      new BufferedReader(new InputStreamReader(new FileInputStream(journalFile),"UTF-8"));
+    try {
+      String line;
+      while((line = reader.readLine()) != null) {
+        final String[] fields = line.split("\t",3);
+        if((fields.length >= 2) && "0".equals(fields[0])) {
+          completed.add(normalize(fields[1]));
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return completed;
+  }
+
+
+
+  private synchronized boolean isJournalFailed() {
+    return journalFailure != null;
+  }
+
+
+
+  private synchronized void writeJournal(final String line) {
+    if(journalFailure != null) {
+      return;
+    }
+    try {
+      journal.write(line);
+      journal.write('\n');
+      journal.flush();
+    } catch(final IOException e) {
+      journalFailure = e;
+    }
+  }
+
+
+
+  private static final Random JITTER = new Random();
+
+
+  private static final String PASSWORD_CHARACTERS =
+    "ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz23456789!#%*+-=?@_";
+
+
+
+  private final AtomicLong failed = new AtomicLong();
+
+
+  private Writer journal;
+
+
+  private IOException journalFailure;
+
+
+  private final File journalFile;
+
+
+  private final LDAPConnectionPool ldapConnectionPool;
+
+
+  private final AdaptiveConcurrencyLimiter limiter;
+
+
+  private final int maxRetries;
+
+
+  private final int numThreads;
+
+
+  private final PasswordGenerator passwordGenerator;
+
+
+  private final FixedRateBarrier rateBarrier;
+
+
+  private final AtomicLong retried = new AtomicLong();
+
+
+  private final AtomicLong skipped = new AtomicLong();
+
+
+  private final AtomicLong succeeded = new AtomicLong();
+
+}
@@ -19,12 +19,15 @@ package samplecode.password;
 import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.util.CommandLineTool;
 import com.unboundid.util.args.Argument;
 import com.unboundid.util.args.ArgumentException;
 import com.unboundid.util.args.ArgumentParser;
+import com.unboundid.util.args.FileArgument;
+import com.unboundid.util.args.IntegerArgument;
 import com.unboundid.util.args.StringArgument;
 import samplecode.annotation.Author;
 import samplecode.annotation.CodeVersion;
@@ -36,6 +39,11 @@ import samplecode.tools.AbstractTool;
 import samplecode.tools.BasicToolCompletedProcessing;
 import samplecode.tools.ToolCompletedProcessing;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
 
@@ -47,6 +55,14 @@ import java.io.PrintStream;
  * specified by the {@code --newPassword} command line argument or if
  * {@code --newPassword} is not specified,has the server generate a new
  * password (which is returned in the extended response).
+ * <p/>
+ * When {@code --bulkResetFile} is specified, the tool instead resets the
+ * passwords of the entries listed in the file with a
+ * {@link BulkPasswordReset}, with at most {@code --numThreads} requests
+ * outstanding, adapted to the load of the server, at no more than
+ * {@code --maxPerSecond} requests per second, and records the
+ * outcomes in {@code --journalFile}. Running the tool again with the
+ * same journal skips the entries already reset.
  */
 @Author("terry.gardner@unboundid.com")
 @Since("12-Nov-2011")
@@ -237,6 +253,46 @@ public final class PasswordModifyExtendedOperationDemo extends AbstractTool
   private static final String ARG_NAME_NEW_PASSWORD = "newPassword";
 
 
+  /**
+   * The long identifier of the command line argument whose parameter
+   * names the file of DNs, each optionally followed by a tab and a new
+   * password, whose passwords are reset in bulk.
+   */
+  private static final String ARG_NAME_BULK_RESET_FILE = "bulkResetFile";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the length of the passwords generated for entries of the bulk reset
+   * file which have no password. When it is not present, the server
+   * generates the passwords.
+   */
+  private static final String ARG_NAME_GENERATED_PASSWORD_LENGTH = "generatedPasswordLength";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter
+   * names the journal of a bulk reset. The default is the name of the
+   * bulk reset file followed by {@code .journal}.
+   */
+  private static final String ARG_NAME_JOURNAL_FILE = "journalFile";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the maximum number of requests per second of a bulk reset.
+   */
+  private static final String ARG_NAME_MAX_PER_SECOND = "maxPerSecond";
+
+
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the number of times a bulk reset request which returns {@code BUSY}
+   * is retried.
+   */
+  private static final String ARG_NAME_MAX_RETRIES = "maxRetries";
+
+
   private static final String RESOURCE_NAME =
     "PasswordModifyExtendedOperationDemo.properties";
 
@@ -283,6 +339,38 @@ public final class PasswordModifyExtendedOperationDemo extends AbstractTool
         "response.");
     argumentParser.addArgument(stringArgument);
 
+    bulkResetFileArgument =
+      new FileArgument(null,ARG_NAME_BULK_RESET_FILE,false,1,"{filename}",
+        "A file of DNs whose passwords are reset, one per line, each optionally " +
+          "followed by a tab and the new password.",true,true,true,false);
+    argumentParser.addArgument(bulkResetFileArgument);
+
+    journalFileArgument =
+      new FileArgument(null,ARG_NAME_JOURNAL_FILE,false,1,"{filename}",
+        "The journal of the outcome of each bulk reset, which is used to resume an " +
+          "interrupted reset. The default is the bulk reset file name followed by " +
+          "'.journal'.");
+    argumentParser.addArgument(journalFileArgument);
+
+    generatedPasswordLengthArgument =
+      new IntegerArgument(null,ARG_NAME_GENERATED_PASSWORD_LENGTH,false,1,
+        "{positive-integer}","The length of the random passwords generated for " +
+        "entries of the bulk reset file which have no password. If this argument is " +
+        "not present, the server generates the passwords.",1,Integer.MAX_VALUE);
+    argumentParser.addArgument(generatedPasswordLengthArgument);
+
+    maxPerSecondArgument =
+      new IntegerArgument(null,ARG_NAME_MAX_PER_SECOND,false,1,"{non-negative-integer}",
+        "The maximum number of bulk reset requests per second, or 0 for no limit.",0,
+        Integer.MAX_VALUE,0);
+    argumentParser.addArgument(maxPerSecondArgument);
+
+    maxRetriesArgument =
+      new IntegerArgument(null,ARG_NAME_MAX_RETRIES,false,1,"{non-negative-integer}",
+        "The number of times a bulk reset request which returns BUSY is retried.",0,
+        Integer.MAX_VALUE,5);
+    argumentParser.addArgument(maxRetriesArgument);
+
 
     Argument bindDNArgument = commandLineOptions.getBindDnArgument();
     Argument bindPasswordArgument =
@@ -297,6 +385,10 @@ public final class PasswordModifyExtendedOperationDemo extends AbstractTool
 
     addLdapExceptionListener(new DefaultLdapExceptionListener(getLogger()));
 
+    if(bulkResetFileArgument.isPresent()) {
+      return executeBulkReset();
+    }
+
     /*
      * Retrieve the user-specified bind DN from the command line
      * argument processor. The {@code LDAPCommandLineTool} --bindDn
@@ -370,4 +462,68 @@ public final class PasswordModifyExtendedOperationDemo extends AbstractTool
     return RESOURCE_NAME;
   }
 
+
+
+  /**
+   * Resets the passwords of the entries in the bulk reset file using a
+   * pool of connections authenticated as the bind DN.
+   */
+  private ResultCode executeBulkReset() {
+    final File bulkResetFile = bulkResetFileArgument.getValue();
+    final File journalFile = journalFileArgument.isPresent() ?
+      journalFileArgument.getValue() : new File(bulkResetFile.getPath() + ".journal");
+    final BulkPasswordReset.PasswordGenerator passwordGenerator =
+      generatedPasswordLengthArgument.isPresent() ?
+        BulkPasswordReset.newRandomPasswordGenerator(
+          generatedPasswordLengthArgument.getValue()) : null;
+    final int numThreads = Math.max(1,commandLineOptions.getNumThreads());
+
+    LDAPConnectionPool ldapConnectionPool = null;
+    try {
+      ldapConnectionPool = getLdapConnectionPool(connectToServer(),1,numThreads);
+      final BulkPasswordReset bulkPasswordReset =
+        BulkPasswordReset.newInstance(ldapConnectionPool,numThreads,
+          maxPerSecondArgument.getValue(),maxRetriesArgument.getValue(),journalFile,
+          passwordGenerator);
+      final BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(bulkResetFile),"UTF-8"));
+      try {
+        bulkPasswordReset.run(reader);
+      } finally {
+        reader.close();
+      }
+      out(bulkPasswordReset.toString());
+      return bulkPasswordReset.getFailureCount() == 0 ? ResultCode.SUCCESS : ResultCode.OTHER;
+    } catch(final LDAPException ldapException) {
+      fireLdapExceptionListener(null,ldapException);
+      return ldapException.getResultCode();
+    } catch(final IOException ioException) {
+      getLogger().fatal(ioException);
+      return ResultCode.LOCAL_ERROR;
+    } catch(final InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      return ResultCode.USER_CANCELED;
+    } finally {
+      if(ldapConnectionPool != null) {
+        ldapConnectionPool.close();
+      }
+    }
+  }
+
+
+
+  private FileArgument bulkResetFileArgument;
+
+
+  private IntegerArgument generatedPasswordLengthArgument;
+
+
+  private FileArgument journalFileArgument;
+
+
+  private IntegerArgument maxPerSecondArgument;
+
+
+  private IntegerArgument maxRetriesArgument;
+
 }
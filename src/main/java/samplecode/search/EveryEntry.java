@@ -24,6 +24,8 @@ import com.unboundid.util.Validator;
 import com.unboundid.util.args.Argument;
 import com.unboundid.util.args.ArgumentException;
 import com.unboundid.util.args.ArgumentParser;
+import com.unboundid.util.args.BooleanArgument;
+import com.unboundid.util.args.FilterArgument;
 import com.unboundid.util.args.StringArgument;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,7 +39,6 @@ import samplecode.util.StaticData;
 
 import java.io.PrintStream;
 import java.util.List;
-import java.util.Vector;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
@@ -65,7 +66,14 @@ import java.util.logging.LogRecord;
  * directory server will be authorized as
  * {@code "uid=user.0,ou=people,dc=example,dc=com"}, and the
  * {@code StartTLS} extended request will attempt to encrypt the
- * connection between client and server.<blockquote>
+ * connection between client and server.
+ * <p/>
+ * When {@code --matchedValuesFilter} is specified, each search request
+ * carries a matched values request control if the server supports it,
+ * so that only the values of multi-valued attributes which match the
+ * filter are returned; {@code --measureMatchedValues} first runs the
+ * search with and without the control and reports the bandwidth and
+ * decode time saved.<blockquote>
  * <p/>
  * <pre>
  * java -cp your-classpath samplecode.EveryEntry \
@@ -229,6 +237,13 @@ public final class EveryEntry extends LDAPCommandLineTool {
    * The
    *     searchEntryReturned method of this class is invoked when an entry is
    *     returned from a search.
+   * --matchedValuesFilter {matched-values-filter}
+   *     Return only the values of multi-valued attributes which match this
+   *     filter, using the matched values request control when the server
+   *     supports it.
+   * --measureMatchedValues
+   *     Before searching, run the search with and without the matched values
+   *     request control and report the bandwidth and decode time saved.
    * -H, -?, --help
    *     Display usage information for this program.
    * </pre>
@@ -340,19 +355,70 @@ public final class EveryEntry extends LDAPCommandLineTool {
      * Set up an executor service with a fixed thread pool.
      */
     final int numThreads = commandLineOptions.getNumThreads();
+
+    /*
+     * Project multi-valued attributes onto the values which match the
+     * matched values filter, if one was specified.
+     */
+    final Filter matchedValuesFilter = commandLineOptions.getMatchedValuesFilter();
+    MatchedValuesProjection matchedValuesProjection = null;
+    if(matchedValuesFilter != null) {
+      try {
+        matchedValuesProjection = MatchedValuesProjection.newInstance(matchedValuesFilter);
+        if(commandLineOptions.isMeasureMatchedValues()) {
+          measureMatchedValues(matchedValuesProjection);
+        }
+      } catch(final LDAPException ldapException) {
+        err(formatter.format(new LogRecord(Level.SEVERE,ldapException.getMessage())));
+        return ldapException.getResultCode();
+      }
+    }
     final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
 
     /*
      * Start searches, one per thread.
      */
     ResultCode resultCode = ResultCode.SUCCESS;
-    resultCode = startSearches(executorService,numThreads);
+    resultCode = startSearches(executorService,numThreads,matchedValuesProjection);
     executorService.shutdown();
     return resultCode;
   }
 
 
 
+  /**
+   * Runs the search specified by the command line arguments with and
+   * without the matched values request control and displays the
+   * bandwidth and decode time saved.
+   *
+   * @param matchedValuesProjection
+   *   the projection to measure.
+   *
+   * @throws LDAPException
+   *   if a connection cannot be established or the search fails.
+   */
+  private void measureMatchedValues(final MatchedValuesProjection matchedValuesProjection)
+    throws LDAPException {
+    final LDAPConnection ldapConnection = getConnection();
+    try {
+      final SearchRequest searchRequest =
+        new SearchRequest(commandLineOptions.getBaseObject(),commandLineOptions.getSearchScope(),
+          commandLineOptions.getFilter(),
+          commandLineOptions.getRequestedAttributes().toArray(new String[0]));
+      searchRequest.setSizeLimit(commandLineOptions.getSizeLimit());
+      searchRequest.setTimeLimitSeconds(commandLineOptions.getTimeLimit());
+      if(!matchedValuesProjection.measure(ldapConnection,searchRequest)) {
+        out(formatter.format(new LogRecord(Level.WARNING,"The server does not support the " +
+          "matched values request control; all attribute values will be returned.")));
+      }
+      out(formatter.format(new LogRecord(Level.INFO,matchedValuesProjection.getReport())));
+    } finally {
+      ldapConnection.close();
+    }
+  }
+
+
+
   /**
    * Starts all threads, one thread per task.
    *
@@ -362,10 +428,14 @@ public final class EveryEntry extends LDAPCommandLineTool {
    * @param numThreads
    *   the number of threads (and tasks since there is one task
    *   per thread).
+   * @param matchedValuesProjection
+   *   the projection applied to each search request, or
+   *   {@code null} if none was requested.
    *
    * @return a single result code.
    */
-  private ResultCode startSearches(final ExecutorService executorService, final int numThreads) {
+  private ResultCode startSearches(final ExecutorService executorService, final int numThreads,
+                                   final MatchedValuesProjection matchedValuesProjection) {
     Validator.ensureNotNull(executorService);
     ResultCode resultCode = ResultCode.SUCCESS;
     for(int t = 0; t < numThreads; ++t) {
@@ -385,7 +455,7 @@ public final class EveryEntry extends LDAPCommandLineTool {
         errorListeners.add(l);
         impl =
           new EveryEntryImpl(searchListenerClassname,commandLineOptions,
-            ldapConnection,getErr(),errorListeners);
+            ldapConnection,getErr(),errorListeners,matchedValuesProjection);
         final Log logger = LogFactory.getLog(getClass());
         final LdapExceptionListener ldapExceptionListener =
           new DefaultLdapExceptionListener(logger);
@@ -454,6 +524,24 @@ final class EveryEntryCommandLineOptions extends CommandLineOptions {
 
 
 
+  /**
+   * The description of the matched values filter command line
+   * argument.
+   */
+  private static final String DESCRIPTION_MATCHED_VALUES_FILTER =
+    "Return only the values of multi-valued attributes which match this filter, using the " +
+      "matched values request control when the server supports it.";
+
+
+  /**
+   * The description of the command line argument which requests a
+   * measurement of the bandwidth saved by the matched values filter.
+   */
+  private static final String DESCRIPTION_MEASURE_MATCHED_VALUES =
+    "Before searching, run the search with and without the matched values request control " +
+      "and report the bandwidth and decode time saved.";
+
+
   /**
    * The description of the search result listener command line
    * argument.
@@ -472,6 +560,20 @@ final class EveryEntryCommandLineOptions extends CommandLineOptions {
   private static final boolean IS_REQUIRED_SEARCH_RESULT_LISTENER = true;
 
 
+  /**
+   * The long identifier of the command line argument whose parameter is
+   * the matched values filter.
+   */
+  private static final String LONG_ID_MATCHED_VALUES_FILTER = "matchedValuesFilter";
+
+
+  /**
+   * The long identifier of the command line argument which requests a
+   * measurement of the bandwidth saved by the matched values filter.
+   */
+  private static final String LONG_ID_MEASURE_MATCHED_VALUES = "measureMatchedValues";
+
+
   /**
    * The long identifier of the command line argument whose parameter is
    * the name of a class that extends {@code SearchResultListener}.
@@ -495,6 +597,14 @@ final class EveryEntryCommandLineOptions extends CommandLineOptions {
   private static final Character SHORT_ID_SEARCH_RESULT_LISTENER = null;
 
 
+  /**
+   * The value place-holder of the matched values filter command line
+   * argument.
+   */
+  private static final String VALUE_PLACEHOLDER_MATCHED_VALUES_FILTER =
+    "{matched-values-filter}";
+
+
   /**
    * The value place-holder of the command line argument whose parameter
    * is the value place-holder of the search result listener command
@@ -510,6 +620,23 @@ final class EveryEntryCommandLineOptions extends CommandLineOptions {
       argumentParser);
     final Argument searchResultListenerArgument = newSearchResultListenerArgument();
     addArguments(searchResultListenerArgument);
+    addArguments(newMatchedValuesFilterArgument(),newMeasureMatchedValuesArgument());
+  }
+
+
+
+  /**
+   * Retrieves the parameter of the command line argument that specifies
+   * the matched values filter.
+   *
+   * @return the matched values filter, or {@code null} if none was
+   *         specified.
+   */
+  public Filter getMatchedValuesFilter() {
+    final FilterArgument matchedValuesFilterArg =
+      (FilterArgument) getArgumentParser().getNamedArgument
+        (EveryEntryCommandLineOptions.LONG_ID_MATCHED_VALUES_FILTER);
+    return matchedValuesFilterArg.getValue();
   }
 
 
@@ -529,6 +656,54 @@ final class EveryEntryCommandLineOptions extends CommandLineOptions {
 
 
 
+  /**
+   * Retrieves whether the bandwidth saved by the matched values filter
+   * should be measured before searching.
+   *
+   * @return whether {@code --measureMatchedValues} was specified.
+   */
+  public boolean isMeasureMatchedValues() {
+    final BooleanArgument measureMatchedValuesArg =
+      (BooleanArgument) getArgumentParser().getNamedArgument
+        (EveryEntryCommandLineOptions.LONG_ID_MEASURE_MATCHED_VALUES);
+    return measureMatchedValuesArg.isPresent();
+  }
+
+
+
+  /**
+   * Create the argument used for transmitting the matched values
+   * filter.
+   *
+   * @return a command line {@code Argument}.
+   *
+   * @throws ArgumentException
+   *   if a problem transpires creating the argument.
+   */
+  private Argument newMatchedValuesFilterArgument() throws ArgumentException {
+    return new FilterArgument(null,EveryEntryCommandLineOptions.LONG_ID_MATCHED_VALUES_FILTER,
+      false,1,EveryEntryCommandLineOptions.VALUE_PLACEHOLDER_MATCHED_VALUES_FILTER,
+      EveryEntryCommandLineOptions.DESCRIPTION_MATCHED_VALUES_FILTER);
+  }
+
+
+
+  /**
+   * Create the argument used for requesting a measurement of the
+   * bandwidth saved by the matched values filter.
+   *
+   * @return a command line {@code Argument}.
+   *
+   * @throws ArgumentException
+   *   if a problem transpires creating the argument.
+   */
+  private Argument newMeasureMatchedValuesArgument() throws ArgumentException {
+    return new BooleanArgument(null,EveryEntryCommandLineOptions.LONG_ID_MEASURE_MATCHED_VALUES,
+      EveryEntryCommandLineOptions.DESCRIPTION_MEASURE_MATCHED_VALUES);
+  }
+
+
+
   /**
    * Create the argument used for transmitting the desired search result
    * listener classname.
@@ -577,6 +752,9 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
    *   a stream to which error output is transmitted.
    * @param errorListeners
    *   they are notified when an error or exception transpires.
+   * @param matchedValuesProjection
+   *   the projection applied to the search request, or {@code null}
+   *   to return all attribute values.
    *
    * @throws LDAPException
    *   if a {@code SearchRequest} cannot be created using
@@ -594,7 +772,8 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
   public EveryEntryImpl(final String searchListenerClassname,
                         final EveryEntryCommandLineOptions commandLineOptions,
                         final LDAPConnection ldapConnection, final PrintStream errStream,
-                        final List<ErrorListener<ResultCode>> errorListeners) throws
+                        final List<ErrorListener<ResultCode>> errorListeners,
+                        final MatchedValuesProjection matchedValuesProjection) throws
     LDAPException,
     InstantiationException,
     IllegalAccessException,
@@ -608,6 +787,9 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
     this.ldapConnection = ldapConnection;
     setConnectionOptions();
     searchRequest = createSearchRequest(newSearchResultListener());
+    if(matchedValuesProjection != null) {
+      matchedValuesProjection.apply(ldapConnection,searchRequest);
+    }
   }
 
 
@@ -616,11 +798,9 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
    * {@inheritDoc}
    */
   @Override
-  public synchronized void addLdapExceptionListener(
+  public void addLdapExceptionListener(
     final LdapExceptionListener ldapExceptionListener) {
-    if(ldapExceptionListener != null) {
-      ldapExceptionListeners.add(ldapExceptionListener);
-    }
+    ldapExceptionListeners.add(ldapExceptionListener);
   }
 
 
@@ -628,20 +808,16 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
   /**
    * {@inheritDoc}
    */
-  @SuppressWarnings("unchecked")
   @Override
   public void fireLdapExceptionListener(final LDAPConnection ldapConnection,
                                         final LDAPException ldapException) {
     Validator.ensureNotNull(ldapConnection,ldapException);
-    Vector<LdapExceptionListener> copy;
-    synchronized(this) {
-      copy = (Vector<LdapExceptionListener>) ldapExceptionListeners.clone();
-    }
-    if(copy.size() == 0) {
+    final LdapExceptionListener[] listeners = ldapExceptionListeners.getListeners();
+    if(listeners.length == 0) {
       return;
     }
     final LdapExceptionEvent ev = new LdapExceptionEvent(this,ldapConnection,ldapException);
-    for(final LdapExceptionListener l : copy) {
+    for(final LdapExceptionListener l : listeners) {
       l.ldapRequestFailed(ev);
     }
   }
@@ -652,11 +828,9 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
    * {@inheritDoc}
    */
   @Override
-  public synchronized void removeLdapExceptionListener(
+  public void removeLdapExceptionListener(
     final LdapExceptionListener ldapExceptionListener) {
-    if(ldapExceptionListener != null) {
-      ldapExceptionListeners.remove(ldapExceptionListener);
-    }
+    ldapExceptionListeners.remove(ldapExceptionListener);
   }
 
 
@@ -816,8 +990,8 @@ final class EveryEntryImpl implements Runnable, ObservedByLdapExceptionListener
   /**
    * interested parties to {@code LdapExceptionEvents}
    */
-  private volatile Vector<LdapExceptionListener> ldapExceptionListeners =
-    new Vector<LdapExceptionListener>();
+  private final ListenerRegistry<LdapExceptionListener> ldapExceptionListeners =
+    ListenerRegistry.newInstance(LdapExceptionListener.class);
 
 
   private final String searchListenerClassname;
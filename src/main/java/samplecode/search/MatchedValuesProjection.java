@@ -0,0 +1,332 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.search;
+
+import com.unboundid.asn1.ASN1Element;
+import com.unboundid.asn1.ASN1Exception;
+import com.unboundid.ldap.protocol.SearchResultEntryProtocolOp;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.MatchedValuesFilter;
+import com.unboundid.ldap.sdk.controls.MatchedValuesRequestControl;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+import samplecode.ldap.SupportedFeature;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+
+
+/**
+ * Projects the values of multi-valued attributes returned by a search
+ * onto the values which match a filter, using the matched values
+ * request control (RFC 3876). A search for a group with a very large
+ * number of {@code member} values, for example, returns only the
+ * {@code member} values the client is interested in. The control is
+ * attached to a search request only when the server advertises it in
+ * the root DSE, so a tool may always request the projection.
+ * <p/>
+ * The projection also measures what it saves: {@link #measure} runs a
+ * search with and without the control and accumulates the encoded size
+ * of each search result entry, and the time taken to decode it, in
+ * each case. The size is that of the encoded search result entry
+ * protocol op, which is the LDAP message without its message ID and
+ * controls.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final MatchedValuesProjection projection =
+ *   MatchedValuesProjection.newInstance(Filter.create("(member=uid=user.0,ou=people,dc=example,dc=com)"));
+ * projection.measure(ldapConnection,searchRequest);
+ * System.out.println(projection.getReport());
+ * projection.apply(ldapConnection,searchRequest);
+ * ldapConnection.search(searchRequest);
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * This class is safe for use by multiple threads.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class MatchedValuesProjection {
+
+  /**
+   * Creates a projection onto the attribute values which match
+   * {@code filter}.
+   *
+   * @param filter
+   *   the filter which attribute values must match to be returned. The
+   *   filter must be a single equality, substring, greater-or-equal,
+   *   less-or-equal, presence, approximate or extensible match
+   *   component. {@code filter} is not permitted to be {@code null}.
+   *
+   * @return a new projection
+   *
+   * @throws LDAPException
+   *   if {@code filter} cannot be used as a matched values filter.
+   */
+  public static MatchedValuesProjection newInstance(final Filter filter) throws LDAPException {
+    ensureNotNull(filter);
+    return new MatchedValuesProjection(MatchedValuesFilter.create(filter));
+  }
+
+
+
+  private MatchedValuesProjection(final MatchedValuesFilter matchedValuesFilter) {
+    this.matchedValuesFilter = matchedValuesFilter;
+  }
+
+
+
+  /**
+   * Attaches a matched values request control to {@code searchRequest}
+   * if the server advertises support for the control.
+   *
+   * @param ldapInterface
+   *   the connection or pool on which the search request will be
+   *   transmitted. {@code ldapInterface} is not permitted to be
+   *   {@code null}.
+   * @param searchRequest
+   *   the search request to which the control is attached.
+   *   {@code searchRequest} is not permitted to be {@code null}.
+   *
+   * @return whether the control was attached
+   */
+  public boolean apply(final LDAPInterface ldapInterface, final SearchRequest searchRequest) {
+    ensureNotNull(ldapInterface,searchRequest);
+    if(!SupportedFeature.isControlSupported(ldapInterface,
+      MatchedValuesRequestControl.MATCHED_VALUES_REQUEST_OID)) {
+      return false;
+    }
+    searchRequest.addControl(newControl());
+    return true;
+  }
+
+
+
+  /**
+   * Transmits the search request without the matched values request
+   * control and then with it, and adds the number, encoded size and
+   * decode time of the entries returned to the totals of this
+   * projection. The entries are counted as they are returned and are
+   * not retained. The search request itself is not changed. When the
+   * server does not support the control, only the search without the
+   * control is transmitted and the entries are counted as if the
+   * projection had saved nothing.
+   *
+   * @param ldapInterface
+   *   the connection or pool on which the search requests are
+   *   transmitted. {@code ldapInterface} is not permitted to be
+   *   {@code null}.
+   * @param searchRequest
+   *   the search request to measure. {@code searchRequest} is not
+   *   permitted to be {@code null}.
+   *
+   * @return whether the server supports the matched values request
+   *         control
+   *
+   * @throws LDAPSearchException
+   *   if either search fails.
+   */
+  public boolean measure(final LDAPInterface ldapInterface, final SearchRequest searchRequest)
+    throws LDAPSearchException {
+    ensureNotNull(ldapInterface,searchRequest);
+    final EntrySizeListener full = new EntrySizeListener();
+    ldapInterface.search(newSearchRequest(searchRequest,full,searchRequest.getControls()));
+
+    final EntrySizeListener projected;
+    final boolean supported = SupportedFeature.isControlSupported(ldapInterface,
+      MatchedValuesRequestControl.MATCHED_VALUES_REQUEST_OID);
+    if(supported) {
+      projected = new EntrySizeListener();
+      final Control[] controls = searchRequest.getControls();
+      final Control[] projectedControls = new Control[controls.length + 1];
+      System.arraycopy(controls,0,projectedControls,0,controls.length);
+      projectedControls[controls.length] = newControl();
+      ldapInterface.search(newSearchRequest(searchRequest,projected,projectedControls));
+    } else {
+      projected = full;
+    }
+
+    entries.addAndGet(full.entries);
+    fullBytes.addAndGet(full.bytes);
+    fullDecodeNanos.addAndGet(full.decodeNanos);
+    projectedBytes.addAndGet(projected.bytes);
+    projectedDecodeNanos.addAndGet(projected.decodeNanos);
+    return supported;
+  }
+
+
+
+  /**
+   * @return the number of entries measured
+   */
+  public long getEntryCount() {
+    return entries.get();
+  }
+
+
+
+  /**
+   * @return the encoded size in bytes of the entries measured without
+   *         the matched values request control
+   */
+  public long getFullBytes() {
+    return fullBytes.get();
+  }
+
+
+
+  /**
+   * @return the time in nanoseconds taken to decode the entries measured
+   *         without the matched values request control
+   */
+  public long getFullDecodeNanos() {
+    return fullDecodeNanos.get();
+  }
+
+
+
+  /**
+   * @return the encoded size in bytes of the entries measured with the
+   *         matched values request control
+   */
+  public long getProjectedBytes() {
+    return projectedBytes.get();
+  }
+
+
+
+  /**
+   * @return the time in nanoseconds taken to decode the entries measured
+   *         with the matched values request control
+   */
+  public long getProjectedDecodeNanos() {
+    return projectedDecodeNanos.get();
+  }
+
+
+
+  /**
+   * @return a one-line summary of the bandwidth and decode time saved
+   *         by the projection in the searches measured
+   */
+  public String getReport() {
+    final long count = entries.get();
+    final long full = fullBytes.get();
+    final long projected = projectedBytes.get();
+    final long fullNanos = fullDecodeNanos.get();
+    final long projectedNanos = projectedDecodeNanos.get();
+    return String.format("matched values projection: %d entries, %d bytes per entry without " +
+      "the control, %d bytes per entry with it, %d bytes (%.1f%%) saved; decoding took %.3f ms " +
+      "without the control and %.3f ms with it, %.3f ms saved",count,
+      count == 0 ? 0 : full / count,count == 0 ? 0 : projected / count,full - projected,
+      full == 0 ? 0.0 : 100.0 * (full - projected) / full,fullNanos / 1e6,projectedNanos / 1e6,
+      (fullNanos - projectedNanos) / 1e6);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return String.format("MatchedValuesProjection [matchedValuesFilter=%s, entries=%d, " +
+      "fullBytes=%d, projectedBytes=%d]",matchedValuesFilter,entries.get(),fullBytes.get(),
+      projectedBytes.get());
+  }
+
+
+
+  private MatchedValuesRequestControl newControl() {
+    return new MatchedValuesRequestControl(matchedValuesFilter);
+  }
+
+
+
+  /**
+   * @return a copy of {@code searchRequest} with {@code controls} whose
+   *         entries are returned to {@code searchResultListener}
+   */
+  private static SearchRequest newSearchRequest(final SearchRequest searchRequest,
+                                                final SearchResultListener searchResultListener,
+                                                final Control[] controls) {
+    return new SearchRequest(searchResultListener,controls,searchRequest.getBaseDN(),
+      searchRequest.getScope(),searchRequest.getDereferencePolicy(),
+      searchRequest.getSizeLimit(),searchRequest.getTimeLimitSeconds(),
+      searchRequest.typesOnly(),searchRequest.getFilter(),searchRequest.getAttributes());
+  }
+
+
+
+  /**
+   * Encodes each entry returned as a search result entry protocol op
+   * and times how long it takes to decode it again.
+   */
+  private static final class EntrySizeListener implements SearchResultListener {
+
+    @Override
+    public void searchEntryReturned(final SearchResultEntry searchEntry) {
+      final byte[] encoded = new SearchResultEntryProtocolOp(searchEntry).encodeProtocolOp()
+        .encode();
+      final long begin = System.nanoTime();
+      try {
+        SearchResultEntryProtocolOp.decodeProtocolOp(ASN1Element.decode(encoded));
+      } catch(final ASN1Exception asn1Exception) {
+        throw new IllegalStateException(asn1Exception);
+      } catch(final LDAPException ldapException) {
+        throw new IllegalStateException(ldapException);
+      }
+      decodeNanos += System.nanoTime() - begin;
+      bytes += encoded.length;
+      ++entries;
+    }
+
+
+
+    @Override
+    public void searchReferenceReturned(final SearchResultReference searchReference) {
+      // references carry no attribute values.
+    }
+
+
+
+    private static final long serialVersionUID = 1L;
+
+
+    private long bytes;
+
+
+    private long decodeNanos;
+
+
+    private long entries;
+
+  }
+
+
+
+  private final AtomicLong entries = new AtomicLong();
+
+
+  private final AtomicLong fullBytes = new AtomicLong();
+
+
+  private final AtomicLong fullDecodeNanos = new AtomicLong();
+
+
+  private final MatchedValuesFilter matchedValuesFilter;
+
+
+  private final AtomicLong projectedBytes = new AtomicLong();
+
+
+  private final AtomicLong projectedDecodeNanos = new AtomicLong();
+
+}
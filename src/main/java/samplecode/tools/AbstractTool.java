@@ -112,17 +112,16 @@ public abstract class AbstractTool extends LDAPCommandLineTool
    /**
     * interested parties to {@code LdapExceptionEvents}
     */
-   protected volatile
-   List<LdapExceptionListener> ldapExceptionListeners =
-      new ArrayList<LdapExceptionListener>();
+   protected final ListenerRegistry<LdapExceptionListener> ldapExceptionListeners =
+      ListenerRegistry.newInstance(LdapExceptionListener.class);
 
 
    /**
     * interested parties to {@code LdapSearchExceptionEvents}
     */
-   protected volatile
-   List<LdapSearchExceptionListener>
-      ldapSearchExceptionListeners = new ArrayList<LdapSearchExceptionListener>();
+   protected final ListenerRegistry<LdapSearchExceptionListener>
+      ldapSearchExceptionListeners =
+      ListenerRegistry.newInstance(LdapSearchExceptionListener.class);
 
 
    // The argument parser
@@ -182,35 +181,27 @@ public abstract class AbstractTool extends LDAPCommandLineTool
 
 
    @Override
-   public synchronized void addLdapExceptionListener(
+   public void addLdapExceptionListener(
       final LdapExceptionListener ldapExceptionListener)
    {
-      if(ldapExceptionListener != null)
-      {
-         ldapExceptionListeners.add(ldapExceptionListener);
-      }
+      ldapExceptionListeners.add(ldapExceptionListener);
    }
 
 
    /**
     * {@inheritDoc}
     */
-   @SuppressWarnings("unchecked")
    @Override
    public void fireLdapExceptionListener(final LDAPConnection ldapConnection,
       final LDAPException ldapException)
    {
-      final List<LdapExceptionListener> copy;
-      synchronized(this)
-      {
-         copy = new ArrayList<LdapExceptionListener>(ldapExceptionListeners);
-      }
-      if(copy.size() == 0)
+      final LdapExceptionListener[] listeners = ldapExceptionListeners.getListeners();
+      if(listeners.length == 0)
       {
          return;
       }
       final LdapExceptionEvent ev = new LdapExceptionEvent(this,ldapConnection,ldapException);
-      for(final LdapExceptionListener l : copy)
+      for(final LdapExceptionListener l : listeners)
       {
          l.ldapRequestFailed(ev);
       }
@@ -221,13 +212,10 @@ public abstract class AbstractTool extends LDAPCommandLineTool
     * {@inheritDoc}
     */
    @Override
-   public synchronized void removeLdapExceptionListener(
+   public void removeLdapExceptionListener(
       final LdapExceptionListener ldapExceptionListener)
    {
-      if(ldapExceptionListener != null)
-      {
-         ldapExceptionListeners.remove(ldapExceptionListener);
-      }
+      ldapExceptionListeners.remove(ldapExceptionListener);
    }
 
 
@@ -584,6 +572,25 @@ public abstract class AbstractTool extends LDAPCommandLineTool
    }
 
 
+   /**
+    * Retrieves an {@link IdentityPoolManager} which establishes
+    * connections to the server specified by the command line arguments
+    * and keeps at most {@code --maxConnections} connections available
+    * per bind DN. Use it instead of {@link #getLdapConnectionPool()}
+    * when operations are performed as many different identities.
+    *
+    * @param connectionBudget
+    *    The maximum number of connections open across all bind DNs.
+    */
+   protected IdentityPoolManager getIdentityPoolManager(final int connectionBudget)
+      throws LDAPException
+   {
+      final int maxConnections =
+         commandLineOptions != null ? commandLineOptions.getMaxConnections() : 2;
+      return IdentityPoolManager.newInstance(createServerSet(),maxConnections,connectionBudget);
+   }
+
+
    /**
     * Connect to the LDAP server specified in the LDAP connection command
     * line arguments. The command line arguments which affect the
@@ -879,7 +886,17 @@ public abstract class AbstractTool extends LDAPCommandLineTool
    }
 
 
-   private Properties classSpecificProperties() throws IOException
+   /**
+    * Loads the properties from the resource named by
+    * {@link #classSpecificPropertiesResourceName()}.
+    *
+    * @return the class-specific properties, which are empty if the
+    *         resource cannot be located.
+    *
+    * @throws IOException
+    *    if the resource cannot be read.
+    */
+   protected Properties classSpecificProperties() throws IOException
    {
       final Properties properties = new Properties();
       final String resourceName = classSpecificPropertiesResourceName();
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.tools;
+
+import com.unboundid.ldap.sdk.ResultCode;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Limits the number of outstanding operations of a bulk job and adjusts
+ * the limit to the capacity of the server (additive increase,
+ * multiplicative decrease):
+ * <ul>
+ * <li>An operation which completes with a latency no more than
+ * {@code latencyTolerance} times the lowest recent latency raises the
+ * limit by {@code 1/limit}, that is by about one for each window of
+ * {@code limit} operations.</li>
+ * <li>An operation which completes with a higher latency, or with a
+ * result code showing that the server is overloaded ({@code BUSY},
+ * {@code UNAVAILABLE} or {@code TIME_LIMIT_EXCEEDED}), lowers the limit
+ * by {@code backoffRatio}. The limit is lowered at most once per
+ * smoothed latency, so that a burst of failures from one window of
+ * operations counts as a single signal.</li>
+ * </ul>
+ * The lowest recent latency is re-established every
+ * {@value #MIN_LATENCY_WINDOW} operations, so that the limiter follows
+ * the server as its load changes during the day.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final AdaptiveConcurrencyLimiter limiter =
+ *   AdaptiveConcurrencyLimiter.newInstance(4,1,64);
+ * ... on each worker thread:
+ * limiter.acquire();
+ * final long start = System.nanoTime();
+ * ResultCode resultCode;
+ * try {
+ *   resultCode = ldapConnection.add(entry).getResultCode();
+ * } catch(final LDAPException e) {
+ *   resultCode = e.getResultCode();
+ * }
+ * limiter.release(resultCode,System.nanoTime() - start);
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * This class is safe for use by multiple threads.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class AdaptiveConcurrencyLimiter {
+
+  /**
+   * The factor by which the limit is lowered unless another is
+   * specified.
+   */
+  public static final double DEFAULT_BACKOFF_RATIO = 0.75;
+
+
+  /**
+   * The multiple of the lowest recent latency above which a latency is
+   * considered a sign of overload unless another is specified.
+   */
+  public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+
+  /**
+   * The number of operations after which the lowest recent latency is
+   * re-established.
+   */
+  public static final int MIN_LATENCY_WINDOW = 1000;
+
+
+
+  /**
+   * Creates a limiter with the default backoff ratio and latency
+   * tolerance.
+   *
+   * @param initialLimit
+   *   the initial number of outstanding operations, which must be
+   *   between {@code minLimit} and {@code maxLimit}.
+   * @param minLimit
+   *   the lowest limit, which must be positive.
+   * @param maxLimit
+   *   the highest limit, which must not be less than {@code minLimit}.
+   *
+   * @return a new limiter
+   */
+  public static AdaptiveConcurrencyLimiter newInstance(final int initialLimit,
+                                                       final int minLimit,
+                                                       final int maxLimit) {
+    return newInstance(initialLimit,minLimit,maxLimit,DEFAULT_BACKOFF_RATIO,
+      DEFAULT_LATENCY_TOLERANCE);
+  }
+
+
+
+  /**
+   * Creates a limiter.
+   *
+   * @param initialLimit
+   *   the initial number of outstanding operations, which must be
+   *   between {@code minLimit} and {@code maxLimit}.
+   * @param minLimit
+   *   the lowest limit, which must be positive.
+   * @param maxLimit
+   *   the highest limit, which must not be less than {@code minLimit}.
+   * @param backoffRatio
+   *   the factor by which the limit is lowered, which must be greater
+   *   than zero and less than one.
+   * @param latencyTolerance
+   *   the multiple of the lowest recent latency above which a latency is
+   *   considered a sign of overload, which must be greater than one.
+   *
+   * @return a new limiter
+   */
+  public static AdaptiveConcurrencyLimiter newInstance(final int initialLimit,
+                                                       final int minLimit,
+                                                       final int maxLimit,
+                                                       final double backoffRatio,
+                                                       final double latencyTolerance) {
+    ensureTrue(minLimit > 0);
+    ensureTrue(maxLimit >= minLimit);
+    ensureTrue((initialLimit >= minLimit) && (initialLimit <= maxLimit));
+    ensureTrue((backoffRatio > 0.0) && (backoffRatio < 1.0));
+    ensureTrue(latencyTolerance > 1.0);
+    return new AdaptiveConcurrencyLimiter(initialLimit,minLimit,maxLimit,backoffRatio,
+      latencyTolerance);
+  }
+
+
+
+  private AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit,
+                                     final int maxLimit, final double backoffRatio,
+                                     final double latencyTolerance) {
+    limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.latencyTolerance = latencyTolerance;
+  }
+
+
+
+  /**
+   * @param resultCode
+   *   the result code of an operation.
+   *
+   * @return whether {@code resultCode} shows that the server is
+   *         overloaded
+   */
+  public static boolean isOverloaded(final ResultCode resultCode) {
+    return ResultCode.BUSY.equals(resultCode) || ResultCode.UNAVAILABLE.equals(resultCode) ||
+      ResultCode.TIME_LIMIT_EXCEEDED.equals(resultCode);
+  }
+
+
+
+  /**
+   * Waits until fewer operations than the limit are outstanding and
+   * counts a new outstanding operation. Each call must be followed by
+   * a call to {@link #release(ResultCode,long)}.
+   *
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting.
+   */
+  public synchronized void acquire() throws InterruptedException {
+    while(outstanding >= (int) limit) {
+      wait();
+    }
+    ++outstanding;
+  }
+
+
+
+  /**
+   * Counts a new outstanding operation if fewer operations than the
+   * limit are outstanding, waiting at most {@code timeout}.
+   *
+   * @param timeout
+   *   the maximum time to wait.
+   * @param unit
+   *   the unit of {@code timeout}. {@code unit} is not permitted to be
+   *   {@code null}.
+   *
+   * @return whether the operation was counted; if so, the call must be
+   *         followed by a call to {@link #release(ResultCode,long)}
+   *
+   * @throws InterruptedException
+   *   if the calling thread is interrupted while waiting.
+   */
+  public synchronized boolean tryAcquire(final long timeout, final TimeUnit unit)
+    throws InterruptedException {
+    ensureNotNull(unit);
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while(outstanding >= (int) limit) {
+      final long remaining = deadline - System.nanoTime();
+      if(remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this,remaining);
+    }
+    ++outstanding;
+    return true;
+  }
+
+
+
+  /**
+   * Counts the completion of an outstanding operation and adjusts the
+   * limit.
+   *
+   * @param resultCode
+   *   the result code of the operation. {@code resultCode} is not
+   *   permitted to be {@code null}.
+   * @param latencyNanos
+   *   the time in nanoseconds between sending the request and receiving
+   *   the response.
+   */
+  public synchronized void release(final ResultCode resultCode, final long latencyNanos) {
+    ensureNotNull(resultCode);
+    if(outstanding > 0) {
+      --outstanding;
+    }
+    final long now = System.nanoTime();
+
+    final boolean overloaded;
+    if(isOverloaded(resultCode)) {
+      overloaded = true;
+    } else {
+      recordLatency(latencyNanos);
+      overloaded = latencyNanos > latencyTolerance * minLatencyNanos;
+    }
+
+    if(overloaded) {
+      if(now - lastDecreaseNanos >= (long) smoothedLatencyNanos) {
+        limit = Math.max(minLimit,limit * backoffRatio);
+        lastDecreaseNanos = now;
+        ++decreaseCount;
+      }
+    } else {
+      limit = Math.min(maxLimit,limit + 1.0 / limit);
+    }
+    notifyAll();
+  }
+
+
+
+  /**
+   * @return the current number of operations permitted to be
+   *         outstanding
+   */
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+
+
+  /**
+   * @return the number of operations outstanding
+   */
+  public synchronized int getOutstanding() {
+    return outstanding;
+  }
+
+
+
+  /**
+   * @return the number of times the limit has been lowered
+   */
+  public synchronized long getDecreaseCount() {
+    return decreaseCount;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format("AdaptiveConcurrencyLimiter [limit=%d, outstanding=%d, " +
+      "minLatencyMillis=%.3f, smoothedLatencyMillis=%.3f]",(int) limit,outstanding,
+      minLatencyNanos == Long.MAX_VALUE ? 0.0 : minLatencyNanos / 1e6,
+      smoothedLatencyNanos / 1e6);
+  }
+
+
+
+  private void recordLatency(final long latencyNanos) {
+    smoothedLatencyNanos = smoothedLatencyNanos == 0.0 ? latencyNanos :
+      smoothedLatencyNanos + SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+    windowMinLatencyNanos = Math.min(windowMinLatencyNanos,latencyNanos);
+    minLatencyNanos = Math.min(minLatencyNanos,latencyNanos);
+    if(++windowSamples == MIN_LATENCY_WINDOW) {
+      minLatencyNanos = windowMinLatencyNanos;
+      windowMinLatencyNanos = Long.MAX_VALUE;
+      windowSamples = 0;
+    }
+  }
+
+
+
+  /**
+   * The weight of a new latency in the smoothed latency.
+   */
+  private static final double SMOOTHING = 0.1;
+
+
+
+  private final double backoffRatio;
+
+
+  private long decreaseCount;
+
+
+  private long lastDecreaseNanos = System.nanoTime() - Long.MAX_VALUE / 2;
+
+
+  private final double latencyTolerance;
+
+
+  private double limit;
+
+
+  private final int maxLimit;
+
+
+  private long minLatencyNanos = Long.MAX_VALUE;
+
+
+  private final int minLimit;
+
+
+  private int outstanding;
+
+
+  private double smoothedLatencyNanos;
+
+
+  private long windowMinLatencyNanos = Long.MAX_VALUE;
+
+
+  private int windowSamples;
+
+}
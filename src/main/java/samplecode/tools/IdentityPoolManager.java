@@ -0,0 +1,650 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+/*
+ * Copyright (C) 2008-2012 UnboundID Corp. This program is free
+ * software; you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License (GPLv2 only) or the terms of the GNU
+ * Lesser General Public License (LGPLv2.1 only) as published by the
+ * Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package samplecode.tools;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.ServerSet;
+import samplecode.annotation.Author;
+import samplecode.annotation.CodeVersion;
+import samplecode.annotation.Since;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.unboundid.util.Validator.ensureNotNull;
+import static com.unboundid.util.Validator.ensureTrue;
+
+
+/**
+ * Maintains one connection pool per bind identity, for applications
+ * which perform operations as many different identities. A pool is
+ * created, and its first connection bound, the first time a connection
+ * is requested for a bind DN; later requests for the same bind DN reuse
+ * the pool, so that no connection is created or bound per request.
+ * <ul>
+ * <li>The connections open across all pools never exceed the connection
+ * budget. When a connection must be created and the budget is in use,
+ * the least recently used pools with no connection checked out are
+ * closed; if that is not enough, the request fails with
+ * {@code BUSY}.</li>
+ * <li>A pool with no connection checked out for longer than the idle
+ * timeout is closed the next time a connection is requested, or when
+ * {@link #closeIdlePools()} is invoked.</li>
+ * <li>A request for a bind DN with a password other than that of its
+ * pool retires the pool, which is closed when its last connection is
+ * released, and creates a new one.</li>
+ * </ul>
+ * Each request is counted as a hit when it is served by an existing
+ * pool, or as a miss when a pool has to be created. The counts are kept
+ * per bind DN, across evictions.
+ * <p/>
+ * <b>usage example</b><blockquote>
+ * <p/>
+ * <pre>
+ * final IdentityPoolManager manager =
+ *   IdentityPoolManager.newInstance(new SingleServerSet(host,port),4,64);
+ * final LDAPConnection ldapConnection = manager.getConnection(bindDn,password);
+ * try {
+ *   ldapConnection.search(searchRequest);
+ *   manager.releaseConnection(ldapConnection);
+ * } catch(final LDAPException e) {
+ *   manager.releaseDefunctConnection(ldapConnection);
+ * }
+ * ...
+ * manager.close();
+ * </pre>
+ * <p/>
+ * </blockquote>
+ * This class is safe for use by multiple threads.
+ */
+@Author("terry.gardner@unboundid.com")
+@Since("Oct 18, 2012")
+@CodeVersion("1.0")
+public final class IdentityPoolManager {
+
+  /**
+   * The time in milliseconds after which a pool with no connection
+   * checked out is closed unless another is specified.
+   */
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 300000L;
+
+
+
+  /**
+   * Creates a manager with the default idle timeout.
+   *
+   * @param serverSet
+   *   the servers to which connections are established.
+   *   {@code serverSet} is not permitted to be {@code null}.
+   * @param maxConnectionsPerIdentity
+   *   the maximum number of connections kept available by each pool,
+   *   which must be positive.
+   * @param connectionBudget
+   *   the maximum number of connections open across all pools, which
+   *   must be positive.
+   *
+   * @return a new manager
+   */
+  public static IdentityPoolManager newInstance(final ServerSet serverSet,
+                                                final int maxConnectionsPerIdentity,
+                                                final int connectionBudget) {
+    return newInstance(serverSet,maxConnectionsPerIdentity,connectionBudget,
+      DEFAULT_IDLE_TIMEOUT_MILLIS);
+  }
+
+
+
+  /**
+   * Creates a manager.
+   *
+   * @param serverSet
+   *   the servers to which connections are established.
+   *   {@code serverSet} is not permitted to be {@code null}.
+   * @param maxConnectionsPerIdentity
+   *   the maximum number of connections kept available by each pool,
+   *   which must be positive.
+   * @param connectionBudget
+   *   the maximum number of connections open across all pools, which
+   *   must be positive.
+   * @param idleTimeoutMillis
+   *   the time in milliseconds after which a pool with no connection
+   *   checked out is closed, which must not be negative.
+   *
+   * @return a new manager
+   */
+  public static IdentityPoolManager newInstance(final ServerSet serverSet,
+                                                final int maxConnectionsPerIdentity,
+                                                final int connectionBudget,
+                                                final long idleTimeoutMillis) {
+    ensureNotNull(serverSet);
+    ensureTrue(maxConnectionsPerIdentity > 0);
+    ensureTrue(connectionBudget > 0);
+    ensureTrue(idleTimeoutMillis >= 0);
+    return new IdentityPoolManager(serverSet,maxConnectionsPerIdentity,connectionBudget,
+      idleTimeoutMillis);
+  }
+
+
+
+  private IdentityPoolManager(final ServerSet serverSet, final int maxConnectionsPerIdentity,
+                              final int connectionBudget, final long idleTimeoutMillis) {
+    this.serverSet = serverSet;
+    this.maxConnectionsPerIdentity = maxConnectionsPerIdentity;
+    this.connectionBudget = connectionBudget;
+    idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+  }
+
+
+
+  /**
+   * Checks out a connection bound as {@code bindDn}, creating the pool
+   * of {@code bindDn} if necessary. The connection must be returned with
+   * {@link #releaseConnection} or {@link #releaseDefunctConnection}.
+   *
+   * @param bindDn
+   *   the bind DN. {@code bindDn} is not permitted to be {@code null}.
+   * @param password
+   *   the password of {@code bindDn}. {@code password} is not
+   *   permitted to be {@code null}.
+   *
+   * @return a connection bound as {@code bindDn}
+   *
+   * @throws LDAPException
+   *   if the connection budget is in use by connections which are
+   *   checked out ({@code BUSY}), or a connection cannot be established
+   *   or bound.
+   */
+  public LDAPConnection getConnection(final String bindDn, final String password)
+    throws LDAPException {
+    ensureNotNull(bindDn,password);
+    final String key = normalize(bindDn);
+
+    PoolEntry entry;
+    synchronized(this) {
+      ensureOpen();
+      closeIdlePools(System.nanoTime());
+      entry = pools.get(key);
+      if((entry != null) && !entry.password.equals(password)) {
+        pools.remove(key);
+        retire(entry);
+        entry = null;
+      }
+      final IdentityStatistics identityStatistics = getIdentityStatistics(key);
+      if(entry == null) {
+        ++identityStatistics.misses;
+        ensureCapacity(null);
+        ++pendingPools;
+      } else {
+        ++identityStatistics.hits;
+        reserve(entry);
+      }
+    }
+
+    if(entry == null) {
+      entry = createPool(key,bindDn,password);
+    }
+
+    final LDAPConnection ldapConnection;
+    try {
+      ldapConnection = entry.pool.getConnection();
+    } catch(final LDAPException ldapException) {
+      synchronized(this) {
+        --entry.reserved;
+        checkIn(entry);
+      }
+      throw ldapException;
+    }
+    synchronized(this) {
+      --entry.reserved;
+      leases.put(ldapConnection,entry);
+    }
+    return ldapConnection;
+  }
+
+
+
+  /**
+   * Returns a connection obtained from {@link #getConnection} to its
+   * pool.
+   *
+   * @param ldapConnection
+   *   the connection. {@code ldapConnection} is not permitted to be
+   *   {@code null}.
+   */
+  public synchronized void releaseConnection(final LDAPConnection ldapConnection) {
+    release(ldapConnection).pool.releaseConnection(ldapConnection);
+  }
+
+
+
+  /**
+   * Returns a connection obtained from {@link #getConnection} which is
+   * no longer usable to its pool, which closes it.
+   *
+   * @param ldapConnection
+   *   the connection. {@code ldapConnection} is not permitted to be
+   *   {@code null}.
+   */
+  public synchronized void releaseDefunctConnection(final LDAPConnection ldapConnection) {
+    release(ldapConnection).pool.releaseDefunctConnection(ldapConnection);
+  }
+
+
+
+  /**
+   * Closes the pools which have had no connection checked out for longer
+   * than the idle timeout.
+   *
+   * @return the number of pools closed
+   */
+  public synchronized int closeIdlePools() {
+    return closeIdlePools(System.nanoTime());
+  }
+
+
+
+  /**
+   * Closes every pool. Connections which are checked out are closed
+   * when they are released.
+   */
+  public synchronized void close() {
+    for(final PoolEntry entry : pools.values()) {
+      retire(entry);
+    }
+    pools.clear();
+    closed = true;
+  }
+
+
+
+  /**
+   * @return the number of pools
+   */
+  public synchronized int getPoolCount() {
+    return pools.size();
+  }
+
+
+
+  /**
+   * @return the number of connections open across all pools
+   */
+  public synchronized int getOpenConnectionCount() {
+    int count = pendingPools;
+    for(final PoolEntry entry : pools.values()) {
+      count += entry.getOpenConnectionCount();
+    }
+    for(final PoolEntry entry : retired) {
+      count += entry.getOpenConnectionCount();
+    }
+    return count;
+  }
+
+
+
+  /**
+   * @return the number of pools closed to stay within the connection
+   *         budget or because they were idle
+   */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+
+
+  /**
+   * @param bindDn
+   *   a bind DN. {@code bindDn} is not permitted to be {@code null}.
+   *
+   * @return the number of requests for {@code bindDn} served by an
+   *         existing pool
+   */
+  public synchronized long getHitCount(final String bindDn) {
+    ensureNotNull(bindDn);
+    final IdentityStatistics identityStatistics = statistics.get(normalize(bindDn));
+    return identityStatistics == null ? 0 : identityStatistics.hits;
+  }
+
+
+
+  /**
+   * @param bindDn
+   *   a bind DN. {@code bindDn} is not permitted to be {@code null}.
+   *
+   * @return the number of requests for {@code bindDn} for which a pool
+   *         had to be created
+   */
+  public synchronized long getMissCount(final String bindDn) {
+    ensureNotNull(bindDn);
+    final IdentityStatistics identityStatistics = statistics.get(normalize(bindDn));
+    return identityStatistics == null ? 0 : identityStatistics.misses;
+  }
+
+
+
+  /**
+   * @return a multi-line report of the pools and of the hit rate of each
+   *         bind DN
+   */
+  public synchronized String getReport() {
+    final String eol = System.getProperty("line.separator");
+    final StringBuilder builder = new StringBuilder();
+    builder.append(String.format("pools=%d openConnections=%d connectionBudget=%d " +
+      "evictions=%d",pools.size(),getOpenConnectionCount(),connectionBudget,evictions))
+      .append(eol);
+    for(final Map.Entry<String,IdentityStatistics> e : statistics.entrySet()) {
+      final long hits = e.getValue().hits;
+      final long requests = hits + e.getValue().misses;
+      builder.append(String.format("  %s hits=%d misses=%d hitRate=%.1f%%",e.getKey(),hits,
+        e.getValue().misses,requests == 0 ? 0.0 : 100.0 * hits / requests)).append(eol);
+    }
+    return builder.toString();
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format("IdentityPoolManager [pools=%d, openConnections=%d, " +
+      "connectionBudget=%d, evictions=%d]",pools.size(),getOpenConnectionCount(),
+      connectionBudget,evictions);
+  }
+
+
+
+  private PoolEntry createPool(final String key, final String bindDn, final String password)
+    throws LDAPException {
+    LDAPConnectionPool pool = null;
+    try {
+      final LDAPConnection ldapConnection = serverSet.getConnection();
+      try {
+        ldapConnection.bind(bindDn,password);
+        pool = new LDAPConnectionPool(ldapConnection,1,maxConnectionsPerIdentity);
+      } finally {
+        if(pool == null) {
+          ldapConnection.close();
+        }
+      }
+      pool.setConnectionPoolName(key);
+    } finally {
+      if(pool == null) {
+        synchronized(this) {
+          --pendingPools;
+        }
+      }
+    }
+
+    // the connection of the new pool stops being pending in the same
+    // critical section in which it is counted as available.
+    synchronized(this) {
+      --pendingPools;
+      PoolEntry entry = pools.get(key);
+      if(closed || ((entry != null) && entry.password.equals(password))) {
+        // closed meanwhile, or another thread created the same pool
+        pool.close();
+        ensureOpen();
+        reserve(entry);
+      } else {
+        if(entry != null) {
+          pools.remove(key);
+          retire(entry);
+        }
+        entry = new PoolEntry(pool,password);
+        pools.put(key,entry);
+        ++entry.checkedOut;
+        ++entry.reserved;
+      }
+      return entry;
+    }
+  }
+
+
+
+  private PoolEntry release(final LDAPConnection ldapConnection) {
+    ensureNotNull(ldapConnection);
+    final PoolEntry entry = leases.remove(ldapConnection);
+    ensureTrue(entry != null,"the connection was not obtained from this manager.");
+    checkIn(entry);
+    return entry;
+  }
+
+
+
+  /**
+   * Reserves a connection of {@code entry} for a caller which has not
+   * yet checked it out, making room in the budget first unless one of
+   * the available connections is not already reserved.
+   */
+  private void reserve(final PoolEntry entry) throws LDAPException {
+    if(entry.pool.getCurrentAvailableConnections() <= entry.reserved) {
+      ensureCapacity(entry);
+    }
+    ++entry.checkedOut;
+    ++entry.reserved;
+  }
+
+
+
+  private void checkIn(final PoolEntry entry) {
+    --entry.checkedOut;
+    entry.lastUsedNanos = System.nanoTime();
+    if(entry.retired && (entry.checkedOut == 0)) {
+      retired.remove(entry);
+      entry.pool.close();
+    }
+  }
+
+
+
+  private void retire(final PoolEntry entry) {
+    if(entry.checkedOut == 0) {
+      entry.pool.close();
+    } else {
+      entry.retired = true;
+      retired.add(entry);
+    }
+  }
+
+
+
+  /**
+   * Closes least recently used pools with no connection checked out,
+   * other than {@code exclude}, until a connection can be created
+   * without exceeding the budget.
+   */
+  private void ensureCapacity(final PoolEntry exclude) throws LDAPException {
+    final Iterator<PoolEntry> iterator = pools.values().iterator();
+    while(getOpenConnectionCount() >= connectionBudget) {
+      PoolEntry victim = null;
+      while(iterator.hasNext() && (victim == null)) {
+        final PoolEntry entry = iterator.next();
+        if((entry != exclude) && (entry.checkedOut == 0)) {
+          victim = entry;
+        }
+      }
+      if(victim == null) {
+        throw new LDAPException(ResultCode.BUSY,String.format("all %d connections of the " +
+          "connection budget are in use.",connectionBudget));
+      }
+      iterator.remove();
+      victim.pool.close();
+      ++evictions;
+    }
+  }
+
+
+
+  private int closeIdlePools(final long now) {
+    int count = 0;
+    final Iterator<PoolEntry> iterator = pools.values().iterator();
+    while(iterator.hasNext()) {
+      final PoolEntry entry = iterator.next();
+      if((entry.checkedOut == 0) && (now - entry.lastUsedNanos >= idleTimeoutNanos)) {
+        iterator.remove();
+        entry.pool.close();
+        ++evictions;
+        ++count;
+      }
+    }
+    return count;
+  }
+
+
+
+  private IdentityStatistics getIdentityStatistics(final String key) {
+    IdentityStatistics identityStatistics = statistics.get(key);
+    if(identityStatistics == null) {
+      identityStatistics = new IdentityStatistics();
+      statistics.put(key,identityStatistics);
+    }
+    return identityStatistics;
+  }
+
+
+
+  private void ensureOpen() throws LDAPException {
+    if(closed) {
+      throw new LDAPException(ResultCode.LOCAL_ERROR,"the pool manager has been closed.");
+    }
+  }
+
+
+
+  private static String normalize(final String bindDn) {
+    try {
+      return DN.normalize(bindDn);
+    } catch(final LDAPException ldapException) {
+      return bindDn.toLowerCase();
+    }
+  }
+
+
+
+  /**
+   * The hits and misses of a bind DN.
+   */
+  private static final class IdentityStatistics {
+
+    private long hits;
+
+
+    private long misses;
+
+  }
+
+
+
+  /**
+   * A pool and the connections checked out of it.
+   */
+  private static final class PoolEntry {
+
+    private PoolEntry(final LDAPConnectionPool pool, final String password) {
+      this.pool = pool;
+      this.password = password;
+    }
+
+
+
+    /**
+     * Each reservation takes an available connection or, if there are
+     * more reservations than available connections, creates one.
+     */
+    private int getOpenConnectionCount() {
+      return (checkedOut - reserved) + Math.max(reserved,pool.getCurrentAvailableConnections());
+    }
+
+
+
+    // the number of connections checked out or reserved.
+    private int checkedOut;
+
+
+    private long lastUsedNanos = System.nanoTime();
+
+
+    private final String password;
+
+
+    private final LDAPConnectionPool pool;
+
+
+    // the number of callers which have reserved a connection but not
+    // yet checked it out.
+    private int reserved;
+
+
+    private boolean retired;
+
+  }
+
+
+
+  private boolean closed;
+
+
+  private final int connectionBudget;
+
+
+  private long evictions;
+
+
+  private final long idleTimeoutNanos;
+
+
+  // the pool of each connection which is checked out.
+  private final Map<LDAPConnection,PoolEntry> leases =
+    new IdentityHashMap<LDAPConnection,PoolEntry>();
+
+
+  private final int maxConnectionsPerIdentity;
+
+
+  // the number of pools being created, each of which holds a connection.
+  private int pendingPools;
+
+
+  // the pools keyed by normalized bind DN, least recently used first.
+  private final LinkedHashMap<String,PoolEntry> pools =
+    new LinkedHashMap<String,PoolEntry>(16,0.75f,true);
+
+
+  // the pools which have been replaced but still have connections
+  // checked out.
+  private final List<PoolEntry> retired = new ArrayList<PoolEntry>();
+
+
+  private final ServerSet serverSet;
+
+
+  private final Map<String,IdentityStatistics> statistics =
+    new TreeMap<String,IdentityStatistics>();
+
+}
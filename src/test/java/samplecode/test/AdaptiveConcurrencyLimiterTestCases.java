@@ -0,0 +1,74 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.ResultCode;
+import org.junit.Test;
+import samplecode.tools.AdaptiveConcurrencyLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the adaptive concurrency limiter.
+ */
+public final class AdaptiveConcurrencyLimiterTestCases
+{
+
+  @Test
+  public void additiveIncreaseTestCase() throws Exception
+  {
+    final AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.newInstance(2,1,8);
+    for(int i = 0; i < 100; ++i)
+    {
+      limiter.acquire();
+      limiter.release(ResultCode.SUCCESS,1000000L);
+    }
+    assertEquals(8,limiter.getLimit());
+    assertEquals(0,limiter.getOutstanding());
+  }
+
+
+
+  @Test
+  public void overloadDecreaseTestCase() throws Exception
+  {
+    final AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.newInstance(16,2,16);
+    limiter.acquire();
+    limiter.release(ResultCode.BUSY,1000000L);
+    assertEquals(12,limiter.getLimit());
+    assertEquals(1,limiter.getDecreaseCount());
+
+    limiter.acquire();
+    limiter.release(ResultCode.SUCCESS,1000000L);
+    Thread.sleep(5);
+    limiter.acquire();
+    limiter.release(ResultCode.SUCCESS,10000000L);
+    assertEquals(2,limiter.getDecreaseCount());
+    assertTrue(limiter.getLimit() < 12);
+
+    for(int i = 0; i < 20; ++i)
+    {
+      Thread.sleep(2);
+      limiter.acquire();
+      limiter.release(ResultCode.UNAVAILABLE,0L);
+    }
+    assertEquals(2,limiter.getLimit());
+  }
+
+
+
+  @Test
+  public void limitBlocksTestCase() throws Exception
+  {
+    final AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.newInstance(1,1,1);
+    assertTrue(limiter.tryAcquire(0,TimeUnit.MILLISECONDS));
+    assertFalse(limiter.tryAcquire(10,TimeUnit.MILLISECONDS));
+    limiter.release(ResultCode.SUCCESS,1000L);
+    assertTrue(limiter.tryAcquire(0,TimeUnit.MILLISECONDS));
+  }
+}
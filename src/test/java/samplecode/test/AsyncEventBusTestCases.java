@@ -0,0 +1,149 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.Entry;
+import org.junit.Test;
+import samplecode.listener.AsyncEventBus;
+import samplecode.listener.LdifEntryEvent;
+import samplecode.listener.LdifEntryEventListener;
+import samplecode.util.SampleCodeCollectionUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the asynchronous event bus.
+ */
+public final class AsyncEventBusTestCases
+{
+
+  @Test
+  public void orderingTestCase() throws Exception
+  {
+    final List<String> received =
+      Collections.synchronizedList(SampleCodeCollectionUtils.<String>newArrayList());
+    AsyncEventBus bus = AsyncEventBus.newInstance(4,AsyncEventBus.OverflowPolicy.BLOCK);
+    LdifEntryEventListener listener = bus.wrapLdifEntryEventListener(new LdifEntryEventListener()
+    {
+
+      @Override
+      public void entryReadFromLdifFile(final LdifEntryEvent ev)
+      {
+        received.add(ev.getEntry().getDN());
+      }
+    });
+    for(int i = 0; i < 100; ++i)
+    {
+      listener.entryReadFromLdifFile(new LdifEntryEvent(this,new Entry("cn=" + i)));
+    }
+    assertTrue(bus.shutDown(5000));
+    assertEquals(100,received.size());
+    for(int i = 0; i < 100; ++i)
+    {
+      assertEquals("cn=" + i,received.get(i));
+    }
+    assertEquals(0L,bus.getDroppedEventCount());
+  }
+
+
+
+
+
+
+  @Test
+  public void dropNewestTestCase() throws Exception
+  {
+    final CountDownLatch release = new CountDownLatch(1);
+    AsyncEventBus bus = AsyncEventBus.newInstance(2,AsyncEventBus.OverflowPolicy.DROP_NEWEST);
+    bus.post(new Runnable()
+    {
+
+      @Override
+      public void run()
+      {
+        try
+        {
+          release.await();
+        }
+        catch(InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    Thread.sleep(200);
+    for(int i = 0; i < 5; ++i)
+    {
+      bus.post(new Runnable()
+      {
+
+        @Override
+        public void run()
+        {
+          // This block deliberately left empty
+        }
+      });
+    }
+    assertEquals(3L,bus.getDroppedEventCount());
+    release.countDown();
+    assertTrue(bus.shutDown(5000));
+  }
+
+
+
+
+
+
+  // every event posted while the bus shuts down is either delivered or
+  // counted as dropped, and none is left in the queue
+  @Test
+  public void postDuringShutDownTestCase() throws Exception
+  {
+    final AtomicLong delivered = new AtomicLong();
+    final AsyncEventBus bus =
+      AsyncEventBus.newInstance(16,AsyncEventBus.OverflowPolicy.DROP_NEWEST);
+    final Runnable delivery = new Runnable()
+    {
+
+      @Override
+      public void run()
+      {
+        delivered.incrementAndGet();
+      }
+    };
+    final int posts = 200000;
+    Thread[] threads = new Thread[4];
+    for(int t = 0; t < threads.length; ++t)
+    {
+      threads[t] = new Thread()
+      {
+
+        @Override
+        public void run()
+        {
+          for(int i = 0; i < posts; ++i)
+          {
+            bus.post(delivery);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    Thread.sleep(50);
+    assertTrue(bus.shutDown(5000));
+    for(Thread thread : threads)
+    {
+      thread.join();
+    }
+    assertEquals(0,bus.getQueuedEventCount());
+    assertEquals((long)threads.length * posts,delivered.get() + bus.getDroppedEventCount());
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+import org.junit.*;
+import samplecode.auth.AuthorizationIdentityResolver;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for cached authorization identity resolution.
+ */
+public final class AuthorizationIdentityResolverTestCases
+{
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void cacheAndInvalidateTestCase() throws Exception
+  {
+    AuthorizationIdentityResolver resolver = new AuthorizationIdentityResolver();
+    LDAPConnection ldapConnection = server.getConnection();
+    try
+    {
+      assertNull(resolver.getAuthorizationId(ldapConnection));
+
+      SimpleBindRequest bindRequest =
+        new SimpleBindRequest("uid=user.0,dc=example,dc=com","password");
+      resolver.bind(ldapConnection,bindRequest);
+      assertEquals(0,bindRequest.getControls().length);
+      assertEquals("dn:uid=user.0,dc=example,dc=com",resolver.getAuthorizationId(ldapConnection));
+      assertEquals("dn:uid=user.0,dc=example,dc=com",
+        resolver.getAuthorizationId(ldapConnection,"UID=user.0, dc=example,dc=com"));
+      assertNull(resolver.getAuthorizationId(ldapConnection,"cn=Directory Manager"));
+
+      resolver.bind(ldapConnection,new SimpleBindRequest("cn=Directory Manager","password"));
+      assertEquals("dn:cn=Directory Manager",resolver.getAuthorizationId(ldapConnection));
+
+      try
+      {
+        resolver.bind(ldapConnection,new SimpleBindRequest("cn=Directory Manager","wrong"));
+        fail("the bind should have failed");
+      }
+      catch(LDAPException ldapException)
+      {
+        assertNull(resolver.getAuthorizationId(ldapConnection));
+      }
+
+      resolver.bind(ldapConnection,bindRequest);
+      resolver.invalidate(ldapConnection);
+      assertNull(resolver.getAuthorizationId(ldapConnection));
+
+      resolver.bind(ldapConnection,bindRequest);
+      ldapConnection.close();
+      assertNull(resolver.getAuthorizationId(ldapConnection));
+      assertEquals(3,resolver.getHitCount());
+    }
+    finally
+    {
+      ldapConnection.close();
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=Directory Manager","password");
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    server.add("dn: uid=user.0,dc=example,dc=com","objectClass: inetOrgPerson","cn: user",
+      "sn: user","uid: user.0","userPassword: password");
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    server.shutDown(true);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.*;
+import samplecode.compare.BulkCompare;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for pipelined bulk compares.
+ */
+public final class BulkCompareTestCases
+{
+
+  private List<LDAPConnection> connections;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void resultsInInputOrderTestCase() throws Exception
+  {
+    StringBuilder tuples = new StringBuilder("# dn, attribute, value\n");
+    for(int i = 0; i < 200; ++i)
+    {
+      tuples.append("uid=user.").append(i).append(",dc=example,dc=com\tdescription\t")
+        .append(i % 3 == 0 ? "other" : "user " + i).append('\n');
+    }
+    tuples.append("uid=missing,dc=example,dc=com\tdescription\tx\n");
+    tuples.append("not a tuple\n");
+
+    BulkCompare bulkCompare = new BulkCompare(connections,8);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bulkCompare.run(new BufferedReader(new StringReader(tuples.toString())),
+      new PrintStream(bytes,true,"UTF-8"));
+
+    String[] lines = bytes.toString("UTF-8").split("\n");
+    assertEquals(202,lines.length);
+    for(int i = 0; i < 200; ++i)
+    {
+      assertTrue(lines[i],lines[i].startsWith(i % 3 == 0 ? "COMPARE_FALSE\t" : "COMPARE_TRUE\t"));
+      assertTrue(lines[i],lines[i].contains("uid=user." + i + ","));
+    }
+    assertTrue(lines[200].startsWith("ERROR 32"));
+    assertTrue(lines[201].startsWith("ERROR 89"));
+    assertEquals(133,bulkCompare.getTrueCount());
+    assertEquals(67,bulkCompare.getFalseCount());
+    assertEquals(2,bulkCompare.getErrorCount());
+    assertTrue(bulkCompare.getReport().startsWith("compares=202"));
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    server = new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig("dc=example,dc=com"));
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    for(int i = 0; i < 200; ++i)
+    {
+      server.add("dn: uid=user." + i + ",dc=example,dc=com","objectClass: account",
+        "uid: user." + i,"description: user " + i);
+    }
+    connections = new ArrayList<LDAPConnection>();
+    connections.add(server.getConnection());
+    connections.add(server.getConnection());
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    for(LDAPConnection connection : connections)
+    {
+      connection.close();
+    }
+    server.shutDown(true);
+  }
+}
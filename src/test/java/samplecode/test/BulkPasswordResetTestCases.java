@@ -0,0 +1,167 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.ResultCode;
+import java.io.*;
+import org.junit.*;
+import samplecode.memory.FaultInjectingRequestHandler;
+import samplecode.memory.FaultInjector;
+import samplecode.memory.InMemoryFrontEnd;
+import samplecode.password.BulkPasswordReset;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for bulk password resets.
+ */
+public final class BulkPasswordResetTestCases
+{
+
+  private File journal;
+
+
+  private LDAPConnectionPool pool;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void resetAndResumeTestCase() throws Exception
+  {
+    StringBuilder input = new StringBuilder("# dn, password\n");
+    for(int i = 0; i < 50; ++i)
+    {
+      input.append("uid=user.").append(i).append(",dc=example,dc=com");
+      if(i % 2 == 0)
+      {
+        input.append("\tsecret-").append(i);
+      }
+      input.append('\n');
+    }
+    input.append("uid=missing,dc=example,dc=com\n");
+
+    BulkPasswordReset reset = BulkPasswordReset.newInstance(pool,4,0,2,journal,
+      BulkPasswordReset.newRandomPasswordGenerator(12));
+    reset.run(new BufferedReader(new StringReader(input.toString())));
+    assertEquals(50,reset.getSuccessCount());
+    assertEquals(1,reset.getFailureCount());
+    assertNotNull(server.getConnection().bind("uid=user.4,dc=example,dc=com","secret-4"));
+
+    BufferedReader reader = new BufferedReader(new FileReader(journal));
+    int lines = 0;
+    int generated = 0;
+    String line;
+    while((line = reader.readLine()) != null)
+    {
+      ++lines;
+      String[] fields = line.split("\t");
+      if(fields.length == 3)
+      {
+        assertEquals(12,fields[2].length());
+        ++generated;
+      }
+    }
+    reader.close();
+    assertEquals(51,lines);
+    assertEquals(25,generated);
+
+    BulkPasswordReset resumed = BulkPasswordReset.newInstance(pool,2,100,0,journal,null);
+    resumed.run(new BufferedReader(new StringReader(input.toString())));
+    assertEquals(50,resumed.getSkippedCount());
+    assertEquals(1,resumed.getFailureCount());
+  }
+
+
+
+
+
+
+  // BUSY responses lower the concurrency limit and are retried
+  @Test
+  public void busyTestCase() throws Exception
+  {
+    FaultInjector faultInjector = new FaultInjector();
+    faultInjector.setFailureResultCode(ResultCode.BUSY);
+    InMemoryFrontEnd frontEnd = new InMemoryFrontEnd(0,new FaultInjectingRequestHandler(
+      InMemoryFrontEnd.newProxyRequestHandler(server),faultInjector));
+    frontEnd.startListening();
+    LDAPConnectionPool busyPool = null;
+    try
+    {
+      LDAPConnection connection = new LDAPConnection("localhost",frontEnd.getListenPort());
+      connection.bind("cn=Directory Manager","password");
+      busyPool = new LDAPConnectionPool(connection,1,8);
+      faultInjector.setFailureRate(0.3);
+
+      StringBuilder input = new StringBuilder();
+      for(int i = 0; i < 50; ++i)
+      {
+        input.append("uid=user.").append(i).append(",dc=example,dc=com\tsecret\n");
+      }
+      BulkPasswordReset reset = BulkPasswordReset.newInstance(busyPool,8,0,30,journal,null);
+      reset.run(new BufferedReader(new StringReader(input.toString())));
+      assertEquals(50,reset.getSuccessCount());
+      assertTrue(reset.getRetryCount() > 0);
+      assertTrue(reset.getConcurrencyLimit() < 8);
+    }
+    finally
+    {
+      if(busyPool != null)
+      {
+        busyPool.close();
+      }
+      frontEnd.shutDown(true);
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    journal = File.createTempFile("reset",".journal");
+    journal.delete();
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=Directory Manager","password");
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    for(int i = 0; i < 50; ++i)
+    {
+      server.add("dn: uid=user." + i + ",dc=example,dc=com","objectClass: inetOrgPerson",
+        "cn: user " + i,"sn: user","uid: user." + i,"userPassword: old");
+    }
+    LDAPConnection connection = server.getConnection();
+    connection.bind("cn=Directory Manager","password");
+    pool = new LDAPConnectionPool(connection,1,4);
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    pool.close();
+    server.shutDown(true);
+    journal.delete();
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import org.junit.*;
+import samplecode.listener.EntryChangeEvent;
+import samplecode.listener.EntryChangeListener;
+import samplecode.modify.ChangeCapture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for change capture with the pre-read and
+ * post-read controls.
+ */
+public final class ChangeCaptureTestCases
+{
+
+  private static final String DN = "uid=user.0,dc=example,dc=com";
+
+
+  private final List<EntryChangeEvent> events = new ArrayList<EntryChangeEvent>();
+
+
+  private LDAPConnection ldapConnection;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void beforeAndAfterTestCase() throws Exception
+  {
+    ChangeCapture changeCapture = newChangeCapture("description");
+    ModifyRequest modifyRequest = new ModifyRequest(DN,
+      new Modification(ModificationType.REPLACE,"description","description 3"));
+    changeCapture.modify(modifyRequest);
+
+    assertEquals(0,modifyRequest.getControls().length);
+    assertEquals(1,events.size());
+    EntryChangeEvent ev = events.get(0);
+    assertTrue(ev.isComplete());
+    assertEquals(DN,ev.getDN());
+    assertArrayEquals(new String[]{"description 1","description 2"},
+      ev.getBefore().getAttributeValues("description"));
+    assertArrayEquals(new String[]{"description 3"},
+      ev.getAfter().getAttributeValues("description"));
+    assertFalse(ev.getAfter().hasAttribute("cn"));
+    assertEquals(ev.getAfter(),Entry.applyModifications(ev.getBefore(),false,ev.getChanges()));
+    assertEquals(1,changeCapture.getChangeCount());
+    assertEquals(0,changeCapture.getIncompleteCount());
+  }
+
+
+
+
+
+
+  @Test
+  public void failedModifyTestCase() throws Exception
+  {
+    ChangeCapture changeCapture = newChangeCapture();
+    try
+    {
+      changeCapture.modify("uid=missing,dc=example,dc=com",
+        new Modification(ModificationType.REPLACE,"description","x"));
+      fail("the entry does not exist");
+    }
+    catch(LDAPException expected)
+    {
+      // no event is published
+    }
+    assertTrue(events.isEmpty());
+    assertEquals(0,changeCapture.getChangeCount());
+  }
+
+
+
+
+
+
+  private ChangeCapture newChangeCapture(String... attributes)
+  {
+    ChangeCapture changeCapture = ChangeCapture.newInstance(ldapConnection,attributes);
+    changeCapture.addEntryChangeListener(new EntryChangeListener()
+    {
+
+      @Override
+      public void entryChanged(EntryChangeEvent entryChangeEvent)
+      {
+        events.add(entryChangeEvent);
+      }
+    });
+    return changeCapture;
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=Directory Manager","password");
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    server.add("dn: " + DN,"objectClass: inetOrgPerson","uid: user.0","cn: user 0","sn: 0",
+      "description: description 1","description: description 2");
+    ldapConnection = server.getConnection();
+    ldapConnection.bind("cn=Directory Manager","password");
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    ldapConnection.close();
+    server.shutDown(true);
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import org.junit.*;
+import samplecode.controls.CompareAndSwap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for compare-and-swap updates.
+ */
+public final class CompareAndSwapTestCases
+{
+
+  private static final String DN = "cn=counter,dc=example,dc=com";
+
+
+  private LDAPConnectionPool pool;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void sequentialUpdatesTestCase() throws Exception
+  {
+    CompareAndSwap compareAndSwap = CompareAndSwap.newInstance(pool,5);
+    for(int i = 1; i <= 5; ++i)
+    {
+      assertArrayEquals(new String[] {String.valueOf(i)},
+        compareAndSwap.update(DN,"description",CompareAndSwap.increment(1)));
+    }
+    assertEquals(1,compareAndSwap.getReadCount());
+    assertEquals(4,compareAndSwap.getReadSkippedCount());
+    assertEquals(5,compareAndSwap.getCompletedCount(1));
+
+    // another client changes the value: the assertion fails and the entry is read
+    server.modify(DN,new Modification(ModificationType.REPLACE,"description","100"));
+    assertArrayEquals(new String[] {"101"},
+      compareAndSwap.update(DN,"description",CompareAndSwap.increment(1)));
+    assertEquals(1,compareAndSwap.getConflictCount());
+    assertEquals(1,compareAndSwap.getCompletedCount(2));
+  }
+
+
+
+
+
+
+  @Test
+  public void concurrentUpdatesTestCase() throws Exception
+  {
+    // the in-memory server serializes the operations of each connection but
+    // not across connections, so the threads contend on one connection
+    LDAPConnection ldapConnection = server.getConnection();
+    final CompareAndSwap compareAndSwap = CompareAndSwap.newInstance(ldapConnection,50);
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try
+    {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for(int t = 0; t < 8; ++t)
+      {
+        futures.add(executorService.submit(new Callable<Void>()
+        {
+
+          @Override
+          public Void call() throws Exception
+          {
+            for(int i = 0; i < 25; ++i)
+            {
+              compareAndSwap.update(DN,"description",CompareAndSwap.increment(1));
+            }
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> future : futures)
+      {
+        future.get();
+      }
+    }
+    finally
+    {
+      executorService.shutdown();
+      ldapConnection.close();
+    }
+    assertEquals("200",server.getEntry(DN).getAttributeValue("description"));
+    assertEquals(200,compareAndSwap.getCompletedCount());
+    assertEquals(0,compareAndSwap.getExhaustedCount());
+  }
+
+
+
+
+
+
+  @Test
+  public void exhaustedTestCase() throws Exception
+  {
+    CompareAndSwap compareAndSwap = CompareAndSwap.newInstance(pool,3);
+    CompareAndSwap.Update interfering = new CompareAndSwap.Update()
+    {
+
+      @Override
+      public String[] apply(String dn, String[] currentValues) throws LDAPException
+      {
+        server.modify(dn,new Modification(ModificationType.REPLACE,"description",
+          String.valueOf(System.nanoTime())));
+        return new String[] {"0"};
+      }
+    };
+    try
+    {
+      compareAndSwap.update(DN,"description",interfering);
+      fail("every attempt should conflict");
+    }
+    catch(LDAPException ldapException)
+    {
+      assertEquals(ResultCode.ASSERTION_FAILED,ldapException.getResultCode());
+    }
+    assertEquals(3,compareAndSwap.getConflictCount());
+    assertEquals(1,compareAndSwap.getExhaustedCount());
+    assertEquals(0,compareAndSwap.getCompletedCount());
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=Directory Manager","password");
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    server.add("dn: " + DN,"objectClass: applicationProcess","cn: counter");
+    LDAPConnection ldapConnection = server.getConnection();
+    ldapConnection.bind("cn=Directory Manager","password");
+    pool = new LDAPConnectionPool(ldapConnection,4,8);
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    pool.close();
+    server.shutDown(true);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFWriter;
+import java.io.*;
+import java.util.List;
+import org.junit.*;
+import samplecode.ldif.CompressedLdifStreams;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for reading and writing compressed LDIF.
+ */
+public final class CompressedLdifStreamsTestCases
+{
+
+  private File file;
+
+
+
+
+
+
+  @Test
+  public void gzipRoundTripTestCase() throws Exception
+  {
+    LDIFWriter writer = CompressedLdifStreams.newLdifWriter(file);
+    for(int i = 0; i < 5000; ++i)
+    {
+      writer.writeEntry(new Entry("uid=user." + i + ",dc=example,dc=com",
+        new Attribute("objectClass","top","account"),
+        new Attribute("uid","user." + i)));
+    }
+    writer.close();
+    assertTrue(CompressedLdifStreams.isCompressed(file));
+
+    List<Entry> entries = LDIFReader.readEntries(CompressedLdifStreams.newInputStream(file));
+    assertEquals(5000,entries.size());
+    assertEquals("uid=user.4999,dc=example,dc=com",entries.get(4999).getDN());
+
+    // recognized by its magic bytes when the name is not known
+    entries = LDIFReader.readEntries(
+      CompressedLdifStreams.decompress(new FileInputStream(file),null));
+    assertEquals(5000,entries.size());
+  }
+
+
+
+
+
+
+  @Test(expected = IOException.class)
+  public void zstdTestCase() throws Exception
+  {
+    byte[] bytes = { (byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd, 0 };
+    CompressedLdifStreams.decompress(new ByteArrayInputStream(bytes),null);
+  }
+
+
+
+
+
+
+  @Test
+  public void uncompressedTestCase() throws Exception
+  {
+    byte[] bytes = "dn: dc=example,dc=com\nobjectClass: domain\ndc: example\n".getBytes("UTF-8");
+    List<Entry> entries =
+      LDIFReader.readEntries(CompressedLdifStreams.decompress(new ByteArrayInputStream(bytes),
+        "example.ldif"));
+    assertEquals(1,entries.size());
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    file = File.createTempFile("compressed",".ldif.gz");
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    file.delete();
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.Entry;
+import org.junit.Test;
+import samplecode.matchingrule.EntryComparator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the bulk entry comparator.
+ */
+public final class EntryComparatorTestCases
+{
+
+  @Test
+  public void compareEntriesTestCase() throws Exception
+  {
+    final EntryComparator comparator =
+      EntryComparator.newInstance(null,Arrays.asList("modifyTimestamp"));
+    final Entry entry1 = new Entry("dn: uid=a,dc=example,dc=com","objectClass: person",
+      "cn: Alice  Smith","cn: A","sn: x","mail: a@example.com","modifyTimestamp: 1");
+    final Entry entry2 = new Entry("dn: uid=a,dc=example,dc=com","objectClass: PERSON",
+      "cn: a","cn: alice smith","sn: x","sn: y","modifyTimestamp: 2");
+
+    final EntryComparator.EntryDifference difference = comparator.compare(entry1,entry2);
+    assertNotNull(difference);
+    assertEquals(2,difference.getAttributeDifferences().size());
+    final EntryComparator.AttributeDifference mail = difference.getAttributeDifferences().get(0);
+    assertEquals("mail",mail.getAttributeName());
+    assertEquals(Arrays.asList("a@example.com"),mail.getOnlyInFirst());
+    final EntryComparator.AttributeDifference sn = difference.getAttributeDifferences().get(1);
+    assertTrue(sn.getOnlyInFirst().isEmpty());
+    assertEquals(Arrays.asList("y"),sn.getOnlyInSecond());
+
+    entry2.setAttribute("mail","A@EXAMPLE.COM");
+    entry2.setAttribute("sn","X");
+    assertNull(comparator.compare(entry1,entry2));
+  }
+
+
+
+  @Test
+  public void compareResultSetsTestCase() throws Exception
+  {
+    final List<Entry> entries1 = new ArrayList<Entry>();
+    final List<Entry> entries2 = new ArrayList<Entry>();
+    for(int i = 0; i < 1000; ++i)
+    {
+      entries1.add(new Entry("dn: uid=user." + i + ",dc=example,dc=com","uid: user." + i,
+        "description: " + i));
+      if(i != 7)
+      {
+        entries2.add(new Entry("dn: UID=user." + i + ", dc=example,dc=com","uid: USER." + i,
+          "description: " + (i == 500 ? "changed" : String.valueOf(i))));
+      }
+    }
+    entries2.add(new Entry("dn: uid=extra,dc=example,dc=com","uid: extra"));
+
+    final List<String> ignored = Collections.emptyList();
+    final List<EntryComparator.EntryDifference> differences =
+      EntryComparator.newInstance(null,ignored).compare(entries1,entries2,4);
+    assertEquals(3,differences.size());
+    assertEquals("uid=user.7,dc=example,dc=com",differences.get(0).getDN());
+    assertFalse(differences.get(0).isInSecond());
+    assertEquals("description",
+      differences.get(1).getAttributeDifferences().get(0).getAttributeName());
+    assertFalse(differences.get(2).isInFirst());
+  }
+}
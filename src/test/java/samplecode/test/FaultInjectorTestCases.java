@@ -0,0 +1,105 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.OperationType;
+import com.unboundid.ldap.sdk.ResultCode;
+import org.junit.Test;
+import samplecode.memory.FaultInjector;
+import samplecode.memory.LatencyDistribution;
+
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the configuration of the fault injector.
+ */
+public final class FaultInjectorTestCases
+{
+
+  @Test
+  public void configureTestCase()
+  {
+    Properties properties = new Properties();
+    properties.setProperty(FaultInjector.PROP_NAME_LATENCY,"uniform:1-5");
+    properties.setProperty(FaultInjector.PROP_NAME_LATENCY + ".SEARCH","longTail:5,250");
+    properties.setProperty(FaultInjector.PROP_NAME_DROP_RATE,"0.25");
+    properties.setProperty(FaultInjector.PROP_NAME_FAILURE_RATE,"0.5");
+    properties.setProperty(FaultInjector.PROP_NAME_FAILURE_RESULT_CODE,"busy");
+
+    FaultInjector faultInjector = new FaultInjector();
+    faultInjector.configure(properties);
+    assertEquals("uniform:1-5",faultInjector.getLatency(OperationType.BIND).toString());
+    assertEquals("longTail:5,250",faultInjector.getLatency(OperationType.SEARCH).toString());
+    assertEquals(0.25,faultInjector.getDropRate(),0.0);
+    assertEquals(0.5,faultInjector.getFailureRate(),0.0);
+    assertEquals(ResultCode.BUSY,faultInjector.getFailureResultCode());
+  }
+
+
+
+
+
+
+  @Test
+  public void latencyDistributionTestCase()
+  {
+    Random random = new Random(1L);
+    LatencyDistribution uniform = LatencyDistribution.parse("uniform:10-20");
+    for(int i = 0; i < 1000; ++i)
+    {
+      long millis = uniform.nextMillis(random);
+      assertTrue(millis >= 10 && millis <= 20);
+    }
+    assertTrue(LatencyDistribution.parse("none").isNone());
+    assertEquals(7L,LatencyDistribution.parse("fixed:7").nextMillis(random));
+  }
+
+
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidLatencyTestCase()
+  {
+    LatencyDistribution.parse("slow");
+  }
+
+
+
+
+
+
+  @Test
+  public void outOfRangeTestCase()
+  {
+    String[][] settings = {
+      {FaultInjector.PROP_NAME_LATENCY,"uniform:20-10"},
+      {FaultInjector.PROP_NAME_LATENCY,"fixed:-1"},
+      {FaultInjector.PROP_NAME_LATENCY + ".SEARCH","longTail:0,250"},
+      {FaultInjector.PROP_NAME_DROP_RATE,"1.5"},
+      {FaultInjector.PROP_NAME_FAILURE_RATE,"-0.1"},
+      {FaultInjector.PROP_NAME_FAILURE_RATE,"NaN"}
+    };
+    for(String[] setting : settings)
+    {
+      Properties properties = new Properties();
+      properties.setProperty(setting[0],setting[1]);
+      try
+      {
+        new FaultInjector().configure(properties);
+        fail(setting[0] + "=" + setting[1] + " should be rejected");
+      }
+      catch(IllegalArgumentException expected)
+      {
+        // the documented exception, which LdapListenerExample reports
+      }
+    }
+  }
+}
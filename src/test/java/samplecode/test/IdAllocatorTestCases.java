@@ -0,0 +1,149 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import org.junit.*;
+import samplecode.modify.IdAllocator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for block-reserving ID allocation.
+ */
+public final class IdAllocatorTestCases
+{
+
+  private static final String DN = "cn=uidNumber,dc=example,dc=com";
+
+
+  private LDAPConnection ldapConnection;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void blockReservationTestCase() throws Exception
+  {
+    IdAllocator idAllocator = IdAllocator.newInstance(ldapConnection,DN,"uidNumber",10);
+    try
+    {
+      for(long expected = 1000; expected < 1025; ++expected)
+      {
+        assertEquals(expected,idAllocator.nextId());
+      }
+      assertEquals(25,idAllocator.getAllocatedCount());
+      assertEquals(3,idAllocator.getReservationCount());
+    }
+    finally
+    {
+      idAllocator.close();
+    }
+    long next = server.getEntry(DN).getAttributeValueAsLong("uidNumber");
+    assertEquals(1000 + 10 * idAllocator.getReservationCount(),next);
+  }
+
+
+
+
+
+
+  @Test
+  public void concurrentAllocatorsTestCase() throws Exception
+  {
+    final Set<Long> ids = Collections.newSetFromMap(
+      new ConcurrentHashMap<Long,Boolean>());
+    final IdAllocator[] idAllocators = {
+      IdAllocator.newInstance(ldapConnection,DN,"uidNumber",7),
+      IdAllocator.newInstance(ldapConnection,DN,"uidNumber",16)
+    };
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try
+    {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for(int t = 0; t < 8; ++t)
+      {
+        final IdAllocator idAllocator = idAllocators[t % 2];
+        futures.add(executorService.submit(new Callable<Void>()
+        {
+
+          @Override
+          public Void call() throws Exception
+          {
+            for(int i = 0; i < 250; ++i)
+            {
+              assertTrue(ids.add(idAllocator.nextId()));
+            }
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> future : futures)
+      {
+        future.get();
+      }
+    }
+    finally
+    {
+      executorService.shutdown();
+      idAllocators[0].close();
+      idAllocators[1].close();
+    }
+    assertEquals(2000,ids.size());
+    assertTrue(idAllocators[0].getReservationCount() < 1000 / 7 + 3);
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=Directory Manager","password");
+    // the default schema does not define uidNumber
+    config.setSchema(null);
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    server.add("dn: " + DN,"objectClass: device","cn: uidNumber","uidNumber: 1000");
+    // the in-memory server serializes the operations of each connection but
+    // not across connections, so the allocators share one connection
+    ldapConnection = server.getConnection();
+    ldapConnection.bind("cn=Directory Manager","password");
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    ldapConnection.close();
+    server.shutDown(true);
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SingleServerSet;
+import org.junit.*;
+import samplecode.tools.IdentityPoolManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the per-identity pool manager.
+ */
+public final class IdentityPoolManagerTestCases
+{
+
+  private static final String USER_0 = "uid=user.0,dc=example,dc=com";
+
+
+  private static final String USER_1 = "uid=user.1,dc=example,dc=com";
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void hitAndMissTestCase() throws Exception
+  {
+    IdentityPoolManager manager = newManager(2,4);
+    try
+    {
+      LDAPConnection ldapConnection = manager.getConnection(USER_0,"password");
+      assertNotNull(ldapConnection.getEntry(USER_0));
+      manager.releaseConnection(ldapConnection);
+      manager.releaseConnection(manager.getConnection("UID=user.0, dc=example,dc=com","password"));
+
+      assertEquals(1,manager.getMissCount(USER_0));
+      assertEquals(1,manager.getHitCount(USER_0));
+      assertEquals(1,manager.getPoolCount());
+
+      // a new password replaces the pool
+      try
+      {
+        manager.getConnection(USER_0,"wrong");
+        fail("the bind should have failed");
+      }
+      catch(LDAPException ldapException)
+      {
+        assertEquals(ResultCode.INVALID_CREDENTIALS,ldapException.getResultCode());
+      }
+      assertEquals(2,manager.getMissCount(USER_0));
+      assertEquals(0,manager.getPoolCount());
+      assertEquals(0,manager.getOpenConnectionCount());
+    }
+    finally
+    {
+      manager.close();
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void budgetAndEvictionTestCase() throws Exception
+  {
+    IdentityPoolManager manager = newManager(1,2);
+    try
+    {
+      manager.releaseConnection(manager.getConnection(USER_0,"password"));
+      manager.releaseConnection(manager.getConnection(USER_1,"password"));
+      manager.releaseConnection(manager.getConnection(USER_0,"password"));
+      assertEquals(2,manager.getOpenConnectionCount());
+
+      // user.1 is the least recently used pool
+      LDAPConnection ldapConnection = manager.getConnection("cn=Directory Manager","password");
+      assertEquals(1,manager.getEvictionCount());
+      assertEquals(2,manager.getOpenConnectionCount());
+
+      manager.releaseConnection(manager.getConnection(USER_0,"password"));
+      assertEquals(2,manager.getHitCount(USER_0));
+
+      LDAPConnection user0Connection = manager.getConnection(USER_0,"password");
+      try
+      {
+        manager.getConnection(USER_1,"password");
+        fail("the connection budget should be in use");
+      }
+      catch(LDAPException ldapException)
+      {
+        assertEquals(ResultCode.BUSY,ldapException.getResultCode());
+      }
+      assertEquals(2,manager.getMissCount(USER_1));
+
+      manager.releaseConnection(user0Connection);
+      manager.releaseConnection(ldapConnection);
+      assertTrue(manager.getOpenConnectionCount() <= 2);
+    }
+    finally
+    {
+      manager.close();
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void idleTimeoutTestCase() throws Exception
+  {
+    IdentityPoolManager manager = IdentityPoolManager.newInstance(
+      new SingleServerSet("localhost",server.getListenPort()),2,4,10L);
+    try
+    {
+      LDAPConnection ldapConnection = manager.getConnection(USER_0,"password");
+      manager.releaseConnection(manager.getConnection(USER_1,"password"));
+      Thread.sleep(50L);
+      assertEquals(1,manager.closeIdlePools());
+      assertEquals(1,manager.getPoolCount());
+      manager.releaseConnection(ldapConnection);
+    }
+    finally
+    {
+      manager.close();
+    }
+    assertEquals(0,manager.getOpenConnectionCount());
+  }
+
+
+
+
+
+
+  @Test
+  public void concurrentBudgetTestCase() throws Exception
+  {
+    final IdentityPoolManager manager = newManager(4,2);
+    ExecutorService executorService = Executors.newFixedThreadPool(16);
+    try
+    {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for(int t = 0; t < 16; ++t)
+      {
+        futures.add(executorService.submit(new Callable<Void>()
+        {
+
+          @Override
+          public Void call() throws Exception
+          {
+            for(int i = 0; i < 2000; ++i)
+            {
+              LDAPConnection ldapConnection;
+              try
+              {
+                ldapConnection = manager.getConnection(USER_0,"password");
+              }
+              catch(LDAPException ldapException)
+              {
+                assertEquals(ResultCode.BUSY,ldapException.getResultCode());
+                continue;
+              }
+              assertTrue(manager.getOpenConnectionCount() <= 2);
+              manager.releaseConnection(ldapConnection);
+            }
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> future : futures)
+      {
+        future.get();
+      }
+      // every connection has been released, so the pool holds each
+      // connection which was opened
+      assertTrue(manager.getOpenConnectionCount() <= 2);
+    }
+    finally
+    {
+      executorService.shutdown();
+      manager.close();
+    }
+  }
+
+
+
+
+
+
+  private IdentityPoolManager newManager(final int maxConnectionsPerIdentity,
+    final int connectionBudget)
+  {
+    return IdentityPoolManager.newInstance(new SingleServerSet("localhost",
+      server.getListenPort()),maxConnectionsPerIdentity,connectionBudget);
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=Directory Manager","password");
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    for(int i = 0; i < 2; ++i)
+    {
+      server.add("dn: uid=user." + i + ",dc=example,dc=com","objectClass: inetOrgPerson",
+        "cn: user","sn: user","uid: user." + i,"userPassword: password");
+    }
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    server.shutDown(true);
+  }
+}
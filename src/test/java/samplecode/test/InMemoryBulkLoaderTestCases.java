@@ -0,0 +1,147 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import org.junit.*;
+import samplecode.memory.InMemoryBulkLoader;
+import samplecode.memory.InMemoryDirectoryServerListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for loading LDIF into an in-memory directory
+ * server in-process.
+ */
+public final class InMemoryBulkLoaderTestCases
+{
+
+  private final List<String> dns = new ArrayList<String>();
+
+
+  private File file;
+
+
+  private InMemoryBulkLoader loader;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void loadTestCase() throws Exception
+  {
+    writeLdif("user.0","user.1","user.2");
+    assertEquals(4,loader.load(file));
+
+    assertEquals(4,server.countEntries());
+    assertEquals("[dc=example,dc=com, uid=user.0,dc=example,dc=com, " +
+      "uid=user.1,dc=example,dc=com, uid=user.2,dc=example,dc=com]",dns.toString());
+  }
+
+
+
+
+
+
+  // no entry is added and no listener is notified when one is rejected
+  @Test
+  public void rejectedEntryTestCase() throws Exception
+  {
+    writeLdif("user.0","user.0");
+    try
+    {
+      loader.load(file);
+      fail("the second entry already exists");
+    }
+    catch(LDAPException ldapException)
+    {
+      assertEquals(ResultCode.ENTRY_ALREADY_EXISTS,ldapException.getResultCode());
+    }
+    assertEquals(0,server.countEntries());
+    assertTrue(dns.isEmpty());
+  }
+
+
+
+
+
+
+  /**
+   * Writes the base entry and an account below it for each of
+   * {@code uids}.
+   */
+  private void writeLdif(final String... uids) throws Exception
+  {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+    try
+    {
+      writer.write("dn: dc=example,dc=com\nobjectClass: domain\ndc: example\n\n");
+      for(String uid : uids)
+      {
+        writer.write("dn: uid=" + uid + ",dc=example,dc=com\nobjectClass: account\n" +
+          "uid: " + uid + "\n\n");
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    file = File.createTempFile("bulk",".ldif");
+    server = new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig("dc=example,dc=com"));
+    InMemoryDirectoryServerListener listener = new InMemoryDirectoryServerListener()
+    {
+
+      @Override
+      public ResultCode entryAction(final LDAPConnectionPool ldapConnectionPool,
+                                    final Entry entry)
+      {
+        dns.add(entry.getDN());
+        return ResultCode.SUCCESS;
+      }
+    };
+    loader = new InMemoryBulkLoader(server,null,Collections.singletonList(listener),2);
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    server.shutDown(true);
+    file.delete();
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import org.junit.*;
+import samplecode.memory.InMemoryDirectoryCluster;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for replication, failover, and fault injection in an in-memory directory
+ * cluster.
+ */
+public final class InMemoryDirectoryClusterTestCases
+{
+
+  private InMemoryDirectoryCluster cluster;
+
+
+
+
+
+
+  @Test
+  public void replicationTestCase() throws Exception
+  {
+    cluster.setReplicationLagMillis(50);
+    LDAPConnection ldapConnection = connect(0);
+    ldapConnection.add("dn: ou=People,dc=example,dc=com","objectClass: top",
+      "objectClass: organizationalUnit","ou: People");
+    ldapConnection.close();
+
+    assertTrue(cluster.awaitReplication(5000));
+    assertNotNull(cluster.getNode(1).getServer().getEntry("ou=People,dc=example,dc=com"));
+    assertNotNull(cluster.getNode(2).getServer().getEntry("ou=People,dc=example,dc=com"));
+  }
+
+
+
+
+
+
+  @Test
+  public void stoppedNodeCatchesUpTestCase() throws Exception
+  {
+    cluster.getNode(2).stop();
+    LDAPConnection ldapConnection = connect(0);
+    ldapConnection.add("dn: ou=Groups,dc=example,dc=com","objectClass: top",
+      "objectClass: organizationalUnit","ou: Groups");
+    ldapConnection.close();
+    assertTrue(cluster.awaitReplication(5000));
+    assertNull(cluster.getNode(2).getServer().getEntry("ou=Groups,dc=example,dc=com"));
+
+    cluster.getNode(2).start();
+    // the child must not reach node 2 before its parent in the backlog
+    ldapConnection = connect(0);
+    ldapConnection.add("dn: cn=staff,ou=Groups,dc=example,dc=com","objectClass: top",
+      "objectClass: groupOfNames","cn: staff","member: dc=example,dc=com");
+    ldapConnection.close();
+    assertTrue(cluster.awaitReplication(5000));
+    assertNotNull(cluster.getNode(2).getServer().getEntry("ou=Groups,dc=example,dc=com"));
+    assertNotNull(cluster.getNode(2).getServer().getEntry(
+      "cn=staff,ou=Groups,dc=example,dc=com"));
+    assertEquals(0L,cluster.getReplicationConflictCount());
+  }
+
+
+
+
+
+
+  @Test
+  public void failoverTestCase() throws Exception
+  {
+    cluster.getNode(0).stop();
+    LDAPConnection ldapConnection = cluster.newFailoverServerSet().getConnection();
+    assertEquals(cluster.getNode(1).getListenPort(),ldapConnection.getConnectedPort());
+    ldapConnection.close();
+  }
+
+
+
+
+
+
+  @Test
+  public void injectedFailureTestCase() throws Exception
+  {
+    cluster.getNode(1).getFaultInjector().setFailureRate(1.0);
+    cluster.getNode(1).getFaultInjector().setFailureResultCode(ResultCode.BUSY);
+    LDAPConnection ldapConnection = connect(1);
+    try
+    {
+      ldapConnection.getEntry("dc=example,dc=com");
+      fail("expected an injected failure");
+    }
+    catch(LDAPException e)
+    {
+      assertEquals(ResultCode.BUSY,e.getResultCode());
+    }
+    finally
+    {
+      ldapConnection.close();
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig cfg = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    cluster = InMemoryDirectoryCluster.newInstance(cfg,3,0);
+    cluster.startListening();
+    cluster.addEntries(java.util.Arrays.asList(new Entry("dn: dc=example,dc=com",
+      "objectClass: top","objectClass: domain","dc: example")));
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    cluster.shutDown();
+  }
+
+
+
+
+
+
+  private LDAPConnection connect(int node) throws LDAPException
+  {
+    return new LDAPConnection("localhost",cluster.getNode(node).getListenPort());
+  }
+}
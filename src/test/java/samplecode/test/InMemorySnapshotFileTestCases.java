@@ -0,0 +1,115 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.sdk.*;
+import java.io.*;
+import org.junit.*;
+import samplecode.memory.InMemorySnapshotFile;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases that write a snapshot of an in-memory directory server and restore it
+ * into another server.
+ */
+public final class InMemorySnapshotFileTestCases
+{
+
+  private File file;
+
+
+
+
+
+
+  @Test
+  public void restoreTestCase() throws Exception
+  {
+    InMemoryDirectoryServer source = newServer();
+    source.importFromLDIF(true,getClass().getClassLoader()
+      .getResource("testInMemoryDirectoryServer.LDIF").getFile());
+    InMemorySnapshotFile snapshotFile = InMemorySnapshotFile.newInstance(file);
+    int written = snapshotFile.write(source);
+    assertEquals(source.countEntries(),written);
+
+    InMemoryDirectoryServer target = newServer();
+    int restored = snapshotFile.restore(target);
+    assertEquals(written,restored);
+    assertEquals(source.countEntries(),target.countEntries());
+    String dn = "uid=user.0,ou=People,dc=example,dc=com";
+    assertEquals(source.getEntry(dn,"*"),target.getEntry(dn,"*"));
+  }
+
+
+
+
+
+
+  @Test
+  public void readEntryTestCase() throws Exception
+  {
+    InMemoryDirectoryServer source = newServer();
+    source.addEntries("dn: dc=example,dc=com","objectClass: top","objectClass: domain",
+      "dc: example");
+    source.add("dn: ou=People,dc=example,dc=com","objectClass: top",
+      "objectClass: organizationalUnit","ou: People");
+    InMemorySnapshotFile snapshotFile = InMemorySnapshotFile.newInstance(file);
+    snapshotFile.write(source);
+
+    Entry entry = snapshotFile.readEntry("OU=people, DC=Example, DC=com");
+    assertNotNull(entry);
+    assertTrue(entry.hasAttributeValue("ou","People"));
+    assertNull(snapshotFile.readEntry("ou=groups,dc=example,dc=com"));
+  }
+
+
+
+
+
+
+  @Test(expected = IOException.class)
+  public void notASnapshotTestCase() throws Exception
+  {
+    FileOutputStream outputStream = new FileOutputStream(file);
+    outputStream.write("dn: dc=example,dc=com\n".getBytes("UTF-8"));
+    outputStream.close();
+    InMemorySnapshotFile.newInstance(file).readEntries();
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws IOException
+  {
+    file = File.createTempFile("snapshot",".bin");
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    file.delete();
+  }
+
+
+
+
+
+
+  private InMemoryDirectoryServer newServer() throws LDAPException
+  {
+    return new InMemoryDirectoryServer("dc=example,dc=com");
+  }
+}
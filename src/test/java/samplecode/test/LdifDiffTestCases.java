@@ -0,0 +1,208 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldif.LDIFWriter;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.*;
+import samplecode.ldif.ExternalEntrySorter;
+import samplecode.ldif.LdifDiff;
+import samplecode.ldif.ReadLdifFile;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the external entry sorter and the LDIF diff.
+ */
+public final class LdifDiffTestCases
+{
+
+  @Test
+  public void sortTestCase() throws Exception
+  {
+    ExternalEntrySorter sorter =
+      ExternalEntrySorter.newInstance(ExternalEntrySorter.DN_ORDER,3,null);
+    try
+    {
+      List<String> dns = Arrays.asList("uid=c,ou=People,dc=example,dc=com",
+        "ou=People,dc=example,dc=com","dc=example,dc=com","uid=a,ou=People,dc=example,dc=com",
+        "ou=Groups,dc=example,dc=com","cn=g,ou=Groups,dc=example,dc=com",
+        "uid=b,ou=People,dc=example,dc=com");
+      for(String dn : dns)
+      {
+        sorter.add(new Entry(dn));
+      }
+      ExternalEntrySorter.SortedEntries sorted = sorter.sort();
+      assertEquals(3,sorter.getRunCount());
+      String previous = null;
+      int count = 0;
+      Entry entry;
+      while((entry = sorted.read()) != null)
+      {
+        if(previous != null)
+        {
+          assertTrue(DN.compare(previous,entry.getDN()) < 0);
+        }
+        previous = entry.getDN();
+        ++count;
+      }
+      assertEquals(dns.size(),count);
+    }
+    finally
+    {
+      sorter.close();
+    }
+  }
+
+
+
+
+
+
+  // more runs than the merge fan-in are merged in two passes, stably
+  @Test
+  public void multiPassMergeTestCase() throws Exception
+  {
+    File tempDirectory = File.createTempFile("sorter","");
+    tempDirectory.delete();
+    tempDirectory.mkdir();
+    ExternalEntrySorter sorter =
+      ExternalEntrySorter.newInstance(ExternalEntrySorter.DN_ORDER,1,tempDirectory);
+    try
+    {
+      int runs = 2 * ExternalEntrySorter.MAX_MERGE_FAN_IN + 22;
+      for(int i = 0; i < runs; ++i)
+      {
+        sorter.add(new Entry("uid=user." + (i % 50) + ",dc=example,dc=com",
+          new Attribute("description",String.valueOf(i))));
+      }
+      ExternalEntrySorter.SortedEntries sorted = sorter.sort();
+      assertEquals(runs,sorter.getRunCount());
+      assertEquals(3,tempDirectory.listFiles().length);
+
+      Entry previous = null;
+      int count = 0;
+      Entry entry;
+      while((entry = sorted.read()) != null)
+      {
+        if(previous != null)
+        {
+          int c = DN.compare(previous.getDN(),entry.getDN());
+          assertTrue(c <= 0);
+          if(c == 0)
+          {
+            assertTrue(Integer.parseInt(previous.getAttributeValue("description")) <
+              Integer.parseInt(entry.getAttributeValue("description")));
+          }
+        }
+        previous = entry;
+        ++count;
+      }
+      assertEquals(runs,count);
+    }
+    finally
+    {
+      sorter.close();
+    }
+    assertEquals(0,tempDirectory.listFiles().length);
+    tempDirectory.delete();
+  }
+
+
+
+
+
+
+  @Test
+  public void applyDiffTestCase() throws Exception
+  {
+    InMemoryDirectoryServer server =
+      new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig("dc=example,dc=com"));
+    server.startListening();
+    ExternalEntrySorter source =
+      ExternalEntrySorter.newInstance(ExternalEntrySorter.DN_ORDER,4,null);
+    ExternalEntrySorter target =
+      ExternalEntrySorter.newInstance(ExternalEntrySorter.DN_ORDER,4,null);
+    try
+    {
+      for(Entry entry : entries(0,10,"old"))
+      {
+        server.add(entry);
+        source.add(entry);
+      }
+      // entries 0-4 are deleted, 5-9 are modified and 10-14 are added
+      target.add(entries(0,0,"new").get(0));
+      target.add(entries(0,0,"new").get(1));
+      for(Entry entry : entries(5,15,"new").subList(2,12))
+      {
+        target.add(entry);
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      LDIFWriter writer = new LDIFWriter(bytes);
+      LdifDiff diff = LdifDiff.newInstance(writer,2,null,Collections.<String>emptySet());
+      diff.diff(source.sort(),target.sort());
+      writer.close();
+      assertEquals(5,diff.getAddCount());
+      assertEquals(5,diff.getModifyCount());
+      assertEquals(5,diff.getDeleteCount());
+
+      LDAPConnection ldapConnection = server.getConnection();
+      try
+      {
+        ReadLdifFile.getInstance().applyChangesFromLdifInputStream(ldapConnection,
+          new ByteArrayInputStream(bytes.toByteArray()),0);
+      }
+      finally
+      {
+        ldapConnection.close();
+      }
+      assertEquals(12,server.countEntries());
+      assertNull(server.getEntry("uid=user.0,ou=People,dc=example,dc=com"));
+      assertTrue(server.getEntry("uid=user.5,ou=People,dc=example,dc=com")
+        .hasAttributeValue("description","new"));
+      assertNotNull(server.getEntry("uid=user.14,ou=People,dc=example,dc=com"));
+    }
+    finally
+    {
+      source.close();
+      target.close();
+      server.shutDown(true);
+    }
+  }
+
+
+
+
+
+
+  /**
+   * @return the base entry, the People entry and users {@code first} to
+   *         {@code last - 1}, whose description is {@code description}
+   */
+  private static List<Entry> entries(final int first, final int last, final String description)
+  {
+    List<Entry> entries = new java.util.ArrayList<Entry>();
+    entries.add(new Entry("dc=example,dc=com",new Attribute("objectClass","top","domain"),
+      new Attribute("dc","example")));
+    entries.add(new Entry("ou=People,dc=example,dc=com",
+      new Attribute("objectClass","top","organizationalUnit"),new Attribute("ou","People")));
+    for(int i = first; i < last; ++i)
+    {
+      entries.add(new Entry("uid=user." + i + ",ou=People,dc=example,dc=com",
+        new Attribute("objectClass","top","person","organizationalPerson","inetOrgPerson"),
+        new Attribute("uid","user." + i),new Attribute("cn","user " + i),
+        new Attribute("sn",String.valueOf(i)),new Attribute("description",description)));
+    }
+    return entries;
+  }
+}
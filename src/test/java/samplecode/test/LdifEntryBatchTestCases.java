@@ -0,0 +1,200 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import org.junit.*;
+import samplecode.ldif.ReadLdifFile;
+import samplecode.listener.LdifEntryBatchEvent;
+import samplecode.listener.LdifEntryBatchListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for batched delivery of LDIF entries.
+ */
+public final class LdifEntryBatchTestCases
+{
+
+  private final List<String> dns = new ArrayList<String>();
+
+
+  private File file;
+
+
+  private LDAPConnection ldapConnection;
+
+
+  private final LdifEntryBatchListener listener = new LdifEntryBatchListener()
+  {
+
+    @Override
+    public void entriesReadFromLdifFile(final LdifEntryBatchEvent ev)
+    {
+      sizes.add(ev.size());
+      for(Entry entry : ev.getEntries())
+      {
+        dns.add(entry.getDN());
+      }
+    }
+  };
+
+
+  private ReadLdifFile readLdifFile;
+
+
+  private InMemoryDirectoryServer server;
+
+
+  private final List<Integer> sizes = new ArrayList<Integer>();
+
+
+
+
+
+
+  // seven entries in chunks of three
+  @Test
+  public void chunkingTestCase() throws Exception
+  {
+    writeLdif(6,null);
+    assertEquals(7,readLdifFile.addEntriesFromFile(ldapConnection,file,null));
+
+    assertEquals("[3, 3, 1]",sizes.toString());
+    assertEquals(7,dns.size());
+    assertEquals("dc=example,dc=com",dns.get(0));
+    assertEquals("uid=user.5,dc=example,dc=com",dns.get(6));
+  }
+
+
+
+
+
+
+  // the entries buffered when an add request fails are delivered
+  @Test
+  public void failedAddTestCase() throws Exception
+  {
+    writeLdif(3,"uid=orphan,ou=missing,dc=example,dc=com");
+    try
+    {
+      readLdifFile.addEntriesFromFile(ldapConnection,file,null);
+      fail("the parent of the last entry does not exist");
+    }
+    catch(LDAPException ldapException)
+    {
+      assertEquals(ResultCode.NO_SUCH_OBJECT,ldapException.getResultCode());
+    }
+
+    assertEquals("[3, 2]",sizes.toString());
+    assertEquals(5,dns.size());
+    assertEquals("uid=orphan,ou=missing,dc=example,dc=com",dns.get(4));
+  }
+
+
+
+
+
+
+  // a batch whose listener throws is not delivered again
+  @Test
+  public void listenerFailureTestCase() throws Exception
+  {
+    readLdifFile.addLdifEntryBatchListener(new LdifEntryBatchListener()
+    {
+
+      @Override
+      public void entriesReadFromLdifFile(final LdifEntryBatchEvent ev)
+      {
+        throw new IllegalStateException("listener failed");
+      }
+    });
+    writeLdif(6,null);
+    try
+    {
+      readLdifFile.addEntriesFromFile(ldapConnection,file,null);
+      fail("the listener throws");
+    }
+    catch(IllegalStateException expected)
+    {
+      // the exception of the listener propagates
+    }
+    assertEquals("[3]",sizes.toString());
+  }
+
+
+
+
+
+
+  /**
+   * Writes the base entry, {@code users} user entries and, if
+   * {@code lastDn} is not {@code null}, an entry with that DN.
+   */
+  private void writeLdif(final int users, final String lastDn) throws Exception
+  {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+    try
+    {
+      writer.write("dn: dc=example,dc=com\nobjectClass: domain\ndc: example\n\n");
+      for(int i = 0; i < users; ++i)
+      {
+        writer.write("dn: uid=user." + i + ",dc=example,dc=com\n" +
+          "objectClass: account\nuid: user." + i + "\n\n");
+      }
+      if(lastDn != null)
+      {
+        writer.write("dn: " + lastDn + "\nobjectClass: account\nuid: orphan\n\n");
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    file = File.createTempFile("batch",".ldif");
+    server = new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig("dc=example,dc=com"));
+    server.startListening();
+    ldapConnection = server.getConnection();
+    readLdifFile = new ReadLdifFile();
+    readLdifFile.setLdifEntryBatchSize(3);
+    readLdifFile.addLdifEntryBatchListener(listener);
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    ldapConnection.close();
+    server.shutDown(true);
+    file.delete();
+  }
+}
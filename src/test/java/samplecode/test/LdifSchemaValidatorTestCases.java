@@ -0,0 +1,97 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.ldif.LDIFReader;
+import java.io.*;
+import java.util.List;
+import org.junit.*;
+import samplecode.ldif.LdifSchemaValidator;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the LDIF schema validation stage.
+ */
+public final class LdifSchemaValidatorTestCases
+{
+
+  private File rejectFile;
+
+
+
+
+
+
+  @Test
+  public void dryRunTestCase() throws Exception
+  {
+    StringBuilder ldif = new StringBuilder();
+    for(int i = 0; i < 100; ++i)
+    {
+      ldif.append("dn: uid=user.").append(i).append(",dc=example,dc=com\n");
+      ldif.append("objectClass: top\nobjectClass: person\nobjectClass: organizationalPerson\n");
+      ldif.append("objectClass: inetOrgPerson\nuid: user.").append(i).append("\ncn: user\n");
+      if(i % 10 != 0)
+      {
+        // every tenth entry lacks the required sn attribute
+        ldif.append("sn: ").append(i).append('\n');
+      }
+      if(i == 5)
+      {
+        // displayName is single-valued
+        ldif.append("displayName: one\ndisplayName: two\n");
+      }
+      ldif.append('\n');
+    }
+
+    LdifSchemaValidator validator =
+      LdifSchemaValidator.newInstance(Schema.getDefaultStandardSchema(),3,rejectFile);
+    long valid;
+    try
+    {
+      valid = validator.validate(new ByteArrayInputStream(ldif.toString().getBytes("UTF-8")));
+    }
+    finally
+    {
+      validator.close();
+    }
+    assertEquals(89L,valid);
+    assertEquals(89L,validator.getValidEntryCount());
+    assertEquals(11L,validator.getRejectedEntryCount());
+
+    List<Entry> rejects = LDIFReader.readEntries(rejectFile);
+    assertEquals(11,rejects.size());
+    for(Entry reject : rejects)
+    {
+      assertFalse(reject.hasAttribute("sn") && !reject.hasAttribute("displayName"));
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    rejectFile = File.createTempFile("rejects",".ldif");
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    rejectFile.delete();
+  }
+}
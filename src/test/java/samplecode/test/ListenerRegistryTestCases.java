@@ -0,0 +1,61 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import org.junit.Test;
+import samplecode.listener.LdifEntryEvent;
+import samplecode.listener.LdifEntryEventListener;
+import samplecode.listener.ListenerRegistry;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the copy-on-write listener registry.
+ */
+public final class ListenerRegistryTestCases
+{
+
+  @Test
+  public void snapshotTestCase()
+  {
+    ListenerRegistry<LdifEntryEventListener> registry =
+      ListenerRegistry.newInstance(LdifEntryEventListener.class);
+    assertTrue(registry.isEmpty());
+
+    LdifEntryEventListener a = new NoOpListener();
+    LdifEntryEventListener b = new NoOpListener();
+    registry.add(a);
+    registry.add(null);
+    LdifEntryEventListener[] before = registry.getListeners();
+    registry.add(b);
+    registry.add(a);
+
+    assertEquals(1,before.length);
+    assertArrayEquals(new Object[]{a,b,a},registry.getListeners());
+
+    registry.remove(a);
+    assertArrayEquals(new Object[]{b,a},registry.getListeners());
+    registry.remove(b);
+    registry.remove(a);
+    assertTrue(registry.isEmpty());
+    assertEquals(1,before.length);
+  }
+
+
+
+
+
+
+  private static final class NoOpListener implements LdifEntryEventListener
+  {
+
+    @Override
+    public void entryReadFromLdifFile(final LdifEntryEvent ldifEntryEvent)
+    {
+      // This block deliberately left empty
+    }
+  }
+}
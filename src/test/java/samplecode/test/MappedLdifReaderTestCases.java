@@ -0,0 +1,169 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import java.io.*;
+import java.util.List;
+import org.junit.*;
+import samplecode.ldif.MappedLdifReader;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the memory-mapped, parallel LDIF reader.
+ */
+public final class MappedLdifReaderTestCases
+{
+
+  private File file;
+
+
+
+
+
+
+  @Test
+  public void recordOrderTestCase() throws Exception
+  {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+    writer.write("version: 1\n\n");
+    for(int i = 0; i < 500; ++i)
+    {
+      String eol = i % 3 == 0 ? "\r\n" : "\n";
+      writer.write("# entry " + i + eol);
+      writer.write("dn: uid=user." + i + ",dc=example,dc=com" + eol);
+      writer.write("objectClass: top" + eol + "objectClass: account" + eol);
+      writer.write("description: a description long enough to be fol" + eol);
+      writer.write(" ded onto a continuation line" + eol);
+      writer.write(" " + eol);
+      writer.write("uid: user." + i + eol + eol);
+      if(i % 7 == 0)
+      {
+        writer.write(eol);
+      }
+    }
+    writer.close();
+
+    List<Entry> expected = LDIFReader.readEntries(file);
+    for(int chunkSize : new int[]{ 37, 4096, MappedLdifReader.DEFAULT_CHUNK_SIZE })
+    {
+      MappedLdifReader reader = MappedLdifReader.newInstance(file,3,chunkSize);
+      try
+      {
+        for(Entry entry : expected)
+        {
+          assertEquals(entry,reader.readEntry());
+        }
+        assertNull(reader.readEntry());
+      }
+      finally
+      {
+        reader.close();
+      }
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void lineNumberTestCase() throws Exception
+  {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+    for(int i = 0; i < 50; ++i)
+    {
+      writer.write("dn: dc=example" + i + "\nobjectClass: top\nobjectClass: domain\ndc: example"
+        + i + "\n\n");
+    }
+    writer.write("dn: dc=bad\nnot a valid line\n\ndn: dc=good\nobjectClass: top\n");
+    writer.close();
+
+    int expectedLineNumber;
+    LDIFReader ldifReader = new LDIFReader(file);
+    try
+    {
+      expectedLineNumber = readUntilException(ldifReader);
+    }
+    finally
+    {
+      ldifReader.close();
+    }
+
+    MappedLdifReader reader = MappedLdifReader.newInstance(file,2,64);
+    try
+    {
+      for(int i = 0; i < 50; ++i)
+      {
+        assertNotNull(reader.readEntry());
+      }
+      try
+      {
+        reader.readEntry();
+        fail("expected an LDIFException");
+      }
+      catch(LDIFException e)
+      {
+        assertEquals(expectedLineNumber,e.getLineNumber());
+      }
+      assertEquals("dc=good",reader.readEntry().getDN());
+      assertNull(reader.readEntry());
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+
+
+
+
+
+  private static int readUntilException(final LDIFReader ldifReader) throws IOException
+  {
+    while(true)
+    {
+      try
+      {
+        if(ldifReader.readEntry() == null)
+        {
+          return -1;
+        }
+      }
+      catch(LDIFException e)
+      {
+        return (int) e.getLineNumber();
+      }
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    file = File.createTempFile("mapped",".ldif");
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    file.delete();
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import org.junit.*;
+import samplecode.search.MatchedValuesProjection;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the matched values projection.
+ */
+public final class MatchedValuesProjectionTestCases
+{
+
+  private static final String GROUP_DN = "cn=large,dc=example,dc=com";
+
+
+  private static final String MEMBER = "uid=user.17,dc=example,dc=com";
+
+
+  private LDAPConnection ldapConnection;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  // the in-memory server does not support the matched values request
+  // control, so the projection falls back to returning all values
+  @Test
+  public void unsupportedControlTestCase() throws Exception
+  {
+    MatchedValuesProjection projection =
+      MatchedValuesProjection.newInstance(Filter.createEqualityFilter("member",MEMBER));
+    SearchRequest searchRequest =
+      new SearchRequest(GROUP_DN,SearchScope.BASE,"(objectClass=*)","member");
+    assertFalse(projection.apply(ldapConnection,searchRequest));
+    assertEquals(0,searchRequest.getControls().length);
+
+    SearchResultEntry entry = ldapConnection.searchForEntry(searchRequest);
+    assertEquals(1000,entry.getAttributeValues("member").length);
+  }
+
+
+
+
+
+
+  @Test
+  public void measureTestCase() throws Exception
+  {
+    MatchedValuesProjection projection =
+      MatchedValuesProjection.newInstance(Filter.createEqualityFilter("member",MEMBER));
+    SearchRequest searchRequest =
+      new SearchRequest(GROUP_DN,SearchScope.BASE,"(objectClass=*)","member");
+    assertFalse(projection.measure(ldapConnection,searchRequest));
+    assertFalse(projection.measure(ldapConnection,searchRequest));
+
+    assertEquals(2,projection.getEntryCount());
+    assertTrue(projection.getFullBytes() > 2 * 1000 * MEMBER.length());
+    assertEquals(projection.getFullBytes(),projection.getProjectedBytes());
+    assertEquals(0,searchRequest.getControls().length);
+    assertTrue(projection.getReport().contains("2 entries"));
+    assertTrue(projection.getReport().contains(" 0 bytes (0.0%) saved"));
+  }
+
+
+
+
+
+
+  @Test(expected = LDAPException.class)
+  public void compoundFilterTestCase() throws Exception
+  {
+    MatchedValuesProjection.newInstance(Filter.create("(|(member=a)(member=b))"));
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=Directory Manager","password");
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    String[] members = new String[1000];
+    for(int i = 0; i < members.length; ++i)
+    {
+      members[i] = "uid=user." + i + ",dc=example,dc=com";
+    }
+    server.add(new Entry(GROUP_DN,new Attribute("objectClass","top","groupOfNames"),
+      new Attribute("cn","large"),new Attribute("member",members)));
+    ldapConnection = server.getConnection();
+    ldapConnection.bind("cn=Directory Manager","password");
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    ldapConnection.close();
+    server.shutDown(true);
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import org.junit.*;
+import samplecode.memory.InMemoryFrontEnd;
+import samplecode.memory.OperationStatistics;
+import samplecode.memory.OperationStatisticsRequestHandler;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for the operation statistics interceptor.
+ */
+public final class OperationStatisticsTestCases
+{
+
+  private InMemoryFrontEnd frontEnd;
+
+
+  private InMemoryDirectoryServer server;
+
+
+  private OperationStatistics statistics;
+
+
+
+
+
+
+  @Test
+  public void filterShapeTestCase() throws Exception
+  {
+    assertEquals("(&(objectclass=?)(|(uid=?*)(cn=*?*?)))",
+      OperationStatistics.getFilterShape(
+        Filter.create("(&(objectClass=person)(|(uid=a*)(cn=*b*c)))")));
+    assertEquals("(!(mail=*))",OperationStatistics.getFilterShape(Filter.create("(!(mail=*))")));
+  }
+
+
+
+
+
+
+  @Test
+  public void recordTestCase() throws Exception
+  {
+    LDAPConnection ldapConnection = new LDAPConnection("localhost",frontEnd.getListenPort());
+    try
+    {
+      ldapConnection.search("dc=example,dc=com",SearchScope.SUB,"(uid=user.1)","cn","mail");
+      ldapConnection.search("dc=example,dc=com",SearchScope.SUB,"(uid=user.2)","cn");
+      ldapConnection.compare("dc=example,dc=com","dc","example");
+
+      assertEquals(2L,statistics.getCount(OperationType.SEARCH));
+      assertEquals(1L,statistics.getCount(OperationType.COMPARE));
+      assertEquals(Long.valueOf(2L),statistics.getFilterShapeCounts().get("(uid=?)"));
+      assertEquals(Long.valueOf(2L),statistics.getRequestedAttributeCounts().get("cn"));
+      assertEquals(Long.valueOf(2L),statistics.getBaseDnCounts().get("dc=example,dc=com"));
+      assertEquals(3,statistics.getSlowOperations().size());
+
+      SearchResultEntry monitor = ldapConnection.getEntry("cn=monitor");
+      assertNotNull(monitor);
+      assertTrue(monitor.hasAttributeValue("operationCount","SEARCH 2"));
+      assertEquals(2L,statistics.getCount(OperationType.SEARCH));
+    }
+    finally
+    {
+      ldapConnection.close();
+    }
+  }
+
+
+
+
+
+
+  @Test
+  public void slowOperationRedactionTestCase() throws Exception
+  {
+    LDAPConnection ldapConnection = new LDAPConnection("localhost",frontEnd.getListenPort());
+    try
+    {
+      ldapConnection.add("dn: uid=user.0,dc=example,dc=com","objectClass: inetOrgPerson",
+        "uid: user.0","cn: user 0","sn: 0","userPassword: secret-password");
+      String slowOperation = statistics.getSlowOperations().get(0);
+      assertTrue(slowOperation.contains("uid=user.0,dc=example,dc=com"));
+      assertFalse(slowOperation.contains("secret-password"));
+
+      SearchResultEntry monitor = ldapConnection.getEntry("cn=monitor");
+      assertFalse(monitor.toLDIFString().contains("secret-password"));
+    }
+    finally
+    {
+      ldapConnection.close();
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    server = new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig("dc=example,dc=com"));
+    server.add("dn: dc=example,dc=com","objectClass: top","objectClass: domain","dc: example");
+    server.startListening();
+    statistics = new OperationStatistics(5);
+    frontEnd = new InMemoryFrontEnd(0,new OperationStatisticsRequestHandler(
+      InMemoryFrontEnd.newProxyRequestHandler(server),statistics,
+      OperationStatisticsRequestHandler.DEFAULT_MONITOR_DN));
+    frontEnd.startListening();
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    frontEnd.shutDown(true);
+    server.shutDown(true);
+  }
+}
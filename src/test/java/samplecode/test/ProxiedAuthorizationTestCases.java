@@ -0,0 +1,117 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import com.unboundid.ldap.sdk.controls.ProxiedAuthorizationV2RequestControl;
+import org.junit.*;
+import samplecode.bind.ProxiedAuthorization;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for searching with proxied authorization.
+ */
+public final class ProxiedAuthorizationTestCases
+{
+
+  private LDAPConnectionPool pool;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void proxiedSearchTestCase() throws Exception
+  {
+    ProxiedAuthorization proxiedAuthorization =
+      new ProxiedAuthorization(pool,"dc=example,dc=com","uid");
+    SearchRequest searchRequest =
+      new SearchRequest("dc=example,dc=com",SearchScope.SUB,"(uid=user.1)");
+
+    for(int i = 0; i < 3; ++i)
+    {
+      SearchResult searchResult = proxiedAuthorization.search(pool,"user.0",searchRequest);
+      assertEquals(1,searchResult.getEntryCount());
+    }
+    assertEquals(0,searchRequest.getControls().length);
+    assertEquals(1,proxiedAuthorization.getResolutionCount());
+
+    ProxiedAuthorizationV2RequestControl control =
+      (ProxiedAuthorizationV2RequestControl)proxiedAuthorization.getControl("user.0");
+    assertEquals("dn:uid=user.0,dc=example,dc=com",control.getAuthorizationID());
+
+    proxiedAuthorization.search(pool,"uid=user.1,dc=example,dc=com",searchRequest);
+    assertEquals(2,proxiedAuthorization.getResolutionCount());
+
+    proxiedAuthorization.invalidate("user.0");
+    proxiedAuthorization.search(pool,"user.0",searchRequest);
+    assertEquals(3,proxiedAuthorization.getResolutionCount());
+  }
+
+
+
+
+
+
+  @Test
+  public void unknownUserTestCase() throws Exception
+  {
+    ProxiedAuthorization proxiedAuthorization =
+      new ProxiedAuthorization(pool,"dc=example,dc=com","uid");
+    try
+    {
+      proxiedAuthorization.getControl("nobody");
+      fail("an unknown user should not be resolved");
+    }
+    catch(LDAPException ldapException)
+    {
+      assertEquals(ResultCode.AUTHORIZATION_DENIED,ldapException.getResultCode());
+    }
+    assertEquals(0,proxiedAuthorization.getResolutionCount());
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=Directory Manager","password");
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    for(int i = 0; i < 2; ++i)
+    {
+      server.add("dn: uid=user." + i + ",dc=example,dc=com","objectClass: inetOrgPerson",
+        "cn: user","sn: user","uid: user." + i,"userPassword: password");
+    }
+    LDAPConnection ldapConnection = server.getConnection();
+    ldapConnection.bind("cn=Directory Manager","password");
+    pool = new LDAPConnectionPool(ldapConnection,2);
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    pool.close();
+    server.shutDown(true);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import java.io.*;
+import org.junit.*;
+import samplecode.ldif.ReadLdifFile;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for adding entries from a file containing LDIF.
+ */
+public final class ReadLdifFileTestCases
+{
+
+  private File file;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void sortByDnTestCase() throws Exception
+  {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+    for(int i = 0; i < 20; ++i)
+    {
+      writer.write("dn: uid=user." + i + ",ou=People,dc=example,dc=com\n" +
+        "objectClass: account\nuid: user." + i + "\n\n");
+    }
+    writer.write("dn: ou=People,dc=example,dc=com\nobjectClass: organizationalUnit\n" +
+      "ou: People\n\n");
+    writer.write("dn: dc=example,dc=com\nobjectClass: domain\ndc: example\n\n");
+    writer.close();
+
+    ReadLdifFile readLdifFile = new ReadLdifFile();
+    readLdifFile.setSortByDn(true);
+    readLdifFile.setSortMaxEntriesInMemory(5);
+    LDAPConnection ldapConnection = server.getConnection();
+    try
+    {
+      assertEquals(22,readLdifFile.addEntriesFromFile(ldapConnection,file,null));
+      assertEquals(22,server.countEntries());
+    }
+    finally
+    {
+      ldapConnection.close();
+    }
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    file = File.createTempFile("unordered",".ldif");
+    server = new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig("dc=example,dc=com"));
+    server.startListening();
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    server.shutDown(true);
+    file.delete();
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2008-2012 UnboundID Corp. All Rights Reserved.
+ */
+
+package samplecode.test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.*;
+import org.junit.*;
+import samplecode.modifydn.SubtreeMove;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Provides test cases for moving a subtree entry by entry.
+ */
+public final class SubtreeMoveTestCases
+{
+
+  private File checkpointFile;
+
+
+  private LDAPConnectionPool pool;
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+
+
+
+  @Test
+  public void moveAndRenameTestCase() throws Exception
+  {
+    SubtreeMove subtreeMove = newSubtreeMove();
+    subtreeMove.move("ou=sales,dc=example,dc=com","ou=sales-emea","ou=emea,dc=example,dc=com",
+      "dc=example,dc=com");
+    assertEquals(6,subtreeMove.getAddedCount());
+    assertEquals(6,subtreeMove.getDeletedCount());
+    assertEquals(2,subtreeMove.getFixedCount());
+
+    assertNull(server.getEntry("ou=sales,dc=example,dc=com"));
+    assertEquals(3,server.search("ou=emea,dc=example,dc=com",SearchScope.SUB,"(uid=*)")
+      .getEntryCount());
+    Entry top = server.getEntry("ou=sales-emea,ou=emea,dc=example,dc=com");
+    assertTrue(top.hasAttributeValue("ou","sales-emea"));
+    assertFalse(top.hasAttributeValue("ou","sales"));
+
+    String user0 = "uid=user.0,ou=people,ou=sales-emea,ou=emea,dc=example,dc=com";
+    String user1 = "uid=user.1,ou=people,ou=sales-emea,ou=emea,dc=example,dc=com";
+    assertTrue(server.getEntry("cn=staff,dc=example,dc=com").hasAttributeValue("member",
+      user0));
+    assertTrue(server.getEntry("uid=boss,dc=example,dc=com").hasAttributeValue("seeAlso",
+      user1));
+    Entry group = server.getEntry("cn=team,ou=sales-emea,ou=emea,dc=example,dc=com");
+    assertTrue(group.hasAttributeValue("member",user0));
+    assertTrue(group.hasAttributeValue("member","uid=boss,dc=example,dc=com"));
+    assertTrue(server.getEntry(user1).hasAttributeValue("manager",user0));
+  }
+
+
+
+
+
+
+  @Test
+  public void resumeTestCase() throws Exception
+  {
+    try
+    {
+      newSubtreeMove().move("ou=sales,dc=example,dc=com",null,"ou=apac,dc=example,dc=com",
+        "dc=example,dc=com");
+      fail("the new superior does not exist");
+    }
+    catch(LDAPException ldapException)
+    {
+      assertEquals(ResultCode.NO_SUCH_OBJECT,ldapException.getResultCode());
+    }
+    assertNotNull(server.getEntry("ou=sales,dc=example,dc=com"));
+
+    try
+    {
+      newSubtreeMove().move("ou=sales,dc=example,dc=com",null,"ou=emea,dc=example,dc=com",
+        "dc=example,dc=com");
+      fail("the checkpoint file records another move");
+    }
+    catch(LDAPException ldapException)
+    {
+      assertEquals(ResultCode.PARAM_ERROR,ldapException.getResultCode());
+    }
+
+    server.add("dn: ou=apac,dc=example,dc=com","objectClass: organizationalUnit","ou: apac");
+    SubtreeMove subtreeMove = newSubtreeMove();
+    subtreeMove.move("ou=sales,dc=example,dc=com",null,"ou=apac,dc=example,dc=com",
+      "dc=example,dc=com");
+    assertEquals(6,subtreeMove.getAddedCount());
+    assertEquals(6,subtreeMove.getDeletedCount());
+    assertNull(server.getEntry("ou=sales,dc=example,dc=com"));
+    assertNotNull(server.getEntry("uid=user.1,ou=people,ou=sales,ou=apac,dc=example,dc=com"));
+
+    // the checkpoint file is deleted, so the next move is not refused
+    assertFalse(checkpointFile.exists());
+    subtreeMove = newSubtreeMove();
+    subtreeMove.move("ou=sales,ou=apac,dc=example,dc=com",null,"dc=example,dc=com",
+      "dc=example,dc=com");
+    assertEquals(6,subtreeMove.getAddedCount());
+    assertNotNull(server.getEntry("uid=user.1,ou=people,ou=sales,dc=example,dc=com"));
+    assertFalse(checkpointFile.exists());
+  }
+
+
+
+
+
+
+  @Test
+  public void keepOldRdnTestCase() throws Exception
+  {
+    newSubtreeMove().move("ou=sales,dc=example,dc=com","ou=sales-emea",false,
+      "ou=emea,dc=example,dc=com","dc=example,dc=com");
+    Entry top = server.getEntry("ou=sales-emea,ou=emea,dc=example,dc=com");
+    assertTrue(top.hasAttributeValue("ou","sales-emea"));
+    assertTrue(top.hasAttributeValue("ou","sales"));
+  }
+
+
+
+
+
+
+  // an unrelated entry at a target DN fails the move before any delete
+  @Test
+  public void existingTargetTestCase() throws Exception
+  {
+    server.add("dn: ou=apac,dc=example,dc=com","objectClass: organizationalUnit","ou: apac");
+    server.add("dn: ou=sales,ou=apac,dc=example,dc=com","objectClass: organizationalUnit",
+      "ou: sales","description: unrelated");
+    try
+    {
+      newSubtreeMove().move("ou=sales,dc=example,dc=com",null,"ou=apac,dc=example,dc=com",
+        "dc=example,dc=com");
+      fail("the target entry differs from the copy");
+    }
+    catch(LDAPException ldapException)
+    {
+      assertEquals(ResultCode.ENTRY_ALREADY_EXISTS,ldapException.getResultCode());
+    }
+    assertNotNull(server.getEntry("ou=sales,dc=example,dc=com"));
+    assertEquals(6,server.search("ou=sales,dc=example,dc=com",SearchScope.SUB,
+      "(objectClass=*)").getEntryCount());
+
+    // a target entry equal to the copy, as left by an unrecorded add, is
+    // accepted
+    server.delete("ou=sales,ou=apac,dc=example,dc=com");
+    server.add("dn: ou=sales,ou=apac,dc=example,dc=com","objectClass: organizationalUnit",
+      "ou: sales");
+    checkpointFile.delete();
+    SubtreeMove subtreeMove = newSubtreeMove();
+    subtreeMove.move("ou=sales,dc=example,dc=com",null,"ou=apac,dc=example,dc=com",
+      "dc=example,dc=com");
+    assertEquals(1,subtreeMove.getSkippedCount());
+    assertEquals(5,subtreeMove.getAddedCount());
+    assertNull(server.getEntry("ou=sales,dc=example,dc=com"));
+  }
+
+
+
+
+
+
+  // the source subtree is gone but the delete phase was not recorded
+  @Test
+  public void resumeAfterDeleteTestCase() throws Exception
+  {
+    server.add("dn: ou=apac,dc=example,dc=com","objectClass: organizationalUnit","ou: apac");
+    server.add("dn: ou=sales,ou=apac,dc=example,dc=com","objectClass: organizationalUnit",
+      "ou: sales");
+    server.deleteSubtree("ou=sales,dc=example,dc=com");
+    Writer writer = new OutputStreamWriter(new FileOutputStream(checkpointFile),"UTF-8");
+    writer.write("MOVE\tou=sales,dc=example,dc=com\tou=sales,ou=apac,dc=example,dc=com\n" +
+      "PHASE\tcopy\nPHASE\treferences\n");
+    writer.close();
+
+    SubtreeMove subtreeMove = newSubtreeMove();
+    subtreeMove.move("ou=sales,dc=example,dc=com",null,"ou=apac,dc=example,dc=com",
+      "dc=example,dc=com");
+    assertEquals(0,subtreeMove.getDeletedCount());
+    assertFalse(checkpointFile.exists());
+  }
+
+
+
+
+
+
+  private SubtreeMove newSubtreeMove()
+  {
+    return SubtreeMove.newInstance(pool,3,2,SubtreeMove.DEFAULT_REFERENCE_ATTRIBUTES,
+      checkpointFile);
+  }
+
+
+
+
+
+
+  @Before
+  public void invokeBeforeEachTestCase() throws Exception
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    config.addAdditionalBindCredentials("cn=Directory Manager","password");
+    server = new InMemoryDirectoryServer(config);
+    server.startListening();
+    server.add("dn: dc=example,dc=com","objectClass: domain","dc: example");
+    server.add("dn: ou=emea,dc=example,dc=com","objectClass: organizationalUnit","ou: emea");
+    server.add("dn: ou=sales,dc=example,dc=com","objectClass: organizationalUnit","ou: sales");
+    server.add("dn: ou=people,ou=sales,dc=example,dc=com","objectClass: organizationalUnit",
+      "ou: people");
+    for(int i = 0; i < 3; ++i)
+    {
+      server.add("dn: uid=user." + i + ",ou=people,ou=sales,dc=example,dc=com",
+        "objectClass: inetOrgPerson","cn: user","sn: user","uid: user." + i,
+        "manager: uid=user.0,ou=people,ou=sales,dc=example,dc=com");
+    }
+    server.add("dn: cn=team,ou=sales,dc=example,dc=com","objectClass: groupOfNames",
+      "cn: team","member: uid=user.0,ou=people,ou=sales,dc=example,dc=com",
+      "member: uid=boss,dc=example,dc=com");
+    server.add("dn: uid=boss,dc=example,dc=com","objectClass: inetOrgPerson","cn: boss",
+      "sn: boss","uid: boss","seeAlso: uid=user.1,ou=people,ou=sales,dc=example,dc=com");
+    server.add("dn: cn=staff,dc=example,dc=com","objectClass: groupOfNames","cn: staff",
+      "member: uid=user.0,ou=people,ou=sales,dc=example,dc=com",
+      "member: uid=boss,dc=example,dc=com");
+
+    LDAPConnection ldapConnection = server.getConnection();
+    ldapConnection.bind("cn=Directory Manager","password");
+    pool = new LDAPConnectionPool(ldapConnection,1,3);
+    checkpointFile = File.createTempFile("SubtreeMoveTestCases",".checkpoint");
+    checkpointFile.delete();
+  }
+
+
+
+
+
+
+  @After
+  public void invokeAfterEachTestCase()
+  {
+    pool.close();
+    server.shutDown(true);
+    checkpointFile.delete();
+  }
+}